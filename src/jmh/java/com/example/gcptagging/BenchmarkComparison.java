@@ -0,0 +1,148 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares two JMH JSON result files, such as the ones stored in {@code benchmarks/} for each release.
+ * A change only counts as a regression or an improvement when the two scores' confidence intervals
+ * do not overlap; anything smaller is reported as noise. The exit status is 2 if any benchmark regressed.
+ * Usage: BenchmarkComparison &lt;baseline.json&gt; &lt;current.json&gt;
+ */
+public class BenchmarkComparison {
+
+    /**
+     * Prints every benchmark of the current file with its change relative to the baseline.
+     *
+     * @param args The baseline and current result files
+     * @throws IOException If a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: BenchmarkComparison <baseline.json> <current.json>");
+            System.exit(1);
+        }
+        Map<String, Score> baseline = read(args[0]);
+        Map<String, Score> current = read(args[1]);
+
+        System.out.println(String.format(Locale.ROOT, "%-64s %22s %22s %9s  %-11s %s",
+                "Benchmark", "Baseline", "Current", "Change", "Verdict", "Unit"));
+        int regressions = 0;
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            Score after = entry.getValue();
+            if (before == null) {
+                System.out.println(String.format(Locale.ROOT, "%-64s %22s %22s %9s  %-11s %s",
+                        entry.getKey(), "-", after, "", "new", after.unit));
+                continue;
+            }
+            // Positive changes are improvements: higher throughput or lower time per operation
+            double delta = after.mode.equals("thrpt") ? after.score - before.score : before.score - after.score;
+            double change = delta / before.score * 100;
+            String verdict;
+            if (Math.abs(delta) <= before.error + after.error) {
+                verdict = "noise";
+            } else if (delta < 0) {
+                verdict = "REGRESSION";
+                regressions++;
+            } else {
+                verdict = "improvement";
+            }
+            System.out.println(String.format(Locale.ROOT, "%-64s %22s %22s %+8.1f%%  %-11s %s",
+                    entry.getKey(), before, after, change, verdict, after.unit));
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed beyond their error");
+            System.exit(2);
+        }
+    }
+
+    private static Map<String, Score> read(String file) throws IOException {
+        Map<String, Score> scores = new TreeMap<>();
+        try (JsonParser parser = new JsonFactory().createParser(Paths.get(file).toFile())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException(file + " is not a JMH JSON result file");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String benchmark = null;
+                String mode = null;
+                Map<String, String> params = new LinkedHashMap<>();
+                Score score = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (field) {
+                        case "benchmark":
+                            benchmark = parser.getText();
+                            break;
+                        case "mode":
+                            mode = parser.getText();
+                            break;
+                        case "params":
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String name = parser.getCurrentName();
+                                parser.nextToken();
+                                params.put(name, parser.getText());
+                            }
+                            break;
+                        case "primaryMetric":
+                            score = readMetric(parser);
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                if (benchmark != null && score != null) {
+                    score.mode = mode;
+                    String key = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+                    scores.put(params.isEmpty() ? key : key + params, score);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static Score readMetric(JsonParser parser) throws IOException {
+        Score score = new Score();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (field.equals("score")) {
+                score.score = parser.getDoubleValue();
+            } else if (field.equals("scoreError")) {
+                // JMH writes "NaN" when there were too few iterations to estimate the error
+                double error = parser.currentToken() == JsonToken.VALUE_STRING ? Double.NaN : parser.getDoubleValue();
+                score.error = Double.isNaN(error) ? 0 : error;
+            } else if (field.equals("scoreUnit")) {
+                score.unit = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return score;
+    }
+
+    /**
+     * The primary metric of one benchmark.
+     */
+    private static class Score {
+        private double score;
+        // Half-width of the 99.9% confidence interval
+        private double error;
+        private String unit;
+        private String mode;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.1f +- %.1f", score, error);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs JMH like its own launcher, then removes the details of the machine that ran the benchmarks
+ * from a JSON result file, so that the files stored in {@code benchmarks/} only record the JDK version.
+ * Usage: BenchmarkRunner &lt;JMH options&gt;
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Fields of each JMH result that describe the local JVM installation rather than the run.
+     */
+    private static final Set<String> ENVIRONMENT_FIELDS = new HashSet<>(Arrays.asList("jvm", "jvmArgs", "vmName", "vmVersion"));
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Runs the benchmarks selected by the JMH options.
+     *
+     * @param args The JMH command line options
+     * @throws Exception If the options are invalid, a benchmark fails or the result file cannot be rewritten
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        boolean json = options.getResultFormat().hasValue() && options.getResultFormat().get() == ResultFormatType.JSON;
+        if (!json || !options.getResult().hasValue()) {
+            // Listings, help and other result formats are left to the JMH launcher
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(options).run();
+        stripEnvironment(Paths.get(options.getResult().get()));
+    }
+
+    /**
+     * Rewrites a JMH JSON result file without the {@link #ENVIRONMENT_FIELDS}.
+     *
+     * @param file The result file
+     * @throws IOException If the file cannot be read or written
+     */
+    static void stripEnvironment(Path file) throws IOException {
+        Path stripped = file.resolveSibling(file.getFileName() + ".tmp");
+        try (JsonParser parser = JSON_FACTORY.createParser(file.toFile());
+             JsonGenerator generator = JSON_FACTORY.createGenerator(stripped.toFile(), JsonEncoding.UTF8)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException(file + " is not a JMH JSON result file");
+            }
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                generator.writeStartObject();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (ENVIRONMENT_FIELDS.contains(field)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    generator.writeFieldName(field);
+                    generator.copyCurrentStructure(parser);
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeRaw('\n');
+        }
+        Files.move(stripped, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
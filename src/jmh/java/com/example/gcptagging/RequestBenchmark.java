@@ -0,0 +1,62 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.CreateTagBindingRequest;
+import com.google.cloud.resourcemanager.v3.ListTagBindingsRequest;
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the protobuf requests that GcpResourceTagger sends, with and without serialization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBenchmark {
+
+    private String resourceName;
+    private String tagValue;
+
+    @Setup
+    public void setup() {
+        resourceName = GcpResourceNames.formatVmInstanceName("my-project", "us-central1-a", "vm-" + System.nanoTime() % 100000);
+        tagValue = "tagValues/123456789012";
+    }
+
+    @Benchmark
+    public CreateTagBindingRequest buildCreateRequest() {
+        return CreateTagBindingRequest.newBuilder()
+                .setTagBinding(TagBinding.newBuilder()
+                        .setParent(resourceName)
+                        .setTagValue(tagValue)
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public byte[] buildAndSerializeCreateRequest() {
+        return buildCreateRequest().toByteArray();
+    }
+
+    @Benchmark
+    public byte[] buildAndSerializeListRequest() {
+        return ListTagBindingsRequest.newBuilder()
+                .setParent(resourceName)
+                .setPageSize(GcpResourceTagger.DEFAULT_PAGE_SIZE)
+                .build()
+                .toByteArray();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.gcptagging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares resource name formatting and parsing with the String.format and regex approaches
+ * that {@link GcpResourceNames} used before {@link ResourceName}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResourceNameBenchmark {
+
+    private static final Pattern INSTANCE_PATTERN =
+            Pattern.compile("//compute\\.googleapis\\.com/projects/([^/]+)/zones/([^/]+)/instances/([^/]+)");
+
+    private String project;
+    private String zone;
+    private String instance;
+    private String instanceName;
+    private String tagValue;
+
+    @Setup
+    public void setup() {
+        project = "my-project-" + System.nanoTime() % 1000;
+        zone = "us-central1-a";
+        instance = "vm-" + System.nanoTime() % 100000;
+        instanceName = GcpResourceNames.formatVmInstanceName(project, zone, instance);
+        tagValue = "tagValues/123456789012";
+    }
+
+    @Benchmark
+    public String formatInstanceWithStringFormat() {
+        return String.format("//compute.googleapis.com/projects/%s/zones/%s/instances/%s", project, zone, instance);
+    }
+
+    @Benchmark
+    public String formatInstance() {
+        return GcpResourceNames.formatVmInstanceName(project, zone, instance);
+    }
+
+    @Benchmark
+    public String formatTagBindingNameWithReplace() {
+        String resourcePart = instanceName.replace("//", "").replace("/", "@");
+        String tagValuePart = tagValue.replace("/", "@");
+        return String.format("tagBindings/%s@%s", resourcePart, tagValuePart);
+    }
+
+    @Benchmark
+    public String formatTagBindingName() {
+        return GcpResourceNames.formatTagBindingName(instanceName, tagValue);
+    }
+
+    @Benchmark
+    public String parseInstanceWithRegex() {
+        Matcher matcher = INSTANCE_PATTERN.matcher(instanceName);
+        return matcher.matches() ? matcher.group(3) : null;
+    }
+
+    @Benchmark
+    public String parseInstance() {
+        return ResourceName.parse(instanceName).getResourceId();
+    }
+}
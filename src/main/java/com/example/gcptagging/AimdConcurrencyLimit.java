@@ -0,0 +1,191 @@
+package com.example.gcptagging;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Adaptive concurrency limit using additive-increase / multiplicative-decrease.
+ * The limit grows by roughly one for every limit's worth of successful calls and is halved
+ * when a call is rejected for quota reasons or its latency rises well above the observed baseline.
+ */
+public class AimdConcurrencyLimit {
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BASELINE_SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyNanos;
+    private long lastDecreaseNanos;
+    private final Queue<SettableApiFuture<Void>> asyncWaiters = new ArrayDeque<>();
+
+    /**
+     * Constructor for AimdConcurrencyLimit.
+     *
+     * @param initialLimit The starting concurrency limit
+     * @param maxLimit The highest the limit may grow
+     */
+    public AimdConcurrencyLimit(int initialLimit, int maxLimit) {
+        this(1, initialLimit, maxLimit);
+    }
+
+    /**
+     * Constructor for AimdConcurrencyLimit with a floor. A limit whose bounds are equal never changes.
+     *
+     * @param minLimit The lowest the limit may shrink
+     * @param initialLimit The starting concurrency limit
+     * @param maxLimit The highest the limit may grow
+     */
+    public AimdConcurrencyLimit(int minLimit, int initialLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Require 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Waits until the number of calls in flight is below the current limit, then claims a slot.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Claims a slot without blocking. The returned future completes once the number of calls in
+     * flight is below the current limit; waiters are served in order, ahead of blocked threads.
+     * Cancelling the future gives up the place in the queue.
+     *
+     * @return A future that completes when the slot is claimed
+     */
+    public ApiFuture<Void> acquireAsync() {
+        SettableApiFuture<Void> slot = SettableApiFuture.create();
+        boolean claimed = false;
+        synchronized (this) {
+            if (asyncWaiters.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                claimed = true;
+            } else {
+                asyncWaiters.add(slot);
+            }
+        }
+        if (claimed) {
+            slot.set(null);
+        }
+        return slot;
+    }
+
+    /**
+     * Releases a slot after a successful call and lets the limit grow.
+     *
+     * @param latencyNanos The latency of the call
+     */
+    public void onSuccess(long latencyNanos) {
+        List<SettableApiFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            if (baselineLatencyNanos == 0) {
+                baselineLatencyNanos = latencyNanos;
+            }
+            if (latencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE) {
+                decrease();
+            } else {
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            // Track the baseline slowly so a sustained slowdown is noticed but not absorbed immediately
+            baselineLatencyNanos += (latencyNanos - baselineLatencyNanos) * BASELINE_SMOOTHING;
+            granted = grantWaiters();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Releases a slot after the call was rejected because of quota exhaustion.
+     */
+    public void onQuotaExceeded() {
+        List<SettableApiFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            decrease();
+            granted = grantWaiters();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Releases a slot after a call failed for a reason unrelated to load.
+     */
+    public void onIgnored() {
+        List<SettableApiFuture<Void>> granted;
+        synchronized (this) {
+            inFlight--;
+            granted = grantWaiters();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return The current limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Hands free slots to queued asynchronous waiters, then wakes blocked threads for whatever is left.
+     * Must be called while holding the lock; the returned futures are completed after releasing it.
+     */
+    private List<SettableApiFuture<Void>> grantWaiters() {
+        List<SettableApiFuture<Void>> granted = Collections.emptyList();
+        while (inFlight < (int) limit && !asyncWaiters.isEmpty()) {
+            SettableApiFuture<Void> waiter = asyncWaiters.poll();
+            if (waiter.isDone()) {
+                // Cancelled while queued
+                continue;
+            }
+            if (granted.isEmpty()) {
+                granted = new ArrayList<>();
+            }
+            inFlight++;
+            granted.add(waiter);
+        }
+        notifyAll();
+        return granted;
+    }
+
+    private void complete(List<SettableApiFuture<Void>> granted) {
+        for (SettableApiFuture<Void> waiter : granted) {
+            // A waiter cancelled after it was granted hands its slot straight back
+            if (!waiter.set(null)) {
+                onIgnored();
+            }
+        }
+    }
+
+    private void decrease() {
+        // Apply at most one decrease per baseline round trip so a burst of slow calls counts once
+        long now = System.nanoTime();
+        if (now - lastDecreaseNanos < baselineLatencyNanos) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+}
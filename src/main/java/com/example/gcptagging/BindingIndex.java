@@ -0,0 +1,717 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Local on-disk index of tag bindings, so that list queries need no API calls.
+ *
+ * The index directory holds two sorted snapshot files written by a full crawl, one keyed by
+ * resource and one keyed by tag value. Each line is {@code key\tother\tbindingName}, and the
+ * files are memory-mapped and searched by binary search over line boundaries, so a lookup touches
+ * a handful of pages regardless of the index size. Creates and deletes made through a
+ * {@link GcpResourceTagger} after the crawl are appended to a journal, which is replayed into a
+ * small in-memory overlay when the index is opened and folded into the snapshot once it grows large.
+ *
+ * Snapshots are written with an external sort: bindings are buffered up to a fixed amount of memory,
+ * each full buffer is sorted and spilled to a run file, and the runs are merged into the snapshot, so
+ * building the index of a large organization does not need memory proportional to its size. Several
+ * processes may use one index directory: appending to the journal, replaying it and replacing the
+ * snapshot all hold an exclusive lock on {@code journal.lock}, so records never interleave and a
+ * compaction never drops records appended by another process.
+ *
+ * Staleness is measured from the last crawl: the journal only records changes made by this tool,
+ * not changes made by anyone else.
+ */
+public class BindingIndex implements TagBindingListener, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BindingIndex.class);
+
+    private static final String HEADER = "# gcptagging binding index v1 ";
+    private static final String BY_RESOURCE_FILE = "by-resource.idx";
+    private static final String BY_TAG_VALUE_FILE = "by-tag-value.idx";
+    private static final String JOURNAL_FILE = "journal.log";
+    private static final String LOCK_FILE = "journal.lock";
+    private static final int MAX_JOURNAL_ENTRIES = 100_000;
+
+    /**
+     * Memory used by each of the two sorts of a snapshot before a run is spilled to disk.
+     */
+    static final long DEFAULT_RUN_BYTES = 32L << 20;
+
+    private final Path directory;
+    private MappedByteBuffer byResource;
+    private MappedByteBuffer byTagValue;
+    private long builtAtMillis;
+
+    // Journal overlay: bindings created since the snapshot, and names deleted since the snapshot
+    private final Map<String, TagBinding> created = new LinkedHashMap<>();
+    private final Map<String, Map<String, TagBinding>> createdByResource = new HashMap<>();
+    private final Map<String, Map<String, TagBinding>> createdByTagValue = new HashMap<>();
+    private final Set<String> deleted = new HashSet<>();
+    private int journalEntries;
+    private FileChannel lockChannel;
+
+    private BindingIndex(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the default index directory in the user's home directory.
+     *
+     * @return The default index directory
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".gcptagging", "index");
+    }
+
+    /**
+     * Opens the index in a directory, mapping its snapshot files and replaying its journal.
+     * An index that has never been built opens empty; see {@link #isBuilt()}.
+     *
+     * @param directory The index directory
+     * @return The opened index
+     * @throws IOException If the index files cannot be read
+     */
+    public static BindingIndex open(Path directory) throws IOException {
+        BindingIndex index = new BindingIndex(directory);
+        if (!Files.isDirectory(directory)) {
+            return index;
+        }
+        synchronized (index) {
+            try (FileLock lock = index.lockJournal()) {
+                index.mapSnapshot();
+                index.replayJournal();
+                if (index.journalEntries > MAX_JOURNAL_ENTRIES) {
+                    index.compact();
+                }
+            } catch (IOException | RuntimeException e) {
+                index.close();
+                throw e;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether a full crawl has been written to this index.
+     *
+     * @return true if the snapshot exists
+     */
+    public synchronized boolean isBuilt() {
+        return byResource != null;
+    }
+
+    /**
+     * Returns the time since the last full crawl.
+     *
+     * @return The age of the snapshot
+     * @throws IllegalStateException If the index has never been built
+     */
+    public synchronized Duration getAge() {
+        if (!isBuilt()) {
+            throw new IllegalStateException("Binding index in " + directory + " has not been built");
+        }
+        return Duration.ofMillis(System.currentTimeMillis() - builtAtMillis);
+    }
+
+    /**
+     * Returns the bindings of a resource.
+     *
+     * @param resourceName The full resource name
+     * @return The bindings, ordered by tag value
+     */
+    public synchronized List<TagBinding> findByResource(String resourceName) {
+        List<TagBinding> result = new ArrayList<>();
+        for (String[] fields : scan(byResource, resourceName)) {
+            add(result, fields[0], fields[1], fields[2]);
+        }
+        result.addAll(createdByResource.getOrDefault(resourceName, Collections.emptyMap()).values());
+        return result;
+    }
+
+    /**
+     * Returns the bindings of a tag value.
+     *
+     * @param tagValueName The tag value name, e.g. tagValues/123456789
+     * @return The bindings, ordered by resource
+     */
+    public synchronized List<TagBinding> findByTagValue(String tagValueName) {
+        List<TagBinding> result = new ArrayList<>();
+        for (String[] fields : scan(byTagValue, tagValueName)) {
+            add(result, fields[1], fields[0], fields[2]);
+        }
+        result.addAll(createdByTagValue.getOrDefault(tagValueName, Collections.emptyMap()).values());
+        return result;
+    }
+
+    private void add(List<TagBinding> result, String resourceName, String tagValueName, String name) {
+        // Journal entries override the snapshot: deleted names are dropped, recreated ones come from the overlay
+        if (!deleted.contains(name) && !created.containsKey(name)) {
+            result.add(TagBinding.newBuilder().setName(name).setParent(resourceName).setTagValue(tagValueName).build());
+        }
+    }
+
+    @Override
+    public synchronized void onCreated(TagBinding binding) {
+        applyCreated(binding);
+        appendJournal("+\t" + System.currentTimeMillis() + "\t" + binding.getParent() + "\t"
+                + binding.getTagValue() + "\t" + binding.getName());
+    }
+
+    @Override
+    public synchronized void onDeleted(String tagBindingName) {
+        applyDeleted(tagBindingName);
+        appendJournal("-\t" + System.currentTimeMillis() + "\t" + tagBindingName);
+    }
+
+    private void applyCreated(TagBinding binding) {
+        applyDeleted(binding.getName());
+        deleted.remove(binding.getName());
+        created.put(binding.getName(), binding);
+        createdByResource.computeIfAbsent(binding.getParent(), key -> new LinkedHashMap<>()).put(binding.getName(), binding);
+        createdByTagValue.computeIfAbsent(binding.getTagValue(), key -> new LinkedHashMap<>()).put(binding.getName(), binding);
+    }
+
+    private void applyDeleted(String tagBindingName) {
+        TagBinding binding = created.remove(tagBindingName);
+        if (binding != null) {
+            removeFrom(createdByResource, binding.getParent(), tagBindingName);
+            removeFrom(createdByTagValue, binding.getTagValue(), tagBindingName);
+        }
+        deleted.add(tagBindingName);
+    }
+
+    private static void removeFrom(Map<String, Map<String, TagBinding>> map, String key, String tagBindingName) {
+        Map<String, TagBinding> bindings = map.get(key);
+        if (bindings != null) {
+            bindings.remove(tagBindingName);
+            if (bindings.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Starts replacing the index with the result of a full crawl. Journal entries written after
+     * the crawl started are kept, since the crawl may not have seen them.
+     *
+     * @return A crawl sink collecting bindings; call {@link Rebuild#commit()} once the crawl succeeded
+     */
+    public Rebuild rebuild() {
+        return rebuild(DEFAULT_RUN_BYTES);
+    }
+
+    /**
+     * Starts replacing the index, spilling sorted runs to disk once a sort buffers the given amount of memory.
+     *
+     * @param runBytes The memory used by each sort before it spills a run
+     * @return A crawl sink collecting bindings
+     */
+    Rebuild rebuild(long runBytes) {
+        return new Rebuild(System.currentTimeMillis(), runBytes);
+    }
+
+    /**
+     * Collects the bindings of a full crawl and writes them as the new snapshot.
+     * Run files left by a crawl that is never committed are deleted when the JVM exits.
+     */
+    public class Rebuild implements InventoryCrawler.Sink {
+
+        private final long startedAtMillis;
+        private final ExternalSort byResourceSort;
+        private final ExternalSort byTagValueSort;
+
+        private Rebuild(long startedAtMillis, long runBytes) {
+            this.startedAtMillis = startedAtMillis;
+            this.byResourceSort = new ExternalSort(directory, runBytes);
+            this.byTagValueSort = new ExternalSort(directory, runBytes);
+        }
+
+        @Override
+        public void tagKey(TagKey tagKey) {
+            // Only bindings are indexed
+        }
+
+        @Override
+        public void tagValues(List<TagValue> tagValues) {
+            // Only bindings are indexed
+        }
+
+        @Override
+        public synchronized void tagBindings(List<TagBinding> page) throws IOException {
+            for (TagBinding binding : page) {
+                byResourceSort.add(encode(binding.getParent(), binding.getTagValue(), binding.getName(), false));
+                byTagValueSort.add(encode(binding.getParent(), binding.getTagValue(), binding.getName(), true));
+            }
+        }
+
+        /**
+         * Writes the collected bindings as the new snapshot and drops journal entries older than the crawl.
+         *
+         * @return The number of bindings indexed
+         * @throws IOException If the index cannot be written
+         */
+        public long commit() throws IOException {
+            synchronized (BindingIndex.this) {
+                synchronized (this) {
+                    try (FileLock lock = lockJournal()) {
+                        writeSnapshot(byResourceSort, byTagValueSort, startedAtMillis);
+                        rewriteJournal(startedAtMillis);
+                    }
+                    return byResourceSort.size();
+                }
+            }
+        }
+    }
+
+    /**
+     * Folds the journal into the snapshot, keeping the snapshot's crawl time.
+     * The caller holds the journal lock and has replayed the journal under it.
+     */
+    private synchronized void compact() throws IOException {
+        if (!isBuilt()) {
+            return;
+        }
+        ExternalSort byResourceSort = new ExternalSort(directory, DEFAULT_RUN_BYTES);
+        ExternalSort byTagValueSort = new ExternalSort(directory, DEFAULT_RUN_BYTES);
+        ByteBuffer buffer = byResource.duplicate();
+        buffer.position(dataStart(buffer));
+        while (buffer.hasRemaining()) {
+            String[] fields = readLine(buffer, buffer.position()).split("\t", 3);
+            if (!deleted.contains(fields[2]) && !created.containsKey(fields[2])) {
+                byResourceSort.add(encode(fields[0], fields[1], fields[2], false));
+                byTagValueSort.add(encode(fields[0], fields[1], fields[2], true));
+            }
+        }
+        for (TagBinding binding : created.values()) {
+            byResourceSort.add(encode(binding.getParent(), binding.getTagValue(), binding.getName(), false));
+            byTagValueSort.add(encode(binding.getParent(), binding.getTagValue(), binding.getName(), true));
+        }
+        writeSnapshot(byResourceSort, byTagValueSort, builtAtMillis);
+        rewriteJournal(Long.MAX_VALUE);
+    }
+
+    private void writeSnapshot(ExternalSort byResourceSort, ExternalSort byTagValueSort, long builtAt) throws IOException {
+        Files.createDirectories(directory);
+        try {
+            byResourceSort.writeTo(directory.resolve(BY_RESOURCE_FILE), HEADER + builtAt);
+            byTagValueSort.writeTo(directory.resolve(BY_TAG_VALUE_FILE), HEADER + builtAt);
+        } finally {
+            byResourceSort.discard();
+            byTagValueSort.discard();
+        }
+        mapSnapshot();
+    }
+
+    /**
+     * Encodes a binding as a snapshot line, keyed by resource or by tag value.
+     */
+    private static byte[] encode(String resourceName, String tagValueName, String name, boolean byTagValue) {
+        String line = byTagValue
+                ? tagValueName + "\t" + resourceName + "\t" + name
+                : resourceName + "\t" + tagValueName + "\t" + name;
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void mapSnapshot() throws IOException {
+        Path resourceFile = directory.resolve(BY_RESOURCE_FILE);
+        Path tagValueFile = directory.resolve(BY_TAG_VALUE_FILE);
+        if (!Files.exists(resourceFile) || !Files.exists(tagValueFile)) {
+            return;
+        }
+        byResource = map(resourceFile);
+        byTagValue = map(tagValueFile);
+        String header = readLine(byResource, 0);
+        if (!header.startsWith(HEADER)) {
+            throw new IOException("Unknown binding index format in " + resourceFile);
+        }
+        builtAtMillis = Long.parseLong(header.substring(HEADER.length()));
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Binding index file " + file + " is larger than 2 GB");
+            }
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Returns the fields of every line whose first field equals the key.
+     */
+    private static List<String[]> scan(MappedByteBuffer file, String key) {
+        List<String[]> result = new ArrayList<>();
+        if (file == null) {
+            return result;
+        }
+        ByteBuffer buffer = file.duplicate();
+        byte[] prefix = (key + "\t").getBytes(StandardCharsets.UTF_8);
+
+        // Binary search for the first line that is not smaller than the prefix
+        int low = dataStart(buffer);
+        int high = buffer.limit();
+        while (low < high) {
+            int lineStart = lineStart(buffer, (low + high) >>> 1, low);
+            int lineEnd = lineEnd(buffer, lineStart);
+            if (compare(buffer, lineStart, lineEnd, prefix) < 0) {
+                low = lineEnd + 1;
+            } else {
+                high = lineStart;
+            }
+        }
+
+        for (int position = low; position < buffer.limit(); position = lineEnd(buffer, position) + 1) {
+            if (!startsWith(buffer, position, prefix)) {
+                break;
+            }
+            result.add(readLine(buffer, position).split("\t", 3));
+        }
+        return result;
+    }
+
+    private static int dataStart(ByteBuffer buffer) {
+        return Math.min(buffer.limit(), lineEnd(buffer, 0) + 1);
+    }
+
+    private static int lineStart(ByteBuffer buffer, int position, int floor) {
+        while (position > floor && buffer.get(position - 1) != '\n') {
+            position--;
+        }
+        return position;
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int position) {
+        while (position < buffer.limit() && buffer.get(position) != '\n') {
+            position++;
+        }
+        return position;
+    }
+
+    private static int compare(ByteBuffer buffer, int start, int end, byte[] key) {
+        int length = Math.min(end - start, key.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return (end - start) - key.length;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int position, byte[] prefix) {
+        if (buffer.limit() - position < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readLine(ByteBuffer buffer, int position) {
+        int end = lineEnd(buffer, position);
+        byte[] bytes = new byte[end - position];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(position + i);
+        }
+        buffer.position(Math.min(buffer.limit(), end + 1));
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void replayJournal() throws IOException {
+        Path file = directory.resolve(JOURNAL_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                // A torn last line from a crash is ignored
+                if (fields.length == 5 && fields[0].equals("+")) {
+                    applyCreated(TagBinding.newBuilder()
+                            .setParent(fields[2]).setTagValue(fields[3]).setName(fields[4]).build());
+                    journalEntries++;
+                } else if (fields.length == 3 && fields[0].equals("-")) {
+                    applyDeleted(fields[2]);
+                    journalEntries++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal, keeping only entries written at or after a time, and resets the overlay to match.
+     * The caller holds the journal lock.
+     */
+    private void rewriteJournal(long keepFromMillis) throws IOException {
+        Path file = directory.resolve(JOURNAL_FILE);
+        List<String> kept = new ArrayList<>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length >= 3 && Long.parseLong(fields[1]) >= keepFromMillis) {
+                    kept.add(line);
+                }
+            }
+        }
+        Path temp = file.resolveSibling(JOURNAL_FILE + ".tmp");
+        Files.write(temp, kept, StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        created.clear();
+        createdByResource.clear();
+        createdByTagValue.clear();
+        deleted.clear();
+        journalEntries = 0;
+        replayJournal();
+    }
+
+    private void appendJournal(String line) {
+        // Opened per record, since another process may have replaced the file while compacting
+        try (FileLock lock = lockJournal()) {
+            Files.write(directory.resolve(JOURNAL_FILE), (line + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            journalEntries++;
+        } catch (IOException e) {
+            LOG.warn("Failed to update binding index journal in {}: {}", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * Takes the lock that serializes journal appends, replays and snapshot replacement across processes.
+     * The lock file is never replaced, unlike the journal itself.
+     */
+    private FileLock lockJournal() throws IOException {
+        if (lockChannel == null) {
+            Files.createDirectories(directory);
+            lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        return lockChannel.lock();
+    }
+
+    /**
+     * Closes the journal lock file. The mapped snapshot is released by the garbage collector.
+     *
+     * @throws IOException If the lock file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (lockChannel != null) {
+            lockChannel.close();
+            lockChannel = null;
+        }
+    }
+
+    /**
+     * Sorts snapshot lines by unsigned bytes, the order the binary search compares in, in bounded memory.
+     * Lines are buffered until the buffer holds the run size, then sorted and spilled to a run file
+     * in the index directory; the runs are merged when the snapshot file is written.
+     */
+    private static class ExternalSort {
+
+        // Approximate heap cost of a buffered line beyond its bytes: array header and list slot
+        private static final int LINE_OVERHEAD = 24;
+
+        private final Path directory;
+        private final long runBytes;
+        private final List<byte[]> buffer = new ArrayList<>();
+        private final List<Path> runs = new ArrayList<>();
+        private long bufferedBytes;
+        private long size;
+
+        ExternalSort(Path directory, long runBytes) {
+            this.directory = directory;
+            this.runBytes = runBytes;
+        }
+
+        long size() {
+            return size;
+        }
+
+        void add(byte[] line) throws IOException {
+            buffer.add(line);
+            bufferedBytes += line.length + LINE_OVERHEAD;
+            size++;
+            if (bufferedBytes >= runBytes) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            buffer.sort(Arrays::compareUnsigned);
+            Files.createDirectories(directory);
+            Path run = Files.createTempFile(directory, "sort-", ".run");
+            run.toFile().deleteOnExit();
+            runs.add(run);
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(run), 1 << 16)) {
+                for (byte[] line : buffer) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+            buffer.clear();
+            bufferedBytes = 0;
+        }
+
+        /**
+         * Writes every line in order after a header line, replacing the file atomically.
+         */
+        void writeTo(Path file, String header) throws IOException {
+            if (!runs.isEmpty() && !buffer.isEmpty()) {
+                spill();
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+                out.write((header + "\n").getBytes(StandardCharsets.UTF_8));
+                if (runs.isEmpty()) {
+                    buffer.sort(Arrays::compareUnsigned);
+                    for (byte[] line : buffer) {
+                        out.write(line);
+                        out.write('\n');
+                    }
+                } else {
+                    merge(out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private void merge(OutputStream out) throws IOException {
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(runs.size(),
+                    (a, b) -> Arrays.compareUnsigned(a.line, b.line));
+            List<RunReader> readers = new ArrayList<>(runs.size());
+            try {
+                for (Path run : runs) {
+                    RunReader reader = new RunReader(Files.newInputStream(run));
+                    readers.add(reader);
+                    if (reader.next()) {
+                        heads.add(reader);
+                    }
+                }
+                while (!heads.isEmpty()) {
+                    RunReader reader = heads.poll();
+                    out.write(reader.line);
+                    out.write('\n');
+                    if (reader.next()) {
+                        heads.add(reader);
+                    }
+                }
+            } finally {
+                for (RunReader reader : readers) {
+                    reader.in.close();
+                }
+            }
+        }
+
+        /**
+         * Deletes the run files and drops the buffered lines.
+         */
+        void discard() {
+            for (Path run : runs) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    LOG.warn("Failed to delete binding index sort run {}: {}", run, e.getMessage());
+                }
+            }
+            runs.clear();
+            buffer.clear();
+            bufferedBytes = 0;
+        }
+    }
+
+    /**
+     * Reads the lines of a run file one at a time.
+     */
+    private static class RunReader {
+
+        private final InputStream in;
+        private final byte[] chunk = new byte[1 << 16];
+        private int chunkPosition;
+        private int chunkLimit;
+        private byte[] line;
+
+        RunReader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Advances to the next line.
+         *
+         * @return false at the end of the run
+         */
+        boolean next() throws IOException {
+            byte[] partial = null;
+            while (true) {
+                if (chunkPosition == chunkLimit) {
+                    chunkLimit = in.read(chunk);
+                    chunkPosition = 0;
+                    if (chunkLimit <= 0) {
+                        chunkLimit = 0;
+                        // Runs always end with a newline, so a partial line means the file was cut short
+                        if (partial != null) {
+                            throw new IOException("Truncated binding index sort run");
+                        }
+                        line = null;
+                        return false;
+                    }
+                }
+                int end = chunkPosition;
+                while (end < chunkLimit && chunk[end] != '\n') {
+                    end++;
+                }
+                byte[] piece = Arrays.copyOfRange(chunk, chunkPosition, end);
+                partial = partial == null ? piece : concat(partial, piece);
+                if (end < chunkLimit) {
+                    chunkPosition = end + 1;
+                    line = partial;
+                    return true;
+                }
+                chunkPosition = chunkLimit;
+            }
+        }
+
+        private static byte[] concat(byte[] first, byte[] second) {
+            byte[] joined = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, joined, first.length, second.length);
+            return joined;
+        }
+    }
+}
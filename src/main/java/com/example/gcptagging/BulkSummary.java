@@ -0,0 +1,193 @@
+package com.example.gcptagging;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe counters describing the outcome of a bulk run.
+ * Only a bounded sample of failure messages is kept so that memory stays flat on very large jobs.
+ */
+public class BulkSummary {
+
+    private static final int MAX_FAILURE_SAMPLES = 20;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final List<String> failureSamples = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos;
+    private volatile OperationTracker.Stats operationStats;
+
+    /**
+     * Records a successful operation.
+     *
+     * @param operation The operation that succeeded
+     */
+    public void recordSuccess(TagOperation operation) {
+        if (operation.getAction() == TagOperation.Action.CREATE) {
+            created.incrementAndGet();
+        } else {
+            deleted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a failed operation.
+     *
+     * @param operation The operation that failed
+     * @param error The cause of the failure
+     */
+    public void recordFailure(TagOperation operation, Throwable error) {
+        recordFailure(operation, error.getMessage());
+    }
+
+    /**
+     * Records a failed operation whose error is only known by its message, for example one
+     * reported by a worker process.
+     *
+     * @param operation The operation that failed
+     * @param message The error message
+     */
+    public void recordFailure(TagOperation operation, String message) {
+        failed.incrementAndGet();
+        synchronized (failureSamples) {
+            if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                failureSamples.add(operation + ": " + message);
+            }
+        }
+    }
+
+    /**
+     * Records a failure that belongs to no operation, such as a manifest row that could not be parsed.
+     *
+     * @param message The error message, naming the row
+     */
+    public void recordRowFailure(String message) {
+        failed.incrementAndGet();
+        synchronized (failureSamples) {
+            if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                failureSamples.add(message);
+            }
+        }
+    }
+
+    /**
+     * Records an operation that was not sent because it had already taken effect,
+     * for example in an earlier run recorded by a {@link CheckpointJournal}.
+     *
+     * @param operation The operation that was skipped
+     */
+    public void recordSkipped(TagOperation operation) {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * Adds the successes and skips counted elsewhere, for example by a worker process that
+     * reports its failures one by one but its successes only as totals.
+     *
+     * @param created The number of bindings created
+     * @param deleted The number of bindings deleted
+     * @param skipped The number of operations skipped
+     */
+    public void add(long created, long deleted, long skipped) {
+        this.created.addAndGet(created);
+        this.deleted.addAndGet(deleted);
+        this.skipped.addAndGet(skipped);
+    }
+
+    /**
+     * Records how the operations of a fire-and-track run were polled, to show in the summary.
+     *
+     * @param operationStats The counters of the operation tracker
+     */
+    public void setOperationStats(OperationTracker.Stats operationStats) {
+        this.operationStats = operationStats;
+    }
+
+    /**
+     * Marks the run as finished, freezing the elapsed time.
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Returns the total number of completed operations, successful or not.
+     *
+     * @return The number of completed operations
+     */
+    public long getCompleted() {
+        return created.get() + deleted.get() + failed.get();
+    }
+
+    /**
+     * Returns the elapsed time of the run in milliseconds.
+     *
+     * @return The elapsed milliseconds
+     */
+    public long getElapsedMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Returns the achieved throughput in operations per second.
+     *
+     * @return Completed operations per second
+     */
+    public double getOperationsPerSecond() {
+        long elapsed = Math.max(1, getElapsedMillis());
+        return getCompleted() * 1000.0 / elapsed;
+    }
+
+    /**
+     * Prints the summary in a human readable form.
+     *
+     * @param out The stream to print to
+     */
+    public void print(PrintStream out) {
+        out.println("Bulk run summary");
+        out.println("================");
+        out.println("  Created:    " + getCreated());
+        out.println("  Deleted:    " + getDeleted());
+        out.println("  Failed:     " + getFailed());
+        if (getSkipped() > 0) {
+            out.println("  Skipped:    " + getSkipped());
+        }
+        out.println("  Elapsed:    " + String.format(Locale.ROOT, "%.1fs", getElapsedMillis() / 1000.0));
+        out.println("  Throughput: " + String.format(Locale.ROOT, "%.1f ops/s", getOperationsPerSecond()));
+        OperationTracker.Stats stats = operationStats;
+        if (stats != null) {
+            out.println("  Polling:    " + stats.describe());
+        }
+        synchronized (failureSamples) {
+            if (!failureSamples.isEmpty()) {
+                out.println("  First failures:");
+                for (String failure : failureSamples) {
+                    out.println("    - " + failure);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.gcptagging;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.longrunning.Operation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs a stream of tag binding operations with a bounded number of operations in flight.
+ * The source iterator is only advanced when a permit is free, so a slow API applies
+ * backpressure to the reader and memory use does not grow with the size of the input.
+ * With a {@link CheckpointJournal}, every operation is journaled before it is sent, operations a
+ * previous run completed are skipped, and operations it left in flight are checked first.
+ *
+ * By default an operation holds its slot until its long-running operation is done. In
+ * fire-and-track mode a slot is only held until the API has accepted the request; the tagger's
+ * {@link OperationTracker} then waits for the operation, and a second, larger bound limits how
+ * many operations may be pending with it.
+ */
+public class BulkTagger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkTagger.class);
+
+    /**
+     * Default cap on concurrently running long-running operations.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    /**
+     * Default cap on operations pending with the operation tracker in fire-and-track mode.
+     */
+    public static final int DEFAULT_MAX_TRACKED = 10_000;
+
+    private static final long PROGRESS_INTERVAL = 10_000;
+
+    private final GcpResourceTagger tagger;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final TagValueResolver resolver;
+    private final CheckpointJournal journal;
+    private final int maxTracked;
+    private final Semaphore trackedPermits;
+
+    /**
+     * Constructor for BulkTagger.
+     *
+     * @param tagger The tagger used to submit operations
+     * @param maxInFlight The maximum number of operations in flight at once
+     */
+    public BulkTagger(GcpResourceTagger tagger, int maxInFlight) {
+        this(tagger, maxInFlight, null);
+    }
+
+    /**
+     * Constructor for BulkTagger that resolves namespaced tag value names before submitting.
+     *
+     * @param tagger The tagger used to submit operations
+     * @param maxInFlight The maximum number of operations in flight at once
+     * @param resolver Resolver for names like 123456789012/environment/production, or null to require IDs
+     */
+    public BulkTagger(GcpResourceTagger tagger, int maxInFlight, TagValueResolver resolver) {
+        this(tagger, maxInFlight, resolver, null);
+    }
+
+    /**
+     * Constructor for BulkTagger that records its progress in a journal, so an interrupted run can be resumed.
+     *
+     * @param tagger The tagger used to submit operations
+     * @param maxInFlight The maximum number of operations in flight at once
+     * @param resolver Resolver for names like 123456789012/environment/production, or null to require IDs
+     * @param journal The journal to record intents and outcomes in, or null to run without one
+     */
+    public BulkTagger(GcpResourceTagger tagger, int maxInFlight, TagValueResolver resolver, CheckpointJournal journal) {
+        this(tagger, maxInFlight, resolver, journal, 0);
+    }
+
+    /**
+     * Constructor for BulkTagger that can run in fire-and-track mode.
+     *
+     * @param tagger The tagger used to submit operations
+     * @param maxInFlight The maximum number of requests in flight at once
+     * @param resolver Resolver for names like 123456789012/environment/production, or null to require IDs
+     * @param journal The journal to record intents and outcomes in, or null to run without one
+     * @param maxTracked The maximum number of accepted operations pending with the tagger's operation
+     *                   tracker, or 0 to wait for each operation while holding its in-flight slot
+     */
+    public BulkTagger(GcpResourceTagger tagger, int maxInFlight, TagValueResolver resolver, CheckpointJournal journal,
+            int maxTracked) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        if (maxTracked < 0) {
+            throw new IllegalArgumentException("maxTracked must not be negative");
+        }
+        this.tagger = tagger;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.resolver = resolver;
+        this.journal = journal;
+        this.maxTracked = maxTracked;
+        this.trackedPermits = maxTracked > 0 ? new Semaphore(maxTracked) : null;
+    }
+
+    /**
+     * Submits every operation from the source and waits until all of them have completed.
+     * Individual failures, including rows the source rejects as malformed, are recorded in the summary
+     * and do not stop the run. If the source fails in any other way, the operations already sent are
+     * still waited for and the failure is recorded in the summary.
+     *
+     * @param operations The operations to run
+     * @return The summary of the run
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public BulkSummary run(Iterator<TagOperation> operations) throws InterruptedException {
+        return run(operations, new BulkSummary());
+    }
+
+    /**
+     * Submits every operation from the source and waits until all of them have completed,
+     * adding the results to an existing summary. Used by commands that run several passes.
+     *
+     * @param operations The operations to run
+     * @param summary The summary to record results in
+     * @return The summary of the run
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public BulkSummary run(Iterator<TagOperation> operations, BulkSummary summary) throws InterruptedException {
+        while (true) {
+            TagOperation operation;
+            try {
+                if (!operations.hasNext()) {
+                    break;
+                }
+                operation = operations.next();
+            } catch (IllegalArgumentException e) {
+                // A malformed row fails on its own; the reader has moved past it
+                summary.recordRowFailure(e.getMessage());
+                LOG.warn("Skipped row: {}", e.getMessage());
+                continue;
+            } catch (RuntimeException e) {
+                // The source broke; finish what was sent so that the summary is complete
+                summary.recordRowFailure("Stopped reading: " + e.getMessage());
+                LOG.error("Stopped reading operations: {}", e.getMessage());
+                break;
+            }
+
+            // Wait for a free slot before submitting; this is the backpressure point
+            if (trackedPermits != null) {
+                trackedPermits.acquire();
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                if (trackedPermits != null) {
+                    trackedPermits.release();
+                }
+                throw e;
+            }
+            submit(operation, summary);
+        }
+
+        // Wait for the remaining operations to drain
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+        if (trackedPermits != null) {
+            trackedPermits.acquire(maxTracked);
+            trackedPermits.release(maxTracked);
+            summary.setOperationStats(tagger.getOperationTracker().getStats());
+        }
+
+        summary.finish();
+        return summary;
+    }
+
+    private void submit(TagOperation row, BulkSummary summary) throws InterruptedException {
+        TagOperation operation = row;
+        ApiFuture<?> future;
+        try {
+            operation = resolve(row);
+            if (journal != null && !startJournaled(operation)) {
+                summary.recordSkipped(operation);
+                releaseSlots();
+                return;
+            }
+            if (trackedPermits != null) {
+                future = submitTracked(operation);
+            } else if (operation.getAction() == TagOperation.Action.CREATE) {
+                future = tagger.submitCreateTagBinding(operation.getResourceName(), operation.getTagValueName());
+            } else {
+                future = tagger.submitDeleteTagBinding(operation.getTagBindingName());
+            }
+        } catch (RuntimeException e) {
+            if (trackedPermits != null) {
+                // Never sent, so its in-flight slot is still held
+                permits.release();
+            }
+            complete(operation, summary, e);
+            return;
+        } catch (InterruptedException e) {
+            releaseSlots();
+            throw e;
+        }
+
+        TagOperation submitted = operation;
+        ApiFutures.addCallback(future, new ApiFutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                if (journal != null) {
+                    journal.recordSuccess(submitted);
+                }
+                complete(submitted, summary, null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (journal != null) {
+                    journal.recordFailure(submitted, t);
+                }
+                complete(submitted, summary, t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Submits an operation in fire-and-track mode. Its in-flight slot is released as soon as the
+     * API has accepted the request, or failed to; the returned future completes when the operation is done.
+     */
+    private ApiFuture<Operation> submitTracked(TagOperation operation) throws InterruptedException {
+        ApiFuture<OperationTracker.TrackedOperation> accepted = operation.getAction() == TagOperation.Action.CREATE
+                ? tagger.submitTrackedCreateTagBinding(operation.getResourceName(), operation.getTagValueName())
+                : tagger.submitTrackedDeleteTagBinding(operation.getTagBindingName());
+        SettableApiFuture<Operation> done = SettableApiFuture.create();
+        ApiFutures.addCallback(accepted, new ApiFutureCallback<OperationTracker.TrackedOperation>() {
+            @Override
+            public void onSuccess(OperationTracker.TrackedOperation tracked) {
+                permits.release();
+                LOG.debug("Submitted {} as {}", operation, tracked.getName());
+                tracked.getCompletion().whenComplete((result, error) -> {
+                    if (error != null) {
+                        done.setException(error);
+                    } else {
+                        done.set(result);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                permits.release();
+                done.setException(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return done;
+    }
+
+    /**
+     * Checks the journal before an operation is sent and records the intent to send it.
+     *
+     * @return false if the operation already took effect and should not be sent
+     */
+    private boolean startJournaled(TagOperation operation) throws InterruptedException {
+        switch (journal.getRecoveredState(operation)) {
+            case COMPLETED:
+                return false;
+            case IN_FLIGHT:
+                // The previous run may have stopped before or after the change was made
+                if (isInPlace(operation)) {
+                    journal.recordSuccess(operation);
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        journal.recordIntent(operation);
+        return true;
+    }
+
+    /**
+     * Checks with a read call whether an operation's change already holds. Deletes given only by
+     * binding name cannot be checked this way and are sent again, which is harmless since deleting
+     * a missing binding counts as success.
+     */
+    private boolean isInPlace(TagOperation operation) throws InterruptedException {
+        String resourceName = operation.getResourceName();
+        String tagValueName = operation.getTagValueName();
+        if (resourceName == null || tagValueName == null) {
+            return false;
+        }
+        boolean bound = false;
+        try {
+            for (TagBinding binding : tagger.listTagBindingsForResource(resourceName)) {
+                if (binding.getTagValue().equals(tagValueName)) {
+                    bound = true;
+                    break;
+                }
+            }
+        } catch (ApiException e) {
+            LOG.debug("Could not check {}, sending it again: {}", operation, e.getMessage());
+            return false;
+        }
+        return bound == (operation.getAction() == TagOperation.Action.CREATE);
+    }
+
+    /**
+     * Replaces a namespaced tag value name with its ID.
+     */
+    private TagOperation resolve(TagOperation operation) {
+        String tagValueName = operation.getTagValueName();
+        if (resolver == null || tagValueName == null || !TagValueResolver.isNamespacedName(tagValueName)) {
+            return operation;
+        }
+        String tagValueId = resolver.resolve(tagValueName);
+        if (tagValueId == null) {
+            throw new IllegalArgumentException("Unknown tag value: " + tagValueName);
+        }
+        return new TagOperation(operation.getAction(), operation.getResourceName(), tagValueId, null);
+    }
+
+    private void complete(TagOperation operation, BulkSummary summary, Throwable error) {
+        try {
+            if (error == null) {
+                summary.recordSuccess(operation);
+            } else {
+                summary.recordFailure(operation, error);
+                LOG.warn("Failed to {}: {}", operation, error.getMessage());
+            }
+            long completed = summary.getCompleted();
+            if (completed % PROGRESS_INTERVAL == 0) {
+                LOG.info("Progress: {} operations completed, {} failed", completed, summary.getFailed());
+            }
+        } finally {
+            if (trackedPermits != null) {
+                trackedPermits.release();
+            } else {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Releases the slots of an operation that was never sent.
+     */
+    private void releaseSlots() {
+        permits.release();
+        if (trackedPermits != null) {
+            trackedPermits.release();
+        }
+    }
+}
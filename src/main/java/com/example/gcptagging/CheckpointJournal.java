@@ -0,0 +1,414 @@
+package com.example.gcptagging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An append-only record of the operations of a bulk run, used to resume the run after a crash.
+ *
+ * Before an operation is sent, its intent is appended; when it finishes, its outcome is appended.
+ * Records are handed to a single writer thread, which writes everything that arrived during one
+ * commit interval and then forces it to disk once, so a run with thousands of operations per
+ * second costs a few hundred fsyncs per second at most. Callers never wait for the disk: a crash
+ * can lose the records of the last commit interval, which is safe because creates and deletes are
+ * idempotent, so an operation whose records were lost is simply sent again.
+ *
+ * A journal opened for resuming replays its records first. Operations with a recorded success are
+ * reported as {@link State#COMPLETED}; operations with an intent but no outcome were in flight when
+ * the run stopped and are reported as {@link State#IN_FLIGHT}, so the caller can check whether they
+ * took effect before sending them again. A torn last line left by a crash is cut off before appending.
+ */
+public class CheckpointJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    /**
+     * Default time the writer gathers records before each fsync.
+     */
+    public static final Duration DEFAULT_COMMIT_INTERVAL = Duration.ofMillis(20);
+
+    private static final String HEADER = "# gcptagging checkpoint journal v1";
+    private static final String INTENT = "I";
+    private static final String SUCCESS = "D";
+    private static final String FAILURE = "F";
+
+    /**
+     * What a previous run recorded about an operation.
+     */
+    public enum State {
+        /** Not recorded, or only recorded by this run. */
+        NEW,
+        /** Sent, with no recorded outcome. */
+        IN_FLIGHT,
+        /** Finished with a failure, and should be tried again. */
+        FAILED,
+        /** Finished successfully. */
+        COMPLETED
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long commitIntervalMillis;
+    private final Map<String, State> recovered;
+    private final Thread writer;
+
+    private final Object lock = new Object();
+    private StringBuilder pending = new StringBuilder();
+    private long appended;
+    private long durable;
+    private boolean closed;
+    private long dropped;
+    private IOException failure;
+
+    private CheckpointJournal(Path file, FileChannel channel, Map<String, State> recovered, Duration commitInterval) {
+        this.file = file;
+        this.channel = channel;
+        this.recovered = recovered;
+        this.commitIntervalMillis = commitInterval.toMillis();
+        this.writer = new Thread(this::writeLoop, "checkpoint-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens a journal with the default commit interval.
+     *
+     * @param file The journal file
+     * @param resume Whether to continue an existing journal; without it, the file must not hold records yet
+     * @return The open journal
+     * @throws IOException If the file cannot be read or written, is not a journal, or already holds records when not resuming
+     */
+    public static CheckpointJournal open(Path file, boolean resume) throws IOException {
+        return open(file, resume, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Opens a journal.
+     *
+     * @param file The journal file
+     * @param resume Whether to continue an existing journal; without it, the file must not hold records yet
+     * @param commitInterval Time the writer gathers records before each fsync
+     * @return The open journal
+     * @throws IOException If the file cannot be read or written, is not a journal, or already holds records when not resuming
+     */
+    public static CheckpointJournal open(Path file, boolean resume, Duration commitInterval) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        if (exists && !resume) {
+            throw new IOException("Journal " + file + " already exists; pass --resume to continue it or remove it");
+        }
+        Map<String, State> recovered = new HashMap<>();
+        long validLength = exists ? replay(file, recovered) : 0;
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            // Drop a partial record from a crash mid-write, so the next record starts on its own line
+            channel.truncate(validLength);
+            channel.position(validLength);
+            if (validLength == 0) {
+                write(channel, HEADER + "\n");
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        CheckpointJournal journal = new CheckpointJournal(file, channel, recovered, commitInterval);
+        if (exists) {
+            LOG.info("Resuming from journal {}: {} operations completed, {} in flight, {} failed", file,
+                    journal.countRecovered(State.COMPLETED), journal.countRecovered(State.IN_FLIGHT),
+                    journal.countRecovered(State.FAILED));
+        }
+        return journal;
+    }
+
+    /**
+     * Returns what the previous runs recorded about an operation.
+     *
+     * @param operation The operation
+     * @return The recovered state, or {@link State#NEW} if the operation was not recorded
+     */
+    public State getRecoveredState(TagOperation operation) {
+        return recovered.getOrDefault(keyOf(operation), State.NEW);
+    }
+
+    /**
+     * Returns how many operations of the previous runs ended in a state.
+     *
+     * @param state The state to count
+     * @return The number of operations
+     */
+    public long countRecovered(State state) {
+        return recovered.values().stream().filter(state::equals).count();
+    }
+
+    /**
+     * Records that an operation is about to be sent.
+     *
+     * @param operation The operation
+     * @throws UncheckedIOException If an earlier write to the journal failed, so the operation should not be sent
+     */
+    public void recordIntent(TagOperation operation) {
+        append(INTENT + "\t" + keyOf(operation) + "\n", true);
+    }
+
+    /**
+     * Records that an operation succeeded. Never throws; a failed journal is reported by
+     * {@link #recordIntent} and {@link #close()}, and an outcome that arrives after close is dropped.
+     *
+     * @param operation The operation
+     */
+    public void recordSuccess(TagOperation operation) {
+        append(SUCCESS + "\t" + keyOf(operation) + "\n", false);
+    }
+
+    /**
+     * Records that an operation failed. Never throws; a failed journal is reported by
+     * {@link #recordIntent} and {@link #close()}, and an outcome that arrives after close is dropped.
+     *
+     * @param operation The operation
+     * @param error The cause of the failure
+     */
+    public void recordFailure(TagOperation operation, Throwable error) {
+        String message = String.valueOf(error.getMessage()).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        append(FAILURE + "\t" + keyOf(operation) + "\t" + message + "\n", false);
+    }
+
+    /**
+     * Returns the number of outcomes that arrived after the journal was closed and were not recorded.
+     *
+     * @return The number of dropped outcomes
+     */
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is on disk.
+     *
+     * @throws IOException If the journal could not be written
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void sync() throws IOException, InterruptedException {
+        synchronized (lock) {
+            long target = appended;
+            while (durable < target && failure == null) {
+                lock.wait();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Writes the remaining records, forces them to disk and closes the file.
+     *
+     * @throws IOException If the journal could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                // Finish closing so the last records are not lost, and keep the interrupt for the caller
+                interrupted = true;
+            }
+        }
+        channel.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void append(String record, boolean failFast) {
+        synchronized (lock) {
+            if (failure != null) {
+                if (failFast) {
+                    throw new UncheckedIOException("Journal " + file + " cannot be written", failure);
+                }
+                return;
+            }
+            if (closed) {
+                if (failFast) {
+                    throw new IllegalStateException("Journal " + file + " is closed");
+                }
+                // An outcome that arrives after close is left as in flight, which a resumed run checks
+                if (dropped++ == 0) {
+                    LOG.warn("Journal {} is closed; outcomes of operations still running are not recorded", file);
+                }
+                return;
+            }
+            boolean wasEmpty = pending.length() == 0;
+            pending.append(record);
+            appended++;
+            if (wasEmpty) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            synchronized (lock) {
+                while (pending.length() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        // Only close() stops the writer
+                    }
+                }
+                if (pending.length() == 0) {
+                    return;
+                }
+            }
+
+            // Let more records join this batch, unless the journal is closing
+            if (!isClosed() && commitIntervalMillis > 0) {
+                try {
+                    Thread.sleep(commitIntervalMillis);
+                } catch (InterruptedException e) {
+                    // Commit what has arrived so far
+                }
+            }
+
+            long target;
+            synchronized (lock) {
+                StringBuilder swap = pending;
+                pending = batch;
+                batch = swap;
+                target = appended;
+            }
+            try {
+                write(channel, batch.toString());
+                channel.force(false);
+            } catch (IOException e) {
+                LOG.warn("Failed to write checkpoint journal {}: {}", file, e.getMessage());
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            batch.setLength(0);
+            synchronized (lock) {
+                durable = target;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    private static void write(FileChannel channel, String text) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads the records of a journal into the recovered states.
+     *
+     * @return The length of the file up to the end of its last complete line
+     */
+    private static long replay(Path file, Map<String, State> recovered) throws IOException {
+        long validLength = 0;
+        long position = 0;
+        boolean first = true;
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String record = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                line.reset();
+                if (first) {
+                    if (!record.equals(HEADER)) {
+                        throw new IOException(file + " is not a checkpoint journal");
+                    }
+                    first = false;
+                } else {
+                    apply(record, recovered);
+                }
+                validLength = position;
+            }
+        }
+        if (first && !HEADER.startsWith(new String(line.toByteArray(), StandardCharsets.UTF_8))) {
+            throw new IOException(file + " is not a checkpoint journal");
+        }
+        // A journal whose header was torn starts again from an empty file
+        return validLength;
+    }
+
+    private static void apply(String record, Map<String, State> recovered) {
+        String[] fields = record.split("\t", 4);
+        if (fields.length < 3) {
+            return;
+        }
+        String key = fields[1] + "\t" + fields[2];
+        State current = recovered.get(key);
+        switch (fields[0]) {
+            case INTENT:
+                if (current != State.COMPLETED) {
+                    recovered.put(key, State.IN_FLIGHT);
+                }
+                break;
+            case SUCCESS:
+                recovered.put(key, State.COMPLETED);
+                break;
+            case FAILURE:
+                if (current != State.COMPLETED) {
+                    recovered.put(key, State.FAILED);
+                }
+                break;
+            default:
+                // Records from a newer version are ignored
+                break;
+        }
+    }
+
+    /**
+     * Identifies an operation by its action and the tag binding it targets.
+     */
+    private static String keyOf(TagOperation operation) {
+        return operation.getAction().name().toLowerCase(Locale.ROOT) + "\t" + operation.getTagBindingName();
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.gcptagging;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Transport, timeout and quota settings shared by all Resource Manager clients.
+ * Values come from an optional Java properties file; anything not set keeps its default.
+ *
+ * <pre>
+ * endpoint=cloudresourcemanager.googleapis.com:443
+ * channel.poolSize=2
+ * channel.keepAliveSeconds=60
+ * channel.keepAliveTimeoutSeconds=20
+ * channel.maxInboundMessageBytes=16777216
+ * channel.plaintext=false
+ * executor.threads=8
+ * timeout.create.seconds=60
+ * timeout.delete.seconds=60
+ * timeout.list.seconds=30
+ * timeout.total.seconds=300
+ * retry.maxAttempts=5
+ * quota.writeRequestsPerMinute=600
+ * quota.readRequestsPerMinute=1200
+ * quota.maxConcurrency=256
+ * auth.tokenUri=https://oauth2.googleapis.com/token
+ * auth.refreshMarginSeconds=600
+ * auth.tokenCache=false
+ * </pre>
+ */
+public class ClientConfig {
+
+    private final Properties properties;
+
+    private ClientConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns a configuration with every setting at its default.
+     *
+     * @return The default configuration
+     */
+    public static ClientConfig defaults() {
+        return new ClientConfig(new Properties());
+    }
+
+    /**
+     * Loads a configuration from a properties file.
+     *
+     * @param path Path to the properties file, or null for the defaults
+     * @return The loaded configuration
+     * @throws IOException If the file cannot be read
+     */
+    public static ClientConfig load(String path) throws IOException {
+        Properties properties = new Properties();
+        if (path != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(path))) {
+                properties.load(in);
+            }
+        }
+        return new ClientConfig(properties);
+    }
+
+    public String getEndpoint() {
+        return properties.getProperty("endpoint", "cloudresourcemanager.googleapis.com:443");
+    }
+
+    public int getChannelPoolSize() {
+        return getInt("channel.poolSize", 2);
+    }
+
+    public Duration getKeepAliveTime() {
+        return Duration.ofSeconds(getInt("channel.keepAliveSeconds", 60));
+    }
+
+    public Duration getKeepAliveTimeout() {
+        return Duration.ofSeconds(getInt("channel.keepAliveTimeoutSeconds", 20));
+    }
+
+    public int getMaxInboundMessageBytes() {
+        return getInt("channel.maxInboundMessageBytes", 16 * 1024 * 1024);
+    }
+
+    /**
+     * Whether to connect without TLS and without credentials, which is only meant for local
+     * endpoints such as the simulated backend of the loadtest and fake-backend commands.
+     *
+     * @return true for a plaintext channel
+     */
+    public boolean isPlaintext() {
+        return Boolean.parseBoolean(properties.getProperty("channel.plaintext", "false").trim());
+    }
+
+    public int getExecutorThreads() {
+        return getInt("executor.threads", Math.max(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    public Duration getCreateTimeout() {
+        return Duration.ofSeconds(getInt("timeout.create.seconds", 60));
+    }
+
+    public Duration getDeleteTimeout() {
+        return Duration.ofSeconds(getInt("timeout.delete.seconds", 60));
+    }
+
+    public Duration getListTimeout() {
+        return Duration.ofSeconds(getInt("timeout.list.seconds", 30));
+    }
+
+    public Duration getTotalTimeout() {
+        return Duration.ofSeconds(getInt("timeout.total.seconds", 300));
+    }
+
+    public int getMaxAttempts() {
+        return getInt("retry.maxAttempts", 5);
+    }
+
+    public int getWriteRequestsPerMinute() {
+        return getInt("quota.writeRequestsPerMinute", QuotaThrottle.DEFAULT_WRITE_REQUESTS_PER_MINUTE);
+    }
+
+    public int getReadRequestsPerMinute() {
+        return getInt("quota.readRequestsPerMinute", QuotaThrottle.DEFAULT_READ_REQUESTS_PER_MINUTE);
+    }
+
+    public int getMaxConcurrency() {
+        return getInt("quota.maxConcurrency", QuotaThrottle.DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Returns the OAuth token endpoint to use instead of the one named in the key file,
+     * for example a local fake endpoint in tests.
+     *
+     * @return The token endpoint, or null to use the key file's
+     */
+    public URI getTokenServerUri() {
+        String uri = properties.getProperty("auth.tokenUri");
+        return uri == null || uri.trim().isEmpty() ? null : URI.create(uri.trim());
+    }
+
+    public Duration getTokenRefreshMargin() {
+        return Duration.ofSeconds(getInt("auth.refreshMarginSeconds", (int) CredentialManager.DEFAULT_REFRESH_MARGIN.getSeconds()));
+    }
+
+    /**
+     * Whether access tokens are kept on disk so that later processes can reuse them.
+     *
+     * @return true to use the token cache
+     */
+    public boolean isTokenCacheEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("auth.tokenCache", "false").trim());
+    }
+
+    /**
+     * Returns the create retry policy with this configuration's timeouts and attempt limit.
+     *
+     * @return The create retry policy
+     */
+    public RetryPolicy getCreatePolicy() {
+        return withTimeouts(RetryPolicy.CREATE, getCreateTimeout());
+    }
+
+    /**
+     * Returns the delete retry policy with this configuration's timeouts and attempt limit.
+     *
+     * @return The delete retry policy
+     */
+    public RetryPolicy getDeletePolicy() {
+        return withTimeouts(RetryPolicy.DELETE, getDeleteTimeout());
+    }
+
+    /**
+     * Returns the list retry policy with this configuration's timeouts and attempt limit.
+     *
+     * @return The list retry policy
+     */
+    public RetryPolicy getListPolicy() {
+        return withTimeouts(RetryPolicy.LIST, getListTimeout());
+    }
+
+    private RetryPolicy withTimeouts(RetryPolicy policy, Duration attemptTimeout) {
+        return policy.toBuilder()
+                .setAttemptTimeout(attemptTimeout)
+                .setTotalTimeout(getTotalTimeout())
+                .setMaxAttempts(getMaxAttempts())
+                .build();
+    }
+
+    /**
+     * Returns a copy of this configuration with one setting replaced.
+     *
+     * @param key The property key
+     * @param value The new value
+     * @return The new configuration
+     */
+    public ClientConfig with(String key, String value) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        copy.setProperty(key, value);
+        return new ClientConfig(copy);
+    }
+
+    /**
+     * Returns a raw setting, for options owned by other components.
+     *
+     * @param key The property key
+     * @param defaultValue The value to return when the key is absent
+     * @return The property value or the default
+     */
+    public String get(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Config key " + key + " expects an integer but got: " + value);
+        }
+    }
+}
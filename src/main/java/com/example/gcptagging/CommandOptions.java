@@ -0,0 +1,145 @@
+package com.example.gcptagging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal command line option parser.
+ * Separates positional arguments from {@code --name value} and {@code --flag} options,
+ * which may appear anywhere after the command.
+ */
+public class CommandOptions {
+
+    /**
+     * Options that are always boolean flags, so that a positional argument after them is never taken as their value.
+     */
+    static final Set<String> FLAGS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "dry-run", "fire-and-track", "jmx", "offline", "quiet", "resume", "stdin", "verbose")));
+
+    private final String[] positional;
+    private final Map<String, String> options;
+
+    private CommandOptions(String[] positional, Map<String, String> options) {
+        this.positional = positional;
+        this.options = options;
+    }
+
+    /**
+     * Parses command line arguments. An option written as {@code --name=value} or
+     * {@code --name value} takes a value; an option followed by another option or by
+     * nothing is treated as a boolean flag. The {@link #FLAGS} never take a value unless
+     * written as {@code --name=value}.
+     *
+     * @param args The raw command line arguments
+     * @return The parsed options
+     */
+    public static CommandOptions parse(String[] args) {
+        List<String> positional = new ArrayList<>();
+        Map<String, String> options = new HashMap<>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--") || arg.length() == 2) {
+                positional.add(arg);
+                continue;
+            }
+            String name = arg.substring(2);
+            int equals = name.indexOf('=');
+            if (equals >= 0) {
+                options.put(name.substring(0, equals), name.substring(equals + 1));
+            } else if (!FLAGS.contains(name) && i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "true");
+            }
+        }
+        return new CommandOptions(positional.toArray(new String[0]), options);
+    }
+
+    /**
+     * Returns the positional arguments with all options removed.
+     *
+     * @return The positional arguments
+     */
+    public String[] getPositionalArgs() {
+        return positional;
+    }
+
+    /**
+     * Checks whether an option was given.
+     *
+     * @param name The option name without the leading dashes
+     * @return true if the option is present
+     */
+    public boolean has(String name) {
+        return options.containsKey(name);
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param name The option name without the leading dashes
+     * @param defaultValue The value to return when the option is absent
+     * @return The option value or the default
+     */
+    public String get(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    /**
+     * Returns the value of an integer option.
+     *
+     * @param name The option name without the leading dashes
+     * @param defaultValue The value to return when the option is absent
+     * @return The option value or the default
+     * @throws IllegalArgumentException If the value is not a valid integer
+     */
+    public int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects an integer but got: " + value);
+        }
+    }
+
+    /**
+     * Returns the value of a decimal option.
+     *
+     * @param name The option name without the leading dashes
+     * @param defaultValue The value to return when the option is absent
+     * @return The option value or the default
+     * @throws IllegalArgumentException If the value is not a valid number
+     */
+    public double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number but got: " + value);
+        }
+    }
+
+    /**
+     * Returns the value of a boolean flag.
+     *
+     * @param name The option name without the leading dashes
+     * @return true if the flag is present and not explicitly set to false
+     */
+    public boolean getFlag(String name) {
+        String value = options.get(name);
+        return value != null && !"false".equalsIgnoreCase(value);
+    }
+}
@@ -1,10 +1,9 @@
 package com.example.gcptagging;
 
 import com.google.auth.oauth2.GoogleCredentials;
-import com.google.cloud.resourcemanager.v3.TagKey;
-import com.google.cloud.resourcemanager.v3.TagValue;
 
 import java.io.FileInputStream;
+import java.util.Arrays;
 
 /**
  * Example program that demonstrates creating tag keys and tag values in GCP.
@@ -33,56 +32,21 @@ public class CreateTagsExample {
             // Create the TagsUtil
             TagsUtil tagsUtil = new TagsUtil(credentials, organizationId);
 
-            // Example: Create an "environment" tag key
-            TagKey environmentTagKey = tagsUtil.createTagKey(
-                    "environment",
-                    "Specifies the environment type for the resource"
-            );
-            System.out.println("Created environment tag key: " + environmentTagKey.getName());
-
-            // Example: Create tag values for the environment tag key
-            TagValue devValue = tagsUtil.createTagValue(
-                    environmentTagKey.getName(),
-                    "development",
-                    "Development environment resources"
-            );
-            System.out.println("Created development tag value: " + devValue.getName());
-
-            TagValue stageValue = tagsUtil.createTagValue(
-                    environmentTagKey.getName(),
-                    "staging",
-                    "Staging environment resources"
-            );
-            System.out.println("Created staging tag value: " + stageValue.getName());
-
-            TagValue prodValue = tagsUtil.createTagValue(
-                    environmentTagKey.getName(),
-                    "production",
-                    "Production environment resources"
-            );
-            System.out.println("Created production tag value: " + prodValue.getName());
-
-            // Example: Create a "department" tag key
-            TagKey departmentTagKey = tagsUtil.createTagKey(
-                    "department",
-                    "Specifies the department that owns the resource"
-            );
-            System.out.println("Created department tag key: " + departmentTagKey.getName());
-
-            // Example: Create tag values for the department tag key
-            TagValue financeValue = tagsUtil.createTagValue(
-                    departmentTagKey.getName(),
-                    "finance",
-                    "Finance department resources"
-            );
-            System.out.println("Created finance tag value: " + financeValue.getName());
-
-            TagValue engineeringValue = tagsUtil.createTagValue(
-                    departmentTagKey.getName(),
-                    "engineering",
-                    "Engineering department resources"
-            );
-            System.out.println("Created engineering tag value: " + engineeringValue.getName());
+            // Describe the tag keys and values to create
+            Taxonomy taxonomy = new Taxonomy("organizations/" + organizationId, Arrays.asList(
+                    new Taxonomy.Key("environment", "Specifies the environment type for the resource", Arrays.asList(
+                            new Taxonomy.Value("development", "Development environment resources"),
+                            new Taxonomy.Value("staging", "Staging environment resources"),
+                            new Taxonomy.Value("production", "Production environment resources"))),
+                    new Taxonomy.Key("department", "Specifies the department that owns the resource", Arrays.asList(
+                            new Taxonomy.Value("finance", "Finance department resources"),
+                            new Taxonomy.Value("engineering", "Engineering department resources")))));
+
+            // Create both keys at once, and each key's values as soon as the key exists;
+            // keys and values that already exist are left as they are
+            TaxonomyProvisioner provisioner = new TaxonomyProvisioner(tagsUtil, QuotaThrottle.withDefaults(),
+                    TaxonomyProvisioner.DEFAULT_MAX_PARALLELISM);
+            provisioner.provision(provisioner.plan(taxonomy)).print(System.out);
 
             // List all tag keys and their values
             System.out.println("\nListing all tag keys and values:");
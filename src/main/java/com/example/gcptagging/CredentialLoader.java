@@ -3,8 +3,12 @@ package com.example.gcptagging;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.net.URI;
 import java.util.Collections;
 import java.util.List;
 
@@ -12,6 +16,8 @@ import java.util.List;
  * Utility for loading service account credentials from a JSON file.
  */
 public class CredentialLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialLoader.class);
     
     /**
      * Default OAuth scopes for Cloud Resource Manager.
@@ -28,6 +34,18 @@ public class CredentialLoader {
      * @throws IOException If the file cannot be read or credentials cannot be created
      */
     public static GoogleCredentials loadCredentials(String jsonKeyFilePath) throws IOException {
+        return loadCredentials(jsonKeyFilePath, null);
+    }
+    
+    /**
+     * Loads GoogleCredentials from a service account JSON file, exchanging tokens at a given endpoint.
+     * 
+     * @param jsonKeyFilePath Path to the service account JSON key file
+     * @param tokenServerUri The OAuth token endpoint, or null for the one named in the key file
+     * @return GoogleCredentials object with cloud platform scope
+     * @throws IOException If the file cannot be read or credentials cannot be created
+     */
+    public static GoogleCredentials loadCredentials(String jsonKeyFilePath, URI tokenServerUri) throws IOException {
         try (FileInputStream keyStream = new FileInputStream(jsonKeyFilePath)) {
             // Load credentials using the default GoogleCredentials approach
             GoogleCredentials credentials = GoogleCredentials.fromStream(keyStream);
@@ -35,10 +53,20 @@ public class CredentialLoader {
             // Apply the necessary scopes
             credentials = credentials.createScoped(DEFAULT_SCOPES);
             
-            System.out.println("Successfully loaded credentials from: " + jsonKeyFilePath);
+            if (tokenServerUri != null) {
+                if (credentials instanceof ServiceAccountCredentials) {
+                    credentials = ((ServiceAccountCredentials) credentials).toBuilder()
+                            .setTokenServerUri(tokenServerUri)
+                            .build();
+                } else {
+                    LOG.warn("Ignoring token endpoint {}: {} does not hold a service account key", tokenServerUri, jsonKeyFilePath);
+                }
+            }
+            
+            LOG.debug("Loaded credentials from {}", jsonKeyFilePath);
             return credentials;
         } catch (IOException e) {
-            System.err.println("Failed to load credentials from file: " + e.getMessage());
+            LOG.error("Failed to load credentials from file: {}", e.getMessage());
             throw e;
         }
     }
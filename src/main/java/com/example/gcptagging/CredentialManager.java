@@ -0,0 +1,281 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.auth.oauth2.OAuth2Credentials;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads service account credentials once per process and keeps their access token fresh.
+ *
+ * The key file is parsed and scoped once, and the same credentials are handed to every client.
+ * The first token is fetched on a background thread as soon as the credentials are loaded, so
+ * the fetch overlaps with opening the channel instead of delaying the first call. Afterwards each
+ * token is replaced a margin before it expires, so calls never wait for a refresh; a failed
+ * refresh is tried again with backoff while the old token is still valid.
+ *
+ * Optionally, tokens are also kept in a file readable only by the owner, so that short runs
+ * started one after another reuse a valid token instead of each fetching their own.
+ */
+public class CredentialManager {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialManager.class);
+
+    /**
+     * Default time before expiry at which a token is replaced.
+     */
+    public static final Duration DEFAULT_REFRESH_MARGIN = Duration.ofMinutes(10);
+
+    // The auth library treats tokens this close to expiry as expired and refreshes them on the calling thread
+    private static final Duration MIN_CACHED_LIFETIME = Duration.ofMinutes(6);
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Map<String, CredentialManager> SHARED = new HashMap<>();
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "credential-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final GoogleCredentials credentials;
+    private final Duration refreshMargin;
+    private final Path tokenCacheFile;
+    private int failedRefreshes;
+    private volatile String tokenSource = "none";
+
+    /**
+     * Constructor for CredentialManager; starts fetching the first token in the background.
+     *
+     * @param credentials The credentials to keep fresh
+     * @param refreshMargin Time before expiry at which a token is replaced
+     * @param tokenCacheFile File to share tokens through with later processes, or null to keep them in memory only
+     */
+    public CredentialManager(GoogleCredentials credentials, Duration refreshMargin, Path tokenCacheFile) {
+        this.refreshMargin = refreshMargin;
+        this.tokenCacheFile = tokenCacheFile;
+
+        AccessToken cached = tokenCacheFile != null ? readCachedToken(tokenCacheFile) : null;
+        if (cached != null) {
+            // The builder keeps the key and token endpoint, and starts from the cached token
+            GoogleCredentials.Builder builder = credentials.toBuilder();
+            builder.setAccessToken(cached);
+            credentials = builder.build();
+            tokenSource = "cache";
+            LOG.debug("Reusing cached access token valid until {}", cached.getExpirationTime());
+        }
+        this.credentials = credentials;
+        this.credentials.addChangeListener(this::onTokenChanged);
+        REFRESHER.execute(cached != null ? this::scheduleNextRefresh : this::refresh);
+    }
+
+    /**
+     * Returns the process-wide manager for a key file, creating it on first use.
+     * Settings come from {@code auth.tokenUri}, {@code auth.refreshMarginSeconds} and {@code auth.tokenCache}.
+     *
+     * @param jsonKeyFilePath Path to the service account JSON key file
+     * @param config The configuration with the token settings
+     * @return The shared manager
+     * @throws IOException If the key file cannot be read
+     */
+    public static CredentialManager shared(String jsonKeyFilePath, ClientConfig config) throws IOException {
+        URI tokenServerUri = config.getTokenServerUri();
+        String key = Paths.get(jsonKeyFilePath).toAbsolutePath().normalize() + "\n" + tokenServerUri;
+        synchronized (SHARED) {
+            CredentialManager manager = SHARED.get(key);
+            if (manager == null) {
+                GoogleCredentials credentials = CredentialLoader.loadCredentials(jsonKeyFilePath, tokenServerUri);
+                manager = new CredentialManager(credentials, config.getTokenRefreshMargin(),
+                        config.isTokenCacheEnabled() ? tokenCacheFile(key) : null);
+                SHARED.put(key, manager);
+            }
+            return manager;
+        }
+    }
+
+    /**
+     * Returns the file holding cached tokens for a key file and token endpoint.
+     *
+     * @param key The absolute key file path and token endpoint
+     * @return The token cache file
+     */
+    static Path tokenCacheFile(String key) {
+        return Paths.get(System.getProperty("user.home"), ".gcptagging", "tokens", sha256Hex(key).substring(0, 32) + ".json");
+    }
+
+    /**
+     * Returns the managed credentials, to be shared by every client.
+     *
+     * @return The credentials
+     */
+    public GoogleCredentials getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * Returns a valid access token, waiting for a fetch only if none is available yet.
+     *
+     * @return The access token
+     * @throws IOException If a token cannot be fetched
+     */
+    public AccessToken getAccessToken() throws IOException {
+        credentials.refreshIfExpired();
+        return credentials.getAccessToken();
+    }
+
+    /**
+     * Returns where the current token came from.
+     *
+     * @return "cache" for a token reused from the token cache, "fetched" for one from the token endpoint, or "none"
+     */
+    public String getTokenSource() {
+        return tokenSource;
+    }
+
+    private void refresh() {
+        try {
+            credentials.refresh();
+            failedRefreshes = 0;
+            AccessToken token = credentials.getAccessToken();
+            LOG.debug("Refreshed access token, valid until {}", token != null ? token.getExpirationTime() : null);
+        } catch (IOException | RuntimeException e) {
+            failedRefreshes++;
+            long delayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, 1000L << Math.min(failedRefreshes - 1, 5));
+            LOG.warn("Failed to refresh access token, trying again in {}ms: {}", delayMillis, e.getMessage());
+            REFRESHER.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        scheduleNextRefresh();
+    }
+
+    private void scheduleNextRefresh() {
+        AccessToken token = credentials.getAccessToken();
+        Date expiration = token != null ? token.getExpirationTime() : null;
+        if (expiration == null) {
+            // Tokens without an expiry never need replacing
+            return;
+        }
+        long delayMillis = Math.max(0, expiration.getTime() - refreshMargin.toMillis() - System.currentTimeMillis());
+        REFRESHER.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static AccessToken readCachedToken(Path file) {
+        String tokenValue = null;
+        long expiresAtMillis = 0;
+        try (JsonParser parser = JSON_FACTORY.createParser(Files.readAllBytes(file))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "access_token":
+                        tokenValue = parser.getValueAsString();
+                        break;
+                    case "expires_at":
+                        expiresAtMillis = parser.getValueAsLong();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable token cache {}: {}", file, e.getMessage());
+            return null;
+        }
+        if (tokenValue == null || expiresAtMillis - System.currentTimeMillis() < MIN_CACHED_LIFETIME.toMillis()) {
+            return null;
+        }
+        return new AccessToken(tokenValue, new Date(expiresAtMillis));
+    }
+
+    /**
+     * Called by the credentials after every token fetch, whether started here or by a call.
+     */
+    private void onTokenChanged(OAuth2Credentials changed) {
+        tokenSource = "fetched";
+        AccessToken token = changed.getAccessToken();
+        if (tokenCacheFile == null || token == null || token.getExpirationTime() == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Path directory = tokenCacheFile.getParent();
+            Files.createDirectories(directory);
+            // A temp file of its own per write, since processes started with the same key share the cache
+            String prefix = tokenCacheFile.getFileName() + ".";
+            try {
+                temp = Files.createTempFile(directory, prefix, ".tmp",
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                // Non-POSIX file systems fall back to the default permissions of the home directory
+                temp = Files.createTempFile(directory, prefix, ".tmp");
+            }
+            try (OutputStream out = Files.newOutputStream(temp);
+                    JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+                json.writeStartObject();
+                json.writeStringField("access_token", token.getTokenValue());
+                json.writeNumberField("expires_at", token.getExpirationTime().getTime());
+                json.writeEndObject();
+            }
+            // Readers in other processes see the old token or the new one, never a partial file
+            try {
+                Files.move(temp, tokenCacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, tokenCacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to update token cache {}: {}", tokenCacheFile, e.getMessage());
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException deleteError) {
+                    LOG.debug("Failed to delete {}: {}", temp, deleteError.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
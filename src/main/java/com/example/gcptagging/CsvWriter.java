@@ -0,0 +1,114 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes tag bindings, keys, values and operations as CSV, one record per line.
+ * Without record types, the first record's kind decides a header row. With record types, the
+ * first column names the kind of each row and no header is written, since the kinds have
+ * different columns. Operations use the {@code resource,tagValue,action,name} layout that
+ * {@link ManifestReader} reads, so a written plan can be applied later; the name is only written
+ * for deletes given by tag binding name alone.
+ * Output is buffered; call {@link #flush()} at natural boundaries such as the end of a page.
+ */
+public class CsvWriter implements ResultWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer writer;
+    private final boolean includeType;
+    private boolean headerWritten;
+
+    /**
+     * Constructor for CsvWriter.
+     *
+     * @param out The stream to write to; it is not closed by {@link #close()}
+     * @param includeType Whether each row starts with a column naming the record kind
+     */
+    public CsvWriter(OutputStream out, boolean includeType) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.includeType = includeType;
+    }
+
+    @Override
+    public void write(TagBinding binding) throws IOException {
+        startRecord("tagBinding", "name,parent,tagValue,tagValueNamespacedName");
+        writeFields(binding.getName(), binding.getParent(), binding.getTagValue(), binding.getTagValueNamespacedName());
+    }
+
+    @Override
+    public void write(TagKey tagKey) throws IOException {
+        startRecord("tagKey", "name,parent,shortName,namespacedName,description");
+        writeFields(tagKey.getName(), tagKey.getParent(), tagKey.getShortName(), tagKey.getNamespacedName(),
+                tagKey.getDescription());
+    }
+
+    @Override
+    public void write(TagValue tagValue) throws IOException {
+        startRecord("tagValue", "name,parent,shortName,namespacedName,description");
+        writeFields(tagValue.getName(), tagValue.getParent(), tagValue.getShortName(), tagValue.getNamespacedName(),
+                tagValue.getDescription());
+    }
+
+    @Override
+    public void write(TagOperation operation) throws IOException {
+        startRecord("operation", "resource,tagValue,action,name");
+        boolean byName = operation.getResourceName() == null || operation.getTagValueName() == null;
+        writeFields(operation.getResourceName(), operation.getTagValueName(),
+                operation.getAction().name().toLowerCase(Locale.ROOT), byName ? operation.getTagBindingName() : null);
+    }
+
+    private void startRecord(String type, String header) throws IOException {
+        if (includeType) {
+            writer.write(type);
+            writer.write(',');
+        } else if (!headerWritten) {
+            headerWritten = true;
+            writer.write(header);
+            writer.write('\n');
+        }
+    }
+
+    private void writeFields(String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writeField(fields[i]);
+        }
+        writer.write('\n');
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+}
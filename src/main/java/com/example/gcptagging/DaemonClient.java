@@ -0,0 +1,91 @@
+package com.example.gcptagging;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Thin client for {@link TaggingDaemon}.
+ * Uses only JDK networking classes so it starts quickly, sends one command and prints the result.
+ * Usage: java ... DaemonClient [--port N] &lt;command&gt; &lt;args...&gt;
+ */
+public class DaemonClient {
+
+    public static void main(String[] args) {
+        int port = TaggingDaemon.DEFAULT_PORT;
+        int first = 0;
+        if (args.length >= 2 && "--port".equals(args[0])) {
+            port = Integer.parseInt(args[1]);
+            first = 2;
+        }
+        if (args.length <= first) {
+            System.out.println("Usage: java ... DaemonClient [--port N] <command> <args...>");
+            System.out.println("Commands: create, delete, list-resource, list-tag, ping, shutdown");
+            System.exit(1);
+        }
+
+        StringBuilder command = new StringBuilder();
+        for (int i = first; i < args.length; i++) {
+            if (command.length() > 0) {
+                command.append(' ');
+            }
+            command.append(args[i]);
+        }
+
+        try {
+            System.exit(send(port, command.toString()) ? 0 : 1);
+        } catch (IOException e) {
+            System.err.println("Error: cannot reach tagging daemon on port " + port + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sends one command to the daemon and prints the data lines of the response.
+     *
+     * @param port The daemon port
+     * @param command The command line to send
+     * @return true if the daemon reported success
+     * @throws IOException If the daemon cannot be reached
+     */
+    static boolean send(int port, String command) throws IOException {
+        String token = new String(Files.readAllBytes(TaggingDaemon.tokenFile(port)), StandardCharsets.UTF_8).trim();
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            writer.println("auth " + token);
+            writer.println(command);
+            writer.flush();
+
+            String authReply = reader.readLine();
+            if (authReply == null || !authReply.startsWith("OK")) {
+                System.err.println("Error: " + authReply);
+                return false;
+            }
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("* ")) {
+                    System.out.println(line.substring(2));
+                } else if (line.startsWith("OK")) {
+                    System.out.println(line.length() > 3 ? line.substring(3) : "");
+                    return true;
+                } else {
+                    System.err.println("Error: " + (line.startsWith("ERR ") ? line.substring(4) : line));
+                    return false;
+                }
+            }
+            System.err.println("Error: daemon closed the connection");
+            return false;
+        }
+    }
+}
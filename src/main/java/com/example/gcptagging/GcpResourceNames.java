@@ -3,9 +3,12 @@ package com.example.gcptagging;
 /**
  * Utility class for handling GCP resource names.
  * Helps format and parse resource names for various GCP resource types.
+ * The typed model behind these helpers is {@link ResourceName}.
  */
 public class GcpResourceNames {
     
+    private static final String TAG_BINDINGS_PREFIX = "tagBindings/";
+    
     /**
      * Main method to allow running the class from the command line.
      * Usage: java ... GcpResourceNames <method> <args...>
@@ -24,6 +27,7 @@ public class GcpResourceNames {
             System.out.println("  formatBigQueryDatasetName <projectId> <datasetId>");
             System.out.println("  formatBigQueryTableName <projectId> <datasetId> <tableId>");
             System.out.println("  formatTagBindingName <resourceName> <tagValueName>");
+            System.out.println("  parse <resourceName>");
             System.exit(1);
         }
 
@@ -86,6 +90,18 @@ public class GcpResourceNames {
                     System.out.println(formatTagBindingName(args[1], args[2]));
                     break;
                     
+                case "parse":
+                    if (args.length < 2) {
+                        System.out.println("Error: parse requires resourceName");
+                        System.exit(1);
+                    }
+                    ResourceName parsed = parseResourceName(args[1]);
+                    System.out.println("type: " + parsed.getType());
+                    for (int i = 0; i < parsed.getType().getIdCount(); i++) {
+                        System.out.println("id[" + i + "]: " + parsed.getId(i));
+                    }
+                    break;
+                    
                 default:
                     System.out.println("Error: Unknown method " + method);
                     System.exit(1);
@@ -106,8 +122,7 @@ public class GcpResourceNames {
      * @return The fully qualified resource name for the VM instance
      */
     public static String formatVmInstanceName(String projectId, String zone, String instanceName) {
-        return String.format("//compute.googleapis.com/projects/%s/zones/%s/instances/%s", 
-                projectId, zone, instanceName);
+        return ResourceName.Type.COMPUTE_INSTANCE.format(projectId, zone, instanceName);
     }
     
     /**
@@ -119,8 +134,7 @@ public class GcpResourceNames {
      * @return The fully qualified resource name for the disk
      */
     public static String formatDiskName(String projectId, String zone, String diskName) {
-        return String.format("//compute.googleapis.com/projects/%s/zones/%s/disks/%s", 
-                projectId, zone, diskName);
+        return ResourceName.Type.COMPUTE_DISK.format(projectId, zone, diskName);
     }
     
     /**
@@ -130,7 +144,7 @@ public class GcpResourceNames {
      * @return The fully qualified resource name for the project
      */
     public static String formatProjectName(String projectId) {
-        return String.format("//cloudresourcemanager.googleapis.com/projects/%s", projectId);
+        return ResourceName.Type.PROJECT.format(projectId);
     }
     
     /**
@@ -140,7 +154,7 @@ public class GcpResourceNames {
      * @return The fully qualified resource name for the bucket
      */
     public static String formatStorageBucketName(String bucketName) {
-        return String.format("//storage.googleapis.com/projects/_/buckets/%s", bucketName);
+        return ResourceName.Type.STORAGE_BUCKET.format(bucketName);
     }
     
     /**
@@ -151,8 +165,7 @@ public class GcpResourceNames {
      * @return The fully qualified resource name for the dataset
      */
     public static String formatBigQueryDatasetName(String projectId, String datasetId) {
-        return String.format("//bigquery.googleapis.com/projects/%s/datasets/%s", 
-                projectId, datasetId);
+        return ResourceName.Type.BIGQUERY_DATASET.format(projectId, datasetId);
     }
     
     /**
@@ -164,8 +177,7 @@ public class GcpResourceNames {
      * @return The fully qualified resource name for the table
      */
     public static String formatBigQueryTableName(String projectId, String datasetId, String tableId) {
-        return String.format("//bigquery.googleapis.com/projects/%s/datasets/%s/tables/%s", 
-                projectId, datasetId, tableId);
+        return ResourceName.Type.BIGQUERY_TABLE.format(projectId, datasetId, tableId);
     }
     
     /**
@@ -177,11 +189,42 @@ public class GcpResourceNames {
      * @return A formatted tag binding name in the form "tagBindings/..."
      */
     public static String formatTagBindingName(String resourceName, String tagValueName) {
-        // Replace forward slashes with @ symbols
-        String resourcePart = resourceName.replace("//", "").replace("/", "@");
-        String tagValuePart = tagValueName.replace("/", "@");
+        int resourceLength = resourceName.length();
+        int tagValueLength = tagValueName.length();
+        char[] chars = new char[TAG_BINDINGS_PREFIX.length() + resourceLength + 1 + tagValueLength];
+        TAG_BINDINGS_PREFIX.getChars(0, TAG_BINDINGS_PREFIX.length(), chars, 0);
+        int length = TAG_BINDINGS_PREFIX.length();
         
-        // Combine to create the tag binding name
-        return String.format("tagBindings/%s@%s", resourcePart, tagValuePart);
+        // Drop "//" pairs and replace the remaining forward slashes with @ symbols, in one pass
+        resourceName.getChars(0, resourceLength, chars, length);
+        int end = length + resourceLength;
+        for (int i = length; i < end; i++) {
+            char c = chars[i];
+            if (c == '/' && i + 1 < end && chars[i + 1] == '/') {
+                i++;
+            } else {
+                chars[length++] = c == '/' ? '@' : c;
+            }
+        }
+        chars[length++] = '@';
+        tagValueName.getChars(0, tagValueLength, chars, length);
+        end = length + tagValueLength;
+        for (int i = length; i < end; i++) {
+            if (chars[i] == '/') {
+                chars[i] = '@';
+            }
+        }
+        return new String(chars, 0, end);
+    }
+    
+    /**
+     * Parses a full resource name into its type and IDs.
+     *
+     * @param resourceName The full resource name
+     * @return The parsed resource name
+     * @throws IllegalArgumentException If the name does not match any known resource type
+     */
+    public static ResourceName parseResourceName(String resourceName) {
+        return ResourceName.parse(resourceName);
     }
 }
\ No newline at end of file
@@ -1,33 +1,161 @@
 package com.example.gcptagging;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
 import com.google.api.gax.rpc.ApiException;
 import com.google.cloud.resourcemanager.v3.TagBinding;
 import com.google.cloud.resourcemanager.v3.TagBindingsClient;
 import com.google.cloud.resourcemanager.v3.CreateTagBindingRequest;
 import com.google.cloud.resourcemanager.v3.DeleteTagBindingRequest;
 import com.google.cloud.resourcemanager.v3.ListTagBindingsRequest;
+import com.google.cloud.resourcemanager.v3.ListTagBindingsResponse;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.longrunning.Operation;
+import com.google.protobuf.Empty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Implementation of GCP resource tagging operations.
+ * Every call passes through a {@link QuotaThrottle} that paces requests to the API quota
+ * and adapts the number of concurrent calls to what the API currently sustains, and
+ * transient failures are retried according to a per-operation {@link RetryPolicy}.
+ *
+ * The {@code *Async} methods never block: quota waits, retries and long-running operations all
+ * continue in the background, so thousands of operations can be in flight on a handful of threads.
+ * Their futures can be composed, cancelled and given a deadline per call. Dependent stages run on
+ * the gRPC or timer thread that completes the future, so blocking work belongs in the
+ * {@code ...Async(fn, executor)} variants of the composition methods. The blocking methods wait on
+ * these futures. The {@code start...} methods go one step further and return as soon as the API has
+ * accepted a request, leaving its long-running operation to one shared {@link OperationTracker}.
  */
 public class GcpResourceTagger implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GcpResourceTagger.class);
     
     private final TagBindingsClient tagBindingsClient;
-    private static final int OPERATION_TIMEOUT_SECONDS = 60;
+    private final QuotaThrottle throttle;
+    private final RetryPolicy createPolicy;
+    private final RetryPolicy deletePolicy;
+    private final RetryPolicy listPolicy;
+    private final RetryingExecutor retryingExecutor;
+    private final TaggingMetrics.MethodMetrics createMetrics;
+    private final TaggingMetrics.MethodMetrics deleteMetrics;
+    private final TaggingMetrics.MethodMetrics listMetrics;
+    private final RetryingExecutor.Admission blockingWrite;
+    private final RetryingExecutor.Admission blockingRead;
+    private final RetryingExecutor.Admission asyncWrite;
+    private final RetryingExecutor.Admission asyncRead;
+    private final List<TagBindingListener> listeners = new CopyOnWriteArrayList<>();
+    // A fixed limit: slots are only ever released with onIgnored, so it neither grows nor shrinks
+    private final AimdConcurrencyLimit pendingOperations =
+            new AimdConcurrencyLimit(MAX_PENDING_OPERATIONS, MAX_PENDING_OPERATIONS);
+    private OperationTracker operationTracker;
+    
+    /**
+     * Extra time allowed beyond a policy's total timeout before a blocking call gives up.
+     */
+    private static final long BLOCKING_GRACE_MILLIS = 5_000;
     
     /**
-     * Constructor initializes the TagBindingsClient.
+     * Most create and delete calls waiting for their long-running operations at once. The quota
+     * throttle only holds a request until the API has accepted it, so this bounds the operations instead.
+     */
+    private static final int MAX_PENDING_OPERATIONS = 1024;
+    
+    /**
+     * Default page size for list calls; the API returns at most 300 bindings per page.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 300;
+    
+    /**
+     * Constructor initializes the TagBindingsClient with the default quota throttle.
      *
      * @param tagBindingsClient Initialized TagBindingsClient
      */
     public GcpResourceTagger(TagBindingsClient tagBindingsClient) {
+        this(tagBindingsClient, QuotaThrottle.withDefaults());
+    }
+    
+    /**
+     * Constructor initializes the TagBindingsClient and quota throttle.
+     *
+     * @param tagBindingsClient Initialized TagBindingsClient
+     * @param throttle The throttle applied to every API call
+     */
+    public GcpResourceTagger(TagBindingsClient tagBindingsClient, QuotaThrottle throttle) {
+        this(tagBindingsClient, throttle, RetryPolicy.CREATE, RetryPolicy.DELETE, RetryPolicy.LIST);
+    }
+    
+    /**
+     * Constructor initializes the TagBindingsClient, quota throttle and retry policies.
+     *
+     * @param tagBindingsClient Initialized TagBindingsClient
+     * @param throttle The throttle applied to every API call
+     * @param createPolicy Retry policy for creating tag bindings
+     * @param deletePolicy Retry policy for deleting tag bindings
+     * @param listPolicy Retry policy for listing tag bindings
+     */
+    public GcpResourceTagger(TagBindingsClient tagBindingsClient, QuotaThrottle throttle,
+            RetryPolicy createPolicy, RetryPolicy deletePolicy, RetryPolicy listPolicy) {
         this.tagBindingsClient = tagBindingsClient;
+        this.throttle = throttle;
+        this.createPolicy = createPolicy;
+        this.deletePolicy = deletePolicy;
+        this.listPolicy = listPolicy;
+        this.retryingExecutor = new RetryingExecutor(RetryBudget.shared());
+        TaggingMetrics metrics = TaggingMetrics.shared();
+        this.createMetrics = metrics.method("CreateTagBinding");
+        this.deleteMetrics = metrics.method("DeleteTagBinding");
+        this.listMetrics = metrics.method("ListTagBindings");
+        ScheduledExecutorService scheduler = retryingExecutor.getScheduler();
+        // Retries are always admitted asynchronously, so that waiting for quota holds no thread
+        this.asyncWrite = RetryingExecutor.Admission.async(() -> throttle.acquireWriteAsync(scheduler));
+        this.asyncRead = RetryingExecutor.Admission.async(() -> throttle.acquireReadAsync(scheduler));
+        this.blockingWrite = RetryingExecutor.Admission.blocking(throttle::acquireWrite,
+                () -> throttle.acquireWriteAsync(scheduler));
+        this.blockingRead = RetryingExecutor.Admission.blocking(throttle::acquireRead,
+                () -> throttle.acquireReadAsync(scheduler));
+    }
+    
+    /**
+     * Returns the quota throttle applied to API calls.
+     *
+     * @return The quota throttle
+     */
+    public QuotaThrottle getThrottle() {
+        return throttle;
+    }
+    
+    /**
+     * Registers a listener that is told about every binding created or deleted through this tagger.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(TagBindingListener listener) {
+        listeners.add(listener);
     }
     
     /**
@@ -39,13 +167,64 @@ public class GcpResourceTagger implements AutoCloseable {
      * @throws ApiException If the API call fails
      * @throws InterruptedException If the operation is interrupted
      * @throws ExecutionException If the operation execution fails
-     * @throws TimeoutException If the operation times out
+     * @throws TimeoutException If the operation does not finish within the retry policy's total timeout
      */
     public TagBinding createTagBinding(String resourceName, String tagValueName) 
             throws ApiException, InterruptedException, ExecutionException, TimeoutException {
         
-        System.out.println("Creating tag binding for resource: " + resourceName + " with tag value: " + tagValueName);
-        
+        LOG.debug("Creating tag binding for resource {} with tag value {}", resourceName, tagValueName);
+        return await(createTagBindingAsync(resourceName, tagValueName), createPolicy);
+    }
+    
+    /**
+     * Creates a tag binding without blocking, within the create policy's total timeout.
+     * Transient failures are retried, and ALREADY_EXISTS is treated as success.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The full tag value name
+     * @return A future that completes with the created TagBinding
+     */
+    public CompletableFuture<TagBinding> createTagBindingAsync(String resourceName, String tagValueName) {
+        return createTagBindingAsync(resourceName, tagValueName, createPolicy.getTotalTimeout());
+    }
+    
+    /**
+     * Creates a tag binding without blocking. Cancelling the future stops waiting for quota,
+     * retries and the long-running operation; a request the API has already accepted may still take effect.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The full tag value name
+     * @param timeout Time allowed for the call, including quota waits and retries
+     * @return A future that completes with the created TagBinding, or fails with DEADLINE_EXCEEDED
+     */
+    public CompletableFuture<TagBinding> createTagBindingAsync(String resourceName, String tagValueName,
+            Duration timeout) {
+        try {
+            return toCompletableFuture(startCreate(resourceName, tagValueName, false, timeout));
+        } catch (InterruptedException e) {
+            // Asynchronous admission never waits
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Submits a tag binding creation without waiting for the long-running operation to finish.
+     * Used by bulk commands that keep many operations in flight. Transient failures are retried,
+     * and ALREADY_EXISTS is treated as success.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The full tag value name
+     * @return A future that completes with the created TagBinding
+     * @throws ApiException If the request cannot be submitted
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    ApiFuture<TagBinding> submitCreateTagBinding(String resourceName, String tagValueName) 
+            throws ApiException, InterruptedException {
+        return startCreate(resourceName, tagValueName, true, createPolicy.getTotalTimeout());
+    }
+    
+    private ApiFuture<TagBinding> startCreate(String resourceName, String tagValueName, boolean blocking,
+            Duration timeout) throws InterruptedException {
         // Build the TagBinding object
         TagBinding tagBinding = TagBinding.newBuilder()
                 .setParent(resourceName)
@@ -57,9 +236,18 @@ public class GcpResourceTagger implements AutoCloseable {
                 .setTagBinding(tagBinding)
                 .build();
         
-        // Submit the request and wait for completion
-        return tagBindingsClient.createTagBindingAsync(request)
-                .get(OPERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ApiFuture<TagBinding> result = startOperation(blocking, timeout, timeoutNanos -> retryingExecutor.execute(
+                createPolicy, createMetrics, blocking ? blockingWrite : asyncWrite,
+                () -> createMetrics.recordOperation(tagBindingsClient.createTagBindingAsync(request)),
+                () -> tagBinding.toBuilder()
+                        .setName(GcpResourceNames.formatTagBindingName(resourceName, tagValueName))
+                        .build(),
+                timeoutNanos));
+        return notifyOnSuccess(result, created -> {
+            for (TagBindingListener listener : listeners) {
+                listener.onCreated(created);
+            }
+        });
     }
     
     /**
@@ -69,43 +257,227 @@ public class GcpResourceTagger implements AutoCloseable {
      * @throws ApiException If the API call fails
      * @throws InterruptedException If the operation is interrupted
      * @throws ExecutionException If the operation execution fails
-     * @throws TimeoutException If the operation times out
+     * @throws TimeoutException If the operation does not finish within the retry policy's total timeout
      */
     public void deleteTagBinding(String tagBindingName) 
             throws ApiException, InterruptedException, ExecutionException, TimeoutException {
         
-        System.out.println("Deleting tag binding: " + tagBindingName);
-        
+        LOG.debug("Deleting tag binding {}", tagBindingName);
+        await(deleteTagBindingAsync(tagBindingName), deletePolicy);
+    }
+    
+    /**
+     * Deletes a tag binding without blocking, within the delete policy's total timeout.
+     * Transient failures are retried, and NOT_FOUND is treated as success.
+     *
+     * @param tagBindingName The full name of the tag binding to delete
+     * @return A future that completes when the binding has been deleted
+     */
+    public CompletableFuture<Void> deleteTagBindingAsync(String tagBindingName) {
+        return deleteTagBindingAsync(tagBindingName, deletePolicy.getTotalTimeout());
+    }
+    
+    /**
+     * Deletes a tag binding without blocking. Cancelling the future stops waiting for quota,
+     * retries and the long-running operation; a request the API has already accepted may still take effect.
+     *
+     * @param tagBindingName The full name of the tag binding to delete
+     * @param timeout Time allowed for the call, including quota waits and retries
+     * @return A future that completes when the binding has been deleted, or fails with DEADLINE_EXCEEDED
+     */
+    public CompletableFuture<Void> deleteTagBindingAsync(String tagBindingName, Duration timeout) {
+        try {
+            // Transform before adapting, so that cancelling the returned future still reaches the call
+            return toCompletableFuture(ApiFutures.transform(startDelete(tagBindingName, false, timeout),
+                    deleted -> (Void) null, MoreExecutors.directExecutor()));
+        } catch (InterruptedException e) {
+            // Asynchronous admission never waits
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Submits a tag binding deletion without waiting for the long-running operation to finish.
+     * Transient failures are retried, and NOT_FOUND is treated as success.
+     *
+     * @param tagBindingName The full name of the tag binding to delete
+     * @return A future that completes when the binding has been deleted
+     * @throws ApiException If the request cannot be submitted
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    ApiFuture<Empty> submitDeleteTagBinding(String tagBindingName) throws ApiException, InterruptedException {
+        return startDelete(tagBindingName, true, deletePolicy.getTotalTimeout());
+    }
+    
+    private ApiFuture<Empty> startDelete(String tagBindingName, boolean blocking, Duration timeout)
+            throws InterruptedException {
         // Create the request
         DeleteTagBindingRequest request = DeleteTagBindingRequest.newBuilder()
                 .setName(tagBindingName)
                 .build();
         
-        // Submit the request and wait for completion
-        tagBindingsClient.deleteTagBindingAsync(request)
-                .get(OPERATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        ApiFuture<Empty> result = startOperation(blocking, timeout, timeoutNanos -> retryingExecutor.execute(
+                deletePolicy, deleteMetrics, blocking ? blockingWrite : asyncWrite,
+                () -> deleteMetrics.recordOperation(tagBindingsClient.deleteTagBindingAsync(request)),
+                Empty::getDefaultInstance, timeoutNanos));
+        return notifyOnSuccess(result, deleted -> {
+            for (TagBindingListener listener : listeners) {
+                listener.onDeleted(tagBindingName);
+            }
+        });
     }
     
     /**
-     * Lists all tag bindings associated with a specific resource.
+     * Submits a tag binding creation and hands its long-running operation to the
+     * {@link #getOperationTracker() operation tracker}, instead of waiting for it. The quota
+     * throttle's concurrency slot is only held until the API has accepted the request.
+     * Transient failures of the request are retried, and ALREADY_EXISTS is treated as success.
      *
      * @param resourceName The full resource name
-     * @return List of TagBinding objects associated with the resource
-     * @throws ApiException If the API call fails
+     * @param tagValueName The full tag value name
+     * @return A future that completes with the tracked operation as soon as the API has accepted the request
      */
-    public List<TagBinding> listTagBindingsForResource(String resourceName) throws ApiException {
-        System.out.println("Listing tag bindings for resource: " + resourceName);
-        
-        // Create the request
-        ListTagBindingsRequest request = ListTagBindingsRequest.newBuilder()
+    public CompletableFuture<OperationTracker.TrackedOperation> startCreateTagBinding(String resourceName,
+            String tagValueName) {
+        try {
+            return toCompletableFuture(startTrackedCreate(resourceName, tagValueName, asyncWrite));
+        } catch (InterruptedException e) {
+            // Asynchronous admission never waits
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Submits a tag binding deletion and hands its long-running operation to the
+     * {@link #getOperationTracker() operation tracker}, instead of waiting for it.
+     * Transient failures of the request are retried, and NOT_FOUND is treated as success.
+     *
+     * @param tagBindingName The full name of the tag binding to delete
+     * @return A future that completes with the tracked operation as soon as the API has accepted the request
+     */
+    public CompletableFuture<OperationTracker.TrackedOperation> startDeleteTagBinding(String tagBindingName) {
+        try {
+            return toCompletableFuture(startTrackedDelete(tagBindingName, asyncWrite));
+        } catch (InterruptedException e) {
+            // Asynchronous admission never waits
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Like {@link #startCreateTagBinding}, but waits for quota on the calling thread, so that
+     * bulk commands feel the quota as backpressure.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The full tag value name
+     * @return A future that completes with the tracked operation as soon as the API has accepted the request
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    ApiFuture<OperationTracker.TrackedOperation> submitTrackedCreateTagBinding(String resourceName, String tagValueName)
+            throws InterruptedException {
+        return startTrackedCreate(resourceName, tagValueName, blockingWrite);
+    }
+    
+    /**
+     * Like {@link #startDeleteTagBinding}, but waits for quota on the calling thread.
+     *
+     * @param tagBindingName The full name of the tag binding to delete
+     * @return A future that completes with the tracked operation as soon as the API has accepted the request
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    ApiFuture<OperationTracker.TrackedOperation> submitTrackedDeleteTagBinding(String tagBindingName)
+            throws InterruptedException {
+        return startTrackedDelete(tagBindingName, blockingWrite);
+    }
+    
+    /**
+     * Returns the tracker that waits for the operations of the {@code start...} methods,
+     * creating it on first use.
+     *
+     * @return The operation tracker
+     */
+    public synchronized OperationTracker getOperationTracker() {
+        if (operationTracker == null) {
+            operationTracker = new OperationTracker(tagBindingsClient.getOperationsClient(), throttle);
+        }
+        return operationTracker;
+    }
+    
+    private ApiFuture<OperationTracker.TrackedOperation> startTrackedCreate(String resourceName, String tagValueName,
+            RetryingExecutor.Admission admission) throws InterruptedException {
+        TagBinding tagBinding = TagBinding.newBuilder()
                 .setParent(resourceName)
+                .setTagValue(tagValueName)
+                .build();
+        CreateTagBindingRequest request = CreateTagBindingRequest.newBuilder()
+                .setTagBinding(tagBinding)
+                .build();
+        TagBinding created = tagBinding.toBuilder()
+                .setName(GcpResourceNames.formatTagBindingName(resourceName, tagValueName))
                 .build();
         
-        // Collect all results
-        List<TagBinding> tagBindings = new ArrayList<>();
-        tagBindingsClient.listTagBindings(request).iterateAll().forEach(tagBindings::add);
+        // Each attempt ends when the request is accepted; an existing binding needs no operation
+        ApiFuture<Operation> accepted = retryingExecutor.execute(createPolicy, createMetrics, admission,
+                () -> createMetrics.recordRpc(tagBindingsClient.createTagBindingCallable().futureCall(request)),
+                () -> Operation.newBuilder().setDone(true).build(),
+                createPolicy.getTotalTimeout().toNanos());
+        return track(accepted, createPolicy, createMetrics, () -> {
+            for (TagBindingListener listener : listeners) {
+                listener.onCreated(created);
+            }
+        });
+    }
+    
+    private ApiFuture<OperationTracker.TrackedOperation> startTrackedDelete(String tagBindingName,
+            RetryingExecutor.Admission admission) throws InterruptedException {
+        DeleteTagBindingRequest request = DeleteTagBindingRequest.newBuilder()
+                .setName(tagBindingName)
+                .build();
         
-        return tagBindings;
+        ApiFuture<Operation> accepted = retryingExecutor.execute(deletePolicy, deleteMetrics, admission,
+                () -> deleteMetrics.recordRpc(tagBindingsClient.deleteTagBindingCallable().futureCall(request)),
+                () -> Operation.newBuilder().setDone(true).build(),
+                deletePolicy.getTotalTimeout().toNanos());
+        return track(accepted, deletePolicy, deleteMetrics, () -> {
+            for (TagBindingListener listener : listeners) {
+                listener.onDeleted(tagBindingName);
+            }
+        });
+    }
+    
+    /**
+     * Hands an accepted operation to the tracker, notifying listeners once it succeeds.
+     */
+    private ApiFuture<OperationTracker.TrackedOperation> track(ApiFuture<Operation> accepted, RetryPolicy policy,
+            TaggingMetrics.MethodMetrics metrics, Runnable notification) {
+        OperationTracker tracker = getOperationTracker();
+        return ApiFutures.transform(accepted, operation -> {
+            OperationTracker.TrackedOperation tracked = tracker.track(operation, policy, metrics, policy.getTotalTimeout());
+            if (!listeners.isEmpty()) {
+                tracked.getCompletion().thenRun(() -> {
+                    try {
+                        notification.run();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Tag binding listener failed: {}", e.getMessage());
+                    }
+                });
+            }
+            return tracked;
+        }, MoreExecutors.directExecutor());
+    }
+    
+    /**
+     * Lists all tag bindings associated with a specific resource.
+     *
+     * @param resourceName The full resource name
+     * @return List of TagBinding objects associated with the resource
+     * @throws ApiException If the API call fails
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    public List<TagBinding> listTagBindingsForResource(String resourceName) 
+            throws ApiException, InterruptedException {
+        LOG.debug("Listing tag bindings for resource {}", resourceName);
+        return getUnwrapped(listTagBindingsForResourceAsync(resourceName));
     }
     
     /**
@@ -114,20 +486,389 @@ public class GcpResourceTagger implements AutoCloseable {
      * @param tagValueName The full tag value name
      * @return List of TagBinding objects associated with the tag value
      * @throws ApiException If the API call fails
+     * @throws InterruptedException If interrupted while waiting for quota
      */
-    public List<TagBinding> listTagBindingsForTagValue(String tagValueName) throws ApiException {
-        System.out.println("Listing tag bindings for tag value: " + tagValueName);
-        
-        // Create the request with tagValue field
+    public List<TagBinding> listTagBindingsForTagValue(String tagValueName) 
+            throws ApiException, InterruptedException {
+        LOG.debug("Listing tag bindings for tag value {}", tagValueName);
+        return getUnwrapped(listTagBindingsForTagValueAsync(tagValueName));
+    }
+    
+    /**
+     * Lists all tag bindings of a resource without blocking. Each page is retried on its own
+     * within the list policy's total timeout, with no limit on the listing as a whole.
+     *
+     * @param resourceName The full resource name
+     * @return A future that completes with every binding of the resource
+     */
+    public CompletableFuture<List<TagBinding>> listTagBindingsForResourceAsync(String resourceName) {
+        return new AsyncListing(resourceName, null).start();
+    }
+    
+    /**
+     * Lists all tag bindings of a resource without blocking.
+     *
+     * @param resourceName The full resource name
+     * @param timeout Time allowed for the whole listing, across all pages
+     * @return A future that completes with every binding of the resource, or fails with DEADLINE_EXCEEDED
+     */
+    public CompletableFuture<List<TagBinding>> listTagBindingsForResourceAsync(String resourceName, Duration timeout) {
+        return new AsyncListing(resourceName, timeout).start();
+    }
+    
+    /**
+     * Lists all tag bindings of a tag value without blocking. Each page is retried on its own
+     * within the list policy's total timeout, with no limit on the listing as a whole.
+     *
+     * @param tagValueName The full tag value name
+     * @return A future that completes with every binding of the tag value
+     */
+    public CompletableFuture<List<TagBinding>> listTagBindingsForTagValueAsync(String tagValueName) {
+        return new AsyncListing(tagValueName, null).start();
+    }
+    
+    /**
+     * Lists all tag bindings of a tag value without blocking.
+     *
+     * @param tagValueName The full tag value name
+     * @param timeout Time allowed for the whole listing, across all pages
+     * @return A future that completes with every binding of the tag value, or fails with DEADLINE_EXCEEDED
+     */
+    public CompletableFuture<List<TagBinding>> listTagBindingsForTagValueAsync(String tagValueName, Duration timeout) {
+        return new AsyncListing(tagValueName, timeout).start();
+    }
+    
+    /**
+     * Streams the tag bindings of a resource, fetching one page at a time as the stream is consumed.
+     *
+     * @param resourceName The full resource name
+     * @param pageSize The number of bindings to request per page
+     * @return A lazy stream of TagBinding objects
+     */
+    public Stream<TagBinding> streamTagBindingsForResource(String resourceName, int pageSize) {
+        return stream(iterateTagBindings(resourceName, pageSize));
+    }
+    
+    /**
+     * Streams the tag bindings of a tag value, fetching one page at a time as the stream is consumed.
+     *
+     * @param tagValueName The full tag value name
+     * @param pageSize The number of bindings to request per page
+     * @return A lazy stream of TagBinding objects
+     */
+    public Stream<TagBinding> streamTagBindingsForTagValue(String tagValueName, int pageSize) {
+        return stream(iterateTagBindings(tagValueName, pageSize));
+    }
+    
+    /**
+     * Lists tag bindings under a parent page by page, handing each page to the callback as soon
+     * as it arrives. Only one page is held in memory at a time.
+     *
+     * @param parent The resource name or tag value name
+     * @param pageSize The number of bindings to request per page
+     * @param pageConsumer Receives each page of bindings
+     * @throws ApiException If the API call fails
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    public void forEachTagBindingPage(String parent, int pageSize, Consumer<List<TagBinding>> pageConsumer) 
+            throws ApiException, InterruptedException {
+        String pageToken = "";
+        do {
+            ListTagBindingsResponse page = fetchPage(parent, pageSize, pageToken);
+            pageConsumer.accept(page.getTagBindingsList());
+            pageToken = page.getNextPageToken();
+        } while (!pageToken.isEmpty());
+    }
+    
+    /**
+     * Returns a lazy iterator over the tag bindings under a parent.
+     *
+     * @param parent The resource name or tag value name
+     * @param pageSize The number of bindings to request per page
+     * @return An iterator that fetches the next page when the current one is exhausted
+     */
+    Iterator<TagBinding> iterateTagBindings(String parent, int pageSize) {
+        return new TagBindingIterator(parent, pageSize);
+    }
+    
+    /**
+     * Lists all tag bindings under a parent, which is either a resource name or a tag value name.
+     *
+     * @param parent The resource name or tag value name
+     * @return List of TagBinding objects under the parent
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    List<TagBinding> listTagBindings(String parent) throws InterruptedException {
+        List<TagBinding> tagBindings = new ArrayList<>();
+        forEachTagBindingPage(parent, DEFAULT_PAGE_SIZE, tagBindings::addAll);
+        return tagBindings;
+    }
+    
+    /**
+     * Fetches one page of tag bindings. A failed page is retried on its own, without
+     * restarting the listing from the first page.
+     */
+    private ListTagBindingsResponse fetchPage(String parent, int pageSize, String pageToken) 
+            throws InterruptedException {
+        return getUnwrapped(fetchPageAsync(parent, pageSize, pageToken));
+    }
+    
+    /**
+     * Starts fetching one page of tag bindings, with retries.
+     */
+    private ApiFuture<ListTagBindingsResponse> fetchPageAsync(String parent, int pageSize, String pageToken) 
+            throws InterruptedException {
+        return fetchPageAsync(parent, pageSize, pageToken, blockingRead, listPolicy.getTotalTimeout());
+    }
+    
+    private ApiFuture<ListTagBindingsResponse> fetchPageAsync(String parent, int pageSize, String pageToken,
+            RetryingExecutor.Admission admission, Duration timeout) throws InterruptedException {
+        // Create the request; the parent is either a resource name or a tag value name
         ListTagBindingsRequest request = ListTagBindingsRequest.newBuilder()
-                .setParent(tagValueName)
+                .setParent(parent)
+                .setPageSize(pageSize)
+                .setPageToken(pageToken)
                 .build();
         
-        // Collect all results
-        List<TagBinding> tagBindings = new ArrayList<>();
-        tagBindingsClient.listTagBindings(request).iterateAll().forEach(tagBindings::add);
+        return retryingExecutor.execute(listPolicy, listMetrics, admission,
+                () -> listMetrics.recordRpc(tagBindingsClient.listTagBindingsCallable().futureCall(request)),
+                ListTagBindingsResponse::getDefaultInstance, timeout.toNanos());
+    }
+    
+    /**
+     * Waits for a future, rethrowing the API exception it failed with.
+     */
+    private static <T> T getUnwrapped(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+    
+    private static Stream<TagBinding> stream(Iterator<TagBinding> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+    
+    private static long blockingTimeoutMillis(RetryPolicy policy) {
+        return policy.getTotalTimeout().toMillis() + BLOCKING_GRACE_MILLIS;
+    }
+    
+    /**
+     * Waits for an asynchronous call within the policy's total timeout plus a grace period,
+     * cancelling it if the wait ends early.
+     */
+    private static <T> T await(CompletableFuture<T> future, RetryPolicy policy)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return future.get(blockingTimeoutMillis(policy), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+    
+    /**
+     * Adapts a future for callers; cancelling the returned future cancels the call.
+     */
+    private static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> future) {
+        CompletableFuture<T> completable = new CompletableFuture<>();
+        ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                completable.complete(result);
+            }
+            
+            @Override
+            public void onFailure(Throwable t) {
+                completable.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        completable.whenComplete((result, error) -> {
+            if (completable.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return completable;
+    }
+    
+    /**
+     * Runs a notification once a future succeeds. Listener failures are reported but never fail the operation.
+     */
+    /**
+     * Starts a call that waits for its long-running operation once fewer than
+     * {@link #MAX_PENDING_OPERATIONS} such calls are pending. A blocking call waits for its turn on
+     * the calling thread; an asynchronous call waits in a queue, and that wait counts against its timeout.
+     */
+    private <T> ApiFuture<T> startOperation(boolean blocking, Duration timeout, OperationCall<T> call)
+            throws InterruptedException {
+        if (blocking) {
+            pendingOperations.acquire();
+            return releaseWhenDone(call, timeout.toNanos());
+        }
+        long deadlineNanos = System.nanoTime() + timeout.toNanos();
+        return ApiFutures.transformAsync(pendingOperations.acquireAsync(),
+                granted -> releaseWhenDone(call, deadlineNanos - System.nanoTime()), MoreExecutors.directExecutor());
+    }
+    
+    private <T> ApiFuture<T> releaseWhenDone(OperationCall<T> call, long timeoutNanos) throws InterruptedException {
+        ApiFuture<T> future;
+        try {
+            future = call.start(timeoutNanos);
+        } catch (RuntimeException | InterruptedException e) {
+            pendingOperations.onIgnored();
+            throw e;
+        }
+        future.addListener(pendingOperations::onIgnored, MoreExecutors.directExecutor());
+        return future;
+    }
+    
+    /**
+     * Starts a call whose long-running operation is waited for, within the given time.
+     */
+    private interface OperationCall<T> {
+        ApiFuture<T> start(long timeoutNanos) throws InterruptedException;
+    }
+    
+    private <T> ApiFuture<T> notifyOnSuccess(ApiFuture<T> future, Consumer<T> notification) {
+        if (listeners.isEmpty()) {
+            return future;
+        }
+        ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    notification.accept(result);
+                } catch (RuntimeException e) {
+                    LOG.warn("Tag binding listener failed: {}", e.getMessage());
+                }
+            }
+            
+            @Override
+            public void onFailure(Throwable t) {
+                // Nothing changed, so there is nothing to report
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+    
+    /**
+     * Lists every binding under a parent page by page without blocking. Pages are fetched one
+     * after another, each starting when the previous one arrives.
+     */
+    private class AsyncListing {
         
-        return tagBindings;
+        private final String parent;
+        private final Duration timeout;
+        private final long deadlineNanos;
+        private final List<TagBinding> bindings = new ArrayList<>();
+        private final CompletableFuture<List<TagBinding>> result = new CompletableFuture<>();
+        private volatile ApiFuture<ListTagBindingsResponse> page;
+        
+        AsyncListing(String parent, Duration timeout) {
+            this.parent = parent;
+            this.timeout = timeout;
+            this.deadlineNanos = timeout != null ? System.nanoTime() + timeout.toNanos() : 0;
+        }
+        
+        CompletableFuture<List<TagBinding>> start() {
+            result.whenComplete((listed, error) -> {
+                ApiFuture<ListTagBindingsResponse> inProgress = page;
+                if (result.isCancelled() && inProgress != null) {
+                    inProgress.cancel(true);
+                }
+            });
+            fetch("");
+            return result;
+        }
+        
+        private void fetch(String pageToken) {
+            // With an overall timeout, each page gets what is left of it
+            Duration pageTimeout = timeout == null ? listPolicy.getTotalTimeout()
+                    : Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+            ApiFuture<ListTagBindingsResponse> next;
+            try {
+                next = fetchPageAsync(parent, DEFAULT_PAGE_SIZE, pageToken, asyncRead, pageTimeout);
+            } catch (InterruptedException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            page = next;
+            if (result.isDone()) {
+                next.cancel(true);
+                return;
+            }
+            ApiFutures.addCallback(next, new ApiFutureCallback<ListTagBindingsResponse>() {
+                @Override
+                public void onSuccess(ListTagBindingsResponse response) {
+                    bindings.addAll(response.getTagBindingsList());
+                    if (response.getNextPageToken().isEmpty()) {
+                        result.complete(bindings);
+                    } else {
+                        fetch(response.getNextPageToken());
+                    }
+                }
+                
+                @Override
+                public void onFailure(Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+    }
+    
+    /**
+     * Iterates over tag bindings, fetching pages lazily. Once a page arrives, the next one is
+     * requested right away, so the consumer works on one page while the next is in flight.
+     */
+    private class TagBindingIterator implements Iterator<TagBinding> {
+        
+        private final String parent;
+        private final int pageSize;
+        private Iterator<TagBinding> page = Collections.emptyIterator();
+        private ApiFuture<ListTagBindingsResponse> nextPage;
+        private boolean lastPage;
+        
+        TagBindingIterator(String parent, int pageSize) {
+            this.parent = parent;
+            this.pageSize = pageSize;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext()) {
+                if (lastPage) {
+                    return false;
+                }
+                try {
+                    if (nextPage == null) {
+                        nextPage = fetchPageAsync(parent, pageSize, "");
+                    }
+                    ListTagBindingsResponse response = getUnwrapped(nextPage);
+                    page = response.getTagBindingsList().iterator();
+                    lastPage = response.getNextPageToken().isEmpty();
+                    nextPage = lastPage ? null : fetchPageAsync(parent, pageSize, response.getNextPageToken());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while listing tag bindings for " + parent);
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public TagBinding next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
     }
     
     /**
@@ -135,6 +876,12 @@ public class GcpResourceTagger implements AutoCloseable {
      */
     @Override
     public void close() {
+        synchronized (this) {
+            if (operationTracker != null) {
+                operationTracker.close();
+            }
+        }
+        retryingExecutor.close();
         if (tagBindingsClient != null) {
             tagBindingsClient.close();
         }
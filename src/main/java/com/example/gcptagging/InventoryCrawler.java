@@ -0,0 +1,397 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Crawls every tag key, tag value and tag binding under an organization or project.
+ *
+ * Listing fans out over keys and then values as fork/join tasks on a pool of
+ * {@code maxParallelism} worker threads, so idle workers steal pending values from busy keys.
+ * The pool may add threads while tasks wait for their subtasks, so a semaphore, not the pool size,
+ * bounds the list calls in flight to {@code maxParallelism}; the tagger's {@link QuotaThrottle}
+ * additionally paces them to the read quota. All records go to one {@link Sink}, one page at a time.
+ */
+public class InventoryCrawler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InventoryCrawler.class);
+
+    /**
+     * Default number of concurrent list calls.
+     */
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final TagsUtil tagsUtil;
+    private final GcpResourceTagger tagger;
+    private final int maxParallelism;
+    private final int pageSize;
+    private final Semaphore calls;
+
+    /**
+     * Constructor for InventoryCrawler.
+     *
+     * @param tagsUtil The utility used to list tag keys and values
+     * @param tagger The tagger used to list tag bindings; its throttle also paces key and value listing
+     * @param maxParallelism The most list calls to run at once
+     * @param pageSize The number of bindings to request per page
+     */
+    public InventoryCrawler(TagsUtil tagsUtil, GcpResourceTagger tagger, int maxParallelism, int pageSize) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.tagsUtil = tagsUtil;
+        this.tagger = tagger;
+        this.maxParallelism = maxParallelism;
+        this.pageSize = pageSize;
+        this.calls = new Semaphore(maxParallelism);
+    }
+
+    /**
+     * Crawls all keys, values and bindings under a parent and hands them to a sink.
+     * Listing failures of the parent's keys or of single values are counted and reported; the crawl continues.
+     *
+     * @param parent The organization or project, e.g. organizations/123456789012
+     * @param sink The sink receiving every record
+     * @return The crawl report
+     * @throws InterruptedException If interrupted while crawling
+     */
+    public Report crawl(String parent, Sink sink) throws InterruptedException {
+        Report report = new Report();
+        ForkJoinPool pool = new ForkJoinPool(maxParallelism);
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> LOG.info("Inventory progress: {}", report.describe()),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            pool.invoke(new KeysTask(parent, sink, report));
+        } catch (CancellationException e) {
+            throw new InterruptedException("Inventory crawl interrupted");
+        } finally {
+            progress.shutdownNow();
+            pool.shutdownNow();
+            report.finish();
+        }
+        return report;
+    }
+
+    /**
+     * Returns a sink that writes every record to a result writer, one page at a time.
+     *
+     * @param writer The writer receiving every record; it should include record types
+     * @return The sink
+     */
+    public static Sink writerSink(ResultWriter writer) {
+        return new Sink() {
+            @Override
+            public void tagKey(TagKey tagKey) throws IOException {
+                synchronized (writer) {
+                    writer.write(tagKey);
+                }
+            }
+
+            @Override
+            public void tagValues(List<TagValue> tagValues) throws IOException {
+                synchronized (writer) {
+                    for (TagValue tagValue : tagValues) {
+                        writer.write(tagValue);
+                    }
+                }
+            }
+
+            @Override
+            public void tagBindings(List<TagBinding> page) throws IOException {
+                synchronized (writer) {
+                    for (TagBinding binding : page) {
+                        writer.write(binding);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Receives crawled records. Methods are called concurrently from the crawl workers.
+     */
+    public interface Sink {
+
+        void tagKey(TagKey tagKey) throws IOException;
+
+        void tagValues(List<TagValue> tagValues) throws IOException;
+
+        void tagBindings(List<TagBinding> page) throws IOException;
+    }
+
+    private static void deliver(SinkCall call) {
+        try {
+            call.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface SinkCall {
+        void run() throws IOException;
+    }
+
+    /**
+     * Lists the tag keys of the parent and forks one task per key.
+     */
+    private class KeysTask extends RecursiveAction {
+
+        private final String parent;
+        private final Sink sink;
+        private final Report report;
+
+        KeysTask(String parent, Sink sink, Report report) {
+            this.parent = parent;
+            this.sink = sink;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            List<TagKey> tagKeys;
+            try {
+                tagKeys = listThrottled(() -> tagsUtil.listTagKeys(parent), report);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                report.recordFailure(parent, e);
+                return;
+            }
+            List<ValuesTask> tasks = new ArrayList<>(tagKeys.size());
+            for (TagKey tagKey : tagKeys) {
+                deliver(() -> sink.tagKey(tagKey));
+                report.keys.incrementAndGet();
+                tasks.add(new ValuesTask(tagKey.getName(), sink, report));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Lists the tag values of one key and forks one task per value.
+     */
+    private class ValuesTask extends RecursiveAction {
+
+        private final String tagKeyName;
+        private final Sink sink;
+        private final Report report;
+
+        ValuesTask(String tagKeyName, Sink sink, Report report) {
+            this.tagKeyName = tagKeyName;
+            this.sink = sink;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            List<TagValue> tagValues;
+            try {
+                tagValues = listThrottled(() -> tagsUtil.listTagValues(tagKeyName), report);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                report.recordFailure(tagKeyName, e);
+                return;
+            }
+            deliver(() -> sink.tagValues(tagValues));
+            report.values.addAndGet(tagValues.size());
+            List<BindingsTask> tasks = new ArrayList<>(tagValues.size());
+            for (TagValue tagValue : tagValues) {
+                tasks.add(new BindingsTask(tagValue.getName(), sink, report));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Streams the bindings of one tag value, page by page.
+     */
+    private class BindingsTask extends RecursiveAction {
+
+        private final String tagValueName;
+        private final Sink sink;
+        private final Report report;
+
+        BindingsTask(String tagValueName, Sink sink, Report report) {
+            this.tagValueName = tagValueName;
+            this.sink = sink;
+            this.report = report;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                // The pages of one value are fetched one after another, under one call slot
+                calls.acquire();
+                try {
+                    tagger.forEachTagBindingPage(tagValueName, pageSize, page -> {
+                        report.listCalls.incrementAndGet();
+                        deliver(() -> sink.tagBindings(page));
+                        report.bindings.addAndGet(page.size());
+                    });
+                } finally {
+                    calls.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while listing " + tagValueName);
+            } catch (UncheckedIOException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                report.recordFailure(tagValueName, e);
+            }
+        }
+    }
+
+    private <T> List<T> listThrottled(Listing<T> listing, Report report) {
+        QuotaThrottle.Permit permit;
+        try {
+            calls.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a call slot");
+        }
+        try {
+            try {
+                permit = tagger.getThrottle().acquireRead();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for quota");
+            }
+            report.listCalls.incrementAndGet();
+            try {
+                List<T> result = listing.list();
+                permit.release(null);
+                return result;
+            } catch (RuntimeException e) {
+                permit.release(e);
+                throw e;
+            }
+        } finally {
+            calls.release();
+        }
+    }
+
+    private interface Listing<T> {
+        List<T> list();
+    }
+
+    /**
+     * Counters and throughput of one crawl.
+     */
+    public static class Report {
+
+        private static final int MAX_FAILURE_SAMPLES = 20;
+
+        private final AtomicLong keys = new AtomicLong();
+        private final AtomicLong values = new AtomicLong();
+        private final AtomicLong bindings = new AtomicLong();
+        private final AtomicLong listCalls = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<String> failureSamples = new ArrayList<>();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private void recordFailure(String parent, Throwable error) {
+            failed.incrementAndGet();
+            synchronized (failureSamples) {
+                if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                    failureSamples.add(parent + ": " + error.getMessage());
+                }
+            }
+        }
+
+        private void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public long getKeys() {
+            return keys.get();
+        }
+
+        public long getValues() {
+            return values.get();
+        }
+
+        public long getBindings() {
+            return bindings.get();
+        }
+
+        public long getListCalls() {
+            return listCalls.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Returns the elapsed time of the crawl in milliseconds.
+         *
+         * @return The elapsed milliseconds
+         */
+        public long getElapsedMillis() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return (end - startNanos) / 1_000_000;
+        }
+
+        private String describe() {
+            double seconds = Math.max(1, getElapsedMillis()) / 1000.0;
+            return String.format(Locale.ROOT, "%d keys, %d values, %d bindings in %.1fs (%.1f bindings/s, %.1f calls/s)",
+                    getKeys(), getValues(), getBindings(), seconds, getBindings() / seconds, getListCalls() / seconds);
+        }
+
+        /**
+         * Prints the report in a human readable form.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            double seconds = Math.max(1, getElapsedMillis()) / 1000.0;
+            out.println("Inventory summary");
+            out.println("=================");
+            out.println("  Tag keys:     " + getKeys());
+            out.println("  Tag values:   " + getValues());
+            out.println("  Tag bindings: " + getBindings());
+            out.println("  List calls:   " + getListCalls());
+            out.println("  Failed:       " + getFailed());
+            out.println("  Elapsed:      " + String.format(Locale.ROOT, "%.1fs", seconds));
+            out.println("  Throughput:   " + String.format(Locale.ROOT, "%.1f bindings/s, %.1f calls/s",
+                    getBindings() / seconds, getListCalls() / seconds));
+            synchronized (failureSamples) {
+                if (!failureSamples.isEmpty()) {
+                    out.println("  First failures:");
+                    for (String failure : failureSamples) {
+                        out.println("    - " + failure);
+                    }
+                }
+            }
+        }
+    }
+}
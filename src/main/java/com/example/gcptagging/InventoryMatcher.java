@@ -0,0 +1,323 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a resource inventory through a {@link ResourceSelector} and turns every selected
+ * resource into a tag binding operation.
+ *
+ * Each inventory line is a full resource name, a CSV row starting with one, or an NDJSON object
+ * whose {@code resource}, {@code parent} or {@code name} field holds one, so plain name lists,
+ * manifests, the output of the {@code inventory} command and Cloud Asset Inventory exports can all
+ * be read. Lines are read in chunks on the consuming thread and matched on a pool of worker threads,
+ * a bounded window of chunks ahead of the consumer, so memory use does not depend on the size of
+ * the inventory and the operations come out in inventory order.
+ */
+public class InventoryMatcher {
+
+    /**
+     * Default number of inventory lines matched as one unit of work.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ResourceSelector selector;
+    private final int threads;
+    private final int chunkSize;
+
+    /**
+     * Constructor for InventoryMatcher.
+     *
+     * @param selector The compiled selectors
+     * @param threads The number of threads matching lines
+     */
+    public InventoryMatcher(ResourceSelector selector, int threads) {
+        this(selector, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor for InventoryMatcher with a custom chunk size.
+     *
+     * @param selector The compiled selectors
+     * @param threads The number of threads matching lines
+     * @param chunkSize The number of lines matched as one unit of work
+     */
+    public InventoryMatcher(ResourceSelector selector, int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.selector = selector;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Opens an inventory file. The path "-" reads from standard input.
+     *
+     * @param path The inventory path
+     * @return A reader positioned at the first line
+     * @throws IOException If the file cannot be opened
+     */
+    public static BufferedReader open(String path) throws IOException {
+        if ("-".equals(path)) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+        }
+        return Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts matching an inventory. Each selected resource yields one operation binding it to,
+     * or unbinding it from, the tag value.
+     *
+     * @param inventory The inventory lines; closed when the scan is closed
+     * @param source A description of the inventory used in error messages
+     * @param action The action to apply to selected resources
+     * @param tagValue The tag value ID or namespaced name
+     * @return The scan, which must be closed to stop background matching
+     */
+    public Scan scan(BufferedReader inventory, String source, TagOperation.Action action, String tagValue) {
+        return new Scan(inventory, source, action, tagValue);
+    }
+
+    /**
+     * Extracts the full resource name from one inventory line.
+     *
+     * @param line The inventory line
+     * @return The resource name, or null if the line does not carry one
+     * @throws IOException If the line looks like JSON but cannot be parsed
+     */
+    static String resourceNameOf(String line) throws IOException {
+        String trimmed = line.trim();
+        if (trimmed.startsWith("//")) {
+            int comma = trimmed.indexOf(',');
+            return comma < 0 ? trimmed : trimmed.substring(0, comma).trim();
+        }
+        if (trimmed.startsWith("\"//")) {
+            int quote = trimmed.indexOf('"', 1);
+            return quote < 0 ? null : trimmed.substring(1, quote);
+        }
+        if (!trimmed.startsWith("{")) {
+            return null;
+        }
+        String resource = null;
+        String parent = null;
+        String name = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(trimmed)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "resource":
+                        resource = parser.getValueAsString();
+                        break;
+                    case "parent":
+                        parent = parser.getValueAsString();
+                        break;
+                    case "name":
+                        name = parser.getValueAsString();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        for (String candidate : new String[] {resource, parent, name}) {
+            if (candidate != null && candidate.startsWith("//")) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The stream of operations for the selected resources, with counters describing the scan.
+     */
+    public class Scan implements Iterator<TagOperation>, AutoCloseable {
+
+        private final BufferedReader inventory;
+        private final String source;
+        private final TagOperation.Action action;
+        private final String tagValue;
+        private final ExecutorService executor;
+        private final ThreadLocal<ResourceSelector.Matcher> matchers = ThreadLocal.withInitial(selector::matcher);
+        private final ArrayDeque<Future<List<TagOperation>>> window = new ArrayDeque<>();
+        private Iterator<TagOperation> current = Collections.emptyIterator();
+        private boolean exhausted;
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private long lines;
+        private final AtomicLong names = new AtomicLong();
+        private final AtomicLong matched = new AtomicLong();
+
+        private Scan(BufferedReader inventory, String source, TagOperation.Action action, String tagValue) {
+            this.inventory = inventory;
+            this.source = source;
+            this.action = action;
+            this.tagValue = tagValue;
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "inventory-match-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            fillWindow();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                Future<List<TagOperation>> next = window.poll();
+                if (next == null) {
+                    if (endNanos == 0) {
+                        endNanos = System.nanoTime();
+                    }
+                    return false;
+                }
+                fillWindow();
+                try {
+                    current = next.get().iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while matching " + source);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public TagOperation next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        private void fillWindow() {
+            // Keep a few chunks per worker queued so that workers never wait for the reader
+            while (!exhausted && window.size() < threads * 2) {
+                long firstLine = lines + 1;
+                List<String> chunk = readChunk();
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                window.add(executor.submit(() -> matchChunk(chunk, firstLine)));
+            }
+        }
+
+        private List<String> readChunk() {
+            List<String> chunk = new ArrayList<>(chunkSize);
+            try {
+                String line;
+                while (chunk.size() < chunkSize && (line = inventory.readLine()) != null) {
+                    chunk.add(line);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read inventory " + source, e);
+            }
+            lines += chunk.size();
+            exhausted = chunk.size() < chunkSize;
+            return chunk;
+        }
+
+        private List<TagOperation> matchChunk(List<String> chunk, long firstLine) {
+            ResourceSelector.Matcher matcher = matchers.get();
+            List<TagOperation> operations = new ArrayList<>();
+            long found = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                String name;
+                try {
+                    name = resourceNameOf(chunk.get(i));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(
+                            "Invalid inventory line at " + source + ":" + (firstLine + i) + ": " + e.getMessage(), e);
+                }
+                if (name == null) {
+                    continue;
+                }
+                found++;
+                if (matcher.matches(name)) {
+                    operations.add(new TagOperation(action, name, tagValue, null));
+                }
+            }
+            names.addAndGet(found);
+            matched.addAndGet(operations.size());
+            return operations;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getNames() {
+            return names.get();
+        }
+
+        public long getMatched() {
+            return matched.get();
+        }
+
+        /**
+         * Prints the scan counters in a human readable form.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            double seconds = ((endNanos != 0 ? endNanos : System.nanoTime()) - startNanos) / 1e9;
+            out.println("Inventory scan");
+            out.println("==============");
+            out.println("  Selectors:  " + selector.size());
+            out.println("  Lines:      " + getLines());
+            out.println("  Resources:  " + getNames());
+            out.println("  Selected:   " + getMatched());
+            out.println(String.format(Locale.ROOT, "  Elapsed:    %.1fs", seconds));
+            if (seconds > 0) {
+                out.println(String.format(Locale.ROOT, "  Scan rate:  %.0f resources/s", getNames() / seconds));
+            }
+        }
+
+        /**
+         * Stops any background matching that is still running and closes the inventory.
+         *
+         * @throws IOException If the inventory fails to close
+         */
+        @Override
+        public void close() throws IOException {
+            executor.shutdownNow();
+            inventory.close();
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package com.example.gcptagging;
+
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a fixed rate of mixed operations through GcpResourceTagger and TagsUtil and measures
+ * their latency, normally against a {@link SimulatedResourceManager}.
+ *
+ * The load is open-loop: operation i is due at {@code start + i * interval} whether or not earlier
+ * operations have finished, and its latency is measured from that due time. Time spent waiting for
+ * a free slot or for the quota throttle therefore shows up in the histograms, instead of silently
+ * lowering the offered rate the way a closed loop of workers would.
+ */
+public class LoadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTest.class);
+
+    /**
+     * Default operations per minute.
+     */
+    public static final int DEFAULT_RATE_PER_MINUTE = 10_000;
+
+    /**
+     * Default number of distinct resources operations are spread over.
+     */
+    public static final int DEFAULT_RESOURCES = 10_000;
+
+    /**
+     * Default operation mix, as relative weights.
+     */
+    public static final String DEFAULT_MIX = "create=60,delete=25,list-resource=10,list-tag=3,get-value=2";
+
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * The kinds of operation a load test issues.
+     */
+    public enum Operation {
+        CREATE("create"),
+        DELETE("delete"),
+        LIST_RESOURCE("list-resource"),
+        LIST_TAG("list-tag"),
+        GET_VALUE("get-value");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        static Operation parse(String label) {
+            for (Operation operation : values()) {
+                if (operation.label.equals(label)) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown load test operation: " + label);
+        }
+    }
+
+    private final GcpResourceTagger tagger;
+    private final TagsUtil tagsUtil;
+    private final Operation[] weightedOperations;
+    private final int resourceCount;
+    private final int maxInFlight;
+
+    /**
+     * Constructor for LoadTest.
+     *
+     * @param tagger The tagger that creates, deletes and lists bindings
+     * @param tagsUtil The tag utility used to discover and read tag values
+     * @param mix The relative weight of each operation
+     * @param resourceCount The number of distinct resources to spread operations over
+     * @param maxInFlight The maximum number of operations in flight at once
+     */
+    public LoadTest(GcpResourceTagger tagger, TagsUtil tagsUtil, Map<Operation, Integer> mix,
+            int resourceCount, int maxInFlight) {
+        if (resourceCount < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("resourceCount and maxInFlight must be at least 1");
+        }
+        List<Operation> weighted = new ArrayList<>();
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                weighted.add(entry.getKey());
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty");
+        }
+        this.tagger = tagger;
+        this.tagsUtil = tagsUtil;
+        this.weightedOperations = weighted.toArray(new Operation[0]);
+        this.resourceCount = resourceCount;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Parses an operation mix such as {@code create=60,delete=25,list-resource=15}.
+     *
+     * @param spec Comma-separated operation=weight pairs
+     * @return The weight of each operation
+     * @throws IllegalArgumentException If an operation or weight is invalid
+     */
+    public static Map<Operation, Integer> parseMix(String spec) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            int equals = part.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected operation=weight in mix but got: " + part);
+            }
+            int weight;
+            try {
+                weight = Integer.parseInt(part.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in mix: " + part);
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in mix: " + part);
+            }
+            mix.put(Operation.parse(part.substring(0, equals).trim()), weight);
+        }
+        return mix;
+    }
+
+    /**
+     * Runs the load test. The tag values to bind are discovered from the organization of the TagsUtil.
+     *
+     * @param ratePerMinute The number of operations to start per minute
+     * @param warmup How long to run at the full rate before measuring, so that connection setup and
+     *        JIT compilation do not end up in the tail latencies
+     * @param duration How long to keep starting operations after the warmup
+     * @return The report, once every started operation has finished
+     * @throws InterruptedException If interrupted while running
+     * @throws IllegalStateException If the organization has no tag values
+     */
+    public Report run(int ratePerMinute, Duration warmup, Duration duration) throws InterruptedException {
+        List<String> tagValues = new ArrayList<>();
+        for (TagKey key : tagsUtil.listTagKeys()) {
+            for (TagValue value : tagsUtil.listTagValues(key.getName())) {
+                tagValues.add(value.getName());
+            }
+        }
+        if (tagValues.isEmpty()) {
+            throw new IllegalStateException("No tag values to bind; the backend has no tag keys with values");
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore slots = new Semaphore(maxInFlight);
+        Queue<String> created = new ConcurrentLinkedQueue<>();
+        long intervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, ratePerMinute);
+        long startNanos = System.nanoTime();
+        long measureNanos = startNanos + warmup.toNanos();
+        long endNanos = measureNanos + duration.toNanos();
+        long nextProgressNanos = measureNanos + PROGRESS_INTERVAL_NANOS;
+        Report report = new Report(ratePerMinute, measureNanos);
+        try {
+            for (long i = 0; ; i++) {
+                long dueNanos = startNanos + i * intervalNanos;
+                if (dueNanos >= endNanos) {
+                    break;
+                }
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    LockSupport.parkNanos(waitNanos);
+                }
+                if (System.nanoTime() >= nextProgressNanos) {
+                    report.logProgress(maxInFlight - slots.availablePermits());
+                    nextProgressNanos += PROGRESS_INTERVAL_NANOS;
+                }
+
+                // An overloaded client falls behind schedule; stop at the deadline rather than catching up
+                if (!slots.tryAcquire(endNanos - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    report.notStarted.addAndGet((endNanos - dueNanos + intervalNanos - 1) / intervalNanos);
+                    break;
+                }
+                Operation operation = weightedOperations[ThreadLocalRandom.current().nextInt(weightedOperations.length)];
+                boolean measured = dueNanos >= measureNanos;
+                workers.execute(() -> {
+                    try {
+                        execute(operation, tagValues, created);
+                        if (measured) {
+                            report.record(operation, System.nanoTime() - dueNanos, null);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception e) {
+                        if (measured) {
+                            report.record(operation, System.nanoTime() - dueNanos, e);
+                        }
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            // Wait for the operations still in flight
+            slots.acquire(maxInFlight);
+            slots.release(maxInFlight);
+        } finally {
+            workers.shutdownNow();
+        }
+        report.finish();
+        return report;
+    }
+
+    private void execute(Operation operation, List<String> tagValues, Queue<String> created) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String resource = GcpResourceNames.formatVmInstanceName("loadtest", "us-central1-a", "vm-" + random.nextInt(resourceCount));
+        String tagValue = tagValues.get(random.nextInt(tagValues.size()));
+        try {
+            switch (operation) {
+                case CREATE:
+                    created.add(tagger.submitCreateTagBinding(resource, tagValue).get().getName());
+                    break;
+                case DELETE:
+                    // Delete something created earlier when there is one, so that deletes do real work
+                    String name = created.poll();
+                    tagger.submitDeleteTagBinding(name != null ? name : GcpResourceNames.formatTagBindingName(resource, tagValue)).get();
+                    break;
+                case LIST_RESOURCE:
+                    tagger.listTagBindings(resource);
+                    break;
+                case LIST_TAG:
+                    tagger.listTagBindings(tagValue);
+                    break;
+                case GET_VALUE:
+                    tagsUtil.getTagValue(tagValue);
+                    break;
+                default:
+                    throw new IllegalStateException("Unhandled operation: " + operation);
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Latency histograms, failures and throughput of a load test.
+     */
+    public static class Report {
+
+        private final int targetPerMinute;
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, AtomicLong> failures = new EnumMap<>(Operation.class);
+        private final Map<String, AtomicLong> failureCodes = new ConcurrentHashMap<>();
+        private final AtomicLong notStarted = new AtomicLong();
+        private final long startNanos;
+        private volatile long endNanos;
+
+        private Report(int targetPerMinute, long startNanos) {
+            this.targetPerMinute = targetPerMinute;
+            this.startNanos = startNanos;
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                failures.put(operation, new AtomicLong());
+            }
+        }
+
+        private void record(Operation operation, long latencyNanos, Throwable error) {
+            latencies.get(operation).record(latencyNanos);
+            if (error != null) {
+                failures.get(operation).incrementAndGet();
+                StatusCode.Code code = RetryPolicy.statusCodeOf(error);
+                String key = code != null ? code.name() : error.getClass().getSimpleName();
+                failureCodes.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+            }
+        }
+
+        private void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        /**
+         * Returns the latencies of one operation, measured from when it was due to start.
+         *
+         * @param operation The operation
+         * @return The histogram
+         */
+        public LatencyHistogram getLatencies(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        /**
+         * Returns the latencies of all operations together.
+         *
+         * @return A new histogram with every recorded latency
+         */
+        public LatencyHistogram getTotalLatencies() {
+            LatencyHistogram total = new LatencyHistogram();
+            for (LatencyHistogram histogram : latencies.values()) {
+                total.add(histogram);
+            }
+            return total;
+        }
+
+        /**
+         * Returns the number of scheduled operations that never started because every slot was
+         * still busy when the test ended.
+         *
+         * @return The number of operations not started
+         */
+        public long getNotStarted() {
+            return notStarted.get();
+        }
+
+        public long getFailed() {
+            long failed = 0;
+            for (AtomicLong count : failures.values()) {
+                failed += count.get();
+            }
+            return failed;
+        }
+
+        /**
+         * Returns the elapsed time of the test in milliseconds, not counting the warmup.
+         *
+         * @return The elapsed milliseconds
+         */
+        public long getElapsedMillis() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return (end - startNanos) / 1_000_000;
+        }
+
+        /**
+         * Returns the rate at which operations completed.
+         *
+         * @return Completed operations per minute
+         */
+        public double getAchievedPerMinute() {
+            return getTotalLatencies().getCount() * 60_000.0 / Math.max(1, getElapsedMillis());
+        }
+
+        private void logProgress(int inFlight) {
+            LatencyHistogram total = getTotalLatencies();
+            LOG.info(String.format(Locale.ROOT, "Progress: %d operations, %.0f/min, %d in flight, %d failed, p99 %.1fms",
+                    total.getCount(), getAchievedPerMinute(), inFlight, getFailed(), total.getPercentileMicros(99) / 1000.0));
+        }
+
+        /**
+         * Prints the report in a human readable form.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            double seconds = Math.max(1, getElapsedMillis()) / 1000.0;
+            out.println("Load test summary");
+            out.println("=================");
+            out.println("  Target:     " + targetPerMinute + " operations/min");
+            out.println("  Achieved:   " + String.format(Locale.ROOT, "%.0f operations/min over %.1fs",
+                    getAchievedPerMinute(), seconds));
+            if (getNotStarted() > 0) {
+                out.println("  Not started: " + getNotStarted() + " operations, all slots were busy until the end");
+            }
+            out.println("  Latency from scheduled start, in ms:");
+            out.println(String.format(Locale.ROOT, "    %-14s %9s %8s %9s %9s %9s %9s",
+                    "operation", "count", "failed", "p50", "p99", "p99.9", "max"));
+            for (Operation operation : Operation.values()) {
+                if (latencies.get(operation).getCount() > 0) {
+                    printRow(out, operation.getLabel(), latencies.get(operation), failures.get(operation).get());
+                }
+            }
+            printRow(out, "all", getTotalLatencies(), getFailed());
+            if (!failureCodes.isEmpty()) {
+                out.println("  Failures by status:");
+                for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(failureCodes).entrySet()) {
+                    out.println("    " + entry.getKey() + ": " + entry.getValue().get());
+                }
+            }
+        }
+
+        private static void printRow(PrintStream out, String label, LatencyHistogram histogram, long failed) {
+            out.println(String.format(Locale.ROOT, "    %-14s %9d %8d %9.1f %9.1f %9.1f %9.1f",
+                    label, histogram.getCount(), failed,
+                    histogram.getPercentileMicros(50) / 1000.0,
+                    histogram.getPercentileMicros(99) / 1000.0,
+                    histogram.getPercentileMicros(99.9) / 1000.0,
+                    histogram.getMaxMicros() / 1000.0));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.gcptagging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.Configurator;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.ConsoleAppender;
+import ch.qos.logback.core.hook.DefaultShutdownHook;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+/**
+ * Configures Logback in code instead of from an XML file, which saves parsing the file and
+ * loading the XML and Joran machinery on every start of the command line tool.
+ *
+ * Diagnostics go to stderr through an asynchronous appender: worker threads only enqueue events,
+ * and one background thread formats and writes them. Once the queue is 80% full, INFO and DEBUG
+ * events are dropped, and a full queue drops events rather than blocking the caller. The level of
+ * the tool's own loggers comes from the {@code gcptagging.log.level} system property (default INFO).
+ *
+ * Registered through {@code META-INF/services}. When {@code logback.configurationFile} is set,
+ * this configurator steps aside and that file is used instead.
+ */
+public class LoggingConfigurator extends ContextAwareBase implements Configurator {
+
+    /**
+     * System property holding the level of the loggers under {@code com.example.gcptagging}.
+     */
+    public static final String LEVEL_PROPERTY = "gcptagging.log.level";
+
+    private static final String PATTERN = "%d{HH:mm:ss.SSS} %-5level %msg%n";
+    private static final int QUEUE_SIZE = 8192;
+
+    @Override
+    public ExecutionStatus configure(LoggerContext context) {
+        if (System.getProperty("logback.configurationFile") != null) {
+            return ExecutionStatus.INVOKE_NEXT_IF_ANY;
+        }
+
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        ConsoleAppender<ILoggingEvent> console = new ConsoleAppender<>();
+        console.setContext(context);
+        console.setName("STDERR");
+        console.setTarget("System.err");
+        console.setEncoder(encoder);
+        console.start();
+
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(context);
+        async.setName("ASYNC");
+        async.setQueueSize(QUEUE_SIZE);
+        async.setNeverBlock(true);
+        async.addAppender(console);
+        async.start();
+
+        context.getLogger(Main.class.getPackage().getName())
+                .setLevel(Level.toLevel(System.getProperty(LEVEL_PROPERTY), Level.INFO));
+        Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+        root.setLevel(Level.WARN);
+        root.addAppender(async);
+
+        // Drain queued events when the JVM exits, including through System.exit
+        DefaultShutdownHook shutdownHook = new DefaultShutdownHook();
+        shutdownHook.setContext(context);
+        Runtime.getRuntime().addShutdownHook(new Thread(shutdownHook, "logback-shutdown"));
+        return ExecutionStatus.DO_NOT_INVOKE_NEXT_IF_ANY;
+    }
+}
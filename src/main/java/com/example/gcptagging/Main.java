@@ -1,11 +1,28 @@
 package com.example.gcptagging;
 
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.resourcemanager.v3.TagBinding;
-import com.google.cloud.resourcemanager.v3.TagBindingsClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
 
@@ -15,6 +32,30 @@ import java.util.concurrent.TimeoutException;
  */
 public class Main {
     
+    // Not a static field: printing usage and other commands that never log must not start the logging system
+    private static Logger log() {
+        return LoggerFactory.getLogger(Main.class);
+    }
+
+    // Positional arguments each command that calls the API needs, including the command itself
+    private static final Map<String, Integer> REQUIRED_ARGS = Map.ofEntries(
+            Map.entry("create", 4),
+            Map.entry("delete", 3),
+            Map.entry("list-resource", 3),
+            Map.entry("list-tag", 3),
+            Map.entry("apply", 3),
+            Map.entry("purge-tag", 3),
+            Map.entry("purge-resource", 3),
+            Map.entry("reconcile", 3),
+            Map.entry("inventory", 4),
+            Map.entry("index", 3),
+            Map.entry("provision", 3),
+            Map.entry("tag-matching", 4),
+            Map.entry("daemon", 2),
+            Map.entry("coordinate", 3),
+            Map.entry("worker", 2),
+            Map.entry("token-info", 2));
+
     /**
      * Displays usage information for the application.
      */
@@ -25,13 +66,71 @@ public class Main {
         System.out.println("  java -jar gcptagging.jar <command> <args>");
         System.out.println("\nCommands:");
         System.out.println("  create <service-account-file> <resource-name> <tag-value>");
-        System.out.println("    - Creates a tag binding for a resource");
+        System.out.println("    - Creates a tag binding for a resource; the tag value may be an ID or a namespaced name");
         System.out.println("  delete <service-account-file> <tag-binding-name>");
         System.out.println("    - Deletes a tag binding");
-        System.out.println("  list-resource <service-account-file> <resource-name>");
-        System.out.println("    - Lists all tag bindings for a resource");
-        System.out.println("  list-tag <service-account-file> <tag-value>");
-        System.out.println("    - Lists all tag bindings for a tag value");
+        System.out.println("  list-resource <service-account-file> <resource-name> [--page-size N] [--offline | --max-staleness S]");
+        System.out.println("    - Lists all tag bindings for a resource as NDJSON");
+        System.out.println("  list-tag <service-account-file> <tag-value> [--page-size N] [--offline | --max-staleness S]");
+        System.out.println("    - Lists all tag bindings for a tag value as NDJSON");
+        System.out.println("  apply <service-account-file> <manifest-file> [--max-in-flight N] [--format csv|ndjson] [--journal FILE [--resume]]");
+        System.out.println("        [--fire-and-track [--max-tracked N]]");
+        System.out.println("    - Applies a CSV or NDJSON manifest of resource,tagValue,action rows in bulk");
+        System.out.println("      --journal records each operation so that a rerun with --resume skips what already went through");
+        System.out.println("      --fire-and-track frees each slot once a request is accepted and polls the operations in batches");
+        System.out.println("  purge-tag <service-account-file> <tag-value> [--max-in-flight N] [--page-size N]");
+        System.out.println("    - Deletes every tag binding of a tag value");
+        System.out.println("  purge-resource <service-account-file> <resource-name> [--max-in-flight N] [--page-size N]");
+        System.out.println("    - Deletes every tag binding of a resource");
+        System.out.println("  reconcile <service-account-file> <manifest-file> [--dry-run] [--max-parallelism N] [--max-in-flight N] [--fire-and-track]");
+        System.out.println("    - Makes each resource in the manifest carry exactly the listed tag values, changing only the difference");
+        System.out.println("  inventory <service-account-file> <organization-id> <output-file> [--max-parallelism N]");
+        System.out.println("    - Writes every tag key, tag value and tag binding of an organization to an NDJSON file");
+        System.out.println("  index <service-account-file> <organization-id> [--max-parallelism N]");
+        System.out.println("    - Rebuilds the local binding index from a full crawl of an organization");
+        System.out.println("  provision <service-account-file> <taxonomy-file> [--parent organizations/ID] [--dry-run] [--max-parallelism N]");
+        System.out.println("    - Creates the tag keys and values of a YAML or JSON taxonomy that do not exist yet, in parallel");
+        System.out.println("  tag-matching <service-account-file> <inventory-file> <tag-value> --select SELECTORS | --selectors FILE");
+        System.out.println("               [--action create|delete] [--threads N] [--dry-run] [--max-in-flight N] [--fire-and-track]");
+        System.out.println("    - Binds the tag value to every resource in the inventory that a selector such as");
+        System.out.println("      'type=instances,project=prod-*,location=europe-*' matches; separate selectors with ';'");
+        System.out.println("  daemon <service-account-file> [--port N | --stdin] [--write-behind-ms N [--write-behind-concurrency N]]");
+        System.out.println("    - Keeps clients warm and serves create/delete/list-* commands line by line");
+        System.out.println("  coordinate <service-account-file[,file...]> <manifest-file> [--workers N | --attach PORT,...] [--work-dir DIR]");
+        System.out.println("             [--resume] [--failures FILE] [--max-in-flight N] [--format csv|ndjson]");
+        System.out.println("    - Shards a manifest by project and applies it with several worker processes, splitting each account's quota");
+        System.out.println("  worker <service-account-file> [--port N | --stdin]");
+        System.out.println("    - Runs shards for a coordinator; --port serves coordinators that attach with --attach");
+        System.out.println("  loadtest [--rate N] [--warmup S] [--duration S] [--mix create=60,delete=25,...] [--resources N] [--max-in-flight N]");
+        System.out.println("           [--endpoint HOST:PORT] [fault options]");
+        System.out.println("    - Runs a mix of operations at N per minute against a simulated backend and reports latency percentiles");
+        System.out.println("  token-info <service-account-file>");
+        System.out.println("    - Fetches an access token, or reuses one from the token cache, and prints when it expires");
+        System.out.println("  fake-backend [--port N] [--tag-values N] [--token-lifetime S] [--token-latency-ms N] [fault options]");
+        System.out.println("    - Serves a simulated Resource Manager on localhost for loadtest --endpoint or channel.plaintext configs,");
+        System.out.println("      and a simulated OAuth token endpoint for auth.tokenUri");
+        System.out.println("\nOptions:");
+        System.out.println("  --config FILE        Properties file with transport, timeout and quota settings");
+        System.out.println("  --index DIR          Local binding index directory (default ~/.gcptagging/index)");
+        System.out.println("  --offline            Answer list commands from the local binding index only");
+        System.out.println("  --max-staleness S    Answer list commands from the index if it was crawled within S seconds");
+        System.out.println("  --tag-cache FILE     Snapshot of resolved tag names (default ~/.gcptagging/tag-names.snapshot, 'none' to disable)");
+        System.out.println("  --tag-cache-ttl S    Seconds before cached tag names are reloaded (default 3600)");
+        System.out.println("  --write-qpm N        Write requests per minute allowed (default " + QuotaThrottle.DEFAULT_WRITE_REQUESTS_PER_MINUTE + ", 0 = unlimited)");
+        System.out.println("  --read-qpm N         Read requests per minute allowed (default " + QuotaThrottle.DEFAULT_READ_REQUESTS_PER_MINUTE + ", 0 = unlimited)");
+        System.out.println("  --max-concurrency N  Upper bound for the adaptive concurrency limit (default " + QuotaThrottle.DEFAULT_MAX_CONCURRENCY + ")");
+        System.out.println("  --metrics-port N     Serve call metrics in Prometheus text format at http://127.0.0.1:N/metrics");
+        System.out.println("  --jmx                Register call metrics as MXBeans under com.example.gcptagging:type=TaggingMetrics");
+        System.out.println("  --output-format F    Format of listed records: ndjson (default) or csv");
+        System.out.println("  --quiet              Only log warnings and errors on stderr");
+        System.out.println("  --verbose            Also log every API call on stderr");
+        System.out.println("\nFault options (simulated backend):");
+        System.out.println("  --latency-ms N            Fixed latency added to every call");
+        System.out.println("  --latency-jitter-ms N     Mean of an exponentially distributed extra latency");
+        System.out.println("  --error-rate P            Fraction of calls failed with UNAVAILABLE, e.g. 0.01");
+        System.out.println("  --server-write-qpm N      Writes per minute before RESOURCE_EXHAUSTED (default unlimited)");
+        System.out.println("  --server-read-qpm N       Reads per minute before RESOURCE_EXHAUSTED (default unlimited)");
+        System.out.println("  --operation-delay-ms N    Time before a create or delete operation reports done");
         System.out.println("\nExamples:");
         System.out.println("  Create a tag binding:");
         System.out.println("    java -jar gcptagging.jar create service-account.json //compute.googleapis.com/projects/my-project/zones/us-central1-a/instances/my-vm tagValues/123456789");
@@ -41,6 +140,23 @@ public class Main {
         System.out.println("    java -jar gcptagging.jar list-resource service-account.json //compute.googleapis.com/projects/my-project/zones/us-central1-a/instances/my-vm");
         System.out.println("  List tag bindings for a tag value:");
         System.out.println("    java -jar gcptagging.jar list-tag service-account.json tagValues/123456789");
+        System.out.println("  Apply a manifest with up to 128 operations in flight:");
+        System.out.println("    java -jar gcptagging.jar apply service-account.json bindings.csv --max-in-flight 128");
+        System.out.println("  Resume an apply that was interrupted, from its journal:");
+        System.out.println("    java -jar gcptagging.jar apply service-account.json bindings.csv --journal bindings.journal --resume");
+        System.out.println("  Delete every binding of a retired tag value, 128 deletes at a time:");
+        System.out.println("    java -jar gcptagging.jar purge-tag service-account.json tagValues/123456789 --max-in-flight 128");
+        System.out.println("  Show what reconciling a desired-state manifest would change, without changing it:");
+        System.out.println("    java -jar gcptagging.jar reconcile service-account.json desired.csv --dry-run > plan.ndjson");
+        System.out.println("  Crawl the tag inventory of an organization with 32 parallel list calls:");
+        System.out.println("    java -jar gcptagging.jar inventory service-account.json 123456789012 inventory.ndjson --max-parallelism 32");
+        System.out.println("  Show which keys and values of a taxonomy are missing, then create them:");
+        System.out.println("    java -jar gcptagging.jar provision service-account.json taxonomy.yaml --dry-run");
+        System.out.println("    java -jar gcptagging.jar provision service-account.json taxonomy.yaml --max-parallelism 32");
+        System.out.println("  Apply a manifest with four workers, two per service account, each account limited to 600 writes/min:");
+        System.out.println("    java -jar gcptagging.jar coordinate sa-1.json,sa-2.json bindings.csv --workers 4 --write-qpm 600");
+        System.out.println("  Load test 10k operations/min for 5 minutes against 80ms calls and 2s operations, without client quotas:");
+        System.out.println("    java -jar gcptagging.jar loadtest --duration 300 --latency-ms 60 --latency-jitter-ms 20 --operation-delay-ms 2000 --write-qpm 0 --read-qpm 0");
     }
 
     /**
@@ -48,16 +164,22 @@ public class Main {
      * @param args Command line arguments
      */
     public static void main(String[] args) {
-        if (args.length < 2) {
+        CommandOptions options = CommandOptions.parse(args);
+        configureLogging(options);
+        String[] positional = options.getPositionalArgs();
+        // The simulated backend commands need no service account
+        boolean simulated = positional.length > 0
+                && (positional[0].equals("loadtest") || positional[0].equals("fake-backend"));
+        if (positional.length < 2 && !simulated) {
             printUsage();
             System.exit(1);
         }
 
-        String command = args[0];
-        String serviceAccountFile = args[1];
+        String command = positional[0];
+        String serviceAccountFile = positional.length > 1 ? positional[1] : null;
 
-        try {
-            executeCommand(command, serviceAccountFile, args);
+        try (MetricsServer metricsServer = startMetrics(options)) {
+            executeCommand(command, serviceAccountFile, positional, options);
         } catch (Exception e) {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
@@ -65,82 +187,694 @@ public class Main {
         }
     }
     
+    /**
+     * Applies --quiet and --verbose to the diagnostics logged by this tool. Only sets the level
+     * that {@link LoggingConfigurator} reads, so that logging starts when it is first used.
+     * @param options Parsed command line options
+     */
+    private static void configureLogging(CommandOptions options) {
+        String level = options.getFlag("quiet") ? "WARN" : options.getFlag("verbose") ? "DEBUG" : null;
+        if (level != null) {
+            System.setProperty(LoggingConfigurator.LEVEL_PROPERTY, level);
+        }
+    }
+    
+    /**
+     * Returns the format for listed records: --output-format if given, otherwise CSV for a .csv file and NDJSON for anything else.
+     * @param options Parsed command line options
+     * @param fileName The output file name, or null for stdout
+     * @return The output format
+     */
+    private static ManifestReader.Format outputFormat(CommandOptions options, String fileName) {
+        String format = options.get("output-format", null);
+        if (format != null) {
+            return ManifestReader.Format.parse(format);
+        }
+        return fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(".csv")
+                ? ManifestReader.Format.CSV : ManifestReader.Format.NDJSON;
+    }
+    
+    /**
+     * Exposes the call metrics as requested by --jmx and --metrics-port.
+     * @param options Parsed command line options
+     * @return The metrics server, or null if no port was given
+     * @throws IOException If the metrics port cannot be bound
+     */
+    private static MetricsServer startMetrics(CommandOptions options) throws IOException {
+        if (options.getFlag("jmx")) {
+            TaggingMetrics.shared().registerJmx();
+        }
+        if (!options.has("metrics-port")) {
+            return null;
+        }
+        MetricsServer server = new MetricsServer(TaggingMetrics.shared(), options.getInt("metrics-port", 0));
+        log().info("Serving metrics at http://127.0.0.1:{}/metrics", server.getPort());
+        return server;
+    }
+    
+    /**
+     * Creates a resolver for namespaced tag value names backed by the on-disk snapshot.
+     * @param clients The shared client factory
+     * @param options Parsed command line options
+     * @return The resolver
+     * @throws IOException If the tag clients cannot be created
+     */
+    private static TagValueResolver createResolver(ResourceManagerClients clients, CommandOptions options) 
+            throws IOException {
+        String snapshot = options.get("tag-cache", TagValueResolver.defaultSnapshotFile().toString());
+        return new TagValueResolver(
+                // The resolver always lists by explicit parent, so no default organization is needed
+                new TagsUtil(clients, null),
+                "none".equals(snapshot) ? null : Paths.get(snapshot),
+                Duration.ofSeconds(options.getInt("tag-cache-ttl", (int) TagValueResolver.DEFAULT_TTL.getSeconds())),
+                TagValueResolver.DEFAULT_MAX_ENTRIES);
+    }
+    
+    /**
+     * Writes every tag binding under a parent to stdout as NDJSON or CSV, flushing after each page
+     * so that output starts as soon as the first page arrives.
+     * @param tagger The tagger to list with
+     * @param parent The resource name or tag value name
+     * @param options Parsed command line options
+     * @return The number of bindings written
+     * @throws IOException If writing to stdout fails
+     * @throws InterruptedException If interrupted while waiting for quota
+     */
+    private static long streamTagBindings(GcpResourceTagger tagger, String parent, CommandOptions options) 
+            throws IOException, InterruptedException {
+        long[] count = new long[1];
+        try (ResultWriter writer = ResultWriter.open(System.out, outputFormat(options, null), false)) {
+            tagger.forEachTagBindingPage(parent, options.getInt("page-size", GcpResourceTagger.DEFAULT_PAGE_SIZE), page -> {
+                try {
+                    for (TagBinding binding : page) {
+                        writer.write(binding);
+                    }
+                    writer.flush();
+                    count[0] += page.size();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return count[0];
+    }
+    
+    /**
+     * Answers list-resource and list-tag from the local binding index when the options allow it.
+     * With --offline the index must exist; with --max-staleness it is used only if it is fresh enough.
+     * @param command The command
+     * @param args Positional command line arguments
+     * @param options Parsed command line options
+     * @return true if the command was answered from the index
+     * @throws IOException If the index cannot be read or stdout cannot be written
+     */
+    private static boolean listFromIndex(String command, String[] args, CommandOptions options) throws IOException {
+        boolean offline = options.getFlag("offline");
+        if (!(command.equals("list-resource") || command.equals("list-tag")) || args.length < 3
+                || (!offline && !options.has("max-staleness"))) {
+            return false;
+        }
+        Path directory = Paths.get(options.get("index", BindingIndex.defaultDirectory().toString()));
+        try (BindingIndex index = BindingIndex.open(directory)) {
+            if (!index.isBuilt()) {
+                if (offline) {
+                    throw new IllegalStateException("No binding index in " + directory + "; run the index command first");
+                }
+                return false;
+            }
+            Duration age = index.getAge();
+            if (!offline && age.getSeconds() > options.getInt("max-staleness", 0)) {
+                log().info("Binding index is {}s old; listing from the API", age.getSeconds());
+                return false;
+            }
+            List<TagBinding> bindings = command.equals("list-resource")
+                    ? index.findByResource(args[2]) : index.findByTagValue(args[2]);
+            try (ResultWriter writer = ResultWriter.open(System.out, outputFormat(options, null), false)) {
+                for (TagBinding binding : bindings) {
+                    writer.write(binding);
+                }
+            }
+            log().info("Found {} tag bindings in the local index (crawled {}s ago)", bindings.size(), age.getSeconds());
+            return true;
+        }
+    }
+    
+    /**
+     * Opens the local binding index for updates if it has been built.
+     * @param options Parsed command line options
+     * @return The index, or null if there is none
+     * @throws IOException If the index cannot be read
+     */
+    private static BindingIndex openIndexIfBuilt(CommandOptions options) throws IOException {
+        Path directory = Paths.get(options.get("index", BindingIndex.defaultDirectory().toString()));
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        BindingIndex index = BindingIndex.open(directory);
+        if (!index.isBuilt()) {
+            index.close();
+            return null;
+        }
+        return index;
+    }
+    
+    /**
+     * Returns the bound on tracked operations for bulk commands: 0 unless --fire-and-track is given.
+     * @param options Parsed command line options
+     * @return The maximum number of operations pending with the operation tracker
+     */
+    private static int maxTracked(CommandOptions options) {
+        return options.getFlag("fire-and-track") ? options.getInt("max-tracked", BulkTagger.DEFAULT_MAX_TRACKED) : 0;
+    }
+    
+    /**
+     * Starts matching the inventory of a tag-matching command against its selectors.
+     * @param args Positional command line arguments: command, service account, inventory and tag value
+     * @param options Parsed command line options
+     * @return The scan of the inventory
+     * @throws IOException If the selectors file or the inventory cannot be opened
+     */
+    private static InventoryMatcher.Scan openInventoryScan(String[] args, CommandOptions options) throws IOException {
+        ResourceSelector selector;
+        if (options.has("selectors")) {
+            selector = ResourceSelector.load(Paths.get(options.get("selectors", null)));
+        } else if (options.has("select")) {
+            selector = ResourceSelector.parse(options.get("select", ""));
+        } else {
+            throw new IllegalArgumentException("tag-matching requires --select or --selectors");
+        }
+        TagOperation.Action action = TagOperation.Action.parse(options.get("action", "create"));
+        InventoryMatcher matcher = new InventoryMatcher(selector,
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()));
+        return matcher.scan(InventoryMatcher.open(args[2]), args[2], action, args[3]);
+    }
+    
+    /**
+     * Builds the client throttle from the configured quotas; command line options win over the config file.
+     * @param config The client configuration
+     * @param options Parsed command line options
+     * @return The throttle
+     */
+    private static QuotaThrottle createThrottle(ClientConfig config, CommandOptions options) {
+        return new QuotaThrottle(
+                options.getInt("write-qpm", config.getWriteRequestsPerMinute()),
+                options.getInt("read-qpm", config.getReadRequestsPerMinute()),
+                options.getInt("max-concurrency", config.getMaxConcurrency()));
+    }
+    
+    /**
+     * Reads the faults to inject into the simulated backend.
+     * @param options Parsed command line options
+     * @return The faults
+     */
+    private static SimulatedResourceManager.Faults simulatorFaults(CommandOptions options) {
+        return SimulatedResourceManager.Faults.newBuilder()
+                .setLatency(Duration.ofMillis(options.getInt("latency-ms", 0)))
+                .setLatencyJitter(Duration.ofMillis(options.getInt("latency-jitter-ms", 0)))
+                .setErrorRate(options.getDouble("error-rate", 0))
+                .setWriteRequestsPerMinute(options.getInt("server-write-qpm", 0))
+                .setReadRequestsPerMinute(options.getInt("server-read-qpm", 0))
+                .setOperationDelay(Duration.ofMillis(options.getInt("operation-delay-ms", 0)))
+                .build();
+    }
+    
+    /**
+     * Starts the simulated backend with tag keys whose values operations bind.
+     * @param port The port to listen on, or 0 for any free port
+     * @param options Parsed command line options
+     * @return The running backend
+     * @throws IOException If the server cannot be started
+     */
+    private static SimulatedResourceManager startSimulator(int port, CommandOptions options) throws IOException {
+        SimulatedResourceManager.Faults faults = simulatorFaults(options);
+        SimulatedResourceManager backend = new SimulatedResourceManager(port, faults);
+        // One key per value, since a resource may carry only one value of each key
+        for (int i = 0; i < options.getInt("tag-values", 20); i++) {
+            backend.seedTagKey("loadtest-" + i, Collections.singletonList("value"));
+        }
+        log().info("Simulated Resource Manager listening on {} ({})", backend.getEndpoint(), faults);
+        return backend;
+    }
+    
+    /**
+     * Runs the loadtest and fake-backend commands, which use a simulated backend instead of the API.
+     * @param command The command
+     * @param options Parsed command line options
+     * @return true if the command was a simulated backend command
+     * @throws IOException If the backend or the clients cannot be started
+     * @throws InterruptedException If interrupted while running
+     */
+    private static boolean runSimulated(String command, CommandOptions options) throws IOException, InterruptedException {
+        if (command.equals("fake-backend")) {
+            try (SimulatedResourceManager backend = startSimulator(options.getInt("port", 0), options);
+                 SimulatedTokenServer tokenServer = new SimulatedTokenServer(options.getInt("token-port", 0),
+                         Duration.ofSeconds(options.getInt("token-lifetime", 3600)),
+                         Duration.ofMillis(options.getInt("token-latency-ms", 0)))) {
+                log().info("Connect with endpoint={} and channel.plaintext=true", backend.getEndpoint());
+                log().info("Token endpoint for token-info tests: auth.tokenUri={}", tokenServer.getTokenUri());
+                backend.awaitTermination();
+            }
+            return true;
+        }
+        if (!command.equals("loadtest")) {
+            return false;
+        }
+        String endpoint = options.get("endpoint", null);
+        try (SimulatedResourceManager backend = endpoint == null ? startSimulator(0, options) : null) {
+            ClientConfig config = ClientConfig.load(options.get("config", null))
+                    .with("endpoint", endpoint != null ? endpoint : backend.getEndpoint())
+                    .with("channel.plaintext", "true");
+            try (ResourceManagerClients clients = new ResourceManagerClients(null, config);
+                 GcpResourceTagger tagger = clients.createTagger(createThrottle(config, options))) {
+                LoadTest loadTest = new LoadTest(tagger,
+                        new TagsUtil(clients, SimulatedResourceManager.ORGANIZATION_ID),
+                        LoadTest.parseMix(options.get("mix", LoadTest.DEFAULT_MIX)),
+                        options.getInt("resources", LoadTest.DEFAULT_RESOURCES),
+                        options.getInt("max-in-flight", BulkTagger.DEFAULT_MAX_IN_FLIGHT));
+                LoadTest.Report report = loadTest.run(options.getInt("rate", LoadTest.DEFAULT_RATE_PER_MINUTE),
+                        Duration.ofSeconds(options.getInt("warmup", 10)),
+                        Duration.ofSeconds(options.getInt("duration", 60)));
+                report.print(System.out);
+                System.out.println("  Client:     concurrency limit " + tagger.getThrottle().getConcurrencyLimit() + " at the end");
+                if (backend != null) {
+                    System.out.println("  Backend:    " + backend.getCalls() + " calls, "
+                            + backend.getInjectedErrors() + " injected errors, "
+                            + backend.getQuotaRejections() + " quota rejections, "
+                            + backend.getBindingCount() + " bindings at the end");
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Fetches an access token, or reuses a cached one, and prints when it expires.
+     * The token itself is not printed.
+     * @param serviceAccountFile Path to the service account file
+     * @param config The configuration with the token settings
+     * @throws IOException If the key file cannot be read or no token can be fetched
+     */
+    private static void printTokenInfo(String serviceAccountFile, ClientConfig config) throws IOException {
+        long startNanos = System.nanoTime();
+        CredentialManager manager = CredentialManager.shared(serviceAccountFile, config);
+        AccessToken token = manager.getAccessToken();
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        System.out.println("Access token (" + manager.getTokenSource() + ", " + elapsedMillis + "ms) valid until "
+                + (token.getExpirationTime() != null ? token.getExpirationTime().toInstant() : "no expiry"));
+    }
+    
+    /**
+     * Splits a manifest into shards by project and runs them in worker processes, started here
+     * or attached with --attach, then prints the merged summary.
+     * @param serviceAccountFiles Comma-separated service account files; started workers take turns using them
+     * @param manifestFile Path to the manifest
+     * @param config The configuration with the quotas of each account
+     * @param options Parsed command line options
+     * @throws IOException If the manifest or shards cannot be read or written, or a worker does not start
+     * @throws InterruptedException If interrupted while waiting for the workers
+     */
+    private static void runCoordinator(String serviceAccountFiles, String manifestFile, ClientConfig config,
+            CommandOptions options) throws IOException, InterruptedException {
+        String[] accounts = serviceAccountFiles.split(",");
+        String format = options.get("format", null);
+        String failuresFile = options.get("failures", null);
+        BulkSummary summary;
+        int incomplete;
+        try (OutputStream failuresOut = failuresFile != null
+                    ? new BufferedOutputStream(Files.newOutputStream(Paths.get(failuresFile))) : null;
+                ResultWriter failures = failuresOut != null
+                    ? ResultWriter.open(failuresOut, outputFormat(options, failuresFile), false) : null;
+                ShardCoordinator coordinator = new ShardCoordinator(Paths.get(options.get("work-dir", "gcptagging-shards")),
+                    options.getInt("write-qpm", config.getWriteRequestsPerMinute()),
+                    options.getInt("read-qpm", config.getReadRequestsPerMinute()),
+                    options.getInt("max-in-flight", BulkTagger.DEFAULT_MAX_IN_FLIGHT), failures);
+                ManifestReader manifest = ManifestReader.open(manifestFile,
+                    format != null ? ManifestReader.Format.parse(format) : null)) {
+            if (options.has("attach")) {
+                for (String port : options.get("attach", "").split(",")) {
+                    coordinator.attachWorker(Integer.parseInt(port.trim()));
+                }
+            } else {
+                int workers = options.getInt("workers", accounts.length);
+                for (int i = 0; i < workers; i++) {
+                    coordinator.startWorker(workerCommand(accounts[i % accounts.length], options));
+                }
+            }
+            summary = coordinator.run(manifest, options.getFlag("resume"));
+            summary.print(System.out);
+            coordinator.printShards(System.out);
+            incomplete = coordinator.getIncompleteShards();
+        }
+        if (incomplete > 0) {
+            System.err.println(incomplete + " shards did not finish; run the same command with --resume to continue them");
+        }
+        if (summary.getFailed() > 0 || incomplete > 0) {
+            System.exit(2);
+        }
+    }
+    
+    /**
+     * Builds the command line of a worker process: the same JVM and class path as this process,
+     * with its memory, system property and class data sharing settings, and the client options.
+     * @param serviceAccountFile The service account file of the worker
+     * @param options Parsed command line options
+     * @return The worker command line
+     */
+    private static List<String> workerCommand(String serviceAccountFile, CommandOptions options) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (jvmArg.startsWith("-D") || jvmArg.startsWith("-Xm") || jvmArg.startsWith("-XX:SharedArchiveFile=")) {
+                command.add(jvmArg);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.add("worker");
+        command.add(serviceAccountFile);
+        for (String option : new String[] {"config", "max-concurrency", "tag-cache", "tag-cache-ttl", "index"}) {
+            if (options.has(option)) {
+                command.add("--" + option);
+                command.add(options.get(option, null));
+            }
+        }
+        for (String flag : new String[] {"quiet", "verbose"}) {
+            if (options.getFlag(flag)) {
+                command.add("--" + flag);
+            }
+        }
+        command.add("--stdin");
+        return command;
+    }
+    
     /**
      * Executes commands using the GCP API.
      * @param command The command to execute
      * @param serviceAccountFile Path to the service account file
-     * @param args All command line arguments
+     * @param args Positional command line arguments
+     * @param options Parsed command line options
      * @throws IOException If there is an error loading credentials
      * @throws InterruptedException If an operation is interrupted
      * @throws ExecutionException If an operation execution fails
      * @throws TimeoutException If an operation times out
      */
-    private static void executeCommand(String command, String serviceAccountFile, String[] args) 
+    private static void executeCommand(String command, String serviceAccountFile, String[] args, CommandOptions options) 
             throws IOException, InterruptedException, ExecutionException, TimeoutException {
-        // Load credentials from service account file
-        GoogleCredentials credentials = CredentialLoader.loadCredentials(serviceAccountFile);
+        // Fresh enough list queries are answered locally, without credentials or a channel
+        if (listFromIndex(command, args, options)) {
+            return;
+        }
+        if (runSimulated(command, options)) {
+            return;
+        }
         
-        // Create the TagBindingsClient
+        // Reject unknown commands and missing arguments before any client class is loaded
+        Integer requiredArgs = REQUIRED_ARGS.get(command);
+        if (requiredArgs == null) {
+            System.err.println("Error: Unknown command: " + command);
+            printUsage();
+            System.exit(1);
+        }
+        if (args.length < requiredArgs) {
+            System.err.println("Error: Missing arguments for " + command + " command");
+            printUsage();
+            System.exit(1);
+        }
+        
+        // Load transport and timeout settings
+        ClientConfig config = ClientConfig.load(options.get("config", null));
+        
+        if (command.equals("token-info")) {
+            printTokenInfo(serviceAccountFile, config);
+            return;
+        }
+        
+        // Printing the matches of a dry run needs no credentials or channel
+        if (command.equals("tag-matching") && options.getFlag("dry-run")) {
+            try (InventoryMatcher.Scan scan = openInventoryScan(args, options);
+                    ResultWriter writer = ResultWriter.open(System.out, outputFormat(options, null), false)) {
+                while (scan.hasNext()) {
+                    writer.write(scan.next());
+                }
+                writer.flush();
+                scan.print(System.err);
+            }
+            return;
+        }
+        
+        // The coordinator only splits the manifest; its workers create their own clients
+        if (command.equals("coordinate")) {
+            runCoordinator(serviceAccountFile, args[2], config, options);
+            return;
+        }
+        
+        // Load credentials from service account file, fetching the first token in the background;
+        // plaintext channels to a local backend use none
+        GoogleCredentials credentials = config.isPlaintext() ? null
+                : CredentialManager.shared(serviceAccountFile, config).getCredentials();
+        
+        // Rate limit calls to the configured quotas
+        QuotaThrottle throttle = createThrottle(config, options);
+        
+        // Create the shared clients and the tagger
         try (
-            TagBindingsClient tagBindingsClient = TagBindingsAuthorization.createTagBindingsClient(credentials);
-            GcpResourceTagger tagger = new GcpResourceTagger(tagBindingsClient)
+            ResourceManagerClients clients = new ResourceManagerClients(credentials, config);
+            GcpResourceTagger tagger = clients.createTagger(throttle);
+            BindingIndex index = openIndexIfBuilt(options)
         ) {
+            // Keep the local index current with every change made through the tagger
+            if (index != null) {
+                tagger.addListener(index);
+            }
+            
+
             switch (command) {
                 case "create":
-                    if (args.length < 4) {
-                        System.err.println("Error: Missing arguments for create command");
-                        printUsage();
-                        System.exit(1);
-                    }
                     String resourceName = args[2];
                     String tagValue = args[3];
+                    if (TagValueResolver.isNamespacedName(tagValue)) {
+                        String tagValueId = createResolver(clients, options).resolve(tagValue);
+                        if (tagValueId == null) {
+                            System.err.println("Error: Unknown tag value: " + tagValue);
+                            System.exit(1);
+                        }
+                        tagValue = tagValueId;
+                    }
                     TagBinding binding = tagger.createTagBinding(resourceName, tagValue);
                     System.out.println("Successfully created tag binding: " + binding.getName());
                     break;
                     
                 case "delete":
-                    if (args.length < 3) {
-                        System.err.println("Error: Missing arguments for delete command");
-                        printUsage();
-                        System.exit(1);
-                    }
                     String tagBindingName = args[2];
                     tagger.deleteTagBinding(tagBindingName);
                     System.out.println("Successfully deleted tag binding: " + tagBindingName);
                     break;
                     
                 case "list-resource":
-                    if (args.length < 3) {
-                        System.err.println("Error: Missing arguments for list-resource command");
-                        printUsage();
+                    resourceName = args[2];
+                    long resourceCount = streamTagBindings(tagger, resourceName, options);
+                    log().info("Found {} tag bindings for resource {}", resourceCount, resourceName);
+                    break;
+                    
+                case "list-tag":
+                    tagValue = args[2];
+                    long tagCount = streamTagBindings(tagger, tagValue, options);
+                    log().info("Found {} tag bindings for tag value {}", tagCount, tagValue);
+                    break;
+                    
+                case "apply":
+                    String manifestFile = args[2];
+                    String format = options.get("format", null);
+                    if (options.getFlag("resume") && !options.has("journal")) {
+                        System.err.println("Error: --resume requires --journal");
                         System.exit(1);
                     }
-                    resourceName = args[2];
-                    List<TagBinding> resourceBindings = tagger.listTagBindingsForResource(resourceName);
-                    System.out.println("Found " + resourceBindings.size() + " tag bindings for resource: " + resourceName);
-                    for (TagBinding b : resourceBindings) {
-                        System.out.println("  - " + b.getName() + " (Tag Value: " + b.getTagValue() + ")");
+                    BulkSummary summary;
+                    // The journal is closed, and so forced to disk, before the summary decides the exit status
+                    try (CheckpointJournal journal = options.has("journal")
+                                ? CheckpointJournal.open(Paths.get(options.get("journal", null)), options.getFlag("resume"))
+                                : null;
+                            ManifestReader manifest = ManifestReader.open(manifestFile,
+                                    format != null ? ManifestReader.Format.parse(format) : null)) {
+                        BulkTagger bulkTagger = new BulkTagger(tagger,
+                                options.getInt("max-in-flight", BulkTagger.DEFAULT_MAX_IN_FLIGHT),
+                                createResolver(clients, options), journal, maxTracked(options));
+                        summary = bulkTagger.run(manifest);
+                    }
+                    summary.print(System.out);
+                    if (summary.getFailed() > 0) {
+                        System.exit(2);
                     }
                     break;
                     
-                case "list-tag":
-                    if (args.length < 3) {
-                        System.err.println("Error: Missing arguments for list-tag command");
-                        printUsage();
+                case "purge-tag":
+                case "purge-resource":
+                    String purgeParent = args[2];
+                    if (command.equals("purge-tag") && TagValueResolver.isNamespacedName(purgeParent)) {
+                        String tagValueId = createResolver(clients, options).resolve(purgeParent);
+                        if (tagValueId == null) {
+                            System.err.println("Error: Unknown tag value: " + purgeParent);
+                            System.exit(1);
+                        }
+                        purgeParent = tagValueId;
+                    }
+                    BulkSummary purgeSummary = new TagBindingPurger(tagger,
+                            options.getInt("max-in-flight", BulkTagger.DEFAULT_MAX_IN_FLIGHT),
+                            options.getInt("page-size", GcpResourceTagger.DEFAULT_PAGE_SIZE)).purge(purgeParent);
+                    purgeSummary.print(System.out);
+                    if (purgeSummary.getFailed() > 0) {
+                        System.exit(2);
+                    }
+                    break;
+                    
+                case "reconcile":
+                    String desiredFile = args[2];
+                    String desiredFormat = options.get("format", null);
+                    TreeMap<String, TreeSet<String>> desired;
+                    try (ManifestReader manifest = ManifestReader.open(desiredFile,
+                            desiredFormat != null ? ManifestReader.Format.parse(desiredFormat) : null)) {
+                        desired = Reconciler.loadDesiredState(manifest, createResolver(clients, options));
+                    }
+                    Reconciler reconciler = new Reconciler(tagger,
+                            options.getInt("max-parallelism", Reconciler.DEFAULT_MAX_PARALLELISM));
+                    boolean failed;
+                    try (Reconciler.Plan plan = reconciler.plan(desired)) {
+                        if (options.getFlag("dry-run")) {
+                            // The plan goes to stdout in manifest format, so it can be reviewed and applied later
+                            try (ResultWriter writer = ResultWriter.open(System.out, outputFormat(options, null), false)) {
+                                while (plan.hasNext()) {
+                                    writer.write(plan.next());
+                                }
+                            }
+                            plan.print(System.err);
+                            failed = plan.getFailed() > 0;
+                        } else {
+                            BulkSummary reconcileSummary = Reconciler.apply(plan, new BulkTagger(tagger,
+                                    options.getInt("max-in-flight", BulkTagger.DEFAULT_MAX_IN_FLIGHT), null, null,
+                                    maxTracked(options)));
+                            plan.print(System.out);
+                            reconcileSummary.print(System.out);
+                            failed = plan.getFailed() > 0 || reconcileSummary.getFailed() > 0;
+                        }
+                    }
+                    if (failed) {
+                        System.exit(2);
+                    }
+                    break;
+                    
+                case "inventory":
+                    String organization = args[2];
+                    String organizationId = organization.startsWith("organizations/")
+                            ? organization.substring("organizations/".length()) : organization;
+                    InventoryCrawler crawler = new InventoryCrawler(new TagsUtil(clients, organizationId), tagger,
+                            options.getInt("max-parallelism", InventoryCrawler.DEFAULT_MAX_PARALLELISM),
+                            options.getInt("page-size", GcpResourceTagger.DEFAULT_PAGE_SIZE));
+                    InventoryCrawler.Report report;
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[3])), 1 << 16);
+                         ResultWriter writer = ResultWriter.open(out, outputFormat(options, args[3]), true)) {
+                        report = crawler.crawl("organizations/" + organizationId, InventoryCrawler.writerSink(writer));
+                    }
+                    report.print(System.out);
+                    if (report.getFailed() > 0) {
+                        System.exit(2);
+                    }
+                    break;
+                    
+                case "index":
+                    String indexOrganization = args[2];
+                    String indexOrganizationId = indexOrganization.startsWith("organizations/")
+                            ? indexOrganization.substring("organizations/".length()) : indexOrganization;
+                    Path indexDirectory = Paths.get(options.get("index", BindingIndex.defaultDirectory().toString()));
+                    try (BindingIndex target = index != null ? index : BindingIndex.open(indexDirectory)) {
+                        BindingIndex.Rebuild rebuild = target.rebuild();
+                        InventoryCrawler.Report indexReport = new InventoryCrawler(
+                                new TagsUtil(clients, indexOrganizationId), tagger,
+                                options.getInt("max-parallelism", InventoryCrawler.DEFAULT_MAX_PARALLELISM),
+                                options.getInt("page-size", GcpResourceTagger.DEFAULT_PAGE_SIZE))
+                                .crawl("organizations/" + indexOrganizationId, rebuild);
+                        indexReport.print(System.out);
+                        if (indexReport.getFailed() > 0) {
+                            // A partial crawl would drop bindings from the index, so keep the old one
+                            System.err.println("Error: crawl incomplete; binding index in " + indexDirectory + " left unchanged");
+                            System.exit(2);
+                        }
+                        System.out.println("Indexed " + rebuild.commit() + " tag bindings in " + indexDirectory);
+                    }
+                    break;
+                    
+                case "provision":
+                    Taxonomy taxonomy = Taxonomy.load(Paths.get(args[2]));
+                    String provisionParent = options.get("parent", taxonomy.getParent());
+                    if (provisionParent == null) {
+                        System.err.println("Error: " + args[2] + " has no parent; pass --parent organizations/ID");
                         System.exit(1);
                     }
-                    tagValue = args[2];
-                    List<TagBinding> tagBindings = tagger.listTagBindingsForTagValue(tagValue);
-                    System.out.println("Found " + tagBindings.size() + " tag bindings for tag value: " + tagValue);
-                    for (TagBinding b : tagBindings) {
-                        System.out.println("  - " + b.getName() + " (Resource: " + b.getParent() + ")");
+                    if (!provisionParent.contains("/")) {
+                        provisionParent = "organizations/" + provisionParent;
+                    }
+                    TaxonomyProvisioner provisioner = new TaxonomyProvisioner(new TagsUtil(clients, null), tagger.getThrottle(),
+                            options.getInt("max-parallelism", TaxonomyProvisioner.DEFAULT_MAX_PARALLELISM));
+                    TaxonomyProvisioner.Plan provisionPlan = provisioner.plan(taxonomy.withParent(provisionParent));
+                    if (options.getFlag("dry-run")) {
+                        provisionPlan.print(System.out);
+                        break;
+                    }
+                    TaxonomyProvisioner.Report provisionReport = provisioner.provision(provisionPlan);
+                    provisionReport.print(System.out);
+                    if (provisionReport.getFailed() > 0) {
+                        System.exit(2);
+                    }
+                    break;
+                    
+                case "tag-matching":
+                    BulkSummary matchSummary;
+                    try (InventoryMatcher.Scan scan = openInventoryScan(args, options)) {
+                        matchSummary = new BulkTagger(tagger,
+                                options.getInt("max-in-flight", BulkTagger.DEFAULT_MAX_IN_FLIGHT),
+                                createResolver(clients, options), null, maxTracked(options)).run(scan);
+                        scan.print(System.out);
+                    }
+                    matchSummary.print(System.out);
+                    if (matchSummary.getFailed() > 0) {
+                        System.exit(2);
+                    }
+                    break;
+                    
+                case "daemon":
+                    // Closing the queue sends whatever is still held before the clients are closed
+                    try (WriteBehindQueue writeBehind = options.has("write-behind-ms")
+                            ? new WriteBehindQueue(tagger, Duration.ofMillis(options.getInt("write-behind-ms", 0)),
+                                    options.getInt("write-behind-concurrency", WriteBehindQueue.DEFAULT_MAX_CONCURRENCY))
+                            : null) {
+                        TaggingDaemon daemon = new TaggingDaemon(tagger, writeBehind, createResolver(clients, options));
+                        if (options.getFlag("stdin")) {
+                            // Keep stdout for protocol responses; diagnostics move to stderr
+                            PrintStream protocolOut = System.out;
+                            System.setOut(System.err);
+                            daemon.serve(System.in, protocolOut);
+                        } else {
+                            daemon.serveTcp(options.getInt("port", TaggingDaemon.DEFAULT_PORT));
+                        }
+                    }
+                    break;
+                    
+                case "worker":
+                    ShardWorker worker = new ShardWorker(tagger,
+                            Paths.get(serviceAccountFile).toAbsolutePath().normalize().toString(),
+                            createResolver(clients, options));
+                    if (options.getFlag("stdin")) {
+                        // Keep stdout for the coordinator; diagnostics move to stderr
+                        PrintStream protocolOut = System.out;
+                        System.setOut(System.err);
+                        worker.serve(System.in, protocolOut);
+                    } else {
+                        worker.serveTcp(options.getInt("port", ShardWorker.DEFAULT_PORT));
                     }
                     break;
                     
                 default:
-                    System.err.println("Error: Unknown command: " + command);
-                    printUsage();
-                    System.exit(1);
+                    throw new IllegalStateException("No handler for command " + command);
             }
         }
     }
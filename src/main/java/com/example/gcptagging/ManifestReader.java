@@ -0,0 +1,240 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader for bulk tagging manifests.
+ * Rows are parsed one line at a time, so memory use does not depend on the size of the file.
+ *
+ * Two formats are supported:
+ * <ul>
+ *   <li>CSV: {@code resource,tagValue[,action[,name]]} with an optional header row; {@code name} is
+ *       an explicit tag binding name, so deletes may leave the resource and tag value empty</li>
+ *   <li>NDJSON: one object per line with {@code resource}, {@code tagValue}, {@code action}
+ *       and optionally {@code name} (an explicit tag binding name for deletes)</li>
+ * </ul>
+ * Blank lines and lines starting with '#' are ignored. The action defaults to "create".
+ */
+public class ManifestReader implements Iterator<TagOperation>, AutoCloseable {
+
+    /**
+     * Supported manifest formats.
+     */
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        /**
+         * Parses a format name, ignoring case.
+         *
+         * @param value The format name ("csv", "ndjson" or "jsonl")
+         * @return The matching Format
+         */
+        public static Format parse(String value) {
+            switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "csv":
+                    return CSV;
+                case "ndjson":
+                case "jsonl":
+                case "json":
+                    return NDJSON;
+                default:
+                    throw new IllegalArgumentException("Unknown manifest format: " + value);
+            }
+        }
+
+        /**
+         * Guesses the format from a file name extension, defaulting to CSV.
+         *
+         * @param fileName The manifest file name
+         * @return The guessed Format
+         */
+        public static Format fromFileName(String fileName) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".ndjson") || lower.endsWith(".jsonl") || lower.endsWith(".json")) {
+                return NDJSON;
+            }
+            return CSV;
+        }
+    }
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final String source;
+    private long lineNumber;
+    private TagOperation next;
+    private boolean headerChecked;
+
+    /**
+     * Constructor for ManifestReader.
+     *
+     * @param reader The reader supplying manifest lines
+     * @param format The manifest format
+     * @param source A description of the source used in error messages
+     */
+    public ManifestReader(Reader reader, Format format, String source) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+        this.format = format;
+        this.source = source;
+    }
+
+    /**
+     * Opens a manifest file. The path "-" reads from standard input.
+     *
+     * @param path The manifest path
+     * @param format The manifest format, or null to guess it from the file name
+     * @return A reader positioned at the first row
+     * @throws IOException If the file cannot be opened
+     */
+    public static ManifestReader open(String path, Format format) throws IOException {
+        Format resolved = format != null ? format : Format.fromFileName(path);
+        if ("-".equals(path)) {
+            return new ManifestReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), resolved, "<stdin>");
+        }
+        Path file = Paths.get(path);
+        return new ManifestReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), resolved, path);
+    }
+
+    /**
+     * Returns the number of lines consumed so far.
+     *
+     * @return The current line number
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        try {
+            next = readNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read manifest " + source, e);
+        }
+        return next != null;
+    }
+
+    @Override
+    public TagOperation next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TagOperation operation = next;
+        next = null;
+        return operation;
+    }
+
+    private TagOperation readNext() throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            try {
+                if (format == Format.NDJSON) {
+                    return parseJsonLine(trimmed);
+                }
+                if (!headerChecked) {
+                    headerChecked = true;
+                    if (trimmed.toLowerCase(Locale.ROOT).startsWith("resource")) {
+                        continue;
+                    }
+                }
+                return parseCsvLine(trimmed);
+            } catch (IllegalArgumentException | IOException e) {
+                throw new IllegalArgumentException(
+                        "Invalid manifest row at " + source + ":" + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    private static TagOperation parseCsvLine(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("expected resource,tagValue[,action[,name]]");
+        }
+        String action = fields.length > 2 && !fields[2].trim().isEmpty() ? fields[2] : "create";
+        String name = fields.length > 3 ? unquote(fields[3]) : "";
+        return new TagOperation(TagOperation.Action.parse(action), emptyToNull(unquote(fields[0])),
+                emptyToNull(unquote(fields[1])), emptyToNull(name));
+    }
+
+    private static TagOperation parseJsonLine(String line) throws IOException {
+        String resource = null;
+        String tagValue = null;
+        String action = "create";
+        String name = null;
+
+        try (JsonParser parser = JSON_FACTORY.createParser(line)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "resource":
+                        resource = parser.getValueAsString();
+                        break;
+                    case "tagValue":
+                        tagValue = parser.getValueAsString();
+                        break;
+                    case "action":
+                        action = parser.getValueAsString();
+                        break;
+                    case "name":
+                        name = parser.getValueAsString();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        return new TagOperation(TagOperation.Action.parse(action), resource, tagValue, name);
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String unquote(String field) {
+        String value = field.trim();
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException If the reader fails to close
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Writes tag bindings, keys and values as newline-delimited JSON, one object per line.
+ * Output is buffered; call {@link #flush()} at natural boundaries such as the end of a page.
+ * When records of several kinds share one output, each line carries a "type" field.
+ */
+public class NdjsonWriter implements ResultWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonGenerator generator;
+    private final boolean includeType;
+
+    /**
+     * Constructor for NdjsonWriter.
+     *
+     * @param out The stream to write to; it is not closed by {@link #close()}
+     * @throws IOException If the generator cannot be created
+     */
+    public NdjsonWriter(OutputStream out) throws IOException {
+        this(out, false);
+    }
+
+    /**
+     * Constructor for NdjsonWriter.
+     *
+     * @param out The stream to write to; it is not closed by {@link #close()}
+     * @param includeType Whether each line starts with a "type" field naming the record kind
+     * @throws IOException If the generator cannot be created
+     */
+    public NdjsonWriter(OutputStream out, boolean includeType) throws IOException {
+        this.includeType = includeType;
+        this.generator = JSON_FACTORY.createGenerator(out);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Separate root values by nothing; each object writes its own line terminator
+        this.generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+    }
+
+    /**
+     * Writes one tag binding.
+     *
+     * @param binding The tag binding to write
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void write(TagBinding binding) throws IOException {
+        startRecord("tagBinding");
+        generator.writeStringField("name", binding.getName());
+        generator.writeStringField("parent", binding.getParent());
+        generator.writeStringField("tagValue", binding.getTagValue());
+        if (!binding.getTagValueNamespacedName().isEmpty()) {
+            generator.writeStringField("tagValueNamespacedName", binding.getTagValueNamespacedName());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Writes one tag key.
+     *
+     * @param tagKey The tag key to write
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void write(TagKey tagKey) throws IOException {
+        startRecord("tagKey");
+        generator.writeStringField("name", tagKey.getName());
+        generator.writeStringField("parent", tagKey.getParent());
+        generator.writeStringField("shortName", tagKey.getShortName());
+        generator.writeStringField("namespacedName", tagKey.getNamespacedName());
+        generator.writeStringField("description", tagKey.getDescription());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Writes one tag value.
+     *
+     * @param tagValue The tag value to write
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void write(TagValue tagValue) throws IOException {
+        startRecord("tagValue");
+        generator.writeStringField("name", tagValue.getName());
+        generator.writeStringField("parent", tagValue.getParent());
+        generator.writeStringField("shortName", tagValue.getShortName());
+        generator.writeStringField("namespacedName", tagValue.getNamespacedName());
+        generator.writeStringField("description", tagValue.getDescription());
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Writes one tag binding operation in the NDJSON manifest format read by {@link ManifestReader},
+     * so that a written plan can be applied later.
+     *
+     * @param operation The operation to write
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void write(TagOperation operation) throws IOException {
+        startRecord("operation");
+        generator.writeStringField("action", operation.getAction().name().toLowerCase(Locale.ROOT));
+        if (operation.getResourceName() != null) {
+            generator.writeStringField("resource", operation.getResourceName());
+        }
+        if (operation.getTagValueName() != null) {
+            generator.writeStringField("tagValue", operation.getTagValueName());
+        }
+        if (operation.getAction() == TagOperation.Action.DELETE) {
+            generator.writeStringField("name", operation.getTagBindingName());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private void startRecord(String type) throws IOException {
+        generator.writeStartObject();
+        if (includeType) {
+            generator.writeStringField("type", type);
+        }
+    }
+
+    /**
+     * Flushes buffered lines to the underlying stream.
+     *
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        generator.flush();
+    }
+
+    /**
+     * Flushes and releases the generator.
+     *
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,481 @@
+package com.example.gcptagging;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.longrunning.GetOperationRequest;
+import com.google.longrunning.Operation;
+import com.google.longrunning.OperationsClient;
+import io.grpc.Status;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Waits for long-running operations on one background thread, however many are pending.
+ *
+ * An operation is first polled once it has been running for as long as operations have recently
+ * taken to finish, then again after the minimum interval, and then at intervals growing by half
+ * each time up to a maximum. The expected duration is a moving average of observed durations: it
+ * rises at once to the age of any operation found still running, and falls a little with every
+ * operation already done at its first poll. Whenever the poller wakes, it polls every operation due
+ * within the minimum interval as one batch, so operations submitted close together are checked
+ * together.
+ *
+ * Each poll first takes a read permit from the {@link QuotaThrottle}, so the poller thread blocks
+ * while the read quota or the concurrency limit has none to spare. Polls are then sent
+ * asynchronously, and their results are handled on the client's threads.
+ */
+public class OperationTracker implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OperationTracker.class);
+
+    /**
+     * Default shortest time between polls of one operation, and the window batching polls together.
+     */
+    public static final Duration DEFAULT_MIN_INTERVAL = Duration.ofMillis(200);
+
+    /**
+     * Default longest time between polls of one operation.
+     */
+    public static final Duration DEFAULT_MAX_INTERVAL = Duration.ofSeconds(10);
+
+    /**
+     * Default number of polls sent per batch.
+     */
+    public static final int DEFAULT_MAX_BATCH = 100;
+
+    private static final double BACKOFF_MULTIPLIER = 1.5;
+
+    // Weight of the newest observed duration in the moving average
+    private static final double ESTIMATE_WEIGHT = 0.2;
+
+    // An operation done at its first poll may have finished long before, so the estimate probes lower
+    private static final double FIRST_POLL_DISCOUNT = 0.8;
+
+    private final OperationsClient operationsClient;
+    private final QuotaThrottle throttle;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final int maxBatch;
+    private final TaggingMetrics.MethodMetrics pollMetrics = TaggingMetrics.shared().method("GetOperation");
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "operation-poller");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this
+    private final PriorityQueue<Pending> pending = new PriorityQueue<>();
+    private ScheduledFuture<?> wakeup;
+    private long wakeupNanos;
+    private boolean closed;
+
+    private volatile long estimateNanos;
+    private final AtomicLong tracked = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong pollFailures = new AtomicLong();
+
+    /**
+     * Constructor for OperationTracker with the default intervals and batch size.
+     *
+     * @param operationsClient The client used to poll operations
+     * @param throttle The throttle whose read quota paces polls
+     */
+    public OperationTracker(OperationsClient operationsClient, QuotaThrottle throttle) {
+        this(operationsClient, throttle, DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Constructor for OperationTracker.
+     *
+     * @param operationsClient The client used to poll operations
+     * @param throttle The throttle whose read quota paces polls
+     * @param minInterval The shortest time between polls of one operation, and the window batching polls together
+     * @param maxInterval The longest time between polls of one operation
+     * @param maxBatch The most polls to send per batch
+     */
+    public OperationTracker(OperationsClient operationsClient, QuotaThrottle throttle,
+            Duration minInterval, Duration maxInterval, int maxBatch) {
+        if (minInterval.isNegative() || minInterval.isZero() || maxInterval.compareTo(minInterval) < 0) {
+            throw new IllegalArgumentException("Intervals must be positive and maxInterval at least minInterval");
+        }
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be at least 1");
+        }
+        this.operationsClient = operationsClient;
+        this.throttle = throttle;
+        this.minIntervalNanos = minInterval.toNanos();
+        this.maxIntervalNanos = maxInterval.toNanos();
+        this.maxBatch = maxBatch;
+        this.estimateNanos = minIntervalNanos;
+    }
+
+    /**
+     * Starts tracking an operation returned by a request. An operation that is already done
+     * completes at once.
+     *
+     * @param operation The operation as the request returned it
+     * @param policy Decides which operation errors mean the desired state already holds
+     * @param metrics The metrics of the method that started the operation, to record its duration in
+     * @param timeout Time allowed for the operation to finish
+     * @return The tracked operation
+     */
+    public TrackedOperation track(Operation operation, RetryPolicy policy, TaggingMetrics.MethodMetrics metrics,
+            Duration timeout) {
+        long now = System.nanoTime();
+        Pending entry = new Pending(operation.getName(), policy, metrics, now, now + timeout.toNanos());
+        tracked.incrementAndGet();
+        if (operation.getDone()) {
+            entry.finish(operation, now);
+            return entry.tracked;
+        }
+        entry.intervalNanos = clamp(estimateNanos);
+        entry.nextPollNanos = now + entry.intervalNanos;
+        schedule(entry);
+        return entry.tracked;
+    }
+
+    /**
+     * Returns the number of operations being waited for.
+     *
+     * @return The number of pending operations
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Returns counters of the operations tracked so far.
+     *
+     * @return A snapshot of the counters
+     */
+    public Stats getStats() {
+        return new Stats(tracked.get(), completed.get(), polls.get(), batches.get(), pollFailures.get(),
+                TimeUnit.NANOSECONDS.toMillis(estimateNanos));
+    }
+
+    /**
+     * Stops polling. Operations still pending fail with a CancellationException; the API finishes them regardless.
+     */
+    @Override
+    public void close() {
+        List<Pending> abandoned;
+        synchronized (this) {
+            closed = true;
+            abandoned = new ArrayList<>(pending);
+            pending.clear();
+        }
+        poller.shutdownNow();
+        for (Pending entry : abandoned) {
+            entry.tracked.completion.completeExceptionally(
+                    new CancellationException("Stopped tracking operation " + entry.name));
+        }
+    }
+
+    private void schedule(Pending entry) {
+        synchronized (this) {
+            if (closed) {
+                entry.tracked.completion.completeExceptionally(
+                        new CancellationException("Stopped tracking operation " + entry.name));
+                return;
+            }
+            pending.add(entry);
+            wakeUpBy(entry.nextPollNanos);
+        }
+    }
+
+    // Called with the lock held
+    private void wakeUpBy(long nanos) {
+        if (wakeup != null && wakeupNanos <= nanos) {
+            return;
+        }
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+        wakeupNanos = nanos;
+        wakeup = poller.schedule(this::pollDue, Math.max(0, nanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs on the poller thread: takes the operations due within the batching window and polls them.
+     */
+    private void pollDue() {
+        List<Pending> batch = new ArrayList<>();
+        synchronized (this) {
+            wakeup = null;
+            long horizon = System.nanoTime() + minIntervalNanos;
+            while (batch.size() < maxBatch && !pending.isEmpty() && pending.peek().nextPollNanos <= horizon) {
+                Pending entry = pending.poll();
+                // Callers may cancel the completion to stop waiting
+                if (!entry.tracked.completion.isDone()) {
+                    batch.add(entry);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.incrementAndGet();
+            LOG.debug("Polling {} operations", batch.size());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                poll(batch.get(i));
+            } catch (InterruptedException e) {
+                // Usually closed while waiting for quota: the operations not polled go back to the
+                // queue, or fail at once if the tracker is closed, so that no caller waits forever
+                for (Pending entry : batch.subList(i, batch.size())) {
+                    schedule(entry);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        synchronized (this) {
+            if (!closed && !pending.isEmpty()) {
+                wakeUpBy(pending.peek().nextPollNanos);
+            }
+        }
+    }
+
+    private void poll(Pending entry) throws InterruptedException {
+        QuotaThrottle.Permit permit = throttle.acquireRead();
+        polls.incrementAndGet();
+        entry.polls++;
+        GetOperationRequest request = GetOperationRequest.newBuilder().setName(entry.name).build();
+        ApiFuture<Operation> future;
+        try {
+            future = pollMetrics.recordCall(() -> operationsClient.getOperationCallable().futureCall(request));
+        } catch (RuntimeException e) {
+            permit.release(e);
+            retryLater(entry, e);
+            return;
+        }
+        ApiFutures.addCallback(future, new ApiFutureCallback<Operation>() {
+            @Override
+            public void onSuccess(Operation operation) {
+                permit.release(null);
+                if (operation.getDone()) {
+                    entry.finish(operation, System.nanoTime());
+                } else {
+                    // Operations take at least as long as this one has been running
+                    long age = System.nanoTime() - entry.startNanos;
+                    entry.runningNanos = age;
+                    if (age > estimateNanos) {
+                        estimateNanos = age;
+                    }
+                    retryLater(entry, null);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                permit.release(t);
+                if (RetryPolicy.statusCodeOf(t) == StatusCode.Code.NOT_FOUND) {
+                    // The operation is gone, so its outcome can no longer be known
+                    entry.tracked.completion.completeExceptionally(t);
+                    return;
+                }
+                retryLater(entry, t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Schedules the next poll of an operation that is still running or could not be polled.
+     */
+    private void retryLater(Pending entry, Throwable pollError) {
+        if (pollError != null) {
+            pollFailures.incrementAndGet();
+            LOG.debug("Poll of {} failed, trying again: {}", entry.name, pollError.getMessage());
+        }
+        long now = System.nanoTime();
+        if (now >= entry.deadlineNanos) {
+            entry.tracked.completion.completeExceptionally(ApiExceptionFactory.createException(
+                    "Operation " + entry.name + " did not finish within "
+                            + TimeUnit.NANOSECONDS.toMillis(entry.deadlineNanos - entry.startNanos) + "ms",
+                    pollError, GrpcStatusCode.of(Status.Code.DEADLINE_EXCEEDED), true));
+            return;
+        }
+        // Past the estimate, poll again soon and back off from there
+        entry.intervalNanos = entry.polls <= 1 ? minIntervalNanos : clamp((long) (entry.intervalNanos * BACKOFF_MULTIPLIER));
+        entry.nextPollNanos = Math.min(now + entry.intervalNanos, entry.deadlineNanos);
+        schedule(entry);
+    }
+
+    private long clamp(long nanos) {
+        return Math.max(minIntervalNanos, Math.min(maxIntervalNanos, nanos));
+    }
+
+    private void observe(long durationNanos) {
+        // A racy update only loses one sample, which the average does not notice
+        estimateNanos = (long) (estimateNanos * (1 - ESTIMATE_WEIGHT) + durationNanos * ESTIMATE_WEIGHT);
+    }
+
+    /**
+     * An operation handed to the tracker: its name, known at once, and its outcome, known once it is done.
+     */
+    public static class TrackedOperation {
+
+        private final String name;
+        private final CompletableFuture<Operation> completion = new CompletableFuture<>();
+
+        private TrackedOperation(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the operation name, e.g. operations/rctb.p1-123, or an empty string for a request
+         * that needed no operation because its change already held.
+         *
+         * @return The operation name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns a future that completes with the finished operation, or fails with the error the
+         * operation finished with. Cancelling it stops tracking the operation.
+         *
+         * @return The completion future
+         */
+        public CompletableFuture<Operation> getCompletion() {
+            return completion;
+        }
+    }
+
+    /**
+     * Counters of an operation tracker.
+     */
+    public static class Stats {
+
+        private final long tracked;
+        private final long completed;
+        private final long polls;
+        private final long batches;
+        private final long pollFailures;
+        private final long estimateMillis;
+
+        private Stats(long tracked, long completed, long polls, long batches, long pollFailures, long estimateMillis) {
+            this.tracked = tracked;
+            this.completed = completed;
+            this.polls = polls;
+            this.batches = batches;
+            this.pollFailures = pollFailures;
+            this.estimateMillis = estimateMillis;
+        }
+
+        public long getTracked() {
+            return tracked;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getPolls() {
+            return polls;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getPollFailures() {
+            return pollFailures;
+        }
+
+        /**
+         * Returns the current estimate of how long operations take to finish.
+         *
+         * @return The estimate in milliseconds
+         */
+        public long getEstimateMillis() {
+            return estimateMillis;
+        }
+
+        /**
+         * Describes the counters in one line.
+         *
+         * @return The description
+         */
+        public String describe() {
+            return String.format(Locale.ROOT, "%d operations tracked, %d polls in %d batches (%.1f per operation), "
+                    + "%d failed polls, operations finish in about %dms", tracked, polls, batches,
+                    tracked > 0 ? (double) polls / tracked : 0.0, pollFailures, estimateMillis);
+        }
+    }
+
+    /**
+     * An operation waiting for its next poll, ordered by when that poll is due.
+     */
+    private class Pending implements Comparable<Pending> {
+
+        private final String name;
+        private final RetryPolicy policy;
+        private final TaggingMetrics.MethodMetrics metrics;
+        private final long startNanos;
+        private final long deadlineNanos;
+        private final TrackedOperation tracked;
+        private long intervalNanos;
+        private long nextPollNanos;
+        private int polls;
+        private long runningNanos;
+
+        Pending(String name, RetryPolicy policy, TaggingMetrics.MethodMetrics metrics, long startNanos, long deadlineNanos) {
+            this.name = name;
+            this.policy = policy;
+            this.metrics = metrics;
+            this.startNanos = startNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.tracked = new TrackedOperation(name);
+        }
+
+        void finish(Operation operation, long now) {
+            completed.incrementAndGet();
+            if (polls > 0) {
+                // Only operations that had to be polled say how long operations take: somewhere
+                // between the last poll that found them running and the one that found them done
+                long doneNanos = now - startNanos;
+                observe(polls == 1 ? (long) (doneNanos * FIRST_POLL_DISCOUNT) : (runningNanos + doneNanos) / 2);
+                metrics.recordOperationLatency(doneNanos);
+            }
+            if (!operation.hasError()) {
+                tracked.completion.complete(operation);
+                return;
+            }
+            Status.Code code = Status.fromCodeValue(operation.getError().getCode()).getCode();
+            Throwable error = ApiExceptionFactory.createException(operation.getError().getMessage(), null,
+                    GrpcStatusCode.of(code), false);
+            if (policy.isIdempotentSuccess(error)) {
+                tracked.completion.complete(operation);
+            } else {
+                tracked.completion.completeExceptionally(error);
+            }
+        }
+
+        @Override
+        public int compareTo(Pending other) {
+            return Long.compare(nextPollNanos, other.nextPollNanos);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.gcptagging;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiting layer for Resource Manager calls.
+ * Each call first takes a token from the write or read bucket, which paces requests to the
+ * per-minute quota, and then a slot from a shared AIMD concurrency limit, which backs off on
+ * RESOURCE_EXHAUSTED errors and latency spikes and grows back while calls succeed.
+ */
+public class QuotaThrottle {
+
+    /**
+     * Default write quota (create and delete tag binding requests per minute).
+     */
+    public static final int DEFAULT_WRITE_REQUESTS_PER_MINUTE = 600;
+
+    /**
+     * Default read quota (list requests per minute).
+     */
+    public static final int DEFAULT_READ_REQUESTS_PER_MINUTE = 1200;
+
+    /**
+     * Default upper bound for the adaptive concurrency limit.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 256;
+
+    private static final int INITIAL_CONCURRENCY = 8;
+
+    private volatile TokenBucket writeBucket;
+    private volatile TokenBucket readBucket;
+    private final AimdConcurrencyLimit concurrencyLimit;
+
+    /**
+     * Constructor for QuotaThrottle.
+     *
+     * @param writeRequestsPerMinute Write quota, or 0 for no rate limit
+     * @param readRequestsPerMinute Read quota, or 0 for no rate limit
+     * @param maxConcurrency Upper bound for the adaptive concurrency limit
+     */
+    public QuotaThrottle(int writeRequestsPerMinute, int readRequestsPerMinute, int maxConcurrency) {
+        this(writeRequestsPerMinute, readRequestsPerMinute,
+                new AimdConcurrencyLimit(Math.min(INITIAL_CONCURRENCY, maxConcurrency), maxConcurrency));
+    }
+
+    private QuotaThrottle(int writeRequestsPerMinute, int readRequestsPerMinute, AimdConcurrencyLimit concurrencyLimit) {
+        this.writeBucket = writeRequestsPerMinute > 0 ? new TokenBucket(writeRequestsPerMinute) : null;
+        this.readBucket = readRequestsPerMinute > 0 ? new TokenBucket(readRequestsPerMinute) : null;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Creates a throttle with the default quotas.
+     *
+     * @return A throttle using the default limits
+     */
+    public static QuotaThrottle withDefaults() {
+        return new QuotaThrottle(DEFAULT_WRITE_REQUESTS_PER_MINUTE, DEFAULT_READ_REQUESTS_PER_MINUTE,
+                DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Creates a throttle whose concurrency limit never adapts, for measurements at a known concurrency.
+     *
+     * @param writeRequestsPerMinute Write quota, or 0 for no rate limit
+     * @param readRequestsPerMinute Read quota, or 0 for no rate limit
+     * @param concurrency The concurrency limit
+     * @return A throttle with a fixed concurrency limit
+     */
+    static QuotaThrottle withFixedConcurrency(int writeRequestsPerMinute, int readRequestsPerMinute, int concurrency) {
+        return new QuotaThrottle(writeRequestsPerMinute, readRequestsPerMinute,
+                new AimdConcurrencyLimit(concurrency, concurrency, concurrency));
+    }
+
+    /**
+     * Waits for write quota and a concurrency slot.
+     *
+     * @return The permit to release when the call completes
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Permit acquireWrite() throws InterruptedException {
+        return acquire(writeBucket);
+    }
+
+    /**
+     * Waits for read quota and a concurrency slot.
+     *
+     * @return The permit to release when the call completes
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Permit acquireRead() throws InterruptedException {
+        return acquire(readBucket);
+    }
+
+    /**
+     * Claims write quota and a concurrency slot without blocking the calling thread.
+     *
+     * @param scheduler Completes the wait for a reserved token
+     * @return A future for the permit to release when the call completes; cancelling it gives up the wait
+     */
+    public ApiFuture<Permit> acquireWriteAsync(ScheduledExecutorService scheduler) {
+        return acquireAsync(writeBucket, scheduler);
+    }
+
+    /**
+     * Claims read quota and a concurrency slot without blocking the calling thread.
+     *
+     * @param scheduler Completes the wait for a reserved token
+     * @return A future for the permit to release when the call completes; cancelling it gives up the wait
+     */
+    public ApiFuture<Permit> acquireReadAsync(ScheduledExecutorService scheduler) {
+        return acquireAsync(readBucket, scheduler);
+    }
+
+    /**
+     * Changes the quotas of a throttle in use, for example when a coordinator hands this process a
+     * different share of a project's quota. Calls already waiting for a token keep their place.
+     *
+     * @param writeRequestsPerMinute Write quota, or 0 for no rate limit
+     * @param readRequestsPerMinute Read quota, or 0 for no rate limit
+     */
+    public synchronized void setRequestsPerMinute(int writeRequestsPerMinute, int readRequestsPerMinute) {
+        writeBucket = withRate(writeBucket, writeRequestsPerMinute);
+        readBucket = withRate(readBucket, readRequestsPerMinute);
+    }
+
+    /**
+     * Returns the current adaptive concurrency limit.
+     *
+     * @return The concurrency limit
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit.getLimit();
+    }
+
+    private static TokenBucket withRate(TokenBucket bucket, int requestsPerMinute) {
+        if (requestsPerMinute <= 0) {
+            return null;
+        }
+        if (bucket == null) {
+            return new TokenBucket(requestsPerMinute);
+        }
+        bucket.setRequestsPerMinute(requestsPerMinute);
+        return bucket;
+    }
+
+    private Permit acquire(TokenBucket bucket) throws InterruptedException {
+        if (bucket != null) {
+            bucket.acquire();
+        }
+        concurrencyLimit.acquire();
+        return new Permit(System.nanoTime());
+    }
+
+    private ApiFuture<Permit> acquireAsync(TokenBucket bucket, ScheduledExecutorService scheduler) {
+        SettableApiFuture<Permit> permit = SettableApiFuture.create();
+        long waitNanos = bucket != null ? bucket.reserve() : 0;
+        Runnable claimSlot = () -> {
+            if (permit.isDone()) {
+                return;
+            }
+            ApiFuture<Void> slot = concurrencyLimit.acquireAsync();
+            permit.addListener(() -> slot.cancel(false), MoreExecutors.directExecutor());
+            slot.addListener(() -> {
+                if (slot.isCancelled()) {
+                    return;
+                }
+                Permit claimed = new Permit(System.nanoTime());
+                // Cancelled between the grant and now; hand the slot back
+                if (!permit.set(claimed)) {
+                    claimed.release(new CancellationException("Quota wait cancelled"));
+                }
+            }, MoreExecutors.directExecutor());
+        };
+        if (waitNanos == 0) {
+            claimSlot.run();
+        } else {
+            ScheduledFuture<?> timer = scheduler.schedule(claimSlot, waitNanos, TimeUnit.NANOSECONDS);
+            permit.addListener(() -> {
+                // Given up before the token was earned; let a later call have it
+                if (timer.cancel(false)) {
+                    bucket.refund();
+                }
+            }, MoreExecutors.directExecutor());
+        }
+        return permit;
+    }
+
+    /**
+     * Checks whether an error, or any of its causes, is a quota rejection.
+     *
+     * @param error The error to inspect
+     * @return true if the error is RESOURCE_EXHAUSTED
+     */
+    static boolean isQuotaError(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ApiException
+                    && ((ApiException) t).getStatusCode().getCode() == StatusCode.Code.RESOURCE_EXHAUSTED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A claimed concurrency slot. Exactly one of the release methods must be called.
+     */
+    public class Permit {
+
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Releases the slot, feeding the outcome of the call back into the concurrency limit.
+         *
+         * @param error The error the call failed with, or null if it succeeded
+         */
+        public synchronized void release(Throwable error) {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (error == null) {
+                concurrencyLimit.onSuccess(System.nanoTime() - startNanos);
+            } else if (isQuotaError(error)) {
+                concurrencyLimit.onQuotaExceeded();
+            } else {
+                concurrencyLimit.onIgnored();
+            }
+        }
+    }
+}
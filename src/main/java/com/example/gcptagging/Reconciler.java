@@ -0,0 +1,330 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes the tag binding changes needed to bring resources to a desired state.
+ *
+ * The desired state maps each managed resource to the exact set of tag values it should carry.
+ * The current bindings of every managed resource are listed in parallel, and the two sorted sets
+ * are merged to find the bindings to create and the bindings to delete. Resources that are not
+ * part of the desired state are never touched, and bindings that are already in place cost one
+ * list call per resource instead of one create per binding. Each resource's deletes come before
+ * its creates, and {@link #apply(Plan, BulkTagger)} sends all deletes before any create.
+ */
+public class Reconciler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Reconciler.class);
+
+    /**
+     * Default number of resources whose current state is fetched at once.
+     */
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+
+    private final GcpResourceTagger tagger;
+    private final int maxParallelism;
+
+    /**
+     * Constructor for Reconciler.
+     *
+     * @param tagger The tagger used to list current bindings
+     * @param maxParallelism The most resources to list at once
+     */
+    public Reconciler(GcpResourceTagger tagger, int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.tagger = tagger;
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Loads the desired state from manifest rows, resolving namespaced tag value names to IDs.
+     * Every row names one binding that should exist; a resource's bindings that are not listed are deleted.
+     *
+     * @param rows The manifest rows; all must be create rows
+     * @param resolver Resolver for namespaced tag value names, or null to require IDs
+     * @return The desired tag values of each resource, sorted by resource and tag value
+     * @throws IllegalArgumentException If a row is not a create row or names an unknown tag value
+     */
+    public static TreeMap<String, TreeSet<String>> loadDesiredState(Iterator<TagOperation> rows, TagValueResolver resolver) {
+        TreeMap<String, TreeSet<String>> desired = new TreeMap<>();
+        while (rows.hasNext()) {
+            TagOperation row = rows.next();
+            if (row.getAction() != TagOperation.Action.CREATE) {
+                throw new IllegalArgumentException("Desired state rows must be create rows: " + row);
+            }
+            String tagValue = row.getTagValueName();
+            if (resolver != null && TagValueResolver.isNamespacedName(tagValue)) {
+                String tagValueId = resolver.resolve(tagValue);
+                if (tagValueId == null) {
+                    throw new IllegalArgumentException("Unknown tag value: " + tagValue);
+                }
+                tagValue = tagValueId;
+            }
+            desired.computeIfAbsent(row.getResourceName(), resource -> new TreeSet<>()).add(tagValue);
+        }
+        return desired;
+    }
+
+    /**
+     * Merges the desired tag values of one resource with its current bindings.
+     *
+     * @param resourceName The resource
+     * @param desired The tag values the resource should carry, in natural order
+     * @param current The bindings the resource carries now, in any order
+     * @param plan Receives the deletes and then the creates, each in tag value order
+     * @return The number of desired bindings that already exist
+     */
+    static int diff(String resourceName, SortedSet<String> desired, List<TagBinding> current, List<TagOperation> plan) {
+        List<TagBinding> sorted = new ArrayList<>(current);
+        sorted.sort(Comparator.comparing(TagBinding::getTagValue));
+
+        // Deletes go first: a resource can carry only one value per tag key, so switching a key's
+        // value must remove the old binding before the new one can be created
+        List<TagOperation> creates = new ArrayList<>();
+        int unchanged = 0;
+        Iterator<String> wanted = desired.iterator();
+        Iterator<TagBinding> existing = sorted.iterator();
+        String want = wanted.hasNext() ? wanted.next() : null;
+        TagBinding have = existing.hasNext() ? existing.next() : null;
+        while (want != null || have != null) {
+            int order = want == null ? 1 : have == null ? -1 : want.compareTo(have.getTagValue());
+            if (order < 0) {
+                creates.add(TagOperation.create(resourceName, want));
+                want = wanted.hasNext() ? wanted.next() : null;
+            } else if (order > 0) {
+                // Keep the resource and tag value too, so a plan written as CSV can still be applied
+                plan.add(new TagOperation(TagOperation.Action.DELETE, resourceName, have.getTagValue(), have.getName()));
+                have = existing.hasNext() ? existing.next() : null;
+            } else {
+                unchanged++;
+                want = wanted.hasNext() ? wanted.next() : null;
+                have = existing.hasNext() ? existing.next() : null;
+            }
+        }
+        plan.addAll(creates);
+        return unchanged;
+    }
+
+    /**
+     * Runs a plan in two phases: every delete first, then every create, so that no create can race
+     * the delete of another value of the same tag key on its resource. The deletes stream through
+     * the bulk tagger as the plan is computed, while the creates are held in memory until the
+     * deletes are done; they are a subset of the desired state, which is in memory already.
+     *
+     * @param plan The plan to run
+     * @param bulkTagger The bulk tagger to run it with
+     * @return The summary of both phases
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public static BulkSummary apply(Plan plan, BulkTagger bulkTagger) throws InterruptedException {
+        List<TagOperation> creates = new ArrayList<>();
+        Iterator<TagOperation> deletes = new Iterator<TagOperation>() {
+            private TagOperation next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && plan.hasNext()) {
+                    TagOperation operation = plan.next();
+                    if (operation.getAction() == TagOperation.Action.CREATE) {
+                        creates.add(operation);
+                    } else {
+                        next = operation;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public TagOperation next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                TagOperation operation = next;
+                next = null;
+                return operation;
+            }
+        };
+        BulkSummary summary = bulkTagger.run(deletes);
+        LOG.info("Deletes done; sending {} creates", creates.size());
+        return bulkTagger.run(creates.iterator(), summary);
+    }
+
+    /**
+     * Starts computing the plan for a desired state. Current state is fetched in the background,
+     * a bounded window of resources ahead of the consumer, and the plan is returned in resource order.
+     * The plan can be fed directly to {@link BulkTagger#run(Iterator)}, or printed for a dry run.
+     *
+     * @param desired The desired tag values of each resource
+     * @return The plan, which must be closed to stop background fetches
+     */
+    public Plan plan(SortedMap<String, ? extends SortedSet<String>> desired) {
+        return new Plan(desired);
+    }
+
+    /**
+     * The stream of operations that reconcile the managed resources, with counters describing it.
+     */
+    public class Plan implements Iterator<TagOperation>, AutoCloseable {
+
+        private static final int MAX_FAILURE_SAMPLES = 20;
+
+        private final Iterator<? extends Map.Entry<String, ? extends SortedSet<String>>> resources;
+        private final ExecutorService executor;
+        private final ArrayDeque<Future<List<TagOperation>>> window = new ArrayDeque<>();
+        private Iterator<TagOperation> current = Collections.emptyIterator();
+
+        private final AtomicLong resourceCount = new AtomicLong();
+        private final AtomicLong unchanged = new AtomicLong();
+        private final AtomicLong creates = new AtomicLong();
+        private final AtomicLong deletes = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<String> failureSamples = new ArrayList<>();
+
+        private Plan(SortedMap<String, ? extends SortedSet<String>> desired) {
+            this.resources = desired.entrySet().iterator();
+            AtomicInteger threadCount = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(maxParallelism, runnable -> {
+                Thread thread = new Thread(runnable, "reconcile-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            fillWindow();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                Future<List<TagOperation>> next = window.poll();
+                if (next == null) {
+                    return false;
+                }
+                fillWindow();
+                try {
+                    current = next.get().iterator();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while planning");
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public TagOperation next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        private void fillWindow() {
+            // Keep a few resources per worker queued so that workers never wait for the consumer
+            while (window.size() < maxParallelism * 2 && resources.hasNext()) {
+                Map.Entry<String, ? extends SortedSet<String>> resource = resources.next();
+                window.add(executor.submit(() -> planResource(resource.getKey(), resource.getValue())));
+            }
+        }
+
+        private List<TagOperation> planResource(String resourceName, SortedSet<String> desired) throws InterruptedException {
+            List<TagOperation> operations = new ArrayList<>();
+            try {
+                List<TagBinding> current = tagger.listTagBindings(resourceName);
+                unchanged.addAndGet(diff(resourceName, desired, current, operations));
+            } catch (RuntimeException e) {
+                // Skip the resource rather than guess its state
+                failed.incrementAndGet();
+                synchronized (failureSamples) {
+                    if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                        failureSamples.add(resourceName + ": " + e.getMessage());
+                    }
+                }
+                LOG.warn("Failed to list tag bindings for {}: {}", resourceName, e.getMessage());
+                return Collections.emptyList();
+            }
+            resourceCount.incrementAndGet();
+            for (TagOperation operation : operations) {
+                (operation.getAction() == TagOperation.Action.CREATE ? creates : deletes).incrementAndGet();
+            }
+            return operations;
+        }
+
+        public long getResources() {
+            return resourceCount.get();
+        }
+
+        public long getUnchanged() {
+            return unchanged.get();
+        }
+
+        public long getCreates() {
+            return creates.get();
+        }
+
+        public long getDeletes() {
+            return deletes.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Prints the plan counters in a human readable form.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            out.println("Reconcile plan");
+            out.println("==============");
+            out.println("  Resources:  " + getResources());
+            out.println("  In place:   " + getUnchanged());
+            out.println("  To create:  " + getCreates());
+            out.println("  To delete:  " + getDeletes());
+            out.println("  Not listed: " + getFailed());
+            synchronized (failureSamples) {
+                if (!failureSamples.isEmpty()) {
+                    out.println("  First failures:");
+                    for (String failure : failureSamples) {
+                        out.println("    - " + failure);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stops any background fetches that are still running.
+         */
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+}
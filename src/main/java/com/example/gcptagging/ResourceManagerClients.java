@@ -0,0 +1,213 @@
+package com.example.gcptagging;
+
+import com.google.api.gax.core.CredentialsProvider;
+import com.google.api.gax.core.FixedCredentialsProvider;
+import com.google.api.gax.core.FixedExecutorProvider;
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.api.gax.longrunning.OperationTimedPollAlgorithm;
+import com.google.api.gax.retrying.RetrySettings;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.api.gax.rpc.TransportChannel;
+import com.google.api.gax.rpc.TransportChannelProvider;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.resourcemanager.v3.TagBindingsClient;
+import com.google.cloud.resourcemanager.v3.TagBindingsSettings;
+import com.google.cloud.resourcemanager.v3.TagKeysClient;
+import com.google.cloud.resourcemanager.v3.TagKeysSettings;
+import com.google.cloud.resourcemanager.v3.TagValuesClient;
+import com.google.cloud.resourcemanager.v3.TagValuesSettings;
+import io.grpc.ManagedChannelBuilder;
+import org.threeten.bp.Duration;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the TagBindings, TagKeys and TagValues clients.
+ * All clients created by one factory share a single gRPC channel pool, one executor and one
+ * credential, configured from a {@link ClientConfig}. The factory owns these resources, so it
+ * must be closed after the clients it created.
+ */
+public class ResourceManagerClients implements AutoCloseable {
+
+    private final ClientConfig config;
+    private final CredentialsProvider credentialsProvider;
+    private final ScheduledExecutorService executor;
+    private final TransportChannel channel;
+    private final TransportChannelProvider channelProvider;
+
+    /**
+     * Constructor for ResourceManagerClients. Opens the shared channel pool.
+     *
+     * @param credentials The credentials used by every client; ignored, and may be null, for a plaintext channel
+     * @param config The transport and timeout configuration
+     * @throws IOException If the channel cannot be created
+     */
+    public ResourceManagerClients(GoogleCredentials credentials, ClientConfig config) throws IOException {
+        if (config.isPlaintext()) {
+            // Never send a token over an unencrypted connection
+            this.credentialsProvider = NoCredentialsProvider.create();
+        } else if (credentials == null) {
+            throw new IllegalArgumentException("Credentials cannot be null");
+        } else {
+            this.credentialsProvider = FixedCredentialsProvider.create(credentials);
+        }
+        this.config = config;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(config.getExecutorThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "rm-client-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Open one channel pool and hand the same channel to every client
+        InstantiatingGrpcChannelProvider.Builder providerBuilder = TagBindingsSettings.defaultGrpcTransportProviderBuilder()
+                .setEndpoint(config.getEndpoint())
+                .setPoolSize(config.getChannelPoolSize())
+                .setKeepAliveTime(toThreeten(config.getKeepAliveTime()))
+                .setKeepAliveTimeout(toThreeten(config.getKeepAliveTimeout()))
+                .setKeepAliveWithoutCalls(true)
+                .setMaxInboundMessageSize(config.getMaxInboundMessageBytes())
+                .setExecutor(executor)
+                .setHeaderProvider(TagBindingsSettings.defaultApiClientHeaderProviderBuilder().build());
+        if (config.isPlaintext()) {
+            providerBuilder.setChannelConfigurator(ManagedChannelBuilder::usePlaintext);
+        }
+        InstantiatingGrpcChannelProvider provider = providerBuilder.build();
+        try {
+            this.channel = provider.getTransportChannel();
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+        this.channelProvider = FixedTransportChannelProvider.create(channel);
+    }
+
+    /**
+     * Returns the configuration this factory was created with.
+     *
+     * @return The client configuration
+     */
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Creates a TagBindingsClient on the shared channel.
+     *
+     * @return A new TagBindingsClient
+     * @throws IOException If the client cannot be created
+     */
+    public TagBindingsClient createTagBindingsClient() throws IOException {
+        TagBindingsSettings.Builder builder = TagBindingsSettings.newBuilder()
+                .setCredentialsProvider(credentialsProvider)
+                .setTransportChannelProvider(channelProvider)
+                .setBackgroundExecutorProvider(FixedExecutorProvider.create(executor));
+
+        // Retries are handled by RetryPolicy, so each RPC gets a single attempt with a timeout
+        builder.createTagBindingSettings().setSimpleTimeoutNoRetries(toThreeten(config.getCreateTimeout()));
+        builder.deleteTagBindingSettings().setSimpleTimeoutNoRetries(toThreeten(config.getDeleteTimeout()));
+        builder.listTagBindingsSettings().setSimpleTimeoutNoRetries(toThreeten(config.getListTimeout()));
+        builder.createTagBindingOperationSettings().setPollingAlgorithm(pollAlgorithm(config.getCreateTimeout()));
+        builder.deleteTagBindingOperationSettings().setPollingAlgorithm(pollAlgorithm(config.getDeleteTimeout()));
+
+        return TagBindingsClient.create(builder.build());
+    }
+
+    /**
+     * Creates a TagKeysClient on the shared channel.
+     *
+     * @return A new TagKeysClient
+     * @throws IOException If the client cannot be created
+     */
+    public TagKeysClient createTagKeysClient() throws IOException {
+        TagKeysSettings.Builder builder = TagKeysSettings.newBuilder()
+                .setCredentialsProvider(credentialsProvider)
+                .setTransportChannelProvider(channelProvider)
+                .setBackgroundExecutorProvider(FixedExecutorProvider.create(executor));
+
+        builder.listTagKeysSettings().setSimpleTimeoutNoRetries(toThreeten(config.getListTimeout()));
+        builder.createTagKeyOperationSettings().setPollingAlgorithm(pollAlgorithm(config.getCreateTimeout()));
+
+        return TagKeysClient.create(builder.build());
+    }
+
+    /**
+     * Creates a TagValuesClient on the shared channel.
+     *
+     * @return A new TagValuesClient
+     * @throws IOException If the client cannot be created
+     */
+    public TagValuesClient createTagValuesClient() throws IOException {
+        TagValuesSettings.Builder builder = TagValuesSettings.newBuilder()
+                .setCredentialsProvider(credentialsProvider)
+                .setTransportChannelProvider(channelProvider)
+                .setBackgroundExecutorProvider(FixedExecutorProvider.create(executor));
+
+        builder.listTagValuesSettings().setSimpleTimeoutNoRetries(toThreeten(config.getListTimeout()));
+        builder.createTagValueOperationSettings().setPollingAlgorithm(pollAlgorithm(config.getCreateTimeout()));
+
+        return TagValuesClient.create(builder.build());
+    }
+
+    /**
+     * Creates a GcpResourceTagger with a new TagBindingsClient and the configured throttle and retry policies.
+     *
+     * @return A new GcpResourceTagger
+     * @throws IOException If the client cannot be created
+     */
+    public GcpResourceTagger createTagger() throws IOException {
+        QuotaThrottle throttle = new QuotaThrottle(config.getWriteRequestsPerMinute(),
+                config.getReadRequestsPerMinute(), config.getMaxConcurrency());
+        return createTagger(throttle);
+    }
+
+    /**
+     * Creates a GcpResourceTagger with a new TagBindingsClient, the given throttle and the configured retry policies.
+     *
+     * @param throttle The throttle applied to every API call
+     * @return A new GcpResourceTagger
+     * @throws IOException If the client cannot be created
+     */
+    public GcpResourceTagger createTagger(QuotaThrottle throttle) throws IOException {
+        return new GcpResourceTagger(createTagBindingsClient(), throttle,
+                config.getCreatePolicy(), config.getDeletePolicy(), config.getListPolicy());
+    }
+
+    /**
+     * Shuts down the shared channel and executor.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.shutdown();
+            channel.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    private static OperationTimedPollAlgorithm pollAlgorithm(java.time.Duration totalTimeout) {
+        return OperationTimedPollAlgorithm.create(RetrySettings.newBuilder()
+                .setInitialRetryDelay(Duration.ofMillis(500))
+                .setRetryDelayMultiplier(1.5)
+                .setMaxRetryDelay(Duration.ofSeconds(10))
+                .setInitialRpcTimeout(Duration.ZERO)
+                .setRpcTimeoutMultiplier(1.0)
+                .setMaxRpcTimeout(Duration.ZERO)
+                .setTotalTimeout(toThreeten(totalTimeout))
+                .build());
+    }
+
+    private static Duration toThreeten(java.time.Duration duration) {
+        return Duration.ofMillis(duration.toMillis());
+    }
+}
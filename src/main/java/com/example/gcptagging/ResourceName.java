@@ -0,0 +1,306 @@
+package com.example.gcptagging;
+
+import java.util.Arrays;
+
+/**
+ * A parsed full resource name such as
+ * {@code //compute.googleapis.com/projects/my-project/zones/us-central1-a/instances/my-vm}.
+ *
+ * Each {@link Type} is a fixed sequence of literal segments with one ID between each pair,
+ * so parsing is a series of prefix comparisons and {@code indexOf('/')} calls, without regular
+ * expressions, and formatting appends the shared, interned literals into an exactly sized builder.
+ */
+public final class ResourceName {
+
+    /**
+     * The kinds of resources that can be parsed and formatted.
+     */
+    public enum Type {
+        PROJECT("//cloudresourcemanager.googleapis.com/projects/", ""),
+        FOLDER("//cloudresourcemanager.googleapis.com/folders/", ""),
+        ORGANIZATION("//cloudresourcemanager.googleapis.com/organizations/", ""),
+        COMPUTE_INSTANCE("//compute.googleapis.com/projects/", "/zones/", "/instances/", ""),
+        COMPUTE_DISK("//compute.googleapis.com/projects/", "/zones/", "/disks/", ""),
+        COMPUTE_NETWORK("//compute.googleapis.com/projects/", "/global/networks/", ""),
+        COMPUTE_SUBNETWORK("//compute.googleapis.com/projects/", "/regions/", "/subnetworks/", ""),
+        STORAGE_BUCKET("//storage.googleapis.com/projects/_/buckets/", ""),
+        BIGQUERY_DATASET("//bigquery.googleapis.com/projects/", "/datasets/", ""),
+        BIGQUERY_TABLE("//bigquery.googleapis.com/projects/", "/datasets/", "/tables/", ""),
+        PUBSUB_TOPIC("//pubsub.googleapis.com/projects/", "/topics/", ""),
+        PUBSUB_SUBSCRIPTION("//pubsub.googleapis.com/projects/", "/subscriptions/", ""),
+        SECRET("//secretmanager.googleapis.com/projects/", "/secrets/", ""),
+        CLOUD_SQL_INSTANCE("//sqladmin.googleapis.com/projects/", "/instances/", ""),
+        CLOUD_RUN_SERVICE("//run.googleapis.com/projects/", "/locations/", "/services/", ""),
+        GKE_CLUSTER("//container.googleapis.com/projects/", "/locations/", "/clusters/", ""),
+        KMS_KEY_RING("//cloudkms.googleapis.com/projects/", "/locations/", "/keyRings/", ""),
+        ARTIFACT_REGISTRY_REPOSITORY("//artifactregistry.googleapis.com/projects/", "/locations/", "/repositories/", "");
+
+        private static final Type[] VALUES = values();
+
+        // literals[i] precedes ID i; the last literal follows the last ID
+        private final String[] literals;
+        private final int literalLength;
+
+        Type(String... literals) {
+            // String literals are interned, so types of one service share the same prefix instance
+            this.literals = literals;
+            int length = 0;
+            for (String literal : literals) {
+                length += literal.length();
+            }
+            this.literalLength = length;
+        }
+
+        /**
+         * Returns the number of IDs in a name of this type.
+         *
+         * @return The number of IDs
+         */
+        public int getIdCount() {
+            return literals.length - 1;
+        }
+
+        /**
+         * Returns the literal prefix shared by every name of this type, e.g. {@code //compute.googleapis.com/projects/}.
+         *
+         * @return The interned prefix
+         */
+        public String getPrefix() {
+            return literals[0];
+        }
+
+        /**
+         * Formats a name of a type with one ID.
+         *
+         * @param id The ID
+         * @return The full resource name
+         */
+        public String format(String id) {
+            checkIdCount(1);
+            return new StringBuilder(literalLength + length(id))
+                    .append(literals[0]).append(id)
+                    .toString();
+        }
+
+        /**
+         * Formats a name of a type with two IDs.
+         *
+         * @param id0 The first ID, usually the project
+         * @param id1 The second ID
+         * @return The full resource name
+         */
+        public String format(String id0, String id1) {
+            checkIdCount(2);
+            return new StringBuilder(literalLength + length(id0) + length(id1))
+                    .append(literals[0]).append(id0)
+                    .append(literals[1]).append(id1)
+                    .toString();
+        }
+
+        /**
+         * Formats a name of a type with three IDs.
+         *
+         * @param id0 The first ID, usually the project
+         * @param id1 The second ID, usually the zone, region or location
+         * @param id2 The third ID
+         * @return The full resource name
+         */
+        public String format(String id0, String id1, String id2) {
+            checkIdCount(3);
+            return new StringBuilder(literalLength + length(id0) + length(id1) + length(id2))
+                    .append(literals[0]).append(id0)
+                    .append(literals[1]).append(id1)
+                    .append(literals[2]).append(id2)
+                    .toString();
+        }
+
+        /**
+         * Creates a resource name of this type.
+         *
+         * @param ids The IDs, in the order they appear in the name
+         * @return The resource name
+         * @throws IllegalArgumentException If the number of IDs does not match the type, or an ID is empty or contains '/'
+         */
+        public ResourceName of(String... ids) {
+            checkIdCount(ids.length);
+            for (String id : ids) {
+                if (id == null || id.isEmpty() || id.indexOf('/') >= 0) {
+                    throw new IllegalArgumentException("Invalid ID for " + this + ": " + id);
+                }
+            }
+            return new ResourceName(this, ids.clone(), null);
+        }
+
+        private String format(String[] ids) {
+            int length = literalLength;
+            for (String id : ids) {
+                length += id.length();
+            }
+            StringBuilder builder = new StringBuilder(length).append(literals[0]);
+            for (int i = 0; i < ids.length; i++) {
+                builder.append(ids[i]).append(literals[i + 1]);
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Checks whether a name has this type's shape, without allocating.
+         */
+        private boolean matches(String name) {
+            if (!name.startsWith(literals[0])) {
+                return false;
+            }
+            int position = literals[0].length();
+            for (int i = 1; i < literals.length; i++) {
+                int end = idEnd(name, position);
+                if (end == position) {
+                    return false;
+                }
+                String literal = literals[i];
+                if (literal.isEmpty()) {
+                    return end == name.length();
+                }
+                if (!name.startsWith(literal, end)) {
+                    return false;
+                }
+                position = end + literal.length();
+            }
+            return true;
+        }
+
+        private String[] extractIds(String name) {
+            String[] ids = new String[literals.length - 1];
+            int position = literals[0].length();
+            for (int i = 0; i < ids.length; i++) {
+                int end = idEnd(name, position);
+                ids[i] = name.substring(position, end);
+                position = end + literals[i + 1].length();
+            }
+            return ids;
+        }
+
+        private void checkIdCount(int count) {
+            if (count != literals.length - 1) {
+                throw new IllegalArgumentException(this + " names have " + (literals.length - 1) + " IDs, not " + count);
+            }
+        }
+
+        private static int idEnd(String name, int from) {
+            int slash = name.indexOf('/', from);
+            return slash < 0 ? name.length() : slash;
+        }
+
+        private static int length(String id) {
+            // Matches StringBuilder.append(null), which appends "null"
+            return id != null ? id.length() : 4;
+        }
+    }
+
+    private final Type type;
+    private final String[] ids;
+    private String formatted;
+
+    private ResourceName(Type type, String[] ids, String formatted) {
+        this.type = type;
+        this.ids = ids;
+        this.formatted = formatted;
+    }
+
+    /**
+     * Parses a full resource name.
+     *
+     * @param name The full resource name
+     * @return The parsed name
+     * @throws IllegalArgumentException If the name does not match any known type
+     */
+    public static ResourceName parse(String name) {
+        ResourceName parsed = tryParse(name);
+        if (parsed == null) {
+            throw new IllegalArgumentException("Unrecognized resource name: " + name);
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses a full resource name, returning null instead of failing.
+     *
+     * @param name The full resource name
+     * @return The parsed name, or null if the name does not match any known type
+     */
+    public static ResourceName tryParse(String name) {
+        if (name == null || !name.startsWith("//")) {
+            return null;
+        }
+        for (Type type : Type.VALUES) {
+            if (type.matches(name)) {
+                // Keep the caller's string so that formatting a parsed name allocates nothing
+                return new ResourceName(type, type.extractIds(name), name);
+            }
+        }
+        return null;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns one ID of the name.
+     *
+     * @param index The position of the ID, from 0
+     * @return The ID
+     */
+    public String getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Returns the last ID, which names the resource itself (the instance, bucket, table, ...).
+     *
+     * @return The resource's own ID
+     */
+    public String getResourceId() {
+        return ids[ids.length - 1];
+    }
+
+    /**
+     * Returns the project the resource belongs to.
+     *
+     * @return The project ID, or null for types that are not addressed through a project, such as buckets
+     */
+    public String getProjectId() {
+        return type.literals[0].endsWith("/projects/") ? ids[0] : null;
+    }
+
+    /**
+     * Returns the full resource name.
+     *
+     * @return The full resource name
+     */
+    @Override
+    public String toString() {
+        String result = formatted;
+        if (result == null) {
+            result = type.format(ids);
+            formatted = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ResourceName)) {
+            return false;
+        }
+        ResourceName that = (ResourceName) other;
+        return type == that.type && Arrays.equals(ids, that.ids);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + Arrays.hashCode(ids);
+    }
+}
@@ -0,0 +1,517 @@
+package com.example.gcptagging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A set of selectors over the components of full resource names, compiled into one matcher.
+ *
+ * A selector is a comma separated list of {@code component=pattern} terms that must all match,
+ * for example {@code service=compute,type=instances,project=prod-*,location=europe-*}. A name is
+ * selected if any selector matches it. The components are read from the name itself:
+ * <ul>
+ *   <li>{@code service}: the first label of the service host, e.g. {@code compute} or {@code storage}</li>
+ *   <li>{@code project}: the ID after {@code projects/}, absent for buckets and for folders</li>
+ *   <li>{@code location}: the ID after {@code zones/}, {@code regions/} or {@code locations/},
+ *       or {@code global}; {@code zone} and {@code region} are accepted as aliases</li>
+ *   <li>{@code type}: the collection the resource is in, e.g. {@code instances}, {@code buckets}</li>
+ *   <li>{@code name}: the resource's own ID</li>
+ * </ul>
+ * Patterns are globs with {@code *} and {@code ?}, several of which may be joined with {@code |};
+ * a pattern starting with {@code ~} is a regular expression instead. A term ends only at a comma
+ * that starts another {@code component=} term, so regular expressions may contain other commas.
+ * A term on a component the name does not have never matches.
+ *
+ * Selectors are not tried one by one. For each component, exact and {@code prefix*} globs of all
+ * selectors share one trie and {@code *suffix} globs share a trie of reversed suffixes, so a component
+ * is matched against every selector in a single walk over its characters. Each walk yields a bit set
+ * of the selectors whose term accepts the component, and the sets of all components are intersected;
+ * only other globs and regular expressions are tried one at a time. Matching allocates nothing.
+ */
+public final class ResourceSelector {
+
+    /**
+     * The parts of a full resource name that selectors can match.
+     */
+    public enum Component {
+        SERVICE,
+        PROJECT,
+        LOCATION,
+        TYPE,
+        NAME;
+
+        private static final Component[] VALUES = values();
+
+        /**
+         * Parses a component name, ignoring case.
+         *
+         * @param value The component name, or one of the aliases "zone" and "region"
+         * @return The matching Component
+         * @throws IllegalArgumentException If the value is not a known component
+         */
+        public static Component parse(String value) {
+            String lower = value.trim().toLowerCase(Locale.ROOT);
+            if (lower.equals("zone") || lower.equals("region")) {
+                return LOCATION;
+            }
+            for (Component component : VALUES) {
+                if (component.name().toLowerCase(Locale.ROOT).equals(lower)) {
+                    return component;
+                }
+            }
+            throw new IllegalArgumentException("Unknown resource name component: " + value);
+        }
+    }
+
+    // Cheap, usually selective components first, so that most names are rejected early
+    private static final Component[] MATCH_ORDER = {
+            Component.SERVICE, Component.TYPE, Component.PROJECT, Component.LOCATION, Component.NAME };
+
+    // Terms end at a comma that starts the next component=pattern term, so regular expressions
+    // such as ~vm-[0-9]{2,3} may contain commas
+    private static final Pattern TERM_SEPARATOR = Pattern.compile(",(?=\\s*[A-Za-z]+\\s*=)");
+
+    private final List<String> selectors;
+    private final int words;
+    private final ComponentMatcher[] components = new ComponentMatcher[Component.VALUES.length];
+
+    private ResourceSelector(List<String> selectors) {
+        this.selectors = selectors;
+        this.words = (selectors.size() + 63) / 64;
+        for (Component component : Component.VALUES) {
+            components[component.ordinal()] = new ComponentMatcher(words);
+        }
+        for (int i = 0; i < selectors.size(); i++) {
+            compile(i, selectors.get(i));
+        }
+        for (ComponentMatcher matcher : components) {
+            matcher.finish(selectors.size());
+        }
+    }
+
+    /**
+     * Compiles selectors separated by ';' or line breaks.
+     *
+     * @param expression The selectors, e.g. {@code type=instances,project=prod-*;type=buckets,name=logs-*}
+     * @return The compiled selectors
+     * @throws IllegalArgumentException If there are no selectors or one cannot be parsed
+     */
+    public static ResourceSelector parse(String expression) {
+        return compileAll(expression.split("[;\\n]"));
+    }
+
+    private static ResourceSelector compileAll(String[] lines) {
+        List<String> selectors = new ArrayList<>();
+        for (String line : lines) {
+            String selector = line.trim();
+            if (!selector.isEmpty() && !selector.startsWith("#")) {
+                selectors.add(selector);
+            }
+        }
+        if (selectors.isEmpty()) {
+            throw new IllegalArgumentException("No selectors given");
+        }
+        return new ResourceSelector(selectors);
+    }
+
+    /**
+     * Compiles the selectors in a file, one per line. Blank lines and lines starting with '#' are ignored.
+     * Unlike {@link #parse(String)}, ';' does not separate selectors, so regular expressions may contain it.
+     *
+     * @param file The selectors file
+     * @return The compiled selectors
+     * @throws IOException If the file cannot be read
+     * @throws IllegalArgumentException If the file has no selectors or one cannot be parsed
+     */
+    public static ResourceSelector load(Path file) throws IOException {
+        try {
+            return compileAll(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\\r?\\n"));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the number of selectors.
+     *
+     * @return The number of selectors
+     */
+    public int size() {
+        return selectors.size();
+    }
+
+    /**
+     * Creates a matcher. Matchers keep scratch space and are not thread safe; use one per thread.
+     *
+     * @return A new matcher
+     */
+    public Matcher matcher() {
+        return new Matcher();
+    }
+
+    @Override
+    public String toString() {
+        return String.join("; ", selectors);
+    }
+
+    private void compile(int index, String selector) {
+        boolean[] seen = new boolean[Component.VALUES.length];
+        for (String term : TERM_SEPARATOR.split(selector)) {
+            int equals = term.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected component=pattern in selector '" + selector + "' but got: " + term);
+            }
+            Component component = Component.parse(term.substring(0, equals));
+            if (seen[component.ordinal()]) {
+                throw new IllegalArgumentException("Selector '" + selector + "' names "
+                        + component.name().toLowerCase(Locale.ROOT) + " twice; use a|b for alternatives");
+            }
+            seen[component.ordinal()] = true;
+            String pattern = term.substring(equals + 1).trim();
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("Empty pattern in selector '" + selector + "'");
+            }
+            ComponentMatcher matcher = components[component.ordinal()];
+            if (pattern.startsWith("~")) {
+                try {
+                    matcher.addRegex(index, Pattern.compile(pattern.substring(1)));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid regular expression in selector '" + selector + "': " + e.getDescription());
+                }
+            } else {
+                for (String glob : pattern.split("\\|")) {
+                    matcher.addGlob(index, glob.trim());
+                }
+            }
+        }
+        for (Component component : Component.VALUES) {
+            if (!seen[component.ordinal()]) {
+                components[component.ordinal()].addUnconstrained(index);
+            }
+        }
+    }
+
+    /**
+     * Matches names against the compiled selectors, reusing its scratch space between names.
+     */
+    public final class Matcher {
+
+        // Start and end of each component in the current name; a start of -1 means absent
+        private final int[] bounds = new int[Component.VALUES.length * 2];
+        private final long[] selected = new long[words];
+        private final long[] accepted = new long[words];
+        private final java.util.regex.Matcher[][] regexMatchers = new java.util.regex.Matcher[components.length][];
+
+        private Matcher() {
+            for (int i = 0; i < components.length; i++) {
+                Pattern[] patterns = components[i].patterns;
+                regexMatchers[i] = new java.util.regex.Matcher[patterns.length];
+                for (int j = 0; j < patterns.length; j++) {
+                    regexMatchers[i][j] = patterns[j].matcher("");
+                }
+            }
+        }
+
+        /**
+         * Checks whether any selector matches a full resource name.
+         *
+         * @param name The full resource name
+         * @return true if a selector matches; false if none does or the name is not a full resource name
+         */
+        public boolean matches(String name) {
+            if (!split(name, bounds)) {
+                return false;
+            }
+            Arrays.fill(selected, -1L);
+            for (Component component : MATCH_ORDER) {
+                ComponentMatcher matcher = components[component.ordinal()];
+                if (!matcher.constrained) {
+                    continue;
+                }
+                int start = bounds[component.ordinal() * 2];
+                Arrays.fill(accepted, 0L);
+                if (start >= 0) {
+                    matcher.match(name, start, bounds[component.ordinal() * 2 + 1], accepted,
+                            regexMatchers[component.ordinal()]);
+                }
+                boolean any = false;
+                for (int w = 0; w < words; w++) {
+                    selected[w] &= accepted[w] | matcher.unconstrained[w];
+                    any |= selected[w] != 0;
+                }
+                if (!any) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Finds the components of a full resource name without allocating.
+     *
+     * @param name The full resource name
+     * @param bounds Receives the start and end of each component, or -1 for absent ones
+     * @return false if the name is not of the form //service.googleapis.com/collection/id...
+     */
+    static boolean split(String name, int[] bounds) {
+        if (name == null || !name.startsWith("//")) {
+            return false;
+        }
+        int length = name.length();
+        int hostEnd = name.indexOf('/', 2);
+        if (hostEnd < 0) {
+            return false;
+        }
+        Arrays.fill(bounds, -1);
+        int dot = name.indexOf('.', 2);
+        set(bounds, Component.SERVICE, 2, dot >= 0 && dot < hostEnd ? dot : hostEnd);
+
+        Component pendingKey = null;
+        int previousStart = -1;
+        int previousEnd = -1;
+        int lastStart = -1;
+        int lastEnd = -1;
+        int position = hostEnd + 1;
+        while (position < length) {
+            int end = name.indexOf('/', position);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > position) {
+                if (pendingKey != null) {
+                    // Buckets live under projects/_, which names no project
+                    boolean placeholder = end - position == 1 && name.charAt(position) == '_';
+                    if (!placeholder && bounds[pendingKey.ordinal() * 2] < 0) {
+                        set(bounds, pendingKey, position, end);
+                    }
+                    pendingKey = null;
+                } else {
+                    pendingKey = keyOf(name, position, end);
+                    if (pendingKey == null && end - position == 6 && name.startsWith("global", position)
+                            && bounds[Component.LOCATION.ordinal() * 2] < 0) {
+                        set(bounds, Component.LOCATION, position, end);
+                    }
+                }
+                previousStart = lastStart;
+                previousEnd = lastEnd;
+                lastStart = position;
+                lastEnd = end;
+            }
+            position = end + 1;
+        }
+        if (previousStart < 0) {
+            return false;
+        }
+        set(bounds, Component.TYPE, previousStart, previousEnd);
+        set(bounds, Component.NAME, lastStart, lastEnd);
+        return true;
+    }
+
+    private static Component keyOf(String name, int start, int end) {
+        switch (end - start) {
+            case 5:
+                return name.startsWith("zones", start) ? Component.LOCATION : null;
+            case 7:
+                return name.startsWith("regions", start) ? Component.LOCATION : null;
+            case 8:
+                return name.startsWith("projects", start) ? Component.PROJECT : null;
+            case 9:
+                return name.startsWith("locations", start) ? Component.LOCATION : null;
+            default:
+                return null;
+        }
+    }
+
+    private static void set(int[] bounds, Component component, int start, int end) {
+        bounds[component.ordinal() * 2] = start;
+        bounds[component.ordinal() * 2 + 1] = end;
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void or(long[] target, long[] bits) {
+        if (bits != null) {
+            for (int w = 0; w < target.length; w++) {
+                target[w] |= bits[w];
+            }
+        }
+    }
+
+    /**
+     * The terms of all selectors on one component.
+     */
+    private static final class ComponentMatcher {
+
+        private final int words;
+        private final long[] unconstrained;
+        private final TrieNode prefixes = new TrieNode();
+        private final TrieNode suffixes = new TrieNode();
+        private final List<Pattern> patternList = new ArrayList<>();
+        private final List<Integer> patternSelectors = new ArrayList<>();
+        private Pattern[] patterns = new Pattern[0];
+        private int[] patternIndexes = new int[0];
+        private boolean hasSuffixes;
+        private boolean constrained;
+
+        ComponentMatcher(int words) {
+            this.words = words;
+            this.unconstrained = new long[words];
+        }
+
+        void addUnconstrained(int selector) {
+            setBit(unconstrained, selector);
+        }
+
+        void addGlob(int selector, String glob) {
+            if (glob.isEmpty()) {
+                throw new IllegalArgumentException("Empty alternative in pattern");
+            }
+            int star = glob.indexOf('*');
+            boolean question = glob.indexOf('?') >= 0;
+            if (star < 0 && !question) {
+                prefixes.insert(glob, false).exact(words, selector);
+            } else if (!question && star == glob.length() - 1) {
+                prefixes.insert(glob.substring(0, star), false).prefix(words, selector);
+            } else if (!question && star == 0 && glob.indexOf('*', 1) < 0) {
+                suffixes.insert(glob.substring(1), true).prefix(words, selector);
+                hasSuffixes = true;
+            } else {
+                addRegex(selector, Pattern.compile(globToRegex(glob)));
+            }
+        }
+
+        void addRegex(int selector, Pattern pattern) {
+            patternList.add(pattern);
+            patternSelectors.add(selector);
+        }
+
+        void finish(int selectorCount) {
+            patterns = patternList.toArray(new Pattern[0]);
+            patternIndexes = patternSelectors.stream().mapToInt(Integer::intValue).toArray();
+            int free = 0;
+            for (long word : unconstrained) {
+                free += Long.bitCount(word);
+            }
+            constrained = free < selectorCount;
+        }
+
+        /**
+         * Sets the bits of every selector whose term accepts name[start, end).
+         */
+        void match(String name, int start, int end, long[] accepted, java.util.regex.Matcher[] regexMatchers) {
+            TrieNode node = prefixes;
+            or(accepted, node.prefixOf);
+            for (int i = start; node != null && i < end; i++) {
+                node = node.child(name.charAt(i));
+                if (node != null) {
+                    or(accepted, node.prefixOf);
+                }
+            }
+            if (node != null) {
+                or(accepted, node.exactly);
+            }
+            if (hasSuffixes) {
+                node = suffixes;
+                or(accepted, node.prefixOf);
+                for (int i = end - 1; node != null && i >= start; i--) {
+                    node = node.child(name.charAt(i));
+                    if (node != null) {
+                        or(accepted, node.prefixOf);
+                    }
+                }
+            }
+            for (int i = 0; i < regexMatchers.length; i++) {
+                int selector = patternIndexes[i];
+                if ((accepted[selector >>> 6] & (1L << selector)) == 0) {
+                    java.util.regex.Matcher regex = regexMatchers[i];
+                    regex.reset(name).region(start, end);
+                    if (regex.matches()) {
+                        setBit(accepted, selector);
+                    }
+                }
+            }
+        }
+
+        private static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder(glob.length() + 8);
+            int literalStart = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (i > literalStart) {
+                        regex.append(Pattern.quote(glob.substring(literalStart, i)));
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                    literalStart = i + 1;
+                }
+            }
+            if (literalStart < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(literalStart)));
+            }
+            return regex.toString();
+        }
+    }
+
+    /**
+     * A trie node with the selectors whose pattern ends here: exactly, or followed by anything.
+     */
+    private static final class TrieNode {
+
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        private long[] exactly;
+        private long[] prefixOf;
+
+        TrieNode child(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        TrieNode insert(String text, boolean reversed) {
+            TrieNode node = this;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(reversed ? text.length() - 1 - i : i);
+                TrieNode next = node.child(c);
+                if (next == null) {
+                    next = new TrieNode();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = c;
+                    node.children[node.children.length - 1] = next;
+                }
+                node = next;
+            }
+            return node;
+        }
+
+        void exact(int words, int selector) {
+            if (exactly == null) {
+                exactly = new long[words];
+            }
+            setBit(exactly, selector);
+        }
+
+        void prefix(int words, int selector) {
+            if (prefixOf == null) {
+                prefixOf = new long[words];
+            }
+            setBit(prefixOf, selector);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered, machine-readable command output: tag bindings, keys, values and planned operations,
+ * one record per line. Output is buffered; call {@link #flush()} at natural boundaries such as the
+ * end of a page, so that records reach the reader in large writes rather than one console call each.
+ */
+public interface ResultWriter extends AutoCloseable {
+
+    /**
+     * Opens a writer for a format.
+     *
+     * @param out The stream to write to; it is not closed by {@link #close()}
+     * @param format The output format
+     * @param includeType Whether each record names its kind, for outputs that mix kinds
+     * @return The writer
+     * @throws IOException If the writer cannot be created
+     */
+    static ResultWriter open(OutputStream out, ManifestReader.Format format, boolean includeType) throws IOException {
+        return format == ManifestReader.Format.CSV ? new CsvWriter(out, includeType) : new NdjsonWriter(out, includeType);
+    }
+
+    /**
+     * Writes one tag binding.
+     *
+     * @param binding The tag binding to write
+     * @throws IOException If writing fails
+     */
+    void write(TagBinding binding) throws IOException;
+
+    /**
+     * Writes one tag key.
+     *
+     * @param tagKey The tag key to write
+     * @throws IOException If writing fails
+     */
+    void write(TagKey tagKey) throws IOException;
+
+    /**
+     * Writes one tag value.
+     *
+     * @param tagValue The tag value to write
+     * @throws IOException If writing fails
+     */
+    void write(TagValue tagValue) throws IOException;
+
+    /**
+     * Writes one tag binding operation in the manifest format read by {@link ManifestReader},
+     * so that a written plan can be applied later.
+     *
+     * @param operation The operation to write
+     * @throws IOException If writing fails
+     */
+    void write(TagOperation operation) throws IOException;
+
+    /**
+     * Flushes buffered records to the underlying stream.
+     *
+     * @throws IOException If writing fails
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flushes and releases the writer without closing the underlying stream.
+     *
+     * @throws IOException If writing fails
+     */
+    @Override
+    void close() throws IOException;
+}
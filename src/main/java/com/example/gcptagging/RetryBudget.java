@@ -0,0 +1,72 @@
+package com.example.gcptagging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide limit on how many retries may be issued relative to first attempts.
+ * Every first attempt deposits a fraction of a token and every retry withdraws a whole one,
+ * with a small per-second allowance so that low-volume callers can still retry. During a real
+ * outage the budget runs dry and failures are reported instead of multiplying load.
+ */
+public class RetryBudget {
+
+    private static final RetryBudget SHARED = new RetryBudget(0.1, 10, 100);
+
+    private final double depositPerRequest;
+    private final double minRetriesPerNano;
+    private final double maxBalance;
+    private double balance;
+    private long lastRefillNanos;
+
+    /**
+     * Constructor for RetryBudget.
+     *
+     * @param retryRatio Retries allowed per first attempt (e.g. 0.1 for 10%)
+     * @param minRetriesPerSecond Retries always allowed per second regardless of traffic
+     * @param maxBalance The most retries that can be saved up for a burst
+     */
+    public RetryBudget(double retryRatio, double minRetriesPerSecond, double maxBalance) {
+        this.depositPerRequest = retryRatio;
+        this.minRetriesPerNano = minRetriesPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.maxBalance = maxBalance;
+        this.balance = maxBalance;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the budget shared by all tagging operations in this process.
+     *
+     * @return The shared retry budget
+     */
+    public static RetryBudget shared() {
+        return SHARED;
+    }
+
+    /**
+     * Records a first attempt, earning credit for future retries.
+     */
+    public synchronized void recordRequest() {
+        refill();
+        balance = Math.min(maxBalance, balance + depositPerRequest);
+    }
+
+    /**
+     * Tries to spend one retry.
+     *
+     * @return true if the retry may proceed, false if the budget is exhausted
+     */
+    public synchronized boolean tryAcquireRetry() {
+        refill();
+        if (balance < 1.0) {
+            return false;
+        }
+        balance -= 1.0;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        balance = Math.min(maxBalance, balance + (now - lastRefillNanos) * minRetriesPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.gcptagging;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry settings for one kind of tagging operation.
+ * Backoff uses "full jitter": each wait is drawn uniformly between zero and the exponential
+ * ceiling for that attempt, which spreads retries from many concurrent callers apart.
+ */
+public class RetryPolicy {
+
+    /**
+     * Default policy for creating tag bindings; ALREADY_EXISTS counts as success.
+     */
+    public static final RetryPolicy CREATE = newBuilder()
+            .setIdempotentSuccessCodes(EnumSet.of(StatusCode.Code.ALREADY_EXISTS))
+            .build();
+
+    /**
+     * Default policy for deleting tag bindings; NOT_FOUND counts as success.
+     */
+    public static final RetryPolicy DELETE = newBuilder()
+            .setIdempotentSuccessCodes(EnumSet.of(StatusCode.Code.NOT_FOUND))
+            .build();
+
+    /**
+     * Default policy for listing tag bindings.
+     */
+    public static final RetryPolicy LIST = newBuilder()
+            .setInitialBackoff(Duration.ofMillis(500))
+            .setAttemptTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double backoffMultiplier;
+    private final Duration attemptTimeout;
+    private final Duration totalTimeout;
+    private final Set<StatusCode.Code> retryableCodes;
+    private final Set<StatusCode.Code> idempotentSuccessCodes;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.backoffMultiplier = builder.backoffMultiplier;
+        this.attemptTimeout = builder.attemptTimeout;
+        this.totalTimeout = builder.totalTimeout;
+        this.retryableCodes = immutableCopy(builder.retryableCodes);
+        this.idempotentSuccessCodes = immutableCopy(builder.idempotentSuccessCodes);
+    }
+    
+    private static Set<StatusCode.Code> immutableCopy(Set<StatusCode.Code> codes) {
+        if (codes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(EnumSet.copyOf(codes));
+    }
+
+    /**
+     * Creates a builder initialized with the default settings.
+     *
+     * @return A new builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a builder initialized with this policy's settings.
+     *
+     * @return A new builder
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public Duration getAttemptTimeout() {
+        return attemptTimeout;
+    }
+
+    public Duration getTotalTimeout() {
+        return totalTimeout;
+    }
+
+    /**
+     * Computes the delay before the given retry, using full jitter.
+     *
+     * @param retryNumber The retry number, starting at 1 for the first retry
+     * @return The delay in milliseconds
+     */
+    public long backoffMillis(int retryNumber) {
+        double ceiling = initialBackoff.toMillis() * Math.pow(backoffMultiplier, retryNumber - 1);
+        long cappedCeiling = (long) Math.min(maxBackoff.toMillis(), ceiling);
+        return ThreadLocalRandom.current().nextLong(cappedCeiling + 1);
+    }
+
+    /**
+     * Checks whether a failure is transient and worth retrying.
+     *
+     * @param error The failure
+     * @return true if the failure has a retryable status code
+     */
+    public boolean isRetryable(Throwable error) {
+        StatusCode.Code code = statusCodeOf(error);
+        return code != null && retryableCodes.contains(code);
+    }
+
+    /**
+     * Checks whether a failure means the desired state already holds, such as
+     * ALREADY_EXISTS on create or NOT_FOUND on delete.
+     *
+     * @param error The failure
+     * @return true if the failure should be treated as success
+     */
+    public boolean isIdempotentSuccess(Throwable error) {
+        StatusCode.Code code = statusCodeOf(error);
+        return code != null && idempotentSuccessCodes.contains(code);
+    }
+
+    /**
+     * Finds the gRPC status code of an error, looking through wrapping exceptions.
+     *
+     * @param error The error to inspect
+     * @return The status code, or null if the error did not come from the API
+     */
+    static StatusCode.Code statusCodeOf(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof ApiException) {
+                return ((ApiException) t).getStatusCode().getCode();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builder for RetryPolicy.
+     */
+    public static class Builder {
+
+        private int maxAttempts = 5;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofSeconds(32);
+        private double backoffMultiplier = 2.0;
+        private Duration attemptTimeout = Duration.ofSeconds(60);
+        private Duration totalTimeout = Duration.ofMinutes(5);
+        private Set<StatusCode.Code> retryableCodes = EnumSet.of(
+                StatusCode.Code.UNAVAILABLE,
+                StatusCode.Code.DEADLINE_EXCEEDED,
+                StatusCode.Code.ABORTED,
+                StatusCode.Code.RESOURCE_EXHAUSTED);
+        private Set<StatusCode.Code> idempotentSuccessCodes = EnumSet.noneOf(StatusCode.Code.class);
+
+        private Builder() {
+        }
+
+        private Builder(RetryPolicy policy) {
+            this.maxAttempts = policy.maxAttempts;
+            this.initialBackoff = policy.initialBackoff;
+            this.maxBackoff = policy.maxBackoff;
+            this.backoffMultiplier = policy.backoffMultiplier;
+            this.attemptTimeout = policy.attemptTimeout;
+            this.totalTimeout = policy.totalTimeout;
+            this.retryableCodes = policy.retryableCodes;
+            this.idempotentSuccessCodes = policy.idempotentSuccessCodes;
+        }
+
+        public Builder setMaxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Builder setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public Builder setBackoffMultiplier(double backoffMultiplier) {
+            this.backoffMultiplier = backoffMultiplier;
+            return this;
+        }
+
+        public Builder setAttemptTimeout(Duration attemptTimeout) {
+            this.attemptTimeout = attemptTimeout;
+            return this;
+        }
+
+        public Builder setTotalTimeout(Duration totalTimeout) {
+            this.totalTimeout = totalTimeout;
+            return this;
+        }
+
+        public Builder setRetryableCodes(Set<StatusCode.Code> retryableCodes) {
+            this.retryableCodes = retryableCodes;
+            return this;
+        }
+
+        public Builder setIdempotentSuccessCodes(Set<StatusCode.Code> idempotentSuccessCodes) {
+            this.idempotentSuccessCodes = idempotentSuccessCodes;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
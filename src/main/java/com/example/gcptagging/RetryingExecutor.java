@@ -0,0 +1,358 @@
+package com.example.gcptagging;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.longrunning.OperationFuture;
+import com.google.api.gax.longrunning.OperationSnapshot;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous calls under a {@link RetryPolicy}.
+ * Each attempt first waits for admission, usually quota from a {@link QuotaThrottle}, and is then sent.
+ * The permit is released when the attempt completes or, for a long-running call, as soon as the API
+ * has accepted the request.
+ * A blocking admission makes the first attempt wait on the calling thread, so that quota waits still
+ * push back on the caller; an asynchronous admission lets the caller continue at once.
+ * Retries are scheduled after their backoff and always wait for admission asynchronously on the timer
+ * thread, so a backlog of retries waiting for quota holds no threads.
+ * Cancelling the returned future cancels the admission or attempt in progress and stops further retries.
+ */
+class RetryingExecutor implements AutoCloseable {
+
+    /**
+     * Waits for permission to send one attempt.
+     */
+    interface Admission {
+
+        /**
+         * Waits for permission to send the first attempt, possibly blocking the calling thread.
+         */
+        ApiFuture<QuotaThrottle.Permit> admit() throws InterruptedException;
+
+        /**
+         * Waits for permission to send a retry. Retries are started on the timer thread, so this must not block.
+         */
+        ApiFuture<QuotaThrottle.Permit> admitRetry();
+
+        /**
+         * Creates an admission that never blocks.
+         *
+         * @param acquire Claims a permit asynchronously
+         * @return The admission
+         */
+        static Admission async(Supplier<ApiFuture<QuotaThrottle.Permit>> acquire) {
+            return new Admission() {
+                @Override
+                public ApiFuture<QuotaThrottle.Permit> admit() {
+                    return acquire.get();
+                }
+
+                @Override
+                public ApiFuture<QuotaThrottle.Permit> admitRetry() {
+                    return acquire.get();
+                }
+            };
+        }
+
+        /**
+         * Creates an admission whose first attempt waits on the calling thread.
+         *
+         * @param acquire Claims a permit for the first attempt, blocking until it is granted
+         * @param acquireAsync Claims a permit for a retry asynchronously
+         * @return The admission
+         */
+        static Admission blocking(BlockingAcquire acquire, Supplier<ApiFuture<QuotaThrottle.Permit>> acquireAsync) {
+            return new Admission() {
+                @Override
+                public ApiFuture<QuotaThrottle.Permit> admit() throws InterruptedException {
+                    return ApiFutures.immediateFuture(acquire.acquire());
+                }
+
+                @Override
+                public ApiFuture<QuotaThrottle.Permit> admitRetry() {
+                    return acquireAsync.get();
+                }
+            };
+        }
+    }
+
+    /**
+     * Claims a permit, blocking until it is granted.
+     */
+    interface BlockingAcquire {
+        QuotaThrottle.Permit acquire() throws InterruptedException;
+    }
+
+    /**
+     * Sends one attempt of a call.
+     */
+    interface Call<T> {
+        ApiFuture<T> submit();
+    }
+
+    private final RetryBudget budget;
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Constructor for RetryingExecutor.
+     *
+     * @param budget The retry budget shared with other executors
+     */
+    RetryingExecutor(RetryBudget budget) {
+        this.budget = budget;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("tagger-retry-timer"));
+        // Deadline timers of calls that finish early would otherwise stay queued until they expire
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns the timer thread, for waits that must not block a caller.
+     *
+     * @return The scheduler
+     */
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Starts a call and retries it according to the policy.
+     *
+     * @param policy The retry policy for this kind of call
+     * @param metrics The metrics of the method being called
+     * @param admission Waits for permission to send each attempt
+     * @param call Sends one attempt once it is admitted
+     * @param idempotentResult Supplies the result when a failure means the desired state already holds
+     * @param timeoutNanos Time allowed for the whole call, including admission and retries
+     * @return A future that completes with the first successful result or the final failure
+     * @throws InterruptedException If interrupted while waiting for the first admission
+     */
+    <T> ApiFuture<T> execute(RetryPolicy policy, TaggingMetrics.MethodMetrics metrics, Admission admission,
+            Call<T> call, Supplier<T> idempotentResult, long timeoutNanos) throws InterruptedException {
+        budget.recordRequest();
+        long startNanos = metrics.startCall();
+        RetryingCall<T> retryingCall = new RetryingCall<>(policy, metrics, admission, call, idempotentResult, timeoutNanos);
+        metrics.endCallOnCompletion(startNanos, retryingCall.result);
+        try {
+            retryingCall.startAttempt(false);
+        } catch (InterruptedException e) {
+            retryingCall.result.setException(e);
+            throw e;
+        }
+        return retryingCall.result;
+    }
+
+    /**
+     * Stops the timer thread.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Throwable deadlineExceeded(String message, Throwable cause) {
+        return ApiExceptionFactory.createException(message, cause,
+                GrpcStatusCode.of(Status.Code.DEADLINE_EXCEEDED), true);
+    }
+
+    /**
+     * State of one logical call across its attempts.
+     */
+    private class RetryingCall<T> {
+
+        private final RetryPolicy policy;
+        private final TaggingMetrics.MethodMetrics metrics;
+        private final Admission admission;
+        private final Call<T> call;
+        private final Supplier<T> idempotentResult;
+        private final SettableApiFuture<T> result = SettableApiFuture.create();
+        private final long deadlineNanos;
+        private int attemptNumber;
+        // The admission or attempt in progress, cancelled when the call ends early
+        private volatile Future<?> current;
+
+        RetryingCall(RetryPolicy policy, TaggingMetrics.MethodMetrics metrics, Admission admission, Call<T> call,
+                Supplier<T> idempotentResult, long timeoutNanos) {
+            this.policy = policy;
+            this.metrics = metrics;
+            this.admission = admission;
+            this.call = call;
+            this.idempotentResult = idempotentResult;
+            this.deadlineNanos = System.nanoTime() + timeoutNanos;
+
+            // The deadline also covers time spent waiting for admission, not only attempts
+            ScheduledFuture<?> deadline = scheduler.schedule(() -> result.setException(deadlineExceeded(
+                    "Call did not complete within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms", null)),
+                    timeoutNanos, TimeUnit.NANOSECONDS);
+            result.addListener(() -> {
+                deadline.cancel(false);
+                Future<?> inProgress = current;
+                if (inProgress != null) {
+                    inProgress.cancel(true);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        void startAttempt(boolean retry) throws InterruptedException {
+            attemptNumber++;
+            ApiFuture<QuotaThrottle.Permit> permit;
+            try {
+                permit = retry ? admission.admitRetry() : admission.admit();
+            } catch (RuntimeException e) {
+                onFailure(e, false);
+                return;
+            }
+            track(permit);
+
+            ApiFutures.addCallback(permit, new ApiFutureCallback<QuotaThrottle.Permit>() {
+                @Override
+                public void onSuccess(QuotaThrottle.Permit granted) {
+                    send(granted);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    RetryingCall.this.onFailure(t, false);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void send(QuotaThrottle.Permit permit) {
+            if (result.isDone()) {
+                permit.release(new CancellationException("Call already finished"));
+                return;
+            }
+            ApiFuture<T> future;
+            try {
+                future = call.submit();
+            } catch (RuntimeException e) {
+                permit.release(e);
+                onFailure(e, false);
+                return;
+            }
+            track(future);
+            if (future instanceof OperationFuture) {
+                // Free the slot once the API accepts the request, so the concurrency limit
+                // adapts to RPC latency rather than to how long the operation takes to finish
+                ApiFutures.addCallback(((OperationFuture<?, ?>) future).getInitialFuture(),
+                        new ApiFutureCallback<OperationSnapshot>() {
+                            @Override
+                            public void onSuccess(OperationSnapshot snapshot) {
+                                permit.release(null);
+                            }
+
+                            @Override
+                            public void onFailure(Throwable t) {
+                                permit.release(t);
+                            }
+                        }, MoreExecutors.directExecutor());
+            }
+
+            // Cancel the attempt if it outlives its own timeout; the call's deadline is enforced separately
+            TimeoutTask timeout = new TimeoutTask(future);
+            ScheduledFuture<?> timer = scheduler.schedule(timeout,
+                    policy.getAttemptTimeout().toNanos(), TimeUnit.NANOSECONDS);
+
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                @Override
+                public void onSuccess(T value) {
+                    timer.cancel(false);
+                    permit.release(null);
+                    result.set(value);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    timer.cancel(false);
+                    permit.release(t);
+                    RetryingCall.this.onFailure(t, timeout.fired);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private void track(Future<?> inProgress) {
+            current = inProgress;
+            // The call may have ended between starting this stage and publishing it
+            if (result.isDone()) {
+                inProgress.cancel(true);
+            }
+        }
+
+        private void onFailure(Throwable error, boolean timedOut) {
+            if (result.isDone()) {
+                // Cancelled or past the deadline; the outcome is already decided
+                return;
+            }
+            if (timedOut) {
+                error = deadlineExceeded("Attempt " + attemptNumber + " timed out", error);
+            }
+            if (policy.isIdempotentSuccess(error)) {
+                result.set(idempotentResult.get());
+                return;
+            }
+            if (!policy.isRetryable(error) || attemptNumber >= policy.getMaxAttempts()) {
+                result.setException(error);
+                return;
+            }
+            long delayMillis = policy.backoffMillis(attemptNumber);
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) >= deadlineNanos
+                    || !budget.tryAcquireRetry()) {
+                result.setException(error);
+                return;
+            }
+            metrics.recordRetry();
+            track(scheduler.schedule(this::retry, delayMillis, TimeUnit.MILLISECONDS));
+        }
+
+        private void retry() {
+            try {
+                startAttempt(true);
+            } catch (InterruptedException e) {
+                // Retries are admitted asynchronously and never wait
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Cancels an attempt when its time is up and remembers that it did so.
+     */
+    private static class TimeoutTask implements Runnable {
+
+        private final ApiFuture<?> future;
+        private volatile boolean fired;
+
+        TimeoutTask(ApiFuture<?> future) {
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            fired = true;
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package com.example.gcptagging;
+
+import com.google.common.hash.Hashing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits a bulk job into shards and runs each shard in its own worker process, so that one job
+ * can use the quota of several service accounts, and more client capacity than one process has.
+ *
+ * Operations are assigned to shards by a consistent hash of their project: all operations on a
+ * project go to the same worker, and changing the number of workers moves only a proportional
+ * part of the projects. Each shard is written to a file in the work directory and run by a
+ * {@link ShardWorker}, either started by the coordinator as a child process or attached on a
+ * loopback port. Workers journal their shards in the work directory, so a stopped job can be
+ * resumed with the same number of workers.
+ *
+ * Quotas are per account: workers that share an account split its quota evenly, and when one of
+ * them finishes, its share goes to the others that are still running. Progress from all workers is
+ * merged and logged, and failed operations are collected into the summary and, optionally, into
+ * a manifest that can be applied again.
+ */
+public class ShardCoordinator implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 10_000;
+    private static final long READY_TIMEOUT_MILLIS = 60_000;
+    private static final long EXIT_TIMEOUT_SECONDS = 10;
+
+    private enum State {
+        STARTING,
+        READY,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final Path workDirectory;
+    private final int writeRequestsPerMinute;
+    private final int readRequestsPerMinute;
+    private final int maxInFlight;
+    private final ResultWriter failures;
+    private final List<Worker> workers = new ArrayList<>();
+    private final BulkSummary summary = new BulkSummary();
+    // Guards the state and counters of every worker
+    private final Object lock = new Object();
+
+    /**
+     * Constructor for ShardCoordinator.
+     *
+     * @param workDirectory Directory for the shard files and journals; must not contain whitespace
+     * @param writeRequestsPerMinute Write quota of each account, or 0 for no rate limit
+     * @param readRequestsPerMinute Read quota of each account, or 0 for no rate limit
+     * @param maxInFlight The maximum number of operations in flight in each worker
+     * @param failures Writer that receives every failed operation as a manifest row, or null
+     */
+    public ShardCoordinator(Path workDirectory, int writeRequestsPerMinute, int readRequestsPerMinute,
+            int maxInFlight, ResultWriter failures) {
+        this.workDirectory = workDirectory.toAbsolutePath().normalize();
+        if (this.workDirectory.toString().chars().anyMatch(Character::isWhitespace)) {
+            throw new IllegalArgumentException("Work directory cannot contain whitespace: " + this.workDirectory);
+        }
+        this.writeRequestsPerMinute = writeRequestsPerMinute;
+        this.readRequestsPerMinute = readRequestsPerMinute;
+        this.maxInFlight = maxInFlight;
+        this.failures = failures;
+    }
+
+    /**
+     * Starts a worker process that speaks the {@link ShardWorker} protocol on its standard input and output.
+     * Its standard error is passed through.
+     *
+     * @param command The command line of the worker
+     * @throws IOException If the process cannot be started
+     */
+    public void startWorker(List<String> command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        addWorker(new Worker(workers.size(), "pid " + process.pid(), process, null,
+                process.getInputStream(), process.getOutputStream()));
+    }
+
+    /**
+     * Attaches to a worker already listening on a loopback port, authenticating with its token file.
+     *
+     * @param port The worker's port
+     * @throws IOException If the token file cannot be read or the worker cannot be reached
+     */
+    public void attachWorker(int port) throws IOException {
+        String token = new String(Files.readAllBytes(TaggingDaemon.tokenFile(port)), StandardCharsets.UTF_8).trim();
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);
+        Worker worker = new Worker(workers.size(), "port " + port, null, socket,
+                socket.getInputStream(), socket.getOutputStream());
+        worker.send("auth " + token);
+        addWorker(worker);
+    }
+
+    /**
+     * Returns the shard an operation belongs to.
+     *
+     * @param operation The operation
+     * @param shards The number of shards
+     * @return The shard index, from 0
+     */
+    public static int shardOf(TagOperation operation, int shards) {
+        return Hashing.consistentHash(Hashing.murmur3_128().hashString(projectKey(operation), StandardCharsets.UTF_8), shards);
+    }
+
+    /**
+     * Splits the operations into one shard per worker, runs the shards and waits for all of them.
+     *
+     * @param operations The operations to run
+     * @param resume Whether to continue the journals of an earlier run in the work directory
+     * @return The merged summary of all workers
+     * @throws IOException If the shards cannot be written, or a worker does not start
+     * @throws InterruptedException If interrupted while waiting for the workers
+     */
+    public BulkSummary run(Iterator<TagOperation> operations, boolean resume) throws IOException, InterruptedException {
+        if (workers.isEmpty()) {
+            throw new IllegalStateException("No workers to run the shards");
+        }
+        split(operations, resume);
+        awaitReady();
+
+        synchronized (lock) {
+            for (Worker worker : workers) {
+                worker.state = State.RUNNING;
+            }
+            for (Worker worker : workers) {
+                int[] share = shareOf(worker);
+                worker.writeShare = share[0];
+                worker.readShare = share[1];
+                worker.send("job " + shardFile(worker.index) + " " + share[0] + " " + share[1] + " " + maxInFlight
+                        + " " + journalFile(worker.index) + " " + resume);
+            }
+            long nextProgressMillis = System.currentTimeMillis() + PROGRESS_INTERVAL_MILLIS;
+            while (countIn(State.RUNNING) > 0) {
+                long waitMillis = nextProgressMillis - System.currentTimeMillis();
+                if (waitMillis <= 0) {
+                    logProgress();
+                    nextProgressMillis += PROGRESS_INTERVAL_MILLIS;
+                    continue;
+                }
+                lock.wait(waitMillis);
+                rebalance();
+            }
+        }
+        summary.finish();
+        return summary;
+    }
+
+    /**
+     * Returns the number of shards that did not run to the end, because their worker failed or exited.
+     *
+     * @return The number of incomplete shards
+     */
+    public int getIncompleteShards() {
+        synchronized (lock) {
+            return countIn(State.FAILED);
+        }
+    }
+
+    /**
+     * Prints one line per shard: its worker, account, size and outcome.
+     *
+     * @param out The stream to print to
+     */
+    public void printShards(PrintStream out) {
+        synchronized (lock) {
+            out.println("  Shards:");
+            for (Worker worker : workers) {
+                out.println(String.format(Locale.ROOT, "    %-3d %-12s %8d operations %8d done %6d failed  %7.1fs  %s%s",
+                        worker.index, worker.name, worker.operations, worker.completed(), worker.failed,
+                        worker.elapsedMillis / 1000.0, worker.state.name().toLowerCase(Locale.ROOT),
+                        worker.error != null ? " (" + worker.error + ")" : ""));
+            }
+        }
+    }
+
+    /**
+     * Stops the workers this coordinator started and disconnects from attached workers, which keep running.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            if (worker.process == null) {
+                worker.closeQuietly();
+                continue;
+            }
+            worker.send("shutdown");
+            worker.closeQuietly();
+            try {
+                if (!worker.process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    LOG.warn("Worker {} did not exit; stopping it", worker.name);
+                    worker.process.destroy();
+                }
+            } catch (InterruptedException e) {
+                worker.process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the key operations are sharded by: the project of the resource, or the whole
+     * resource name for resources outside a project, such as folders and buckets.
+     */
+    static String projectKey(TagOperation operation) {
+        String resourceName = operation.getResourceName();
+        if (resourceName != null) {
+            String project = segmentAfter(resourceName, "/projects/", '/');
+            return project != null ? "projects/" + project : resourceName;
+        }
+        // Deletes by name only: tagBindings/<service>@projects@<id>@...@tagValues@<id>
+        String tagBindingName = operation.getTagBindingName();
+        String project = segmentAfter(tagBindingName, "@projects@", '@');
+        if (project != null) {
+            return "projects/" + project;
+        }
+        int tagValue = tagBindingName.lastIndexOf("@tagValues@");
+        return tagValue < 0 ? tagBindingName : tagBindingName.substring(0, tagValue);
+    }
+
+    private static String segmentAfter(String name, String marker, char separator) {
+        int start = name.indexOf(marker);
+        if (start < 0) {
+            return null;
+        }
+        start += marker.length();
+        int end = name.indexOf(separator, start);
+        String segment = end < 0 ? name.substring(start) : name.substring(start, end);
+        // Buckets are named //storage.googleapis.com/projects/_/buckets/..., without their project
+        return segment.isEmpty() || segment.equals("_") ? null : segment;
+    }
+
+    private void addWorker(Worker worker) {
+        workers.add(worker);
+        Thread reader = new Thread(() -> readReports(worker), "coordinator-worker-" + worker.index);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private Path shardFile(int index) {
+        return workDirectory.resolve("shard-" + index + ".ndjson");
+    }
+
+    private Path journalFile(int index) {
+        return workDirectory.resolve("shard-" + index + ".journal");
+    }
+
+    /**
+     * Writes every operation to the shard file of its worker, after checking that the work
+     * directory fits the run: a new run must not overwrite journals, and a resumed run must use
+     * the number of shards the journals were written for.
+     */
+    private void split(Iterator<TagOperation> operations, boolean resume) throws IOException {
+        Files.createDirectories(workDirectory);
+        int existingShards = 0;
+        boolean journaled = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(workDirectory, "shard-*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".ndjson")) {
+                    existingShards++;
+                } else if (name.endsWith(".journal") && Files.size(file) > 0) {
+                    journaled = true;
+                }
+            }
+        }
+        if (journaled && !resume) {
+            throw new IOException("Work directory " + workDirectory + " holds the journals of an earlier run; "
+                    + "pass --resume to continue it or remove it");
+        }
+        if (resume && existingShards > 0 && existingShards != workers.size()) {
+            throw new IOException("Work directory " + workDirectory + " was split into " + existingShards
+                    + " shards; resume with " + existingShards + " workers");
+        }
+
+        int shards = workers.size();
+        OutputStream[] streams = new OutputStream[shards];
+        NdjsonWriter[] writers = new NdjsonWriter[shards];
+        try {
+            for (int i = 0; i < shards; i++) {
+                streams[i] = new BufferedOutputStream(Files.newOutputStream(shardFile(i)), 1 << 16);
+                writers[i] = new NdjsonWriter(streams[i]);
+            }
+            long total = 0;
+            while (operations.hasNext()) {
+                TagOperation operation = operations.next();
+                int shard = shardOf(operation, shards);
+                writers[shard].write(operation);
+                workers.get(shard).operations++;
+                total++;
+            }
+            LOG.info("Split {} operations into {} shards in {}", total, shards, workDirectory);
+        } finally {
+            for (int i = 0; i < shards; i++) {
+                if (writers[i] != null) {
+                    writers[i].close();
+                }
+                if (streams[i] != null) {
+                    streams[i].close();
+                }
+            }
+        }
+    }
+
+    private void awaitReady() throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+        synchronized (lock) {
+            while (countIn(State.STARTING) > 0) {
+                long waitMillis = deadline - System.currentTimeMillis();
+                if (waitMillis <= 0) {
+                    throw new IOException("Workers did not report ready within " + READY_TIMEOUT_MILLIS / 1000 + "s");
+                }
+                lock.wait(waitMillis);
+            }
+            for (Worker worker : workers) {
+                if (worker.state == State.FAILED) {
+                    throw new IOException("Worker " + worker.name + " did not start: " + worker.error);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the write and read share of a worker: its account's quota split evenly among the
+     * running workers of that account. Called with the lock held.
+     */
+    private int[] shareOf(Worker worker) {
+        int running = 0;
+        for (Worker other : workers) {
+            if (other.state == State.RUNNING && other.account.equals(worker.account)) {
+                running++;
+            }
+        }
+        running = Math.max(1, running);
+        return new int[] {
+            writeRequestsPerMinute > 0 ? Math.max(1, writeRequestsPerMinute / running) : 0,
+            readRequestsPerMinute > 0 ? Math.max(1, readRequestsPerMinute / running) : 0
+        };
+    }
+
+    /**
+     * Hands the shares of finished workers to the running workers of the same account. Called with the lock held.
+     */
+    private void rebalance() {
+        for (Worker worker : workers) {
+            if (worker.state != State.RUNNING) {
+                continue;
+            }
+            int[] share = shareOf(worker);
+            if (share[0] != worker.writeShare || share[1] != worker.readShare) {
+                worker.writeShare = share[0];
+                worker.readShare = share[1];
+                worker.send("quota " + share[0] + " " + share[1]);
+                LOG.debug("Worker {} now has {} writes and {} reads per minute", worker.name, share[0], share[1]);
+            }
+        }
+    }
+
+    private int countIn(State state) {
+        int count = 0;
+        for (Worker worker : workers) {
+            if (worker.state == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void logProgress() {
+        long operations = 0;
+        long completed = 0;
+        long failed = 0;
+        for (Worker worker : workers) {
+            operations += worker.operations;
+            completed += worker.completed();
+            failed += worker.failed;
+        }
+        LOG.info("Progress: {} of {} operations completed, {} failed; {} of {} shards finished",
+                completed, operations, failed, workers.size() - countIn(State.RUNNING), workers.size());
+    }
+
+    private void readReports(Worker worker) {
+        String readError = null;
+        try {
+            String line;
+            while ((line = worker.reader.readLine()) != null) {
+                handleReport(worker, line);
+            }
+        } catch (IOException e) {
+            LOG.debug("Lost connection to worker {}: {}", worker.name, e.getMessage());
+        } catch (RuntimeException e) {
+            // The run waits for every worker to leave RUNNING, so a bad report must still fail the worker
+            LOG.warn("Cannot read reports of worker {}: {}", worker.name, e.toString());
+            readError = "unreadable report: " + e.getMessage();
+        } finally {
+            synchronized (lock) {
+                if (worker.state != State.DONE) {
+                    fail(worker, worker.error != null ? worker.error : readError != null ? readError : "worker exited");
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void handleReport(Worker worker, String line) throws IOException {
+        int space = line.indexOf(' ');
+        String kind = space < 0 ? line : line.substring(0, space);
+        String rest = space < 0 ? "" : line.substring(space + 1);
+        switch (kind) {
+            case "ready":
+                synchronized (lock) {
+                    worker.account = rest;
+                    if (worker.state == State.STARTING) {
+                        worker.state = State.READY;
+                    }
+                    lock.notifyAll();
+                }
+                break;
+
+            case "progress": {
+                long[] counts = parseCounts(rest, 4);
+                synchronized (lock) {
+                    worker.setCounts(counts);
+                }
+                break;
+            }
+
+            case "failed": {
+                int tab = rest.indexOf('\t');
+                String row = tab < 0 ? rest : rest.substring(0, tab);
+                String message = tab < 0 ? "" : rest.substring(tab + 1);
+                TagOperation operation;
+                try (ManifestReader reader = new ManifestReader(new StringReader(row), ManifestReader.Format.NDJSON,
+                        "worker " + worker.name)) {
+                    operation = reader.next();
+                }
+                summary.recordFailure(operation, message);
+                if (failures != null) {
+                    synchronized (failures) {
+                        failures.write(operation);
+                    }
+                }
+                break;
+            }
+
+            case "done": {
+                long[] counts = parseCounts(rest, 5);
+                LOG.info("Shard {} finished on worker {}: {} operations in {}", worker.index, worker.name,
+                        worker.operations, Duration.ofMillis(counts[4]));
+                synchronized (lock) {
+                    worker.setCounts(counts);
+                    worker.elapsedMillis = counts[4];
+                    worker.state = State.DONE;
+                    // Failures were counted one by one as they were reported
+                    summary.add(counts[0], counts[1], counts[3]);
+                    lock.notifyAll();
+                }
+                break;
+            }
+
+            case "ERR":
+                LOG.warn("Worker {} reported: {}", worker.name, rest);
+                synchronized (lock) {
+                    worker.error = rest;
+                    if (worker.state == State.RUNNING || worker.state == State.STARTING) {
+                        fail(worker, rest);
+                    }
+                    lock.notifyAll();
+                }
+                break;
+
+            default:
+                LOG.debug("Ignoring report from worker {}: {}", worker.name, line);
+        }
+    }
+
+    /**
+     * Marks a worker's shard as incomplete, counting what it reported so far. Called with the lock held.
+     */
+    private void fail(Worker worker, String error) {
+        if (worker.state == State.RUNNING) {
+            summary.add(worker.created, worker.deleted, worker.skipped);
+        }
+        worker.state = State.FAILED;
+        worker.error = error;
+    }
+
+    private static long[] parseCounts(String text, int count) throws IOException {
+        String[] fields = text.trim().split("\\s+");
+        if (fields.length < count) {
+            throw new IOException("Malformed worker report: " + text);
+        }
+        long[] counts = new long[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                counts[i] = Long.parseLong(fields[i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed worker report: " + text, e);
+        }
+        return counts;
+    }
+
+    /**
+     * One worker connection and the shard it runs.
+     */
+    private static class Worker {
+
+        final int index;
+        final String name;
+        final Process process;
+        final Socket socket;
+        final BufferedReader reader;
+        final PrintWriter writer;
+
+        State state = State.STARTING;
+        String account = "";
+        String error;
+        long operations;
+        long created;
+        long deleted;
+        long failed;
+        long skipped;
+        long elapsedMillis;
+        int writeShare;
+        int readShare;
+
+        Worker(int index, String name, Process process, Socket socket, InputStream in, OutputStream out) {
+            this.index = index;
+            this.name = name;
+            this.process = process;
+            this.socket = socket;
+            this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            this.writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        long completed() {
+            return created + deleted + failed + skipped;
+        }
+
+        void setCounts(long[] counts) {
+            created = counts[0];
+            deleted = counts[1];
+            failed = counts[2];
+            skipped = counts[3];
+        }
+
+        void send(String line) {
+            synchronized (writer) {
+                writer.println(line);
+                writer.flush();
+            }
+        }
+
+        void closeQuietly() {
+            writer.close();
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Nothing left to report to
+                }
+            }
+        }
+    }
+}
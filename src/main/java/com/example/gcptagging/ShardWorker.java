@@ -0,0 +1,267 @@
+package com.example.gcptagging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs shards of a bulk job for a {@link ShardCoordinator}, in its own process with its own
+ * credentials, channel and {@link GcpResourceTagger}.
+ *
+ * The coordinator talks to the worker over one line-based connection: standard input and output
+ * for a worker the coordinator started, or a loopback TCP connection for a worker started on its
+ * own, authenticated like {@link TaggingDaemon} with the token in {@link TaggingDaemon#tokenFile(int)}.
+ * The worker announces itself, then runs one shard at a time while the coordinator may change its
+ * quota share:
+ *
+ * <pre>
+ *   &lt;- ready &lt;account&gt;
+ *   -&gt; job &lt;shard-file&gt; &lt;write-qpm&gt; &lt;read-qpm&gt; &lt;max-in-flight&gt; &lt;journal-file&gt; &lt;resume&gt;
+ *   -&gt; quota &lt;write-qpm&gt; &lt;read-qpm&gt;
+ *   &lt;- progress &lt;created&gt; &lt;deleted&gt; &lt;failed&gt; &lt;skipped&gt;
+ *   &lt;- failed &lt;operation as an NDJSON manifest row&gt; TAB &lt;message&gt;
+ *   &lt;- done &lt;created&gt; &lt;deleted&gt; &lt;failed&gt; &lt;skipped&gt; &lt;elapsed-ms&gt;
+ *   -&gt; shutdown
+ * </pre>
+ *
+ * Shard and journal files are paths on the local file system, so attached workers must run on
+ * the same machine as the coordinator. Errors are answered with a line starting with "ERR".
+ */
+public class ShardWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardWorker.class);
+
+    /**
+     * Default loopback port for TCP mode.
+     */
+    public static final int DEFAULT_PORT = 7790;
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+
+    private final GcpResourceTagger tagger;
+    private final String account;
+    private final TagValueResolver resolver;
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "worker-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = true;
+    private volatile boolean cancelled;
+    private Thread job;
+
+    /**
+     * Constructor for ShardWorker.
+     *
+     * @param tagger The tagger that runs every shard; its throttle is set to the quota share of each job
+     * @param account Identifies the credentials the worker uses, so the coordinator can split each account's quota
+     * @param resolver Resolver for namespaced tag value names, or null to require IDs
+     */
+    public ShardWorker(GcpResourceTagger tagger, String account, TagValueResolver resolver) {
+        this.tagger = tagger;
+        this.account = account;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Serves one coordinator over a pair of streams until end of input or "shutdown".
+     *
+     * @param in The stream to read requests from
+     * @param out The stream to write reports to
+     * @throws IOException If reading fails
+     * @throws InterruptedException If interrupted while waiting for a running shard
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException, InterruptedException {
+        serve(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    private void serve(BufferedReader reader, PrintWriter writer) throws IOException, InterruptedException {
+        send(writer, "ready " + account);
+        try {
+            String line;
+            while (running && (line = reader.readLine()) != null) {
+                handle(line, writer);
+            }
+        } finally {
+            // Without a coordinator, stop taking operations from the shard, let the ones in flight
+            // finish and close the journal, so that a resumed run can safely pick the shard up
+            cancelled = true;
+            awaitJob();
+        }
+    }
+
+    /**
+     * Listens on a loopback TCP port and serves one coordinator connection at a time
+     * until a coordinator sends "shutdown".
+     *
+     * @param port The port to listen on
+     * @throws IOException If the server socket or token file cannot be created
+     * @throws InterruptedException If interrupted while waiting for a running shard
+     */
+    public void serveTcp(int port) throws IOException, InterruptedException {
+        String token = TaggingDaemon.writeToken(port);
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            LOG.info("Shard worker listening on {}", server.getLocalSocketAddress());
+            while (running) {
+                try (Socket socket = server.accept()) {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    String auth = reader.readLine();
+                    if (auth == null || !auth.equals("auth " + token)) {
+                        send(writer, "ERR authentication required");
+                        continue;
+                    }
+                    serve(reader, writer);
+                } catch (IOException e) {
+                    LOG.warn("Coordinator connection failed: {}", e.getMessage());
+                }
+            }
+        } finally {
+            ticker.shutdownNow();
+            Files.deleteIfExists(TaggingDaemon.tokenFile(port));
+        }
+    }
+
+    private void handle(String line, PrintWriter out) {
+        String[] parts = line.trim().split("\\s+");
+        try {
+            switch (parts[0]) {
+                case "job":
+                    if (parts.length < 7) {
+                        throw new IllegalArgumentException("missing arguments for job");
+                    }
+                    startJob(parts, out);
+                    break;
+
+                case "quota":
+                    if (parts.length < 3) {
+                        throw new IllegalArgumentException("missing arguments for quota");
+                    }
+                    tagger.getThrottle().setRequestsPerMinute(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                    LOG.debug("Quota share changed to {} writes and {} reads per minute", parts[1], parts[2]);
+                    break;
+
+                case "shutdown":
+                    running = false;
+                    break;
+
+                default:
+                    send(out, "ERR unknown request: " + parts[0]);
+            }
+        } catch (RuntimeException e) {
+            send(out, "ERR " + clean(e.getMessage()));
+        }
+    }
+
+    private synchronized void startJob(String[] parts, PrintWriter out) {
+        if (job != null && job.isAlive()) {
+            throw new IllegalStateException("a shard is already running");
+        }
+        String shardFile = parts[1];
+        int maxInFlight = Integer.parseInt(parts[4]);
+        String journalFile = parts[5].equals("-") ? null : parts[5];
+        boolean resume = Boolean.parseBoolean(parts[6]);
+        tagger.getThrottle().setRequestsPerMinute(Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+
+        cancelled = false;
+        job = new Thread(() -> runJob(shardFile, maxInFlight, journalFile, resume, out), "worker-job");
+        job.start();
+    }
+
+    private void runJob(String shardFile, int maxInFlight, String journalFile, boolean resume, PrintWriter out) {
+        // Failures are reported one by one, so the coordinator can collect them for a rerun
+        BulkSummary summary = new BulkSummary() {
+            @Override
+            public void recordFailure(TagOperation operation, Throwable error) {
+                super.recordFailure(operation, error);
+                send(out, "failed " + toManifestRow(operation) + "\t" + clean(error.getMessage()));
+            }
+        };
+        ScheduledFuture<?> progress = ticker.scheduleAtFixedRate(() -> send(out, "progress "
+                + summary.getCreated() + " " + summary.getDeleted() + " " + summary.getFailed() + " " + summary.getSkipped()),
+                PROGRESS_INTERVAL_MILLIS, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        try (CheckpointJournal journal = journalFile != null ? CheckpointJournal.open(Paths.get(journalFile), resume) : null;
+                ManifestReader shard = ManifestReader.open(shardFile, ManifestReader.Format.NDJSON)) {
+            Iterator<TagOperation> operations = new Iterator<TagOperation>() {
+                @Override
+                public boolean hasNext() {
+                    return !cancelled && shard.hasNext();
+                }
+
+                @Override
+                public TagOperation next() {
+                    return shard.next();
+                }
+            };
+            new BulkTagger(tagger, maxInFlight, resolver, journal).run(operations, summary);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Shard {} stopped: {}", shardFile, e.getMessage());
+            send(out, "ERR " + clean(e.getMessage()));
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(out, "ERR interrupted");
+            return;
+        } finally {
+            progress.cancel(false);
+        }
+        if (cancelled) {
+            LOG.warn("Coordinator disconnected; stopped shard {} after {} operations", shardFile, summary.getCompleted());
+            return;
+        }
+        send(out, "done " + summary.getCreated() + " " + summary.getDeleted() + " " + summary.getFailed() + " "
+                + summary.getSkipped() + " " + summary.getElapsedMillis());
+    }
+
+    private void awaitJob() throws InterruptedException {
+        Thread running;
+        synchronized (this) {
+            running = job;
+        }
+        if (running != null) {
+            running.join();
+        }
+    }
+
+    private static void send(PrintWriter out, String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    private static String toManifestRow(TagOperation operation) {
+        ByteArrayOutputStream row = new ByteArrayOutputStream(256);
+        try (NdjsonWriter writer = new NdjsonWriter(row)) {
+            writer.write(operation);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot format " + operation, e);
+        }
+        return new String(row.toByteArray(), StandardCharsets.UTF_8).trim();
+    }
+
+    private static String clean(String message) {
+        return String.valueOf(message).replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
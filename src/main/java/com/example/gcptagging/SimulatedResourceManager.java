@@ -0,0 +1,708 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.CreateTagBindingMetadata;
+import com.google.cloud.resourcemanager.v3.CreateTagBindingRequest;
+import com.google.cloud.resourcemanager.v3.CreateTagKeyMetadata;
+import com.google.cloud.resourcemanager.v3.CreateTagKeyRequest;
+import com.google.cloud.resourcemanager.v3.CreateTagValueMetadata;
+import com.google.cloud.resourcemanager.v3.CreateTagValueRequest;
+import com.google.cloud.resourcemanager.v3.DeleteTagBindingMetadata;
+import com.google.cloud.resourcemanager.v3.DeleteTagBindingRequest;
+import com.google.cloud.resourcemanager.v3.GetNamespacedTagKeyRequest;
+import com.google.cloud.resourcemanager.v3.GetNamespacedTagValueRequest;
+import com.google.cloud.resourcemanager.v3.GetTagKeyRequest;
+import com.google.cloud.resourcemanager.v3.GetTagValueRequest;
+import com.google.cloud.resourcemanager.v3.ListTagBindingsRequest;
+import com.google.cloud.resourcemanager.v3.ListTagBindingsResponse;
+import com.google.cloud.resourcemanager.v3.ListTagKeysRequest;
+import com.google.cloud.resourcemanager.v3.ListTagKeysResponse;
+import com.google.cloud.resourcemanager.v3.ListTagValuesRequest;
+import com.google.cloud.resourcemanager.v3.ListTagValuesResponse;
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import com.google.cloud.resourcemanager.v3.TagBindingsGrpc;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagKeysGrpc;
+import com.google.cloud.resourcemanager.v3.TagValue;
+import com.google.cloud.resourcemanager.v3.TagValuesGrpc;
+import com.google.longrunning.GetOperationRequest;
+import com.google.longrunning.Operation;
+import com.google.longrunning.OperationsGrpc;
+import com.google.protobuf.Any;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Message;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A local stand-in for the Resource Manager TagBindings, TagKeys, TagValues and long-running
+ * Operations gRPC services, for load tests that must not touch a real organization.
+ *
+ * State is kept in memory. Every call can be slowed down, failed with UNAVAILABLE or rejected with
+ * RESOURCE_EXHAUSTED according to {@link Faults}, and creates and deletes can be made to finish
+ * only after a delay, so that clients have to poll the operation the way they do against the real API.
+ * Like the real API, a resource can carry only one value of each tag key.
+ * The server listens on a plaintext TCP port; point a client at it with
+ * {@code endpoint=localhost:PORT} and {@code channel.plaintext=true}.
+ */
+public class SimulatedResourceManager implements AutoCloseable {
+
+    /**
+     * The organization that seeded tag keys belong to.
+     */
+    public static final String ORGANIZATION_ID = "100000000000";
+
+    private static final int DEFAULT_PAGE_SIZE = 300;
+
+    private final Faults faults;
+    private final TokenBucket writeQuota;
+    private final TokenBucket readQuota;
+    private final ScheduledExecutorService scheduler;
+    private final Server server;
+
+    private final Map<String, TagBinding> bindings = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<String, TagBinding>> bindingsByParent = new ConcurrentHashMap<>();
+    private final Map<String, NavigableMap<String, TagBinding>> bindingsByTagValue = new ConcurrentHashMap<>();
+    private final NavigableMap<String, TagKey> tagKeys = new ConcurrentSkipListMap<>();
+    private final NavigableMap<String, TagValue> tagValues = new ConcurrentSkipListMap<>();
+    private final Map<String, PendingOperation> operations = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(200000000000L);
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong quotaRejections = new AtomicLong();
+
+    /**
+     * Starts the simulated services.
+     *
+     * @param port The TCP port to listen on, or 0 for any free port
+     * @param faults The latency, errors and quotas to inject
+     * @throws IOException If the server cannot be started
+     */
+    public SimulatedResourceManager(int port, Faults faults) throws IOException {
+        this.faults = faults;
+        this.writeQuota = faults.writeRequestsPerMinute > 0 ? new TokenBucket(faults.writeRequestsPerMinute) : null;
+        this.readQuota = faults.readRequestsPerMinute > 0 ? new TokenBucket(faults.readRequestsPerMinute) : null;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "simulator-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = ServerBuilder.forPort(port)
+                .addService(new TagBindingsService())
+                .addService(new TagKeysService())
+                .addService(new TagValuesService())
+                .addService(new OperationsService())
+                .build();
+        try {
+            server.start();
+        } catch (IOException e) {
+            scheduler.shutdownNow();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+
+    /**
+     * Returns the endpoint clients should connect to.
+     *
+     * @return The endpoint, e.g. {@code localhost:40123}
+     */
+    public String getEndpoint() {
+        return "localhost:" + getPort();
+    }
+
+    /**
+     * Adds a tag key with values directly, without going through the API or its faults.
+     *
+     * @param shortName The short name of the tag key
+     * @param valueShortNames The short names of its values
+     * @return The names of the created tag values, e.g. {@code tagValues/200000000001}
+     */
+    public List<String> seedTagKey(String shortName, List<String> valueShortNames) {
+        TagKey key = putTagKey(TagKey.newBuilder()
+                .setParent("organizations/" + ORGANIZATION_ID)
+                .setShortName(shortName)
+                .build());
+        List<String> names = new ArrayList<>(valueShortNames.size());
+        for (String valueShortName : valueShortNames) {
+            names.add(putTagValue(TagValue.newBuilder()
+                    .setParent(key.getName())
+                    .setShortName(valueShortName)
+                    .build()).getName());
+        }
+        return names;
+    }
+
+    /**
+     * Binds resources to a tag value directly, without going through the API or its faults.
+     * Resources that already have the tag value are left as they are.
+     *
+     * @param tagValue The tag value, e.g. {@code tagValues/200000000001}
+     * @param resourceNames The full resource names to bind
+     * @return The number of bindings added
+     */
+    public int seedTagBindings(String tagValue, List<String> resourceNames) {
+        int added = 0;
+        for (String resourceName : resourceNames) {
+            if (putTagBinding(resourceName, tagValue) != null) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes every binding of a tag value directly, without going through the API or its faults.
+     *
+     * @param tagValue The tag value
+     * @return The number of bindings removed
+     */
+    public int clearTagBindings(String tagValue) {
+        NavigableMap<String, TagBinding> byTagValue = bindingsByTagValue.get(tagValue);
+        if (byTagValue == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (String name : new ArrayList<>(byTagValue.keySet())) {
+            if (removeTagBinding(name) != null) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the number of tag bindings currently stored.
+     *
+     * @return The number of bindings
+     */
+    public int getBindingCount() {
+        return bindings.size();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getQuotaRejections() {
+        return quotaRejections.get();
+    }
+
+    /**
+     * Blocks until the server is shut down.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitTermination() throws InterruptedException {
+        server.awaitTermination();
+    }
+
+    /**
+     * Stops the server and drops all state.
+     *
+     * @throws InterruptedException If interrupted while waiting for the server to stop
+     */
+    @Override
+    public void close() throws InterruptedException {
+        server.shutdownNow();
+        scheduler.shutdownNow();
+        server.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Answers a call after the simulated latency, unless an error or a quota rejection is injected.
+     * The response is computed when the delay ends, so concurrent changes made meanwhile are visible.
+     */
+    private <T> void respond(boolean write, StreamObserver<T> observer, Supplier<T> response) {
+        calls.incrementAndGet();
+        long delayNanos = faults.sampleLatencyNanos();
+        Runnable answer = () -> {
+            TokenBucket quota = write ? writeQuota : readQuota;
+            if (quota != null && !quota.tryAcquire()) {
+                quotaRejections.incrementAndGet();
+                observer.onError(Status.RESOURCE_EXHAUSTED
+                        .withDescription("Quota exceeded for " + (write ? "write" : "read") + " requests per minute")
+                        .asRuntimeException());
+                return;
+            }
+            if (faults.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < faults.errorRate) {
+                injectedErrors.incrementAndGet();
+                observer.onError(Status.UNAVAILABLE.withDescription("Injected failure").asRuntimeException());
+                return;
+            }
+            T result;
+            try {
+                result = response.get();
+            } catch (RuntimeException e) {
+                observer.onError(e);
+                return;
+            }
+            observer.onNext(result);
+            observer.onCompleted();
+        };
+        if (delayNanos <= 0) {
+            answer.run();
+        } else {
+            scheduler.schedule(answer, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Starts a long-running operation that finishes after the configured operation delay.
+     */
+    private Operation startOperation(Message metadata, Message response) {
+        Operation done = Operation.newBuilder()
+                .setName("operations/sim." + nextId.incrementAndGet())
+                .setMetadata(Any.pack(metadata))
+                .setDone(true)
+                .setResponse(Any.pack(response))
+                .build();
+        if (faults.operationDelay.isZero()) {
+            return done;
+        }
+        operations.put(done.getName(), new PendingOperation(done, System.nanoTime() + faults.operationDelay.toNanos()));
+        return done.toBuilder().setDone(false).clearResponse().build();
+    }
+
+    /**
+     * Stores a binding unless it exists.
+     *
+     * @return The stored binding, or null if the resource already had the tag value
+     */
+    private TagBinding putTagBinding(String resourceName, String tagValue) {
+        TagBinding binding = TagBinding.newBuilder()
+                .setName(GcpResourceNames.formatTagBindingName(resourceName, tagValue))
+                .setParent(resourceName)
+                .setTagValue(tagValue)
+                .build();
+        if (bindings.putIfAbsent(binding.getName(), binding) != null) {
+            return null;
+        }
+        bindingsByParent.computeIfAbsent(binding.getParent(), parent -> new ConcurrentSkipListMap<>())
+                .put(binding.getName(), binding);
+        bindingsByTagValue.computeIfAbsent(binding.getTagValue(), value -> new ConcurrentSkipListMap<>())
+                .put(binding.getName(), binding);
+        return binding;
+    }
+
+    /**
+     * Rejects a binding to a known tag value when the resource already carries another value of the
+     * same key, as the real API does. Values that were never created here are not checked.
+     */
+    private void checkOneValuePerKey(NavigableMap<String, TagBinding> byParent, String tagValue) {
+        TagValue value = tagValues.get(tagValue);
+        if (value == null) {
+            return;
+        }
+        for (TagBinding existing : byParent.values()) {
+            TagValue other = tagValues.get(existing.getTagValue());
+            if (other != null && !other.getName().equals(tagValue) && other.getParent().equals(value.getParent())) {
+                throw Status.FAILED_PRECONDITION.withDescription("Resource " + existing.getParent()
+                        + " already has a value of tag key " + value.getParent() + ": " + other.getName())
+                        .asRuntimeException();
+            }
+        }
+    }
+
+    /**
+     * Removes a binding from the store and both of its indexes.
+     *
+     * @return The removed binding, or null if there was none
+     */
+    private TagBinding removeTagBinding(String name) {
+        TagBinding binding = bindings.remove(name);
+        if (binding == null) {
+            return null;
+        }
+        NavigableMap<String, TagBinding> byParent = bindingsByParent.get(binding.getParent());
+        if (byParent != null) {
+            byParent.remove(binding.getName());
+        }
+        NavigableMap<String, TagBinding> byTagValue = bindingsByTagValue.get(binding.getTagValue());
+        if (byTagValue != null) {
+            byTagValue.remove(binding.getName());
+        }
+        return binding;
+    }
+
+    private TagKey putTagKey(TagKey key) {
+        TagKey stored = key.toBuilder()
+                .setName("tagKeys/" + nextId.incrementAndGet())
+                .setNamespacedName(ORGANIZATION_ID + "/" + key.getShortName())
+                .build();
+        for (TagKey existing : tagKeys.values()) {
+            if (existing.getNamespacedName().equals(stored.getNamespacedName())) {
+                throw Status.ALREADY_EXISTS.withDescription("Tag key exists: " + stored.getNamespacedName()).asRuntimeException();
+            }
+        }
+        tagKeys.put(stored.getName(), stored);
+        return stored;
+    }
+
+    private TagValue putTagValue(TagValue value) {
+        TagKey key = tagKeys.get(value.getParent());
+        if (key == null) {
+            throw Status.NOT_FOUND.withDescription("Unknown tag key: " + value.getParent()).asRuntimeException();
+        }
+        TagValue stored = value.toBuilder()
+                .setName("tagValues/" + nextId.incrementAndGet())
+                .setNamespacedName(key.getNamespacedName() + "/" + value.getShortName())
+                .build();
+        for (TagValue existing : tagValues.values()) {
+            if (existing.getNamespacedName().equals(stored.getNamespacedName())) {
+                throw Status.ALREADY_EXISTS.withDescription("Tag value exists: " + stored.getNamespacedName()).asRuntimeException();
+            }
+        }
+        tagValues.put(stored.getName(), stored);
+        return stored;
+    }
+
+    private static <T> T findNamespaced(Collection<T> entries, String namespacedName, Function<T, String> nameOf) {
+        for (T entry : entries) {
+            if (nameOf.apply(entry).equals(namespacedName)) {
+                return entry;
+            }
+        }
+        throw Status.NOT_FOUND.withDescription("Not found: " + namespacedName).asRuntimeException();
+    }
+
+    /**
+     * Collects one page from a sorted map, using the last returned key as the page token so that
+     * paging stays consistent while entries are added and removed.
+     */
+    private static <T> List<T> page(NavigableMap<String, T> entries, int pageSize, String pageToken, String[] nextPageToken) {
+        int limit = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+        NavigableMap<String, T> tail = pageToken.isEmpty() ? entries : entries.tailMap(pageToken, false);
+        List<T> page = new ArrayList<>(Math.min(limit, 64));
+        String lastKey = null;
+        for (Map.Entry<String, T> entry : tail.entrySet()) {
+            if (page.size() == limit) {
+                nextPageToken[0] = lastKey;
+                return page;
+            }
+            page.add(entry.getValue());
+            lastKey = entry.getKey();
+        }
+        nextPageToken[0] = "";
+        return page;
+    }
+
+    private class TagBindingsService extends TagBindingsGrpc.TagBindingsImplBase {
+
+        @Override
+        public void createTagBinding(CreateTagBindingRequest request, StreamObserver<Operation> observer) {
+            respond(true, observer, () -> {
+                TagBinding requested = request.getTagBinding();
+                TagBinding binding;
+                NavigableMap<String, TagBinding> byParent =
+                        bindingsByParent.computeIfAbsent(requested.getParent(), parent -> new ConcurrentSkipListMap<>());
+                synchronized (byParent) {
+                    checkOneValuePerKey(byParent, requested.getTagValue());
+                    binding = putTagBinding(requested.getParent(), requested.getTagValue());
+                }
+                if (binding == null) {
+                    throw Status.ALREADY_EXISTS.withDescription("Tag binding exists: "
+                            + GcpResourceNames.formatTagBindingName(requested.getParent(), requested.getTagValue()))
+                            .asRuntimeException();
+                }
+                return startOperation(CreateTagBindingMetadata.getDefaultInstance(), binding);
+            });
+        }
+
+        @Override
+        public void deleteTagBinding(DeleteTagBindingRequest request, StreamObserver<Operation> observer) {
+            respond(true, observer, () -> {
+                if (removeTagBinding(request.getName()) == null) {
+                    throw Status.NOT_FOUND.withDescription("Tag binding not found: " + request.getName()).asRuntimeException();
+                }
+                return startOperation(DeleteTagBindingMetadata.getDefaultInstance(), Empty.getDefaultInstance());
+            });
+        }
+
+        @Override
+        public void listTagBindings(ListTagBindingsRequest request, StreamObserver<ListTagBindingsResponse> observer) {
+            respond(false, observer, () -> {
+                Map<String, NavigableMap<String, TagBinding>> index =
+                        request.getParent().startsWith("tagValues/") ? bindingsByTagValue : bindingsByParent;
+                NavigableMap<String, TagBinding> entries = index.getOrDefault(request.getParent(), new ConcurrentSkipListMap<>());
+                String[] nextPageToken = new String[1];
+                List<TagBinding> page = page(entries, request.getPageSize(), request.getPageToken(), nextPageToken);
+                return ListTagBindingsResponse.newBuilder()
+                        .addAllTagBindings(page)
+                        .setNextPageToken(nextPageToken[0])
+                        .build();
+            });
+        }
+    }
+
+    private class TagKeysService extends TagKeysGrpc.TagKeysImplBase {
+
+        @Override
+        public void listTagKeys(ListTagKeysRequest request, StreamObserver<ListTagKeysResponse> observer) {
+            respond(false, observer, () -> {
+                NavigableMap<String, TagKey> matching = new ConcurrentSkipListMap<>();
+                for (TagKey key : tagKeys.values()) {
+                    if (key.getParent().equals(request.getParent())) {
+                        matching.put(key.getName(), key);
+                    }
+                }
+                String[] nextPageToken = new String[1];
+                List<TagKey> page = page(matching, request.getPageSize(), request.getPageToken(), nextPageToken);
+                return ListTagKeysResponse.newBuilder().addAllTagKeys(page).setNextPageToken(nextPageToken[0]).build();
+            });
+        }
+
+        @Override
+        public void getTagKey(GetTagKeyRequest request, StreamObserver<TagKey> observer) {
+            respond(false, observer, () -> {
+                TagKey key = tagKeys.get(request.getName());
+                if (key == null) {
+                    throw Status.NOT_FOUND.withDescription("Tag key not found: " + request.getName()).asRuntimeException();
+                }
+                return key;
+            });
+        }
+
+        @Override
+        public void getNamespacedTagKey(GetNamespacedTagKeyRequest request, StreamObserver<TagKey> observer) {
+            respond(false, observer, () -> findNamespaced(tagKeys.values(), request.getName(), TagKey::getNamespacedName));
+        }
+
+        @Override
+        public void createTagKey(CreateTagKeyRequest request, StreamObserver<Operation> observer) {
+            respond(true, observer, () -> startOperation(CreateTagKeyMetadata.getDefaultInstance(),
+                    putTagKey(request.getTagKey())));
+        }
+    }
+
+    private class TagValuesService extends TagValuesGrpc.TagValuesImplBase {
+
+        @Override
+        public void listTagValues(ListTagValuesRequest request, StreamObserver<ListTagValuesResponse> observer) {
+            respond(false, observer, () -> {
+                NavigableMap<String, TagValue> matching = new ConcurrentSkipListMap<>();
+                for (TagValue value : tagValues.values()) {
+                    if (value.getParent().equals(request.getParent())) {
+                        matching.put(value.getName(), value);
+                    }
+                }
+                String[] nextPageToken = new String[1];
+                List<TagValue> page = page(matching, request.getPageSize(), request.getPageToken(), nextPageToken);
+                return ListTagValuesResponse.newBuilder().addAllTagValues(page).setNextPageToken(nextPageToken[0]).build();
+            });
+        }
+
+        @Override
+        public void getTagValue(GetTagValueRequest request, StreamObserver<TagValue> observer) {
+            respond(false, observer, () -> {
+                TagValue value = tagValues.get(request.getName());
+                if (value == null) {
+                    throw Status.NOT_FOUND.withDescription("Tag value not found: " + request.getName()).asRuntimeException();
+                }
+                return value;
+            });
+        }
+
+        @Override
+        public void getNamespacedTagValue(GetNamespacedTagValueRequest request, StreamObserver<TagValue> observer) {
+            respond(false, observer, () -> findNamespaced(tagValues.values(), request.getName(), TagValue::getNamespacedName));
+        }
+
+        @Override
+        public void createTagValue(CreateTagValueRequest request, StreamObserver<Operation> observer) {
+            respond(true, observer, () -> startOperation(CreateTagValueMetadata.getDefaultInstance(),
+                    putTagValue(request.getTagValue())));
+        }
+    }
+
+    private class OperationsService extends OperationsGrpc.OperationsImplBase {
+
+        @Override
+        public void getOperation(GetOperationRequest request, StreamObserver<Operation> observer) {
+            // Polls see latency but no injected failures, which would fail the whole operation on the client
+            calls.incrementAndGet();
+            PendingOperation pending = operations.get(request.getName());
+            if (pending == null) {
+                observer.onError(Status.NOT_FOUND.withDescription("Operation not found: " + request.getName()).asRuntimeException());
+                return;
+            }
+            Runnable answer = () -> {
+                if (System.nanoTime() < pending.readyAtNanos) {
+                    observer.onNext(pending.done.toBuilder().setDone(false).clearResponse().build());
+                } else {
+                    operations.remove(request.getName());
+                    observer.onNext(pending.done);
+                }
+                observer.onCompleted();
+            };
+            long delayNanos = faults.sampleLatencyNanos();
+            if (delayNanos <= 0) {
+                answer.run();
+            } else {
+                scheduler.schedule(answer, delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * A finished operation that is reported as running until its ready time.
+     */
+    private static class PendingOperation {
+
+        private final Operation done;
+        private final long readyAtNanos;
+
+        PendingOperation(Operation done, long readyAtNanos) {
+            this.done = done;
+            this.readyAtNanos = readyAtNanos;
+        }
+    }
+
+    /**
+     * The faults injected into every call.
+     * Latency is a fixed base plus an exponentially distributed extra delay, which gives the long
+     * right tail that real API latencies show.
+     */
+    public static class Faults {
+
+        /**
+         * No latency, no errors and no quotas.
+         */
+        public static final Faults NONE = newBuilder().build();
+
+        private final Duration latency;
+        private final Duration latencyJitter;
+        private final double errorRate;
+        private final int writeRequestsPerMinute;
+        private final int readRequestsPerMinute;
+        private final Duration operationDelay;
+
+        private Faults(Builder builder) {
+            this.latency = builder.latency;
+            this.latencyJitter = builder.latencyJitter;
+            this.errorRate = builder.errorRate;
+            this.writeRequestsPerMinute = builder.writeRequestsPerMinute;
+            this.readRequestsPerMinute = builder.readRequestsPerMinute;
+            this.operationDelay = builder.operationDelay;
+        }
+
+        /**
+         * Creates a builder with no faults.
+         *
+         * @return A new builder
+         */
+        public static Builder newBuilder() {
+            return new Builder();
+        }
+
+        private long sampleLatencyNanos() {
+            long nanos = latency.toNanos();
+            if (!latencyJitter.isZero()) {
+                double u = ThreadLocalRandom.current().nextDouble();
+                nanos += (long) (-Math.log(1.0 - u) * latencyJitter.toNanos());
+            }
+            return nanos;
+        }
+
+        /**
+         * Describes the faults in one line.
+         *
+         * @return The description
+         */
+        @Override
+        public String toString() {
+            return "latency " + latency.toMillis() + "ms + exp(" + latencyJitter.toMillis() + "ms)"
+                    + ", error rate " + errorRate
+                    + ", write quota " + (writeRequestsPerMinute > 0 ? writeRequestsPerMinute + "/min" : "none")
+                    + ", read quota " + (readRequestsPerMinute > 0 ? readRequestsPerMinute + "/min" : "none")
+                    + ", operation delay " + operationDelay.toMillis() + "ms";
+        }
+
+        /**
+         * Builder for Faults.
+         */
+        public static class Builder {
+
+            private Duration latency = Duration.ZERO;
+            private Duration latencyJitter = Duration.ZERO;
+            private double errorRate;
+            private int writeRequestsPerMinute;
+            private int readRequestsPerMinute;
+            private Duration operationDelay = Duration.ZERO;
+
+            private Builder() {
+            }
+
+            public Builder setLatency(Duration latency) {
+                this.latency = latency;
+                return this;
+            }
+
+            public Builder setLatencyJitter(Duration latencyJitter) {
+                this.latencyJitter = latencyJitter;
+                return this;
+            }
+
+            public Builder setErrorRate(double errorRate) {
+                if (errorRate < 0 || errorRate > 1) {
+                    throw new IllegalArgumentException("errorRate must be between 0 and 1");
+                }
+                this.errorRate = errorRate;
+                return this;
+            }
+
+            public Builder setWriteRequestsPerMinute(int writeRequestsPerMinute) {
+                this.writeRequestsPerMinute = writeRequestsPerMinute;
+                return this;
+            }
+
+            public Builder setReadRequestsPerMinute(int readRequestsPerMinute) {
+                this.readRequestsPerMinute = readRequestsPerMinute;
+                return this;
+            }
+
+            public Builder setOperationDelay(Duration operationDelay) {
+                this.operationDelay = operationDelay;
+                return this;
+            }
+
+            public Faults build() {
+                return new Faults(this);
+            }
+        }
+    }
+}
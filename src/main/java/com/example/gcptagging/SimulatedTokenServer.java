@@ -0,0 +1,118 @@
+package com.example.gcptagging;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the OAuth token endpoint, for testing token caching and refresh without
+ * network access. Every POST to {@code /token} is answered with a new bearer token of a fixed
+ * lifetime; the signed assertion in the request is not checked. Point {@code auth.tokenUri} at
+ * {@link #getTokenUri()} and use any service account key file.
+ */
+public class SimulatedTokenServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration lifetime;
+    private final Duration latency;
+    private final AtomicLong issued = new AtomicLong();
+
+    /**
+     * Constructor for SimulatedTokenServer; starts serving immediately.
+     *
+     * @param port The loopback port to listen on, or 0 for any free port
+     * @param lifetime The lifetime of issued tokens
+     * @param latency Time to wait before answering each request
+     * @throws IOException If the port cannot be bound
+     */
+    public SimulatedTokenServer(int port, Duration lifetime, Duration latency) throws IOException {
+        this.lifetime = lifetime;
+        this.latency = latency;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/token", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the URI to use as {@code auth.tokenUri}.
+     *
+     * @return The token endpoint URI
+     */
+    public URI getTokenUri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/token");
+    }
+
+    /**
+     * Returns the number of tokens issued so far.
+     *
+     * @return The number of tokens
+     */
+    public long getIssued() {
+        return issued.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            try (InputStream in = exchange.getRequestBody()) {
+                String form = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                if (!form.contains("grant_type=")) {
+                    sendJson(exchange, 400, "{\"error\":\"invalid_request\"}");
+                    return;
+                }
+            }
+            if (!latency.isZero()) {
+                try {
+                    Thread.sleep(latency.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            long n = issued.incrementAndGet();
+            sendJson(exchange, 200, "{\"access_token\":\"simulated-token-" + n + "\",\"token_type\":\"Bearer\","
+                    + "\"expires_in\":" + lifetime.getSeconds() + "}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Stops the server.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+
+/**
+ * Receives tag binding changes made through a {@link GcpResourceTagger}.
+ * Callbacks run on the thread that completes the operation and must not block.
+ */
+public interface TagBindingListener {
+
+    /**
+     * Called after a binding was created, or was found to exist already.
+     *
+     * @param binding The binding, with its name, parent and tag value
+     */
+    void onCreated(TagBinding binding);
+
+    /**
+     * Called after a binding was deleted, or was found to be gone already.
+     *
+     * @param tagBindingName The full name of the deleted binding
+     */
+    void onDeleted(String tagBindingName);
+}
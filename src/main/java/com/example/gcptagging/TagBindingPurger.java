@@ -0,0 +1,90 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+
+/**
+ * Deletes every tag binding of a resource or a tag value.
+ *
+ * Bindings are streamed from the list API straight into a {@link BulkTagger}, so deletes start as
+ * soon as the first page arrives and the next page is fetched while the current one is being
+ * deleted. Deleting while paging can shift later pages, so the parent is listed again after each
+ * pass and purged again until nothing is left.
+ */
+public class TagBindingPurger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagBindingPurger.class);
+
+    /**
+     * Most passes over a parent before giving up on bindings that keep appearing.
+     */
+    public static final int MAX_PASSES = 3;
+
+    private final GcpResourceTagger tagger;
+    private final BulkTagger bulkTagger;
+    private final int pageSize;
+
+    /**
+     * Constructor for TagBindingPurger.
+     *
+     * @param tagger The tagger used to list and delete bindings
+     * @param maxInFlight The maximum number of deletes in flight at once
+     * @param pageSize The number of bindings to request per page
+     */
+    public TagBindingPurger(GcpResourceTagger tagger, int maxInFlight, int pageSize) {
+        this.tagger = tagger;
+        this.bulkTagger = new BulkTagger(tagger, maxInFlight);
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Deletes every binding under a parent.
+     *
+     * @param parent The resource name or tag value name
+     * @return The summary of all passes
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public BulkSummary purge(String parent) throws InterruptedException {
+        BulkSummary summary = new BulkSummary();
+        for (int pass = 1; pass <= MAX_PASSES; pass++) {
+            long completedBefore = summary.getCompleted();
+            long failedBefore = summary.getFailed();
+            bulkTagger.run(new DeleteOperations(tagger.iterateTagBindings(parent, pageSize)), summary);
+
+            long found = summary.getCompleted() - completedBefore;
+            if (found == 0 || summary.getFailed() > failedBefore) {
+                // Nothing left, or failures that another pass would only repeat
+                break;
+            }
+            LOG.info("Pass {} deleted {} tag bindings of {}; listing again to catch bindings moved between pages",
+                    pass, found - (summary.getFailed() - failedBefore), parent);
+        }
+        return summary;
+    }
+
+    /**
+     * Maps listed bindings to delete operations.
+     */
+    private static class DeleteOperations implements Iterator<TagOperation> {
+
+        private final Iterator<TagBinding> bindings;
+
+        DeleteOperations(Iterator<TagBinding> bindings) {
+            this.bindings = bindings;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return bindings.hasNext();
+        }
+
+        @Override
+        public TagOperation next() {
+            return TagOperation.deleteByName(bindings.next().getName());
+        }
+    }
+}
@@ -4,13 +4,20 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.cloud.resourcemanager.v3.TagBindingsClient;
 import com.google.cloud.resourcemanager.v3.TagBindingsSettings;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 
 /**
  * Utility class for handling authorization with the Cloud Resource Manager API.
+ * Processes that use several clients should prefer {@link ResourceManagerClients},
+ * which shares one channel pool and executor between them.
  */
 public class TagBindingsAuthorization {
 
+    private static final Logger LOG = LoggerFactory.getLogger(TagBindingsAuthorization.class);
+
     /**
      * Creates a TagBindingsClient using the provided credentials.
      *
@@ -32,7 +39,7 @@ public class TagBindingsAuthorization {
             // Create and return the client
             return TagBindingsClient.create(settings);
         } catch (IOException e) {
-            System.err.println("Failed to create TagBindingsClient: " + e.getMessage());
+            LOG.error("Failed to create TagBindingsClient: {}", e.getMessage());
             throw e;
         }
     }
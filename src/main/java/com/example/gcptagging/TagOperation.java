@@ -0,0 +1,138 @@
+package com.example.gcptagging;
+
+import java.util.Locale;
+
+/**
+ * A single tag binding mutation read from a manifest or produced by another command.
+ * Each operation either creates a binding between a resource and a tag value,
+ * or deletes an existing binding.
+ */
+public class TagOperation {
+
+    /**
+     * The kind of mutation to perform.
+     */
+    public enum Action {
+        CREATE,
+        DELETE;
+
+        /**
+         * Parses an action name such as "create" or "delete", ignoring case.
+         *
+         * @param value The action name
+         * @return The matching Action
+         * @throws IllegalArgumentException If the value is not a known action
+         */
+        public static Action parse(String value) {
+            switch (value.trim().toLowerCase(Locale.ROOT)) {
+                case "create":
+                case "bind":
+                    return CREATE;
+                case "delete":
+                case "unbind":
+                    return DELETE;
+                default:
+                    throw new IllegalArgumentException("Unknown action: " + value);
+            }
+        }
+    }
+
+    private final Action action;
+    private final String resourceName;
+    private final String tagValueName;
+    private final String tagBindingName;
+
+    /**
+     * Constructor for TagOperation.
+     *
+     * @param action The action to perform
+     * @param resourceName The full resource name (may be null for deletes that carry a binding name)
+     * @param tagValueName The tag value name (may be null for deletes that carry a binding name)
+     * @param tagBindingName The explicit tag binding name, or null to derive it from the resource and tag value
+     */
+    public TagOperation(Action action, String resourceName, String tagValueName, String tagBindingName) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action cannot be null");
+        }
+        if (action == Action.CREATE && (isBlank(resourceName) || isBlank(tagValueName))) {
+            throw new IllegalArgumentException("Create requires a resource name and a tag value");
+        }
+        if (action == Action.DELETE && isBlank(tagBindingName)
+                && (isBlank(resourceName) || isBlank(tagValueName))) {
+            throw new IllegalArgumentException("Delete requires a tag binding name or a resource name and tag value");
+        }
+        this.action = action;
+        this.resourceName = resourceName;
+        this.tagValueName = tagValueName;
+        this.tagBindingName = tagBindingName;
+    }
+
+    /**
+     * Creates an operation that binds a tag value to a resource.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The tag value name
+     * @return The create operation
+     */
+    public static TagOperation create(String resourceName, String tagValueName) {
+        return new TagOperation(Action.CREATE, resourceName, tagValueName, null);
+    }
+
+    /**
+     * Creates an operation that removes a binding between a tag value and a resource.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The tag value name
+     * @return The delete operation
+     */
+    public static TagOperation delete(String resourceName, String tagValueName) {
+        return new TagOperation(Action.DELETE, resourceName, tagValueName, null);
+    }
+
+    /**
+     * Creates an operation that removes a binding by its full tag binding name.
+     *
+     * @param tagBindingName The full tag binding name
+     * @return The delete operation
+     */
+    public static TagOperation deleteByName(String tagBindingName) {
+        return new TagOperation(Action.DELETE, null, null, tagBindingName);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public String getTagValueName() {
+        return tagValueName;
+    }
+
+    /**
+     * Returns the tag binding name targeted by this operation. When no explicit name was given,
+     * it is derived from the resource and tag value with {@link GcpResourceNames#formatTagBindingName}.
+     *
+     * @return The tag binding name
+     */
+    public String getTagBindingName() {
+        if (tagBindingName != null) {
+            return tagBindingName;
+        }
+        return GcpResourceNames.formatTagBindingName(resourceName, tagValueName);
+    }
+
+    @Override
+    public String toString() {
+        if (action == Action.CREATE || tagBindingName == null) {
+            return action.name().toLowerCase(Locale.ROOT) + " " + resourceName + " " + tagValueName;
+        }
+        return action.name().toLowerCase(Locale.ROOT) + " " + tagBindingName;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resolves namespaced tag names such as {@code 123456789012/environment/production} to
+ * tag value IDs such as {@code tagValues/456}. Namespaced tag key names
+ * ({@code 123456789012/environment}) resolve to {@code tagKeys/...} IDs.
+ *
+ * The whole key and value tree of an organization (or project) is loaded through
+ * {@link TagsUtil} on first use and kept until its TTL expires. Unknown names are remembered
+ * for a short time so that a bad row repeated a million times costs one lookup, and so are owners
+ * whose tree failed to load, for example because they do not exist or are not readable. Loaded
+ * trees are saved to a snapshot file so that the next run starts warm. Processes sharing the
+ * snapshot file each write a temporary file of their own and move it into place atomically.
+ */
+public class TagValueResolver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagValueResolver.class);
+
+    /**
+     * Default time after which a loaded tree is refreshed from the API.
+     */
+    public static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+    /**
+     * Default cap on cached names across all loaded trees.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private static final long NEGATIVE_TTL_MILLIS = Duration.ofMinutes(1).toMillis();
+    private static final int MAX_NEGATIVE_ENTRIES = 10_000;
+    private static final String SNAPSHOT_HEADER = "# gcptagging tag name snapshot v1";
+
+    private final TagsUtil tagsUtil;
+    private final Path snapshotFile;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Namespace> namespaces = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> unknownNames = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_NEGATIVE_ENTRIES;
+        }
+    };
+    private final Map<String, FailedLoad> failedOwners = new LinkedHashMap<String, FailedLoad>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FailedLoad> eldest) {
+            return size() > MAX_NEGATIVE_ENTRIES;
+        }
+    };
+    private int cachedEntries;
+
+    /**
+     * Constructor for TagValueResolver. Loads the snapshot file if it exists.
+     *
+     * @param tagsUtil The utility used to list tag keys and values
+     * @param snapshotFile The snapshot file, or null to keep the cache in memory only
+     * @param ttl How long a loaded tree stays valid
+     * @param maxEntries The most names to keep cached
+     */
+    public TagValueResolver(TagsUtil tagsUtil, Path snapshotFile, Duration ttl, int maxEntries) {
+        this.tagsUtil = tagsUtil;
+        this.snapshotFile = snapshotFile;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                readSnapshot();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Ignoring unreadable tag name snapshot {}: {}", snapshotFile, e.getMessage());
+                namespaces.clear();
+                cachedEntries = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the default snapshot location in the user's home directory.
+     *
+     * @return The default snapshot path
+     */
+    public static Path defaultSnapshotFile() {
+        return Paths.get(System.getProperty("user.home"), ".gcptagging", "tag-names.snapshot");
+    }
+
+    /**
+     * Checks whether a tag value reference is a namespaced name that needs resolving.
+     *
+     * @param name The tag value reference
+     * @return true if the name is not already a tagValues/ or tagKeys/ ID
+     */
+    public static boolean isNamespacedName(String name) {
+        return !name.startsWith("tagValues/") && !name.startsWith("tagKeys/");
+    }
+
+    /**
+     * Resolves a namespaced tag name to its ID. IDs are returned unchanged.
+     *
+     * @param name The namespaced name or ID
+     * @return The tagValues/ or tagKeys/ ID, or null if no such tag exists
+     */
+    public synchronized String resolve(String name) {
+        if (!isNamespacedName(name)) {
+            return name;
+        }
+        int slash = name.indexOf('/');
+        if (slash <= 0) {
+            throw new IllegalArgumentException("Not a namespaced tag name: " + name);
+        }
+        String owner = name.substring(0, slash);
+        long now = System.currentTimeMillis();
+
+        Namespace namespace = namespaces.get(owner);
+        if (namespace == null || now - namespace.loadedAtMillis > ttlMillis) {
+            namespace = load(owner);
+        }
+        String id = namespace.names.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        Long unknownUntil = unknownNames.get(name);
+        if (unknownUntil != null && unknownUntil > now) {
+            return null;
+        }
+
+        // The tag may have been created since the tree was loaded; refresh at most once per negative TTL
+        if (now - namespace.loadedAtMillis > NEGATIVE_TTL_MILLIS) {
+            namespace = load(owner);
+            id = namespace.names.get(name);
+            if (id != null) {
+                return id;
+            }
+        }
+        unknownNames.put(name, now + NEGATIVE_TTL_MILLIS);
+        return null;
+    }
+
+    /**
+     * Returns every cached name of an organization or project, loading the tree if needed.
+     *
+     * @param owner The organization ID or project ID that prefixes the namespaced names
+     * @return A copy of the map from namespaced name to ID
+     */
+    public synchronized Map<String, String> getNames(String owner) {
+        Namespace namespace = namespaces.get(owner);
+        if (namespace == null || System.currentTimeMillis() - namespace.loadedAtMillis > ttlMillis) {
+            namespace = load(owner);
+        }
+        return new HashMap<>(namespace.names);
+    }
+
+    /**
+     * Adds a name that was just created, so that it resolves without reloading the tree.
+     *
+     * @param namespacedName The namespaced name
+     * @param id The tagKeys/ or tagValues/ ID
+     */
+    public synchronized void put(String namespacedName, String id) {
+        int slash = namespacedName.indexOf('/');
+        Namespace namespace = slash > 0 ? namespaces.get(namespacedName.substring(0, slash)) : null;
+        if (namespace != null && namespace.names.put(namespacedName, id) == null) {
+            cachedEntries++;
+        }
+        unknownNames.remove(namespacedName);
+    }
+
+    /**
+     * Loads the tree of an owner. A failed load is remembered for the negative TTL, during which
+     * every lookup under the owner fails at once instead of listing the tree again.
+     */
+    private Namespace load(String owner) {
+        long now = System.currentTimeMillis();
+        FailedLoad failed = failedOwners.get(owner);
+        if (failed != null && failed.retryAtMillis > now) {
+            throw new IllegalStateException("Tag names of " + owner + " could not be loaded: "
+                    + failed.error.getMessage(), failed.error);
+        }
+        String parent = isNumeric(owner) ? "organizations/" + owner : "projects/" + owner;
+        Map<String, String> names = new HashMap<>();
+        try {
+            for (TagKey tagKey : tagsUtil.listTagKeys(parent)) {
+                names.put(tagKey.getNamespacedName(), tagKey.getName());
+                for (TagValue tagValue : tagsUtil.listTagValues(tagKey.getName())) {
+                    names.put(tagValue.getNamespacedName(), tagValue.getName());
+                }
+            }
+        } catch (RuntimeException e) {
+            failedOwners.put(owner, new FailedLoad(now + NEGATIVE_TTL_MILLIS, e));
+            throw e;
+        }
+        failedOwners.remove(owner);
+
+        Namespace namespace = new Namespace(System.currentTimeMillis(), names);
+        Namespace previous = namespaces.put(owner, namespace);
+        cachedEntries += names.size() - (previous != null ? previous.names.size() : 0);
+        evict(owner);
+        writeSnapshot();
+        return namespace;
+    }
+
+    private void evict(String keep) {
+        // Drop least recently used trees until the cache fits, but never the one just loaded
+        Iterator<Map.Entry<String, Namespace>> iterator = namespaces.entrySet().iterator();
+        while (cachedEntries > maxEntries && iterator.hasNext()) {
+            Map.Entry<String, Namespace> eldest = iterator.next();
+            if (!eldest.getKey().equals(keep)) {
+                cachedEntries -= eldest.getValue().names.size();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            if (!SNAPSHOT_HEADER.equals(reader.readLine())) {
+                throw new IOException("unknown snapshot format");
+            }
+            Namespace current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("@ ")) {
+                    String[] parts = line.split(" ");
+                    current = new Namespace(Long.parseLong(parts[2]), new HashMap<>());
+                    namespaces.put(parts[1], current);
+                } else if (current != null && !line.isEmpty()) {
+                    int tab = line.indexOf('\t');
+                    current.names.put(line.substring(0, tab), line.substring(tab + 1));
+                    cachedEntries++;
+                }
+            }
+        }
+    }
+
+    private void writeSnapshot() {
+        if (snapshotFile == null) {
+            return;
+        }
+        Path temp = null;
+        try {
+            Path directory = snapshotFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, snapshotFile.getFileName() + ".", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(SNAPSHOT_HEADER);
+                writer.newLine();
+                for (Map.Entry<String, Namespace> entry : namespaces.entrySet()) {
+                    writer.write("@ " + entry.getKey() + " " + entry.getValue().loadedAtMillis);
+                    writer.newLine();
+                    for (Map.Entry<String, String> name : entry.getValue().names.entrySet()) {
+                        writer.write(name.getKey());
+                        writer.write('\t');
+                        writer.write(name.getValue());
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to write tag name snapshot {}: {}", snapshotFile, e.getMessage());
+            deleteQuietly(temp);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static boolean isNumeric(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return !value.isEmpty();
+    }
+
+    /**
+     * A failed load of an owner's tree, and when it may be tried again.
+     */
+    private static class FailedLoad {
+
+        private final long retryAtMillis;
+        private final RuntimeException error;
+
+        FailedLoad(long retryAtMillis, RuntimeException error) {
+            this.retryAtMillis = retryAtMillis;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The loaded key and value tree of one organization or project.
+     */
+    private static class Namespace {
+
+        private final long loadedAtMillis;
+        private final Map<String, String> names;
+
+        Namespace(long loadedAtMillis, Map<String, String> names) {
+            this.loadedAtMillis = loadedAtMillis;
+            this.names = names;
+        }
+    }
+}
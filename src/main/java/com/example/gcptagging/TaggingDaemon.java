@@ -0,0 +1,333 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived server that keeps credentials and the gRPC channel warm across commands.
+ * Commands are read one per line, either from standard input or from clients connecting
+ * to a loopback TCP port. Each response is zero or more data lines starting with "* ",
+ * followed by a single status line starting with "OK" or "ERR".
+ *
+ * <pre>
+ *   create &lt;resource-name&gt; &lt;tag-value&gt;      (an ID, or a namespaced name given a resolver)
+ *   delete &lt;tag-binding-name&gt;
+ *   list-resource &lt;resource-name&gt;
+ *   list-tag &lt;tag-value&gt;
+ *   flush
+ *   ping
+ *   shutdown
+ * </pre>
+ *
+ * With a {@link WriteBehindQueue}, create and delete are answered with "OK queued" as soon as they
+ * are queued, failures are logged, and "flush" waits until everything queued so far has been sent.
+ *
+ * TCP clients must first send {@code auth <token>}, where the token is read from a file that
+ * only the daemon's user can access; see {@link #tokenFile(int)}.
+ */
+public class TaggingDaemon {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaggingDaemon.class);
+
+    /**
+     * Default loopback port for TCP mode.
+     */
+    public static final int DEFAULT_PORT = 7787;
+
+    private final GcpResourceTagger tagger;
+    private final WriteBehindQueue writeBehind;
+    private final TagValueResolver resolver;
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructor for TaggingDaemon.
+     *
+     * @param tagger The tagger shared by all commands
+     */
+    public TaggingDaemon(GcpResourceTagger tagger) {
+        this(tagger, null);
+    }
+
+    /**
+     * Constructor for TaggingDaemon that queues creates and deletes instead of sending them at once.
+     *
+     * @param tagger The tagger shared by all commands
+     * @param writeBehind The queue for creates and deletes, or null to send them before answering
+     */
+    public TaggingDaemon(GcpResourceTagger tagger, WriteBehindQueue writeBehind) {
+        this(tagger, writeBehind, null);
+    }
+
+    /**
+     * Constructor for TaggingDaemon that also accepts namespaced tag value names.
+     *
+     * @param tagger The tagger shared by all commands
+     * @param writeBehind The queue for creates and deletes, or null to send them before answering
+     * @param resolver Resolver for namespaced tag value names, or null to require IDs
+     */
+    public TaggingDaemon(GcpResourceTagger tagger, WriteBehindQueue writeBehind, TagValueResolver resolver) {
+        this.tagger = tagger;
+        this.writeBehind = writeBehind;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Returns the file holding the authentication token for a daemon port.
+     *
+     * @param port The daemon port
+     * @return The token file path
+     */
+    public static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".gcptagging", "daemon-" + port + ".token");
+    }
+
+    /**
+     * Serves commands from standard input until end of input or "shutdown".
+     *
+     * @param in The input stream to read commands from
+     * @param out The output stream to write responses to
+     * @throws IOException If reading or writing fails
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        String line;
+        while (running && (line = reader.readLine()) != null) {
+            handle(line, writer);
+            writer.flush();
+        }
+    }
+
+    /**
+     * Listens on a loopback TCP port and serves each connection on its own thread
+     * until a client sends "shutdown".
+     *
+     * @param port The port to listen on
+     * @throws IOException If the server socket or token file cannot be created
+     */
+    public void serveTcp(int port) throws IOException {
+        String token = writeToken(port);
+        ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "daemon-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            serverSocket = server;
+            LOG.info("Tagging daemon listening on {}", server.getLocalSocketAddress());
+            while (running) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException e) {
+                    if (!running) {
+                        break;
+                    }
+                    throw e;
+                }
+                connections.execute(() -> serveConnection(socket, token));
+            }
+        } finally {
+            connections.shutdownNow();
+            Files.deleteIfExists(tokenFile(port));
+        }
+    }
+
+    private void serveConnection(Socket socket, String token) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8));
+
+            String auth = reader.readLine();
+            if (auth == null || !auth.equals("auth " + token)) {
+                writer.println("ERR authentication required");
+                writer.flush();
+                return;
+            }
+            writer.println("OK authenticated");
+            writer.flush();
+
+            String line;
+            while (running && (line = reader.readLine()) != null) {
+                handle(line, writer);
+                writer.flush();
+            }
+        } catch (IOException e) {
+            LOG.warn("Daemon connection failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Executes a single command line and writes its response.
+     *
+     * @param line The command line
+     * @param out The writer for the response
+     */
+    void handle(String line, PrintWriter out) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length == 0 || parts[0].isEmpty()) {
+            out.println("ERR empty command");
+            return;
+        }
+        try {
+            switch (parts[0]) {
+                case "flush":
+                    if (writeBehind != null) {
+                        writeBehind.flush().get();
+                    }
+                    out.println("OK flushed");
+                    break;
+
+                case "ping":
+                    out.println("OK pong");
+                    break;
+
+                case "create":
+                    requireArgs(parts, 3);
+                    String tagValue = resolveTagValue(parts[2]);
+                    if (writeBehind != null) {
+                        String queuedName = GcpResourceNames.formatTagBindingName(parts[1], tagValue);
+                        writeBehind.create(parts[1], tagValue).whenComplete((created, error) -> logFailure("create", queuedName, error));
+                        out.println("OK queued " + queuedName);
+                        break;
+                    }
+                    TagBinding binding = tagger.submitCreateTagBinding(parts[1], tagValue).get();
+                    out.println("OK " + binding.getName());
+                    break;
+
+                case "delete":
+                    requireArgs(parts, 2);
+                    if (writeBehind != null) {
+                        String queuedName = parts[1];
+                        writeBehind.delete(queuedName).whenComplete((deleted, error) -> logFailure("delete", queuedName, error));
+                        out.println("OK queued " + queuedName);
+                        break;
+                    }
+                    tagger.submitDeleteTagBinding(parts[1]).get();
+                    out.println("OK " + parts[1]);
+                    break;
+
+                case "list-resource":
+                case "list-tag":
+                    requireArgs(parts, 2);
+                    boolean byResource = parts[0].equals("list-resource");
+                    long[] count = new long[1];
+                    tagger.forEachTagBindingPage(parts[1], GcpResourceTagger.DEFAULT_PAGE_SIZE, page -> {
+                        for (TagBinding b : page) {
+                            out.println("* " + b.getName() + " " + (byResource ? b.getTagValue() : b.getParent()));
+                        }
+                        out.flush();
+                        count[0] += page.size();
+                    });
+                    out.println("OK " + count[0]);
+                    break;
+
+                case "shutdown":
+                    out.println("OK shutting down");
+                    shutdown();
+                    break;
+
+                default:
+                    out.println("ERR unknown command: " + parts[0]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            out.println("ERR interrupted");
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            out.println("ERR " + String.valueOf(cause.getMessage()).replace('\n', ' '));
+        }
+    }
+
+    /**
+     * Stops accepting commands.
+     */
+    public void shutdown() {
+        running = false;
+        ServerSocket server = serverSocket;
+        if (server != null) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close daemon socket: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Resolves a namespaced tag value name such as {@code 123456789012/env/prod} to its ID, as the create command does.
+     */
+    private String resolveTagValue(String tagValue) {
+        if (resolver == null || !TagValueResolver.isNamespacedName(tagValue)) {
+            return tagValue;
+        }
+        String tagValueId = resolver.resolve(tagValue);
+        if (tagValueId == null) {
+            throw new IllegalArgumentException("Unknown tag value: " + tagValue);
+        }
+        return tagValueId;
+    }
+
+    private static void logFailure(String command, String tagBindingName, Throwable error) {
+        if (error != null) {
+            Throwable cause = error.getCause() != null ? error.getCause() : error;
+            LOG.warn("Queued {} of {} failed: {}", command, tagBindingName, cause.getMessage());
+        }
+    }
+
+    private static void requireArgs(String[] parts, int count) {
+        if (parts.length < count) {
+            throw new IllegalArgumentException("missing arguments for " + parts[0]);
+        }
+    }
+
+    /**
+     * Writes a new random token to the token file of a port, readable only by the current user.
+     *
+     * @param port The port the token protects
+     * @return The token
+     * @throws IOException If the token file cannot be written
+     */
+    static String writeToken(int port) throws IOException {
+        byte[] bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Path file = tokenFile(port);
+        Files.createDirectories(file.getParent());
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Non-POSIX file systems fall back to the default permissions of the home directory
+            Files.createFile(file);
+        }
+        Files.write(file, token.getBytes(StandardCharsets.UTF_8));
+        return token;
+    }
+}
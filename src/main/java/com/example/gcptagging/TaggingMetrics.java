@@ -0,0 +1,496 @@
+package com.example.gcptagging;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.longrunning.OperationFuture;
+import com.google.api.gax.longrunning.OperationSnapshot;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Per-method call metrics for the Resource Manager APIs: calls, calls in flight, retries,
+ * status codes of every attempt, and latency histograms for the whole call, for each RPC, and
+ * for the time a long-running operation takes to finish after its RPC has returned.
+ *
+ * Recording is lock-free. The metrics can be read directly, as MXBeans under
+ * {@code com.example.gcptagging:type=TaggingMetrics} once {@link #registerJmx()} is called, or in the
+ * Prometheus text format through {@link #writePrometheus(Appendable)}.
+ */
+public class TaggingMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaggingMetrics.class);
+
+    private static final TaggingMetrics SHARED = new TaggingMetrics();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private volatile MBeanServer mbeanServer;
+
+    /**
+     * Returns the metrics shared by all clients in this process.
+     *
+     * @return The shared metrics
+     */
+    public static TaggingMetrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the metrics of one API method, creating them on first use.
+     *
+     * @param name The gRPC method name, e.g. {@code CreateTagBinding}
+     * @return The method's metrics
+     */
+    public MethodMetrics method(String name) {
+        MethodMetrics metrics = methods.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        MethodMetrics created = new MethodMetrics(name);
+        metrics = methods.putIfAbsent(name, created);
+        if (metrics != null) {
+            return metrics;
+        }
+        if (mbeanServer != null) {
+            register(mbeanServer, created);
+        }
+        return created;
+    }
+
+    /**
+     * Returns the metrics of every method used so far.
+     *
+     * @return The method metrics keyed by method name
+     */
+    public Map<String, MethodMetrics> getMethods() {
+        return Collections.unmodifiableMap(new TreeMap<>(methods));
+    }
+
+    /**
+     * Registers an MXBean for every method, now and as new methods are used.
+     * Registration is not done by default because starting the platform MBean server adds to startup time.
+     */
+    public synchronized void registerJmx() {
+        if (mbeanServer != null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        mbeanServer = server;
+        for (MethodMetrics metrics : methods.values()) {
+            register(server, metrics);
+        }
+    }
+
+    private static void register(MBeanServer server, MethodMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName("com.example.gcptagging:type=TaggingMetrics,method=" + metrics.name);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics MXBean for {}: {}", metrics.name, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format.
+     * Latencies are summaries in seconds whose quantiles cover the life of the process.
+     *
+     * @param out Where to write
+     * @throws IOException If writing fails
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        Map<String, MethodMetrics> sorted = getMethods();
+
+        out.append("# HELP gcptagging_calls_total Calls started, counting each call once however often it is retried.\n");
+        out.append("# TYPE gcptagging_calls_total counter\n");
+        for (MethodMetrics metrics : sorted.values()) {
+            sample(out, "gcptagging_calls_total", metrics.name, null, metrics.calls.get());
+        }
+        out.append("# HELP gcptagging_calls_in_flight Calls started and not yet finished.\n");
+        out.append("# TYPE gcptagging_calls_in_flight gauge\n");
+        for (MethodMetrics metrics : sorted.values()) {
+            sample(out, "gcptagging_calls_in_flight", metrics.name, null, metrics.inFlight.get());
+        }
+        out.append("# HELP gcptagging_retries_total Attempts after the first.\n");
+        out.append("# TYPE gcptagging_retries_total counter\n");
+        for (MethodMetrics metrics : sorted.values()) {
+            sample(out, "gcptagging_retries_total", metrics.name, null, metrics.retries.get());
+        }
+        out.append("# HELP gcptagging_attempts_total Attempts by gRPC status code.\n");
+        out.append("# TYPE gcptagging_attempts_total counter\n");
+        for (MethodMetrics metrics : sorted.values()) {
+            for (Map.Entry<String, Long> entry : metrics.getStatusCodes().entrySet()) {
+                sample(out, "gcptagging_attempts_total", metrics.name, "code=\"" + entry.getKey() + "\"", entry.getValue());
+            }
+        }
+        summary(out, "gcptagging_call_latency_seconds",
+                "Latency of whole calls, including quota waits and retries.", sorted, m -> m.callLatency);
+        summary(out, "gcptagging_rpc_latency_seconds",
+                "Latency of single RPC attempts, until the server answered.", sorted, m -> m.rpcLatency);
+        summary(out, "gcptagging_operation_wait_seconds",
+                "Time long-running operations took to finish after their RPC returned.", sorted, m -> m.operationLatency);
+    }
+
+    private static void summary(Appendable out, String metric, String help, Map<String, MethodMetrics> methods,
+            Function<MethodMetrics, LatencyHistogram> histogramOf) throws IOException {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(" summary\n");
+        for (MethodMetrics metrics : methods.values()) {
+            LatencyHistogram histogram = histogramOf.apply(metrics);
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            for (double quantile : QUANTILES) {
+                sample(out, metric, metrics.name, "quantile=\"" + quantile + "\"",
+                        histogram.getPercentileMicros(quantile * 100) / 1e6);
+            }
+            sample(out, metric + "_sum", metrics.name, null, histogram.getSumMicros() / 1e6);
+            sample(out, metric + "_count", metrics.name, null, histogram.getCount());
+        }
+    }
+
+    private static void sample(Appendable out, String metric, String method, String extraLabel, double value)
+            throws IOException {
+        out.append(metric).append("{method=\"").append(method).append('"');
+        if (extraLabel != null) {
+            out.append(',').append(extraLabel);
+        }
+        out.append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append(Long.toString((long) value));
+        } else {
+            out.append(String.format(Locale.ROOT, "%.6f", value));
+        }
+        out.append('\n');
+    }
+
+    /**
+     * The JMX view of one method's metrics. Latencies are in milliseconds.
+     */
+    public interface MethodMetricsMXBean {
+
+        long getCalls();
+
+        int getInFlight();
+
+        long getRetries();
+
+        Map<String, Long> getStatusCodes();
+
+        double getCallLatencyP50Millis();
+
+        double getCallLatencyP99Millis();
+
+        double getRpcLatencyP50Millis();
+
+        double getRpcLatencyP99Millis();
+
+        double getOperationWaitP50Millis();
+
+        double getOperationWaitP99Millis();
+    }
+
+    /**
+     * Metrics of one API method.
+     */
+    public static class MethodMetrics implements MethodMetricsMXBean {
+
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong retries = new AtomicLong();
+        private final Map<StatusCode.Code, AtomicLong> statusCodes = new EnumMap<>(StatusCode.Code.class);
+        private final AtomicLong otherFailures = new AtomicLong();
+        private final LatencyHistogram callLatency = new LatencyHistogram();
+        private final LatencyHistogram rpcLatency = new LatencyHistogram();
+        private final LatencyHistogram operationLatency = new LatencyHistogram();
+
+        MethodMetrics(String name) {
+            this.name = name;
+            // Filled once here, so concurrent updates only touch the atomic counters
+            for (StatusCode.Code code : StatusCode.Code.values()) {
+                statusCodes.put(code, new AtomicLong());
+            }
+        }
+
+        /**
+         * Records the start of a call.
+         *
+         * @return The start time, to pass to {@link #endCall}
+         */
+        public long startCall() {
+            calls.incrementAndGet();
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        /**
+         * Records the end of a call started with {@link #startCall}.
+         *
+         * @param startNanos The start time returned by startCall
+         */
+        public void endCall(long startNanos) {
+            inFlight.decrementAndGet();
+            callLatency.record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * Records the end of a call once its future completes.
+         *
+         * @param startNanos The start time returned by startCall
+         * @param future The future of the call
+         * @return The same future
+         */
+        public <T> ApiFuture<T> endCallOnCompletion(long startNanos, ApiFuture<T> future) {
+            future.addListener(() -> endCall(startNanos), MoreExecutors.directExecutor());
+            return future;
+        }
+
+        /**
+         * Records that a call is being retried.
+         */
+        public void recordRetry() {
+            retries.incrementAndGet();
+        }
+
+        /**
+         * Records the latency and status of one RPC attempt once it completes.
+         *
+         * @param future The future of the RPC
+         * @return The same future
+         */
+        public <T> ApiFuture<T> recordRpc(ApiFuture<T> future) {
+            long startNanos = System.nanoTime();
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    rpcLatency.record(System.nanoTime() - startNanos);
+                    recordStatus(null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    rpcLatency.record(System.nanoTime() - startNanos);
+                    recordStatus(t);
+                }
+            }, MoreExecutors.directExecutor());
+            return future;
+        }
+
+        /**
+         * Records one attempt of a long-running call: the RPC latency until the server returned the
+         * operation, the time the operation then took to finish, and the final status.
+         *
+         * @param future The operation future of the attempt
+         * @return The same future
+         */
+        public <T, M> OperationFuture<T, M> recordOperation(OperationFuture<T, M> future) {
+            long startNanos = System.nanoTime();
+            AtomicLong rpcDoneNanos = new AtomicLong();
+            ApiFutures.addCallback(future.getInitialFuture(), new ApiFutureCallback<OperationSnapshot>() {
+                @Override
+                public void onSuccess(OperationSnapshot snapshot) {
+                    long now = System.nanoTime();
+                    rpcDoneNanos.set(now);
+                    rpcLatency.record(now - startNanos);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    rpcLatency.record(System.nanoTime() - startNanos);
+                }
+            }, MoreExecutors.directExecutor());
+            ApiFutures.addCallback(future, new ApiFutureCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    recordOperationWait();
+                    recordStatus(null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    recordOperationWait();
+                    recordStatus(t);
+                }
+
+                private void recordOperationWait() {
+                    // The initial future completes first, so its time is visible here
+                    long rpcDone = rpcDoneNanos.get();
+                    if (rpcDone != 0) {
+                        operationLatency.record(System.nanoTime() - rpcDone);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            return future;
+        }
+
+        /**
+         * Records the time a long-running operation took to finish after its RPC returned, for
+         * operations tracked outside an operation future, such as by an {@link OperationTracker}.
+         *
+         * @param nanos The time in nanoseconds
+         */
+        public void recordOperationLatency(long nanos) {
+            operationLatency.record(nanos);
+        }
+
+        /**
+         * Starts an asynchronous call that is not retried, recording it as one call with one attempt.
+         *
+         * @param call Starts the call
+         * @return The call's future
+         */
+        public <T> ApiFuture<T> recordCall(Supplier<ApiFuture<T>> call) {
+            long startNanos = startCall();
+            ApiFuture<T> future;
+            try {
+                future = recordRpc(call.get());
+            } catch (RuntimeException e) {
+                recordStatus(e);
+                endCall(startNanos);
+                throw e;
+            }
+            return endCallOnCompletion(startNanos, future);
+        }
+
+        /**
+         * Runs a blocking call as one call with one attempt.
+         * For a paged listing, the attempt's latency covers fetching every page.
+         *
+         * @param call The call
+         * @return The call's result
+         */
+        public <T> T recordBlocking(Supplier<T> call) {
+            long startNanos = startCall();
+            try {
+                T result = call.get();
+                recordStatus(null);
+                return result;
+            } catch (RuntimeException e) {
+                recordStatus(e);
+                throw e;
+            } finally {
+                rpcLatency.record(System.nanoTime() - startNanos);
+                endCall(startNanos);
+            }
+        }
+
+        private void recordStatus(Throwable error) {
+            if (error == null) {
+                statusCodes.get(StatusCode.Code.OK).incrementAndGet();
+                return;
+            }
+            StatusCode.Code code = RetryPolicy.statusCodeOf(error);
+            if (code != null) {
+                statusCodes.get(code).incrementAndGet();
+            } else {
+                otherFailures.incrementAndGet();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long getCalls() {
+            return calls.get();
+        }
+
+        @Override
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * Returns the number of attempts per status code, leaving out codes never seen.
+         * Failures that did not come from the API, such as cancellations, are counted as {@code CLIENT}.
+         *
+         * @return The counts keyed by status code name
+         */
+        @Override
+        public Map<String, Long> getStatusCodes() {
+            Map<String, Long> counts = new TreeMap<>();
+            for (Map.Entry<StatusCode.Code, AtomicLong> entry : statusCodes.entrySet()) {
+                long count = entry.getValue().get();
+                if (count > 0) {
+                    counts.put(entry.getKey().name(), count);
+                }
+            }
+            if (otherFailures.get() > 0) {
+                counts.put("CLIENT", otherFailures.get());
+            }
+            return counts;
+        }
+
+        public LatencyHistogram getCallLatency() {
+            return callLatency;
+        }
+
+        public LatencyHistogram getRpcLatency() {
+            return rpcLatency;
+        }
+
+        public LatencyHistogram getOperationLatency() {
+            return operationLatency;
+        }
+
+        @Override
+        public double getCallLatencyP50Millis() {
+            return callLatency.getPercentileMicros(50) / 1000.0;
+        }
+
+        @Override
+        public double getCallLatencyP99Millis() {
+            return callLatency.getPercentileMicros(99) / 1000.0;
+        }
+
+        @Override
+        public double getRpcLatencyP50Millis() {
+            return rpcLatency.getPercentileMicros(50) / 1000.0;
+        }
+
+        @Override
+        public double getRpcLatencyP99Millis() {
+            return rpcLatency.getPercentileMicros(99) / 1000.0;
+        }
+
+        @Override
+        public double getOperationWaitP50Millis() {
+            return operationLatency.getPercentileMicros(50) / 1000.0;
+        }
+
+        @Override
+        public double getOperationWaitP99Millis() {
+            return operationLatency.getPercentileMicros(99) / 1000.0;
+        }
+    }
+}
@@ -14,7 +14,9 @@ import com.google.cloud.resourcemanager.v3.TagKeysSettings;
 import com.google.cloud.resourcemanager.v3.TagValue;
 import com.google.cloud.resourcemanager.v3.TagValuesClient;
 import com.google.cloud.resourcemanager.v3.TagValuesSettings;
-import com.google.longrunning.Operation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -28,10 +30,13 @@ import java.util.concurrent.TimeoutException;
  * that can later be used with the GcpResourceTagger to bind to resources.
  */
 public class TagsUtil {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TagsUtil.class);
     
     private final TagKeysClient tagKeysClient;
     private final TagValuesClient tagValuesClient;
     private final String organizationId;
+    private final TaggingMetrics metrics = TaggingMetrics.shared();
     
     /**
      * Constructor for TagsUtil.
@@ -61,6 +66,19 @@ public class TagsUtil {
         this.organizationId = organizationId;
     }
     
+    /**
+     * Constructor for TagsUtil that creates its clients on a shared channel.
+     * 
+     * @param clients The client factory providing the shared channel and credentials
+     * @param organizationId The organization ID (numeric format), or null if only methods taking an explicit parent are used
+     * @throws IOException If clients cannot be created
+     */
+    public TagsUtil(ResourceManagerClients clients, String organizationId) throws IOException {
+        this.tagKeysClient = clients.createTagKeysClient();
+        this.tagValuesClient = clients.createTagValuesClient();
+        this.organizationId = organizationId;
+    }
+    
     /**
      * Creates a tag key in the organization.
      * 
@@ -74,9 +92,27 @@ public class TagsUtil {
      */
     public TagKey createTagKey(String shortName, String description) 
             throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        return createTagKey("organizations/" + organizationId, shortName, description);
+    }
+    
+    /**
+     * Creates a tag key under a parent organization or project and waits for the long-running
+     * operation, whose response is the created TagKey.
+     * 
+     * @param parent The parent resource name (e.g., organizations/123456789012 or projects/my-project)
+     * @param shortName The short name for the tag key (e.g., "environment")
+     * @param description The description of the tag key
+     * @return The created TagKey
+     * @throws IOException If the API call fails
+     * @throws InterruptedException If the operation is interrupted
+     * @throws ExecutionException If the operation fails
+     * @throws TimeoutException If the operation times out
+     */
+    public TagKey createTagKey(String parent, String shortName, String description) 
+            throws IOException, InterruptedException, ExecutionException, TimeoutException {
         // Create a TagKey
         TagKey tagKey = TagKey.newBuilder()
-                .setParent("organizations/" + organizationId)
+                .setParent(parent)
                 .setShortName(shortName)
                 .setDescription(description)
                 .build();
@@ -86,17 +122,14 @@ public class TagsUtil {
                 .setTagKey(tagKey)
                 .build();
         
-        // Create the tag key using the operation method and wait for completion
-        Operation operation = tagKeysClient.createTagKeyCallable()
-                .futureCall(request)
-                .get();
-        
-        // Get the fully qualified name of the created tag key
-        String tagKeyName = operation.getResponse().toString();
-        
-        // Retrieve the complete tag key using the name
-        return tagKeysClient.getTagKey(
-                GetTagKeyRequest.newBuilder().setName(tagKeyName).build());
+        // The operation future polls until the operation is done and unpacks its response
+        TaggingMetrics.MethodMetrics method = metrics.method("CreateTagKey");
+        long startNanos = method.startCall();
+        try {
+            return method.recordOperation(tagKeysClient.createTagKeyAsync(request)).get();
+        } finally {
+            method.endCall(startNanos);
+        }
     }
     
     /**
@@ -125,17 +158,14 @@ public class TagsUtil {
                 .setTagValue(tagValue)
                 .build();
         
-        // Create the tag value using the operation method and wait for completion
-        Operation operation = tagValuesClient.createTagValueCallable()
-                .futureCall(request)
-                .get();
-        
-        // Get the fully qualified name of the created tag value
-        String tagValueName = operation.getResponse().toString();
-        
-        // Retrieve the complete tag value using the name
-        return tagValuesClient.getTagValue(
-                GetTagValueRequest.newBuilder().setName(tagValueName).build());
+        // The operation future polls until the operation is done and unpacks its response
+        TaggingMetrics.MethodMetrics method = metrics.method("CreateTagValue");
+        long startNanos = method.startCall();
+        try {
+            return method.recordOperation(tagValuesClient.createTagValueAsync(request)).get();
+        } finally {
+            method.endCall(startNanos);
+        }
     }
     
     /**
@@ -144,14 +174,27 @@ public class TagsUtil {
      * @return List of TagKey objects
      */
     public List<TagKey> listTagKeys() {
+        return listTagKeys("organizations/" + organizationId);
+    }
+    
+    /**
+     * Lists all tag keys under a parent organization or project.
+     * 
+     * @param parent The parent resource name (e.g., organizations/123456789012 or projects/my-project)
+     * @return List of TagKey objects
+     */
+    public List<TagKey> listTagKeys(String parent) {
         ListTagKeysRequest request = ListTagKeysRequest.newBuilder()
-                .setParent("organizations/" + organizationId)
+                .setParent(parent)
                 .build();
         
         List<TagKey> tagKeys = new ArrayList<>();
-        tagKeysClient.listTagKeys(request).iterateAll().forEach(tagKeys::add);
+        metrics.method("ListTagKeys").recordBlocking(() -> {
+            tagKeysClient.listTagKeys(request).iterateAll().forEach(tagKeys::add);
+            return tagKeys;
+        });
         
-        System.out.println("Found " + tagKeys.size() + " tag keys in organization " + organizationId);
+        LOG.debug("Found {} tag keys in {}", tagKeys.size(), parent);
         return tagKeys;
     }
     
@@ -167,9 +210,12 @@ public class TagsUtil {
                 .build();
         
         List<TagValue> tagValues = new ArrayList<>();
-        tagValuesClient.listTagValues(request).iterateAll().forEach(tagValues::add);
+        metrics.method("ListTagValues").recordBlocking(() -> {
+            tagValuesClient.listTagValues(request).iterateAll().forEach(tagValues::add);
+            return tagValues;
+        });
         
-        System.out.println("Found " + tagValues.size() + " tag values for tag key " + tagKeyId);
+        LOG.debug("Found {} tag values for tag key {}", tagValues.size(), tagKeyId);
         return tagValues;
     }
     
@@ -185,7 +231,7 @@ public class TagsUtil {
                 .setName(tagKeyName)
                 .build();
         
-        return tagKeysClient.getTagKey(request);
+        return metrics.method("GetTagKey").recordBlocking(() -> tagKeysClient.getTagKey(request));
     }
     
     /**
@@ -200,7 +246,7 @@ public class TagsUtil {
                 .setName(tagValueName)
                 .build();
         
-        return tagValuesClient.getTagValue(request);
+        return metrics.method("GetTagValue").recordBlocking(() -> tagValuesClient.getTagValue(request));
     }
     
     /**
@@ -0,0 +1,509 @@
+package com.example.gcptagging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A declarative set of tag keys and their values under one parent, read from a JSON or YAML file:
+ *
+ * <pre>
+ * parent: organizations/123456789012
+ * keys:
+ *   - shortName: environment
+ *     description: Specifies the environment type for the resource
+ *     values:
+ *       - production
+ *       - shortName: staging
+ *         description: Staging environment resources
+ *   - shortName: department
+ *     values: [finance, engineering]
+ * </pre>
+ *
+ * The JSON form has the same structure. Values may be given as a short name alone or as an object
+ * with {@code shortName} and {@code description}. The parent is optional in the file.
+ *
+ * Only the block style subset of YAML shown above is read: nested mappings and sequences,
+ * plain or quoted scalars, flow sequences of scalars and comments. Anchors, tags, flow
+ * mappings, multi-line scalars and multiple documents are not supported.
+ */
+public class Taxonomy {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String parent;
+    private final List<Key> keys;
+
+    /**
+     * Constructor for Taxonomy.
+     *
+     * @param parent The organization or project the keys belong to, or null if not known yet
+     * @param keys The tag keys
+     * @throws IllegalArgumentException If a key or value short name appears twice
+     */
+    public Taxonomy(String parent, List<Key> keys) {
+        Set<String> keyNames = new HashSet<>();
+        for (Key key : keys) {
+            if (!keyNames.add(key.getShortName())) {
+                throw new IllegalArgumentException("Duplicate tag key: " + key.getShortName());
+            }
+            Set<String> valueNames = new HashSet<>();
+            for (Value value : key.getValues()) {
+                if (!valueNames.add(value.getShortName())) {
+                    throw new IllegalArgumentException("Duplicate tag value: " + key.getShortName() + "/" + value.getShortName());
+                }
+            }
+        }
+        this.parent = parent;
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+    }
+
+    /**
+     * Reads a taxonomy file. Files ending in .json are read as JSON, all others as YAML.
+     *
+     * @param file The taxonomy file
+     * @return The taxonomy
+     * @throws IOException If the file cannot be read or is not a valid taxonomy
+     */
+    public static Taxonomy load(Path file) throws IOException {
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        Object tree = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".json")
+                ? parseJson(text) : new YamlSubsetParser(text).parse();
+        try {
+            return fromTree(tree);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid taxonomy " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns a copy of this taxonomy with another parent.
+     *
+     * @param parent The organization or project the keys belong to
+     * @return The taxonomy with the new parent
+     */
+    public Taxonomy withParent(String parent) {
+        return new Taxonomy(parent, keys);
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public List<Key> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Returns the number of tag values over all keys.
+     *
+     * @return The number of values
+     */
+    public int getValueCount() {
+        int count = 0;
+        for (Key key : keys) {
+            count += key.getValues().size();
+        }
+        return count;
+    }
+
+    /**
+     * A tag key and the values it should have.
+     */
+    public static class Key {
+
+        private final String shortName;
+        private final String description;
+        private final List<Value> values;
+
+        /**
+         * Constructor for Key.
+         *
+         * @param shortName The short name of the tag key
+         * @param description The description, or null for none
+         * @param values The tag values of the key
+         */
+        public Key(String shortName, String description, List<Value> values) {
+            this.shortName = requireShortName(shortName);
+            this.description = description != null ? description : "";
+            this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        }
+
+        public String getShortName() {
+            return shortName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public List<Value> getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * A tag value of a {@link Key}.
+     */
+    public static class Value {
+
+        private final String shortName;
+        private final String description;
+
+        /**
+         * Constructor for Value.
+         *
+         * @param shortName The short name of the tag value
+         * @param description The description, or null for none
+         */
+        public Value(String shortName, String description) {
+            this.shortName = requireShortName(shortName);
+            this.description = description != null ? description : "";
+        }
+
+        public String getShortName() {
+            return shortName;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static String requireShortName(String shortName) {
+        if (shortName == null || shortName.isEmpty()) {
+            throw new IllegalArgumentException("missing shortName");
+        }
+        if (shortName.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("shortName must not contain '/': " + shortName);
+        }
+        return shortName;
+    }
+
+    // Maps the parsed document, made of maps, lists and strings, onto keys and values
+    private static Taxonomy fromTree(Object tree) {
+        Map<String, Object> root = asMap(tree, "document");
+        List<Key> keys = new ArrayList<>();
+        for (Object keyEntry : asList(root.get("keys"), "keys")) {
+            Map<String, Object> key = asMap(keyEntry, "tag key");
+            String keyName = asString(key.get("shortName"), "shortName");
+            List<Value> values = new ArrayList<>();
+            Object valueEntries = key.get("values");
+            for (Object valueEntry : valueEntries != null ? asList(valueEntries, "values of " + keyName) : List.of()) {
+                if (valueEntry instanceof Map) {
+                    Map<String, Object> value = asMap(valueEntry, "tag value");
+                    values.add(new Value(asString(value.get("shortName"), "shortName"),
+                            asString(value.get("description"), "description")));
+                } else {
+                    values.add(new Value(asString(valueEntry, "tag value of " + keyName), null));
+                }
+            }
+            keys.add(new Key(keyName, asString(key.get("description"), "description"), values));
+        }
+        return new Taxonomy(asString(root.get("parent"), "parent"), keys);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object node, String what) {
+        if (!(node instanceof Map)) {
+            throw new IllegalArgumentException(what + " must be a mapping");
+        }
+        return (Map<String, Object>) node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object node, String what) {
+        if (!(node instanceof List)) {
+            throw new IllegalArgumentException(what + " must be a list");
+        }
+        return (List<Object>) node;
+    }
+
+    private static String asString(Object node, String what) {
+        if (node != null && !(node instanceof String)) {
+            throw new IllegalArgumentException(what + " must be a string");
+        }
+        return (String) node;
+    }
+
+    private static Object parseJson(String text) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(text)) {
+            parser.nextToken();
+            return readJson(parser);
+        }
+    }
+
+    private static Object readJson(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                map.put(field, readJson(parser));
+            }
+            return map;
+        }
+        if (token == JsonToken.START_ARRAY) {
+            List<Object> list = new ArrayList<>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                list.add(readJson(parser));
+            }
+            return list;
+        }
+        if (token == null) {
+            throw new IOException("Empty taxonomy");
+        }
+        return token == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    /**
+     * Parses the block style subset of YAML described on {@link Taxonomy} into maps, lists and strings.
+     */
+    private static class YamlSubsetParser {
+
+        private final List<Line> lines = new ArrayList<>();
+        private int position;
+
+        YamlSubsetParser(String text) throws IOException {
+            String[] rawLines = text.split("\r?\n", -1);
+            for (int i = 0; i < rawLines.length; i++) {
+                String raw = stripComment(rawLines[i]);
+                String content = raw.trim();
+                if (content.isEmpty() || (content.equals("---") && lines.isEmpty())) {
+                    continue;
+                }
+                int indent = 0;
+                while (raw.charAt(indent) == ' ') {
+                    indent++;
+                }
+                if (raw.charAt(indent) == '\t') {
+                    throw error(i + 1, "tabs are not allowed for indentation");
+                }
+                lines.add(new Line(i + 1, indent, content));
+            }
+        }
+
+        Object parse() throws IOException {
+            if (lines.isEmpty()) {
+                throw new IOException("Empty taxonomy");
+            }
+            Object root = parseBlock(lines.get(0).indent);
+            if (position < lines.size()) {
+                throw error(lines.get(position).number, "unexpected indentation");
+            }
+            return root;
+        }
+
+        private Object parseBlock(int indent) throws IOException {
+            return isSequenceItem(lines.get(position).content) ? parseSequence(indent) : parseMapping(indent);
+        }
+
+        private List<Object> parseSequence(int indent) throws IOException {
+            List<Object> list = new ArrayList<>();
+            while (position < lines.size() && lines.get(position).indent == indent
+                    && isSequenceItem(lines.get(position).content)) {
+                Line line = lines.get(position);
+                String rest = line.content.substring(1).trim();
+                if (rest.isEmpty()) {
+                    position++;
+                    list.add(parseNested(indent));
+                } else if (findKeySeparator(rest) >= 0) {
+                    // "- key: value" starts a mapping whose keys line up with the first one
+                    int itemIndent = line.indent + line.content.indexOf(rest);
+                    lines.set(position, new Line(line.number, itemIndent, rest));
+                    list.add(parseMapping(itemIndent));
+                } else {
+                    position++;
+                    list.add(parseScalar(rest, line.number));
+                }
+            }
+            return list;
+        }
+
+        private Map<String, Object> parseMapping(int indent) throws IOException {
+            Map<String, Object> map = new LinkedHashMap<>();
+            while (position < lines.size() && lines.get(position).indent == indent
+                    && !isSequenceItem(lines.get(position).content)) {
+                Line line = lines.get(position);
+                int separator = findKeySeparator(line.content);
+                if (separator < 0) {
+                    throw error(line.number, "expected 'key: value'");
+                }
+                String key = unquote(line.content.substring(0, separator).trim(), line.number);
+                String rest = line.content.substring(separator + 1).trim();
+                if (map.containsKey(key)) {
+                    throw error(line.number, "duplicate key '" + key + "'");
+                }
+                position++;
+                if (rest.isEmpty()) {
+                    // A sequence may sit at the same indentation as its key
+                    boolean sameIndentSequence = position < lines.size() && lines.get(position).indent == indent
+                            && isSequenceItem(lines.get(position).content);
+                    map.put(key, sameIndentSequence ? parseSequence(indent) : parseNested(indent));
+                } else {
+                    map.put(key, parseScalar(rest, line.number));
+                }
+            }
+            return map;
+        }
+
+        private Object parseNested(int indent) throws IOException {
+            if (position < lines.size() && lines.get(position).indent > indent) {
+                return parseBlock(lines.get(position).indent);
+            }
+            return null;
+        }
+
+        private Object parseScalar(String text, int number) throws IOException {
+            if (text.startsWith("[")) {
+                if (!text.endsWith("]")) {
+                    throw error(number, "unterminated flow sequence");
+                }
+                List<Object> list = new ArrayList<>();
+                String inner = text.substring(1, text.length() - 1).trim();
+                if (inner.isEmpty()) {
+                    return list;
+                }
+                for (String item : splitFlow(inner, number)) {
+                    list.add(unquote(item.trim(), number));
+                }
+                return list;
+            }
+            if (text.startsWith("{")) {
+                throw error(number, "flow mappings are not supported");
+            }
+            if (text.equals("~") || text.equals("null")) {
+                return null;
+            }
+            return unquote(text, number);
+        }
+
+        private List<String> splitFlow(String text, int number) throws IOException {
+            List<String> items = new ArrayList<>();
+            char quote = 0;
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quote != 0) {
+                    if (c == '\\' && quote == '"') {
+                        i++;
+                    } else if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == ',') {
+                    items.add(text.substring(start, i));
+                    start = i + 1;
+                } else if (c == '[' || c == '{') {
+                    throw error(number, "nested flow collections are not supported");
+                }
+            }
+            if (quote != 0) {
+                throw error(number, "unterminated quoted string");
+            }
+            items.add(text.substring(start));
+            return items;
+        }
+
+        private String unquote(String text, int number) throws IOException {
+            if (text.startsWith("'")) {
+                if (text.length() < 2 || !text.endsWith("'")) {
+                    throw error(number, "unterminated quoted string");
+                }
+                return text.substring(1, text.length() - 1).replace("''", "'");
+            }
+            if (text.startsWith("\"")) {
+                if (text.length() < 2 || !text.endsWith("\"")) {
+                    throw error(number, "unterminated quoted string");
+                }
+                StringBuilder value = new StringBuilder(text.length());
+                for (int i = 1; i < text.length() - 1; i++) {
+                    char c = text.charAt(i);
+                    if (c == '\\' && i + 1 < text.length() - 1) {
+                        char escaped = text.charAt(++i);
+                        value.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped);
+                    } else {
+                        value.append(c);
+                    }
+                }
+                return value.toString();
+            }
+            return text;
+        }
+
+        private static boolean isSequenceItem(String content) {
+            return content.equals("-") || content.startsWith("- ");
+        }
+
+        // Finds the ':' that ends a key, outside quotes and followed by a space or the end of the line
+        private static int findKeySeparator(String content) {
+            char quote = 0;
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if ((c == '"' || c == '\'') && i == 0) {
+                    quote = c;
+                } else if (c == ':' && (i + 1 == content.length() || content.charAt(i + 1) == ' ')) {
+                    return i;
+                } else if (c == '[' || c == '{') {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        // Removes a comment: '#' at the start of the line or after a space, outside quotes
+        private static String stripComment(String line) {
+            char quote = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if ((c == '"' || c == '\'') && (i == 0 || " [,".indexOf(line.charAt(i - 1)) >= 0)) {
+                    // Quotes only open a scalar at its start, so apostrophes in plain text are left alone
+                    quote = c;
+                } else if (c == '#' && (i == 0 || line.charAt(i - 1) == ' ')) {
+                    return line.substring(0, i);
+                }
+            }
+            return line;
+        }
+
+        private static IOException error(int number, String message) {
+            return new IOException("Invalid taxonomy at line " + number + ": " + message);
+        }
+
+        private static class Line {
+
+            private final int number;
+            private final int indent;
+            private final String content;
+
+            Line(int number, int indent, String content) {
+                this.number = number;
+                this.indent = indent;
+                this.content = content;
+            }
+        }
+    }
+}
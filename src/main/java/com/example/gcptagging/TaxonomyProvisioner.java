@@ -0,0 +1,448 @@
+package com.example.gcptagging;
+
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.resourcemanager.v3.TagKey;
+import com.google.cloud.resourcemanager.v3.TagValue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Creates the tag keys and values of a {@link Taxonomy} that do not exist yet.
+ *
+ * Planning lists the keys of the parent once, and the values of each key the taxonomy names,
+ * and keeps only what is missing. Provisioning then creates all missing keys in parallel, and
+ * the missing values of each key in parallel as soon as that key exists, on a pool of at most
+ * {@code maxParallelism} threads that each wait for one call at a time. The throttle paces
+ * creates to the write quota and listings to the read quota. ALREADY_EXISTS, from a concurrent
+ * run or a listing that was out of date, counts as success. Nothing is updated or deleted.
+ */
+public class TaxonomyProvisioner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TaxonomyProvisioner.class);
+
+    /**
+     * Default number of concurrent calls.
+     */
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+
+    private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+    private final TagsUtil tagsUtil;
+    private final QuotaThrottle throttle;
+    private final int maxParallelism;
+
+    /**
+     * Constructor for TaxonomyProvisioner.
+     *
+     * @param tagsUtil The utility used to list and create tag keys and values
+     * @param throttle The throttle pacing list and create calls
+     * @param maxParallelism The most calls to run at once
+     */
+    public TaxonomyProvisioner(TagsUtil tagsUtil, QuotaThrottle throttle, int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException("maxParallelism must be at least 1");
+        }
+        this.tagsUtil = tagsUtil;
+        this.throttle = throttle;
+        this.maxParallelism = maxParallelism;
+    }
+
+    /**
+     * Compares a taxonomy with what exists under its parent.
+     *
+     * @param taxonomy The taxonomy; its parent must be set
+     * @return The keys and values to create
+     * @throws InterruptedException If interrupted while listing
+     */
+    public Plan plan(Taxonomy taxonomy) throws InterruptedException {
+        String parent = taxonomy.getParent();
+        if (parent == null) {
+            throw new IllegalArgumentException("The taxonomy has no parent");
+        }
+        Map<String, String> existingKeys = new HashMap<>();
+        for (TagKey tagKey : throttled(true, () -> tagsUtil.listTagKeys(parent))) {
+            existingKeys.put(tagKey.getShortName(), tagKey.getName());
+        }
+
+        // Values are only listed for keys the taxonomy names, in parallel
+        ExecutorService pool = newPool();
+        try {
+            List<PlannedKey> keys = new ArrayList<>();
+            List<CompletableFuture<List<TagValue>>> listings = new ArrayList<>();
+            for (Taxonomy.Key key : taxonomy.getKeys()) {
+                String keyName = existingKeys.get(key.getShortName());
+                keys.add(new PlannedKey(key, keyName));
+                listings.add(keyName == null ? CompletableFuture.completedFuture(List.of())
+                        : CompletableFuture.supplyAsync(() -> throttled(true, () -> tagsUtil.listTagValues(keyName)), pool));
+            }
+            await(CompletableFuture.allOf(listings.toArray(new CompletableFuture<?>[0])));
+
+            Plan plan = new Plan(parent);
+            for (int i = 0; i < keys.size(); i++) {
+                PlannedKey key = keys.get(i);
+                Set<String> existingValues = new HashSet<>();
+                for (TagValue tagValue : listings.get(i).join()) {
+                    existingValues.add(tagValue.getShortName());
+                }
+                for (Taxonomy.Value value : key.key.getValues()) {
+                    if (existingValues.contains(value.getShortName())) {
+                        plan.existingValues++;
+                    } else {
+                        key.missingValues.add(value);
+                    }
+                }
+                if (key.existingName != null) {
+                    plan.existingKeys++;
+                }
+                if (key.existingName == null || !key.missingValues.isEmpty()) {
+                    plan.keys.add(key);
+                }
+            }
+            return plan;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the keys and values of a plan. Failures are counted and reported; the other
+     * creates continue, except the values of a key that could not be created.
+     *
+     * @param plan The plan from {@link #plan}
+     * @return The provisioning report
+     * @throws InterruptedException If interrupted while provisioning
+     */
+    public Report provision(Plan plan) throws InterruptedException {
+        Report report = new Report(plan);
+        ExecutorService pool = newPool();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "provision-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> LOG.info("Provisioning progress: {}", report.describe()),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        try {
+            List<CompletableFuture<Void>> keys = new ArrayList<>(plan.keys.size());
+            for (PlannedKey key : plan.keys) {
+                String keyPath = namespace(plan.parent) + "/" + key.key.getShortName();
+                CompletableFuture<String> keyName = key.existingName != null
+                        ? CompletableFuture.completedFuture(key.existingName)
+                        : CompletableFuture.supplyAsync(() -> createKey(plan.parent, key.key, report), pool);
+                // Each key's values are queued the moment the key exists, behind whatever is queued already
+                keys.add(keyName.thenComposeAsync(name -> {
+                    List<CompletableFuture<Void>> values = new ArrayList<>(key.missingValues.size());
+                    for (Taxonomy.Value value : key.missingValues) {
+                        values.add(CompletableFuture.runAsync(() -> createValue(name, keyPath, value, report), pool));
+                    }
+                    return CompletableFuture.allOf(values.toArray(new CompletableFuture<?>[0]));
+                }, pool).exceptionally(error -> {
+                    report.recordKeyFailure(keyPath, key, error instanceof CompletionException ? error.getCause() : error);
+                    return null;
+                }));
+            }
+            await(CompletableFuture.allOf(keys.toArray(new CompletableFuture<?>[0])));
+        } finally {
+            progress.shutdownNow();
+            pool.shutdownNow();
+            report.finish();
+        }
+        return report;
+    }
+
+    private String createKey(String parent, Taxonomy.Key key, Report report) {
+        try {
+            TagKey created = throttled(false, () -> {
+                try {
+                    return tagsUtil.createTagKey(parent, key.getShortName(), key.getDescription());
+                } catch (ExecutionException e) {
+                    throw new CompletionException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while creating " + key.getShortName());
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+            report.keysCreated.incrementAndGet();
+            LOG.debug("Created tag key {} ({})", created.getName(), created.getNamespacedName());
+            return created.getName();
+        } catch (CompletionException e) {
+            if (RetryPolicy.statusCodeOf(e) != StatusCode.Code.ALREADY_EXISTS) {
+                throw e;
+            }
+            // Created since the listing; its values still need its name
+            for (TagKey tagKey : throttled(true, () -> tagsUtil.listTagKeys(parent))) {
+                if (tagKey.getShortName().equals(key.getShortName())) {
+                    report.keysExisting.incrementAndGet();
+                    return tagKey.getName();
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void createValue(String keyName, String keyPath, Taxonomy.Value value, Report report) {
+        try {
+            TagValue created = throttled(false, () -> {
+                try {
+                    return tagsUtil.createTagValue(keyName, value.getShortName(), value.getDescription());
+                } catch (ExecutionException e) {
+                    throw new CompletionException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while creating " + value.getShortName());
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            });
+            report.valuesCreated.incrementAndGet();
+            LOG.debug("Created tag value {} ({})", created.getName(), created.getNamespacedName());
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (RetryPolicy.statusCodeOf(e) == StatusCode.Code.ALREADY_EXISTS) {
+                report.valuesExisting.incrementAndGet();
+            } else {
+                report.recordFailure(keyPath + "/" + value.getShortName(), 1, e instanceof CompletionException ? e.getCause() : e);
+            }
+        }
+    }
+
+    private <T> T throttled(boolean read, Supplier<T> call) {
+        QuotaThrottle.Permit permit;
+        try {
+            permit = read ? throttle.acquireRead() : throttle.acquireWrite();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for quota");
+        }
+        try {
+            T result = call.get();
+            permit.release(null);
+            return result;
+        } catch (RuntimeException e) {
+            permit.release(e);
+            throw e;
+        }
+    }
+
+    private ExecutorService newPool() {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(maxParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "provision-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void await(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw new InterruptedException(e.getCause().getMessage());
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Namespaced names use the organization ID or project ID that follows the collection name
+    private static String namespace(String parent) {
+        return parent.substring(parent.indexOf('/') + 1);
+    }
+
+    /**
+     * A taxonomy key with the name it already has, if any, and the values it is missing.
+     */
+    private static class PlannedKey {
+
+        private final Taxonomy.Key key;
+        private final String existingName;
+        private final List<Taxonomy.Value> missingValues = new ArrayList<>();
+
+        PlannedKey(Taxonomy.Key key, String existingName) {
+            this.key = key;
+            this.existingName = existingName;
+        }
+    }
+
+    /**
+     * The keys and values of a taxonomy that do not exist yet.
+     */
+    public static class Plan {
+
+        private final String parent;
+        private final List<PlannedKey> keys = new ArrayList<>();
+        private int existingKeys;
+        private int existingValues;
+
+        private Plan(String parent) {
+            this.parent = parent;
+        }
+
+        public int getKeysToCreate() {
+            int count = 0;
+            for (PlannedKey key : keys) {
+                if (key.existingName == null) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public int getValuesToCreate() {
+            int count = 0;
+            for (PlannedKey key : keys) {
+                count += key.missingValues.size();
+            }
+            return count;
+        }
+
+        public int getExistingKeys() {
+            return existingKeys;
+        }
+
+        public int getExistingValues() {
+            return existingValues;
+        }
+
+        /**
+         * Prints every key and value to create by namespaced name, followed by the counts.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            String namespace = namespace(parent);
+            for (PlannedKey key : keys) {
+                String keyName = namespace + "/" + key.key.getShortName();
+                if (key.existingName == null) {
+                    out.println("create key   " + keyName);
+                }
+                for (Taxonomy.Value value : key.missingValues) {
+                    out.println("create value " + keyName + "/" + value.getShortName());
+                }
+            }
+            out.println(getKeysToCreate() + " keys and " + getValuesToCreate() + " values to create under " + parent
+                    + "; " + existingKeys + " keys and " + existingValues + " values already exist");
+        }
+    }
+
+    /**
+     * Counters and failures of one provisioning run.
+     */
+    public static class Report {
+
+        private static final int MAX_FAILURE_SAMPLES = 20;
+
+        private final Plan plan;
+        private final AtomicLong keysCreated = new AtomicLong();
+        private final AtomicLong keysExisting = new AtomicLong();
+        private final AtomicLong valuesCreated = new AtomicLong();
+        private final AtomicLong valuesExisting = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<String> failureSamples = new ArrayList<>();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        private Report(Plan plan) {
+            this.plan = plan;
+            keysExisting.set(plan.existingKeys);
+            valuesExisting.set(plan.existingValues);
+        }
+
+        // A key that could not be created fails together with the values it was missing
+        private void recordKeyFailure(String keyPath, PlannedKey key, Throwable error) {
+            recordFailure(keyPath, 1 + key.missingValues.size(), error);
+        }
+
+        private void recordFailure(String name, int count, Throwable error) {
+            failed.addAndGet(count);
+            synchronized (failureSamples) {
+                if (failureSamples.size() < MAX_FAILURE_SAMPLES) {
+                    failureSamples.add(name + ": " + error.getMessage());
+                }
+            }
+        }
+
+        private void finish() {
+            endNanos = System.nanoTime();
+        }
+
+        public long getKeysCreated() {
+            return keysCreated.get();
+        }
+
+        public long getValuesCreated() {
+            return valuesCreated.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Returns the elapsed time of the run in milliseconds.
+         *
+         * @return The elapsed milliseconds
+         */
+        public long getElapsedMillis() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return (end - startNanos) / 1_000_000;
+        }
+
+        private String describe() {
+            return String.format(Locale.ROOT, "%d of %d keys and %d of %d values created, %d failed in %.1fs",
+                    keysCreated.get(), plan.getKeysToCreate(), valuesCreated.get(), plan.getValuesToCreate(),
+                    failed.get(), getElapsedMillis() / 1000.0);
+        }
+
+        /**
+         * Prints the report in a human readable form.
+         *
+         * @param out The stream to print to
+         */
+        public void print(PrintStream out) {
+            out.println("Provisioning summary");
+            out.println("====================");
+            out.println("  Keys created:    " + keysCreated.get());
+            out.println("  Keys existing:   " + keysExisting.get());
+            out.println("  Values created:  " + valuesCreated.get());
+            out.println("  Values existing: " + valuesExisting.get());
+            out.println("  Failed:          " + failed.get());
+            out.println("  Elapsed:         " + String.format(Locale.ROOT, "%.1fs", Math.max(1, getElapsedMillis()) / 1000.0));
+            synchronized (failureSamples) {
+                if (!failureSamples.isEmpty()) {
+                    out.println("  First failures:");
+                    for (String failure : failureSamples) {
+                        out.println("    - " + failure);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.gcptagging;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket that paces requests to a per-minute quota.
+ * The bucket holds up to one second of burst and refills continuously.
+ */
+public class TokenBucket {
+
+    private double tokensPerNano;
+    private double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Constructor for TokenBucket.
+     *
+     * @param requestsPerMinute The sustained rate to allow; must be positive
+     */
+    public TokenBucket(double requestsPerMinute) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("requestsPerMinute must be positive");
+        }
+        this.tokensPerNano = requestsPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.capacity = Math.max(1.0, requestsPerMinute / 60.0);
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Changes the sustained rate. Tokens earned so far are kept, up to the new burst size, and
+     * tokens already reserved are not taken back.
+     *
+     * @param requestsPerMinute The new rate; must be positive
+     */
+    public synchronized void setRequestsPerMinute(double requestsPerMinute) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("requestsPerMinute must be positive");
+        }
+        refill();
+        this.tokensPerNano = requestsPerMinute / TimeUnit.MINUTES.toNanos(1);
+        this.capacity = Math.max(1.0, requestsPerMinute / 60.0);
+        this.tokens = Math.min(capacity, tokens);
+    }
+
+    /**
+     * Takes one token, sleeping until one is available.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes one token, reserving a future one if none is available, without waiting.
+     * The caller must not proceed until the returned time has passed.
+     *
+     * @return The nanoseconds until the token is earned, or 0 if it is available now
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1.0;
+        // A negative balance reserves a future token; the caller waits until it is earned
+        return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+    }
+
+    /**
+     * Returns a token taken by {@link #reserve()} that will not be used after all.
+     */
+    public synchronized void refund() {
+        refill();
+        tokens = Math.min(capacity, tokens + 1.0);
+    }
+
+    /**
+     * Takes one token if one is available, without waiting or reserving a future token.
+     *
+     * @return true if a token was taken
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1.0) {
+            return false;
+        }
+        tokens -= 1.0;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+}
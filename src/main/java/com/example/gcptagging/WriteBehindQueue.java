@@ -0,0 +1,332 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds tag binding creates and deletes for a short window and sends only their net change.
+ *
+ * Mutations are keyed by tag binding name. Creates and deletes set a binding's state regardless of
+ * its state before, so the net change of a window is the last mutation of each binding. Within one
+ * window, a repeated create or delete of a binding is dropped and joins the pending one, and an
+ * opposite mutation replaces the pending one, takes its own place in the queue, and the caller of
+ * the replaced one gets the result of the newer mutation. When the window ends, the remaining
+ * mutations are grouped by resource: the groups are sent concurrently, up to a limit, while the mutations of one resource are sent one after another in the order they were
+ * queued, so that, for example, removing one value of a tag key and adding another keeps its order.
+ * Mutations queued during a flush wait for the next window.
+ *
+ * Calls go through the asynchronous methods of {@link GcpResourceTagger}, so quotas, retries and
+ * listeners apply as usual. Cancelling a returned future does not withdraw the queued mutation.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    /**
+     * Default time mutations are held before they are sent.
+     */
+    public static final Duration DEFAULT_WINDOW = Duration.ofMillis(500);
+
+    /**
+     * Default number of resources whose mutations are sent at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    private static final String TAG_VALUE_MARKER = "@tagValues@";
+
+    private final GcpResourceTagger tagger;
+    private final long windowNanos;
+    private final Semaphore groups;
+    private final Thread flusher;
+
+    private final Object lock = new Object();
+    // Pending mutations by tag binding name, in the order their current mutation was queued
+    private LinkedHashMap<String, Mutation> pending = new LinkedHashMap<>();
+    private long windowStartNanos;
+    private boolean flushNow;
+    private boolean closed;
+    private CompletableFuture<Void> flushing = CompletableFuture.completedFuture(null);
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * Constructor for WriteBehindQueue with the default window and concurrency.
+     *
+     * @param tagger The tagger that sends the mutations
+     */
+    public WriteBehindQueue(GcpResourceTagger tagger) {
+        this(tagger, DEFAULT_WINDOW, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Constructor for WriteBehindQueue.
+     *
+     * @param tagger The tagger that sends the mutations
+     * @param window Time mutations are held, from the first mutation of a window, before they are sent
+     * @param maxConcurrency The number of resources whose mutations are sent at once
+     */
+    public WriteBehindQueue(GcpResourceTagger tagger, Duration window, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.tagger = tagger;
+        this.windowNanos = window.toNanos();
+        this.groups = new Semaphore(maxConcurrency);
+        this.flusher = new Thread(this::flushLoop, "write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues the creation of a tag binding.
+     *
+     * @param resourceName The full resource name
+     * @param tagValueName The full tag value name
+     * @return A future that completes with the binding once it is created, or once a delete of the
+     *         same binding queued later in the window, which replaces this create, has finished
+     */
+    public CompletableFuture<TagBinding> create(String resourceName, String tagValueName) {
+        String tagBindingName = GcpResourceNames.formatTagBindingName(resourceName, tagValueName);
+        TagBinding binding = TagBinding.newBuilder()
+                .setName(tagBindingName)
+                .setParent(resourceName)
+                .setTagValue(tagValueName)
+                .build();
+        return enqueue(new Mutation(TagOperation.Action.CREATE, tagBindingName, binding)).thenApply(done -> binding);
+    }
+
+    /**
+     * Queues the deletion of a tag binding.
+     *
+     * @param tagBindingName The full name of the tag binding
+     * @return A future that completes once the binding is deleted, or once a create of the same
+     *         binding queued later in the window, which replaces this delete, has finished
+     */
+    public CompletableFuture<Void> delete(String tagBindingName) {
+        return enqueue(new Mutation(TagOperation.Action.DELETE, tagBindingName, null));
+    }
+
+    /**
+     * Sends every queued mutation without waiting for the window to end.
+     *
+     * @return A future that completes when everything queued before the call has been sent and finished
+     */
+    public CompletableFuture<Void> flush() {
+        synchronized (lock) {
+            List<CompletableFuture<Void>> waits = new ArrayList<>(pending.size() + 1);
+            waits.add(flushing);
+            for (Mutation mutation : pending.values()) {
+                waits.add(mutation.done);
+            }
+            if (!pending.isEmpty()) {
+                flushNow = true;
+                lock.notifyAll();
+            }
+            // Failures belong to the callers of each mutation; a flush only waits for them
+            return CompletableFuture.allOf(waits.stream()
+                    .map(wait -> wait.handle((ignored, error) -> null))
+                    .toArray(CompletableFuture[]::new));
+        }
+    }
+
+    public long getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of mutations that were never sent, because they repeated a queued one or a later one replaced them.
+     *
+     * @return The number of dropped mutations
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    /**
+     * Sends the remaining mutations, waits for them to finish and stops the flusher thread.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                // Finish sending what was acknowledged to callers, and keep the interrupt
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Mutation mutation) {
+        queued.incrementAndGet();
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Write-behind queue is closed");
+            }
+            Mutation queuedMutation = pending.get(mutation.tagBindingName);
+            if (queuedMutation != null) {
+                if (queuedMutation.action == mutation.action) {
+                    dropped.incrementAndGet();
+                    return queuedMutation.done.thenApply(done -> null);
+                }
+                // The later of two opposite mutations decides the binding's state; the binding may have
+                // existed before the window, so dropping both would not leave it as the caller asked.
+                // It moves to the end of the queue, so that it is sent after the resource's mutations
+                // queued in between
+                pending.remove(mutation.tagBindingName);
+                pending.put(mutation.tagBindingName, mutation);
+                dropped.incrementAndGet();
+                mutation.done.whenComplete((done, error) -> {
+                    if (error == null) {
+                        queuedMutation.done.complete(null);
+                    } else {
+                        queuedMutation.done.completeExceptionally(error);
+                    }
+                });
+                return mutation.done.thenApply(done -> null);
+            }
+            if (pending.isEmpty()) {
+                windowStartNanos = System.nanoTime();
+                lock.notifyAll();
+            }
+            pending.put(mutation.tagBindingName, mutation);
+            return mutation.done.thenApply(done -> null);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            LinkedHashMap<String, Mutation> batch;
+            CompletableFuture<Void> batchDone = new CompletableFuture<>();
+            synchronized (lock) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    // Hold the batch open until the window ends, unless a flush or close cuts it short
+                    long remaining;
+                    while (!pending.isEmpty() && !closed && !flushNow
+                            && (remaining = windowStartNanos + windowNanos - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // Only close() stops the flusher
+                }
+                if (pending.isEmpty()) {
+                    flushNow = false;
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                flushNow = false;
+                flushing = batchDone;
+            }
+
+            try {
+                send(batch);
+            } finally {
+                batchDone.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Sends one batch, one chain of calls per resource, and waits until all of them finish.
+     */
+    private void send(Map<String, Mutation> batch) {
+        Map<String, List<Mutation>> byResource = new LinkedHashMap<>();
+        for (Mutation mutation : batch.values()) {
+            byResource.computeIfAbsent(resourceKey(mutation.tagBindingName), key -> new ArrayList<>()).add(mutation);
+        }
+        List<CompletableFuture<Void>> chains = new ArrayList<>(byResource.size());
+        for (List<Mutation> mutations : byResource.values()) {
+            groups.acquireUninterruptibly();
+            CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+            for (Mutation mutation : mutations) {
+                // Each call starts after the previous one for the resource, whether or not it succeeded
+                chain = chain.thenCompose(previous -> sendOne(mutation)).handle((ignored, error) -> null);
+            }
+            chain.whenComplete((ignored, error) -> groups.release());
+            chains.add(chain);
+        }
+        CompletableFuture.allOf(chains.toArray(new CompletableFuture[0])).join();
+        LOG.debug("Flushed {} tag binding mutations for {} resources", batch.size(), byResource.size());
+    }
+
+    private CompletableFuture<Void> sendOne(Mutation mutation) {
+        sent.incrementAndGet();
+        CompletableFuture<?> call;
+        try {
+            if (mutation.action == TagOperation.Action.CREATE) {
+                call = tagger.createTagBindingAsync(mutation.binding.getParent(), mutation.binding.getTagValue());
+            } else {
+                call = tagger.deleteTagBindingAsync(mutation.tagBindingName);
+            }
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.handle((ignored, error) -> {
+            if (error == null) {
+                mutation.done.complete(null);
+            } else {
+                mutation.done.completeExceptionally(error);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns the part of a tag binding name that identifies its resource, so that bindings
+     * queued by name and by resource and tag value fall in the same group.
+     */
+    private static String resourceKey(String tagBindingName) {
+        int marker = tagBindingName.lastIndexOf(TAG_VALUE_MARKER);
+        return marker < 0 ? tagBindingName : tagBindingName.substring(0, marker);
+    }
+
+    /**
+     * A queued create or delete of one binding; repeats of it share its future.
+     */
+    private static class Mutation {
+
+        final TagOperation.Action action;
+        final String tagBindingName;
+        final TagBinding binding;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Mutation(TagOperation.Action action, String tagBindingName, TagBinding binding) {
+            this.action = action;
+            this.tagBindingName = tagBindingName;
+            this.binding = binding;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class BindingIndexTest {
+
+    private static final String TAG_VALUE = "tagValues/200000000001";
+    private static final String OTHER_TAG_VALUE = "tagValues/200000000002";
+
+    @Test
+    void rebuildSpillsSortedRunsAndMergesThem(@TempDir Path directory) throws IOException {
+        List<TagBinding> bindings = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            bindings.add(binding("vm-" + i, i % 2 == 0 ? TAG_VALUE : OTHER_TAG_VALUE));
+        }
+        Collections.shuffle(bindings);
+
+        try (BindingIndex index = BindingIndex.open(directory)) {
+            // A few KB per run forces dozens of runs
+            BindingIndex.Rebuild rebuild = index.rebuild(4096);
+            for (int i = 0; i < bindings.size(); i += 100) {
+                rebuild.tagBindings(bindings.subList(i, i + 100));
+            }
+            assertTrue(runFiles(directory) > 10);
+            assertEquals(2000, rebuild.commit());
+            assertEquals(0, runFiles(directory));
+        }
+
+        try (BindingIndex index = BindingIndex.open(directory)) {
+            assertEquals(1000, index.findByTagValue(TAG_VALUE).size());
+            assertEquals(1000, index.findByTagValue(OTHER_TAG_VALUE).size());
+            List<TagBinding> found = index.findByResource(resource("vm-1234"));
+            assertEquals(1, found.size());
+            assertEquals(TAG_VALUE, found.get(0).getTagValue());
+
+            List<String> resources = index.findByTagValue(OTHER_TAG_VALUE).stream()
+                    .map(TagBinding::getParent).collect(Collectors.toList());
+            List<String> sorted = new ArrayList<>(resources);
+            Collections.sort(sorted);
+            assertEquals(sorted, resources);
+        }
+    }
+
+    @Test
+    void journalKeepsRecordsOfEveryInstance(@TempDir Path directory) throws IOException {
+        try (BindingIndex index = BindingIndex.open(directory)) {
+            BindingIndex.Rebuild rebuild = index.rebuild();
+            rebuild.tagBindings(Collections.singletonList(binding("vm-1", TAG_VALUE)));
+            rebuild.commit();
+        }
+
+        // Two instances of the index append to the same journal, as two processes would
+        try (BindingIndex first = BindingIndex.open(directory);
+             BindingIndex second = BindingIndex.open(directory)) {
+            first.onCreated(binding("vm-2", TAG_VALUE));
+            second.onCreated(binding("vm-3", TAG_VALUE));
+            first.onDeleted(binding("vm-1", TAG_VALUE).getName());
+        }
+
+        List<String> journal = Files.readAllLines(directory.resolve("journal.log"), StandardCharsets.UTF_8);
+        assertEquals(3, journal.size());
+        try (BindingIndex index = BindingIndex.open(directory)) {
+            List<String> resources = index.findByTagValue(TAG_VALUE).stream()
+                    .map(TagBinding::getParent).sorted().collect(Collectors.toList());
+            List<String> expected = new ArrayList<>();
+            expected.add(resource("vm-2"));
+            expected.add(resource("vm-3"));
+            assertEquals(expected, resources);
+        }
+    }
+
+    private static TagBinding binding(String instance, String tagValue) {
+        String resource = resource(instance);
+        return TagBinding.newBuilder()
+                .setName(GcpResourceNames.formatTagBindingName(resource, tagValue))
+                .setParent(resource)
+                .setTagValue(tagValue)
+                .build();
+    }
+
+    private static String resource(String instance) {
+        return GcpResourceNames.formatVmInstanceName("test-project", "us-central1-a", instance);
+    }
+
+    private static long runFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".run")).count();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.gcptagging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandOptionsTest {
+
+    @Test
+    void flagsNeverTakeThePositionalArgumentAfterThem() {
+        CommandOptions options = CommandOptions.parse(new String[] {"reconcile", "sa.json", "--dry-run", "desired.csv"});
+        assertArrayEquals(new String[] {"reconcile", "sa.json", "desired.csv"}, options.getPositionalArgs());
+        assertTrue(options.getFlag("dry-run"));
+
+        options = CommandOptions.parse(new String[] {"apply", "sa.json", "--resume", "bindings.csv", "--journal", "run.journal"});
+        assertArrayEquals(new String[] {"apply", "sa.json", "bindings.csv"}, options.getPositionalArgs());
+        assertTrue(options.getFlag("resume"));
+        assertEquals("run.journal", options.get("journal", null));
+    }
+
+    @Test
+    void flagsCanBeSetExplicitly() {
+        CommandOptions options = CommandOptions.parse(new String[] {"apply", "--fire-and-track=false", "--quiet=true"});
+        assertFalse(options.getFlag("fire-and-track"));
+        assertTrue(options.getFlag("quiet"));
+        assertFalse(options.getFlag("offline"));
+    }
+
+    @Test
+    void valuedOptions() {
+        CommandOptions options = CommandOptions.parse(new String[] {
+            "--max-in-flight", "128", "apply", "--write-qpm=0", "sa.json", "--unknown", "--ratio", "0.5"});
+        assertArrayEquals(new String[] {"apply", "sa.json"}, options.getPositionalArgs());
+        assertEquals(128, options.getInt("max-in-flight", 0));
+        assertEquals(0, options.getInt("write-qpm", 600));
+        assertTrue(options.getFlag("unknown"));
+        assertEquals(0.5, options.getDouble("ratio", 1), 0);
+        assertThrows(IllegalArgumentException.class, () -> CommandOptions.parse(new String[] {"--port", "x"}).getInt("port", 0));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+class ReconcilerTest {
+
+    private static final String VM = "//compute.googleapis.com/projects/prod-web/zones/europe-west1-b/instances/vm-12";
+
+    @Test
+    void deletesComeBeforeCreates() {
+        // Switching a value: the new value sorts before the old one, yet its create must come last
+        List<TagOperation> plan = new ArrayList<>();
+        int unchanged = Reconciler.diff(VM, new TreeSet<>(Arrays.asList("tagValues/1", "tagValues/3")),
+                Arrays.asList(binding("tagValues/3"), binding("tagValues/2"), binding("tagValues/4")), plan);
+
+        assertEquals(1, unchanged);
+        assertEquals(3, plan.size());
+        assertEquals(TagOperation.Action.DELETE, plan.get(0).getAction());
+        assertEquals("tagValues/2", plan.get(0).getTagValueName());
+        assertEquals(binding("tagValues/2").getName(), plan.get(0).getTagBindingName());
+        assertEquals(TagOperation.Action.DELETE, plan.get(1).getAction());
+        assertEquals("tagValues/4", plan.get(1).getTagValueName());
+        assertEquals(TagOperation.Action.CREATE, plan.get(2).getAction());
+        assertEquals("tagValues/1", plan.get(2).getTagValueName());
+    }
+
+    @Test
+    void nothingToDoWhenInPlace() {
+        List<TagOperation> plan = new ArrayList<>();
+        int unchanged = Reconciler.diff(VM, new TreeSet<>(Arrays.asList("tagValues/1", "tagValues/2")),
+                Arrays.asList(binding("tagValues/2"), binding("tagValues/1")), plan);
+
+        assertEquals(2, unchanged);
+        assertEquals(0, plan.size());
+    }
+
+    private static TagBinding binding(String tagValue) {
+        return TagBinding.newBuilder()
+                .setName(GcpResourceNames.formatTagBindingName(VM, tagValue))
+                .setParent(VM)
+                .setTagValue(tagValue)
+                .build();
+    }
+}
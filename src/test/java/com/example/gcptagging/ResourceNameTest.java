@@ -0,0 +1,130 @@
+package com.example.gcptagging;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResourceNameTest {
+
+    private static final String VM = "//compute.googleapis.com/projects/prod-web/zones/europe-west1-b/instances/vm-12";
+    private static final String BUCKET = "//storage.googleapis.com/projects/_/buckets/logs-2024";
+    private static final String NETWORK = "//compute.googleapis.com/projects/prod-net/global/networks/default";
+    private static final String TABLE = "//bigquery.googleapis.com/projects/analytics/datasets/events/tables/clicks";
+
+    @Test
+    void parsesEachIdOfAName() {
+        ResourceName vm = ResourceName.parse(VM);
+        assertEquals(ResourceName.Type.COMPUTE_INSTANCE, vm.getType());
+        assertEquals("prod-web", vm.getProjectId());
+        assertEquals("europe-west1-b", vm.getId(1));
+        assertEquals("vm-12", vm.getResourceId());
+        // A parsed name formats back to the caller's string
+        assertSame(VM, vm.toString());
+    }
+
+    @Test
+    void bucketsHaveNoProject() {
+        ResourceName bucket = ResourceName.parse(BUCKET);
+        assertEquals(ResourceName.Type.STORAGE_BUCKET, bucket.getType());
+        assertEquals(1, bucket.getType().getIdCount());
+        assertEquals("logs-2024", bucket.getResourceId());
+        assertNull(bucket.getProjectId());
+        assertEquals(BUCKET, GcpResourceNames.formatStorageBucketName("logs-2024"));
+    }
+
+    @Test
+    void globalNetworks() {
+        ResourceName network = ResourceName.parse(NETWORK);
+        assertEquals(ResourceName.Type.COMPUTE_NETWORK, network.getType());
+        assertEquals("prod-net", network.getProjectId());
+        assertEquals("default", network.getResourceId());
+        assertEquals(NETWORK, ResourceName.Type.COMPUTE_NETWORK.format("prod-net", "default"));
+        assertNull(ResourceName.tryParse("//compute.googleapis.com/projects/prod-net/global/networks"));
+        assertNull(ResourceName.tryParse("//compute.googleapis.com/projects/prod-net/regional/networks/default"));
+    }
+
+    @Test
+    void bigQueryTablesAndDatasets() {
+        ResourceName table = ResourceName.parse(TABLE);
+        assertEquals(ResourceName.Type.BIGQUERY_TABLE, table.getType());
+        assertEquals("analytics", table.getProjectId());
+        assertEquals("events", table.getId(1));
+        assertEquals("clicks", table.getResourceId());
+        assertEquals(TABLE, GcpResourceNames.formatBigQueryTableName("analytics", "events", "clicks"));
+
+        ResourceName dataset = ResourceName.parse("//bigquery.googleapis.com/projects/analytics/datasets/events");
+        assertEquals(ResourceName.Type.BIGQUERY_DATASET, dataset.getType());
+        assertEquals("events", dataset.getResourceId());
+    }
+
+    @Test
+    void emptyIdsAndExtraSegmentsAreRejected() {
+        assertNull(ResourceName.tryParse("//compute.googleapis.com/projects//zones/europe-west1-b/instances/vm-12"));
+        assertNull(ResourceName.tryParse("//compute.googleapis.com/projects/prod-web/zones/europe-west1-b/instances/"));
+        assertNull(ResourceName.tryParse(VM + "/"));
+        assertNull(ResourceName.tryParse(VM + "/disks/disk-1"));
+        assertNull(ResourceName.tryParse("//storage.googleapis.com/projects/_/buckets/"));
+        assertNull(ResourceName.tryParse("//storage.googleapis.com/projects/p/buckets/logs-2024"));
+        assertNull(ResourceName.tryParse("compute.googleapis.com/projects/prod-web"));
+        assertNull(ResourceName.tryParse(null));
+        assertThrows(IllegalArgumentException.class, () -> ResourceName.parse("//example.com/things/1"));
+    }
+
+    @Test
+    void ofValidatesIds() {
+        ResourceName vm = ResourceName.Type.COMPUTE_INSTANCE.of("prod-web", "europe-west1-b", "vm-12");
+        assertEquals(ResourceName.parse(VM), vm);
+        assertEquals(ResourceName.parse(VM).hashCode(), vm.hashCode());
+        assertEquals(VM, vm.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> ResourceName.Type.COMPUTE_INSTANCE.of("prod-web", "", "vm-12"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceName.Type.COMPUTE_INSTANCE.of("prod-web", "europe-west1-b", "a/b"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceName.Type.COMPUTE_INSTANCE.of("prod-web", null, "vm-12"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceName.Type.COMPUTE_INSTANCE.of("prod-web", "vm-12"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceName.Type.PROJECT.format("prod-web", "vm-12"));
+    }
+
+    @Test
+    void formatMatchesStringFormat() {
+        String[][] cases = {
+            {"prod-web", "europe-west1-b", "vm-12"},
+            {"", "", ""},
+            {"a/b", "z", "c//d"},
+            {null, "zone", null},
+        };
+        for (String[] ids : cases) {
+            assertEquals(String.format("//compute.googleapis.com/projects/%s/zones/%s/instances/%s", (Object[]) ids),
+                    GcpResourceNames.formatVmInstanceName(ids[0], ids[1], ids[2]));
+        }
+    }
+
+    @Test
+    void tagBindingNameMatchesReplace() {
+        String[][] cases = {
+            {VM, "tagValues/123456789012"},
+            {BUCKET, "tagValues/1"},
+            {"//cloudresourcemanager.googleapis.com/projects/prod-web", "tagValues/2"},
+            // Runs of slashes: "//" pairs are dropped left to right, an odd one out becomes '@'
+            {"///a////b/////c/", "tagValues//3"},
+            {"/", "/"},
+            {"", ""},
+            {"no-slashes", "tagValues@4"},
+        };
+        for (String[] names : cases) {
+            assertEquals(formatTagBindingNameWithReplace(names[0], names[1]),
+                    GcpResourceNames.formatTagBindingName(names[0], names[1]));
+        }
+    }
+
+    /**
+     * The original formatting, which the single-pass version must reproduce exactly.
+     */
+    private static String formatTagBindingNameWithReplace(String resourceName, String tagValueName) {
+        String resourcePart = resourceName.replace("//", "").replace("/", "@");
+        String tagValuePart = tagValueName.replace("/", "@");
+        return String.format("tagBindings/%s@%s", resourcePart, tagValuePart);
+    }
+}
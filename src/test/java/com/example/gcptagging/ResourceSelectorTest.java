@@ -0,0 +1,142 @@
+package com.example.gcptagging;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class ResourceSelectorTest {
+
+    private static final String VM = "//compute.googleapis.com/projects/prod-web/zones/europe-west1-b/instances/vm-12";
+    private static final String DISK = "//compute.googleapis.com/projects/dev-web/zones/us-central1-a/disks/disk-1";
+    private static final String BUCKET = "//storage.googleapis.com/projects/_/buckets/logs-2024";
+    private static final String NETWORK = "//compute.googleapis.com/projects/prod-net/global/networks/default";
+    private static final String PROJECT = "//cloudresourcemanager.googleapis.com/projects/prod-web";
+
+    @Test
+    void splitFindsEveryComponent() {
+        assertArrayEquals(new String[] {"compute", "prod-web", "europe-west1-b", "instances", "vm-12"}, components(VM));
+        assertArrayEquals(new String[] {"storage", null, null, "buckets", "logs-2024"}, components(BUCKET));
+        assertArrayEquals(new String[] {"compute", "prod-net", "global", "networks", "default"}, components(NETWORK));
+        assertArrayEquals(new String[] {"cloudresourcemanager", "prod-web", null, "projects", "prod-web"}, components(PROJECT));
+    }
+
+    @Test
+    void splitRejectsNamesThatAreNotFullResourceNames() {
+        int[] bounds = new int[ResourceSelector.Component.values().length * 2];
+        assertFalse(ResourceSelector.split("projects/prod-web", bounds));
+        assertFalse(ResourceSelector.split("//compute.googleapis.com", bounds));
+        assertFalse(ResourceSelector.split("//compute.googleapis.com/projects", bounds));
+        assertFalse(ResourceSelector.split(null, bounds));
+    }
+
+    @Test
+    void exactPrefixAndSuffixGlobs() {
+        assertTrue(matches("type=instances", VM));
+        assertFalse(matches("type=instance", VM));
+        assertTrue(matches("project=prod-*", VM));
+        assertTrue(matches("project=*-web", VM));
+        assertFalse(matches("project=*-net", VM));
+        assertTrue(matches("name=vm-1?", VM));
+        assertTrue(matches("location=europe-*-b", VM));
+        assertTrue(matches("project=*", VM));
+    }
+
+    @Test
+    void allTermsOfOneSelectorMustMatch() {
+        String selector = "service=compute,type=instances,project=prod-*,location=europe-*";
+        assertTrue(matches(selector, VM));
+        assertFalse(matches(selector, DISK));
+        assertFalse(matches(selector, NETWORK));
+    }
+
+    @Test
+    void anySelectorMaySelect() {
+        String selectors = "type=instances,project=prod-*; type=buckets,name=logs-*; type=disks,location=asia-*";
+        assertTrue(matches(selectors, VM));
+        assertTrue(matches(selectors, BUCKET));
+        assertFalse(matches(selectors, DISK));
+    }
+
+    @Test
+    void alternativesWithinATerm() {
+        assertTrue(matches("location=asia-*|europe-*", VM));
+        assertTrue(matches("type=disks|instances", DISK));
+        assertFalse(matches("location=asia-*|us-east*", VM));
+    }
+
+    @Test
+    void termOnAnAbsentComponentNeverMatches() {
+        assertFalse(matches("project=*", BUCKET));
+        assertFalse(matches("location=*", BUCKET));
+        assertTrue(matches("location=global", NETWORK));
+    }
+
+    @Test
+    void regularExpressionsMayContainCommas() {
+        assertTrue(matches("name=~vm-\\d{2,3}", VM));
+        assertTrue(matches("type=instances,name=~vm-\\d{2,3},project=prod-web", VM));
+        assertFalse(matches("name=~vm-\\d{3,4}", VM));
+        assertTrue(matches("project=~prod-(web|net)", NETWORK));
+    }
+
+    @Test
+    void componentNamesAndAliases() {
+        assertTrue(matches("Zone=europe-west1-b", VM));
+        assertTrue(matches("region=europe-west1-b", VM));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSelector.parse("colour=red"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSelector.parse("type"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSelector.parse("project=a,project=b"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSelector.parse("name=~["));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSelector.parse(" ; # nothing"));
+    }
+
+    @Test
+    void manySelectorsSpanSeveralWords() {
+        StringBuilder selectors = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            selectors.append("type=instances,name=vm-").append(i).append(';');
+        }
+        ResourceSelector selector = ResourceSelector.parse(selectors.toString());
+        assertEquals(150, selector.size());
+        ResourceSelector.Matcher matcher = selector.matcher();
+        assertTrue(matcher.matches(VM));
+        assertTrue(matcher.matches(VM.replace("vm-12", "vm-149")));
+        assertFalse(matcher.matches(VM.replace("vm-12", "vm-150")));
+        assertFalse(matcher.matches(DISK));
+    }
+
+    @Test
+    void selectorsFileSeparatesOnlyByLine(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("selectors.txt");
+        Files.write(file, "# production\nname=~vm-(1;2)|vm-12\n\ntype=buckets\n".getBytes(StandardCharsets.UTF_8));
+        ResourceSelector selector = ResourceSelector.load(file);
+        assertEquals(2, selector.size());
+        assertTrue(selector.matcher().matches(VM));
+        assertTrue(selector.matcher().matches(BUCKET));
+        assertFalse(selector.matcher().matches(DISK));
+    }
+
+    private static boolean matches(String selectors, String name) {
+        return ResourceSelector.parse(selectors).matcher().matches(name);
+    }
+
+    private static String[] components(String name) {
+        int[] bounds = new int[ResourceSelector.Component.values().length * 2];
+        assertTrue(ResourceSelector.split(name, bounds));
+        String[] components = new String[bounds.length / 2];
+        for (int i = 0; i < components.length; i++) {
+            components[i] = bounds[i * 2] < 0 ? null : name.substring(bounds[i * 2], bounds[i * 2 + 1]);
+        }
+        return components;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.gcptagging;
+
+import com.google.cloud.resourcemanager.v3.TagBinding;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class WriteBehindQueueTest {
+
+    private static final String VM = "//compute.googleapis.com/projects/prod-web/zones/europe-west1-b/instances/vm-12";
+
+    private SimulatedResourceManager backend;
+    private ResourceManagerClients clients;
+    private GcpResourceTagger tagger;
+    private String valueA;
+    private String valueB;
+
+    @BeforeEach
+    void startBackend() throws Exception {
+        backend = new SimulatedResourceManager(0, SimulatedResourceManager.Faults.NONE);
+        List<String> values = backend.seedTagKey("env", Arrays.asList("a", "b"));
+        valueA = values.get(0);
+        valueB = values.get(1);
+        clients = new ResourceManagerClients(null, ClientConfig.defaults()
+                .with("endpoint", backend.getEndpoint())
+                .with("channel.plaintext", "true"));
+        tagger = new GcpResourceTagger(clients.createTagBindingsClient(), new QuotaThrottle(0, 0, 8));
+    }
+
+    @AfterEach
+    void stopBackend() throws Exception {
+        tagger.close();
+        clients.close();
+        backend.close();
+    }
+
+    @Test
+    void replacingMutationIsSentAtItsOwnPosition() throws Exception {
+        // The resource carries a; the caller removes b and a, then adds b back
+        backend.seedTagBindings(valueA, Collections.singletonList(VM));
+        try (WriteBehindQueue queue = new WriteBehindQueue(tagger, Duration.ofMinutes(1), 4)) {
+            CompletableFuture<Void> deleteB = queue.delete(GcpResourceNames.formatTagBindingName(VM, valueB));
+            CompletableFuture<Void> deleteA = queue.delete(GcpResourceNames.formatTagBindingName(VM, valueA));
+            CompletableFuture<TagBinding> createB = queue.create(VM, valueB);
+            queue.flush().get(30, TimeUnit.SECONDS);
+
+            // Sending the create of b before the delete of a would fail: a resource carries one value per key
+            createB.get();
+            deleteA.get();
+            deleteB.get();
+            assertEquals(1, queue.getDropped());
+            assertEquals(2, queue.getSent());
+        }
+        List<TagBinding> bindings = tagger.listTagBindings(VM);
+        assertEquals(1, bindings.size());
+        assertEquals(valueB, bindings.get(0).getTagValue());
+    }
+
+    @Test
+    void repeatedMutationIsSentOnce() throws Exception {
+        try (WriteBehindQueue queue = new WriteBehindQueue(tagger, Duration.ofMinutes(1), 4)) {
+            CompletableFuture<TagBinding> first = queue.create(VM, valueA);
+            CompletableFuture<TagBinding> second = queue.create(VM, valueA);
+            queue.flush().get(30, TimeUnit.SECONDS);
+
+            assertEquals(first.get().getName(), second.get().getName());
+            assertEquals(1, queue.getDropped());
+            assertEquals(1, queue.getSent());
+        }
+        assertEquals(1, backend.getBindingCount());
+    }
+}
@@ -0,0 +1,120 @@
+#!/bin/bash
+# Measures cold start time of the command line tool: an optional baseline build, the current
+# build with the default CDS archive, and the current build with the AppCDS archive.
+# Each case runs RUNS times in a fresh JVM and reports the median wall clock time.
+# Network commands run against a simulated backend started by this script, so no GCP
+# project or service account is needed.
+#
+# Usage: ./startup-benchmark.sh [runs] [baseline-revision]      (default 10 runs, no baseline)
+# Build first with: mvn -Pappcds package
+# With a baseline revision, such as a tag or commit from before a startup change, that revision
+# is built in a temporary git worktree and measured with the default CDS archive.
+
+RUNS=${1:-10}
+BASELINE_REVISION=$2
+JAR_FILE="target/gcptagging-1.0-SNAPSHOT.jar"
+ARCHIVE="target/gcptagging.jsa"
+PORT=50151
+
+if [ ! -f "$JAR_FILE" ]; then
+    echo "Error: JAR file not found at $JAR_FILE"
+    echo "Please build the project first using: mvn -Pappcds package"
+    exit 1
+fi
+
+CONFIG=$(mktemp)
+printf 'endpoint=localhost:%s\nchannel.plaintext=true\n' "$PORT" > "$CONFIG"
+BASELINE_DIR=
+BASELINE_JAR=
+BACKEND_PID=
+
+cleanup() {
+    [ -n "$BACKEND_PID" ] && kill "$BACKEND_PID" 2> /dev/null
+    rm -f "$CONFIG"
+    if [ -n "$BASELINE_DIR" ]; then
+        git worktree remove --force "$BASELINE_DIR" > /dev/null 2>&1
+        rm -rf "$BASELINE_DIR"
+    fi
+}
+trap cleanup EXIT
+
+if [ -n "$BASELINE_REVISION" ]; then
+    BASELINE_DIR=$(mktemp -d)
+    echo "Building baseline $BASELINE_REVISION..."
+    if ! git worktree add --detach "$BASELINE_DIR" "$BASELINE_REVISION" > /dev/null 2>&1 \
+            || ! (cd "$BASELINE_DIR" && mvn -B -q package -DskipTests > /dev/null 2>&1); then
+        echo "Error: could not build $BASELINE_REVISION"
+        exit 1
+    fi
+    BASELINE_JAR="$BASELINE_DIR/$JAR_FILE"
+fi
+
+java -jar "$JAR_FILE" fake-backend --port "$PORT" --quiet > /dev/null 2>&1 &
+BACKEND_PID=$!
+
+# Wait until the backend accepts connections rather than for a fixed time
+for ((i = 0; i < 300; i++)); do
+    if ! kill -0 "$BACKEND_PID" 2> /dev/null; then
+        echo "Error: the simulated backend did not start (is port $PORT in use?)"
+        exit 1
+    fi
+    if (exec 3<> "/dev/tcp/localhost/$PORT") 2> /dev/null; then
+        break
+    fi
+    sleep 0.1
+done
+if ((i == 300)); then
+    echo "Error: the simulated backend was not ready after 30 seconds"
+    exit 1
+fi
+
+# Prints the median time in milliseconds of RUNS runs of a command
+median_millis() {
+    local times=()
+    for ((i = 0; i < RUNS; i++)); do
+        local start=$(date +%s%N)
+        "$@" > /dev/null 2>&1
+        times+=($(( ($(date +%s%N) - start) / 1000000 )))
+    done
+    printf '%s\n' "${times[@]}" | sort -n | sed -n "$(( (RUNS + 1) / 2 ))p"
+}
+
+# Prints the median of running one jar: the main class, or "-" for the jar's own entry point, then its arguments
+median_of_jar() {
+    local jar=$1
+    local options=$2
+    local main=$3
+    shift 3
+    if [ "$main" = "-" ]; then
+        median_millis java $options -jar "$jar" "$@"
+    else
+        median_millis java $options -cp "$jar" "$main" "$@"
+    fi
+}
+
+# Prints one row: the case name, then the median of the baseline, of the current build without
+# the archive and, if built, with it
+measure() {
+    local name=$1
+    shift
+    local baseline="-"
+    local with="(no archive)"
+    if [ -n "$BASELINE_JAR" ]; then
+        baseline="$(median_of_jar "$BASELINE_JAR" -Xshare:auto "$@") ms"
+    fi
+    local without="$(median_of_jar "$JAR_FILE" -Xshare:auto "$@") ms"
+    if [ -f "$ARCHIVE" ]; then
+        with="$(median_of_jar "$JAR_FILE" -XX:SharedArchiveFile="$ARCHIVE" "$@") ms"
+    fi
+    printf '%-44s %13s %13s %13s\n' "$name" "$baseline" "$without" "$with"
+}
+
+echo "Median of $RUNS cold starts"
+printf '%-44s %13s %13s %13s\n' "Command" "Baseline" "Default CDS" "AppCDS"
+measure "usage" -
+measure "usage error (create, no arguments)" - create none
+measure "GcpResourceNames formatTagBindingName" com.example.gcptagging.GcpResourceNames formatTagBindingName \
+    //compute.googleapis.com/projects/p/zones/us-central1-a/instances/vm-1 tagValues/1001
+measure "list-resource (simulated backend)" - list-resource none \
+    //cloudresourcemanager.googleapis.com/projects/1 --config "$CONFIG"
+measure "list-tag (simulated backend)" - list-tag none tagValues/1001 --config "$CONFIG"